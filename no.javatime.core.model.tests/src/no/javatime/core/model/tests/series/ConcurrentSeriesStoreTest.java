@@ -0,0 +1,226 @@
+package no.javatime.core.model.tests.series;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import no.javatime.core.model.series.ColumnFactory;
+import no.javatime.core.model.series.MappedColumnFactory;
+import no.javatime.core.model.series.RingColumnFactory;
+import no.javatime.core.model.series.SeriesSnapshot;
+import no.javatime.core.model.series.SeriesStore;
+import no.javatime.core.model.series.SeriesView;
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * One thread appends steps to a series store while another thread takes snapshots of the store.
+ * <p>
+ * Each snapshot must hold complete rows, where all views have the same number of rows and the
+ * values of each row are the values added with the step of the row. The values of the first and
+ * the second model element are the step times two and times three. Every thousandth step is not a
+ * whole number, so the encoded time axis also stores steps as is.
+ */
+public class ConcurrentSeriesStoreTest {
+
+	private final static int STEPS = 400000;
+
+	@Test
+	public void heapColumns() throws Exception {
+		assertConsistentSnapshots(ColumnFactory.HEAP, false);
+	}
+
+	@Test
+	public void compressedColumns() throws Exception {
+		assertConsistentSnapshots(ColumnFactory.COMPRESSED, false);
+	}
+
+	@Test
+	public void mappedColumns() throws Exception {
+
+		Path directory = Files.createTempDirectory("series");
+		try {
+			// Small segments and write buffers, so the writer often maps segments and flushes
+			assertConsistentSnapshots(new MappedColumnFactory(directory, 10, 64), false);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void ringColumns() throws Exception {
+		assertConsistentSnapshots(new RingColumnFactory(3000), true);
+	}
+
+	@Test
+	public void snapshotIsReadAfterClear() throws Exception {
+
+		Path directory = Files.createTempDirectory("series");
+		try {
+			SeriesStore store = new SeriesStore();
+			store.setColumnFactory(new MappedColumnFactory(directory, 10, 64));
+			append(store, 5000);
+			SeriesSnapshot snapshot = store.snapshot();
+			long files = count(directory);
+			// The next run records into new columns while the snapshot is read
+			store.clear();
+			append(store, 10);
+			assertEquals(files * 2, count(directory));
+			assertEquals(5000, snapshot.getRowCount());
+			assertEquals(null, check(snapshot, false));
+			assertEquals(10, store.snapshot().getRowCount());
+			// Only the files of the columns in the store are deleted
+			store.release();
+			assertEquals(files, count(directory));
+			assertEquals(null, check(snapshot, false));
+		} finally {
+			delete(directory);
+		}
+	}
+
+	/**
+	 * Record two model elements with steps that are not uniform
+	 */
+	private static void append(SeriesStore store, int steps) {
+
+		int first = store.register(createExtender(String.class));
+		int second = store.register(createExtender(Integer.class));
+		for (int i = 1; i <= steps; i++) {
+			double step = i % 1000 == 0 || i == 5 ? i + 0.5 : i;
+			store.addStep(step);
+			store.add(first, step * 2);
+			store.add(second, step * 3);
+			store.publish();
+		}
+	}
+
+	private static long count(Path directory) throws IOException {
+
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+
+	/**
+	 * Append {@value #STEPS} steps while a reader checks snapshots
+	 *
+	 * @param columnFactory the factory of the columns of the store
+	 * @param replacing true if values are replaced by the writer, and values replaced after a
+	 * snapshot was taken read as <code>NaN</code>
+	 */
+	private static void assertConsistentSnapshots(ColumnFactory columnFactory,
+			final boolean replacing) throws Exception {
+
+		final SeriesStore store = new SeriesStore();
+		store.setColumnFactory(columnFactory);
+		int first = store.register(createExtender(String.class));
+		int second = store.register(createExtender(Integer.class));
+		final AtomicLong snapshots = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final StringBuilder firstError = new StringBuilder();
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread reader = new Thread(() -> {
+			while (!done.get()) {
+				String error = check(store.snapshot(), replacing);
+				snapshots.incrementAndGet();
+				if (null != error) {
+					if (errors.getAndIncrement() == 0) {
+						firstError.append(error);
+					}
+				}
+			}
+		}, "Snapshot reader");
+		reader.start();
+		try {
+			for (int i = 1; i <= STEPS; i++) {
+				double step = i % 1000 == 0 ? i + 0.5 : i;
+				store.addStep(step);
+				store.add(first, step * 2);
+				store.add(second, step * 3);
+				store.publish();
+			}
+		} finally {
+			done.set(true);
+			reader.join();
+		}
+		try {
+			assertEquals(firstError.toString(), 0, errors.get());
+			assertTrue("No snapshots were taken", snapshots.get() > 0);
+			assertEquals(replacing ? 3000 : STEPS, store.snapshot().getRowCount());
+			assertEquals(null, check(store.snapshot(), false));
+		} finally {
+			store.release();
+		}
+	}
+
+	/**
+	 * Check the rows of a snapshot
+	 *
+	 * @return a description of the first inconsistent row or null if all rows are consistent
+	 */
+	private static String check(SeriesSnapshot snapshot, boolean replacing) {
+
+		SeriesView steps = snapshot.getStepsView();
+		SeriesView first = snapshot.getSeriesView(0);
+		SeriesView second = snapshot.getSeriesView(1);
+		int rows = snapshot.getRowCount();
+		if (steps.size() != rows || first.size() != rows || second.size() != rows) {
+			return "Rows: " + rows + " Steps: " + steps.size() + " Columns: " + first.size() + ", "
+					+ second.size();
+		}
+		double[] stepValues = steps.toArray();
+		double[] firstValues = first.toArray();
+		double[] secondValues = second.toArray();
+		for (int row = 0; row < rows; row++) {
+			double step = stepValues[row];
+			if (replacing && (Double.isNaN(step) || Double.isNaN(firstValues[row])
+					|| Double.isNaN(secondValues[row]))) {
+				// Replaced after the snapshot was taken
+				continue;
+			}
+			if (firstValues[row] != step * 2 || secondValues[row] != step * 3) {
+				return "Row " + row + " of " + rows + ": Step " + step + " Values " + firstValues[row]
+						+ ", " + secondValues[row];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A model element providing the specified service class
+	 */
+	private static Extender<?> createExtender(final Class<?> serviceClass) {
+
+		return (Extender<?>) Proxy.newProxyInstance(ConcurrentSeriesStoreTest.class
+				.getClassLoader(), new Class<?>[] { Extender.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getServiceClass":
+				return serviceClass;
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			default:
+				return null;
+			}
+		});
+	}
+
+	private static void delete(Path directory) {
+
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		} catch (IOException e) {
+			// Left to the temporary directory of the platform
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package no.javatime.core.model.tests.series;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import no.javatime.core.model.series.Column;
+import no.javatime.core.model.series.ColumnFactory;
+import no.javatime.core.model.series.DeltaColumn;
+import no.javatime.core.model.series.SeriesStore;
+import no.javatime.core.model.series.TimeAxis;
+import no.javatime.core.model.series.XorColumn;
+
+/**
+ * Values appended to the compressed columns are read back bit for bit, by position and by copying
+ * ranges across block boundaries, from the open block as well as from encoded blocks.
+ */
+public class EncodedColumnTest {
+
+	private final static int VALUES = 100000;
+
+	@Test
+	public void xorRoundTrip() {
+
+		Random random = new Random(1);
+		double[] values = new double[VALUES];
+		double value = 100d;
+		for (int i = 0; i < values.length; i++) {
+			if (i % 5000 == 0) {
+				value = Double.NaN;
+			} else if (i % 5001 == 0) {
+				value = -0d;
+			} else if (i % 7919 == 0) {
+				value = Double.POSITIVE_INFINITY;
+			} else if (i % 3000 < 1500) {
+				// Smoothly changing
+				value = i + 0.25;
+			} else if (i % 7 == 0) {
+				value = random.nextDouble() * Double.MAX_VALUE * (random.nextBoolean() ? 1 : -1);
+			}
+			values[i] = value;
+		}
+		assertRoundTrip(new XorColumn(), values);
+	}
+
+	@Test
+	public void xorCompressesConstantValues() {
+
+		XorColumn column = new XorColumn();
+		for (int i = 0; i < VALUES; i++) {
+			column.add(42d);
+		}
+		// One bit for each repeated value
+		assertTrue(column.getEncodedBytes() < VALUES / 4);
+	}
+
+	@Test
+	public void deltaRoundTrip() {
+
+		double[] steps = new double[VALUES];
+		double step = 0d;
+		for (int i = 0; i < steps.length; i++) {
+			if (i % 100 == 0) {
+				step += 3;
+			} else if (i % 333 == 0) {
+				// Distance outside all delta-of-delta ranges
+				step += 5000;
+			} else if (i % 777 == 0) {
+				// Not a whole number
+				step += 0.5;
+			} else if (i % 778 == 0) {
+				step = Math.rint(step) + 1;
+			} else if (i % 999 == 0) {
+				step += 200;
+			} else {
+				step += 1;
+			}
+			steps[i] = step;
+		}
+		assertRoundTrip(new DeltaColumn(), steps);
+	}
+
+	@Test
+	public void deltaCompressesUniformSteps() {
+
+		DeltaColumn column = new DeltaColumn();
+		for (int i = 0; i < VALUES; i++) {
+			column.add(i);
+		}
+		assertTrue(column.getEncodedBytes() < VALUES / 4);
+	}
+
+	@Test
+	public void axisKeepsNegativeZero() {
+
+		SeriesStore store = new SeriesStore();
+		store.setColumnFactory(ColumnFactory.COMPRESSED);
+		TimeAxis axis = store.getAxis();
+		double[] steps = new double[VALUES];
+		for (int i = 0; i < steps.length; i++) {
+			// Whole steps, a step that is not whole, and negative zero in the encoded steps
+			steps[i] = i == 2000 ? -0d : i == 777 ? i - 2000.5 : i - 2000;
+			store.addStep(steps[i]);
+		}
+		assertFalse(axis.isUniform());
+		double[] copy = axis.view().toArray();
+		for (int i = 0; i < steps.length; i++) {
+			assertBits(i, steps[i], axis.get(i));
+			assertBits(i, steps[i], copy[i]);
+		}
+		// Negative zero in uniform steps
+		store.clear();
+		for (double step : new double[] { -2d, -1d, -0d, 1d }) {
+			store.addStep(step);
+		}
+		assertBits(2, -0d, axis.get(2));
+		assertBits(3, 1d, axis.get(3));
+	}
+
+	@Test
+	public void clearedColumnIsReused() {
+
+		XorColumn column = new XorColumn();
+		for (int i = 0; i < 5000; i++) {
+			column.add(i * 0.1);
+		}
+		column.clear();
+		assertEquals(0, column.size());
+		double[] values = new double[3000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = -i * 0.3;
+		}
+		assertRoundTrip(column, values);
+	}
+
+	private static void assertRoundTrip(Column column, double[] values) {
+
+		for (double value : values) {
+			column.add(value);
+		}
+		assertEquals(values.length, column.size());
+		for (int i = 0; i < values.length; i++) {
+			assertBits(i, values[i], column.get(i));
+		}
+		double[] copy = column.toArray();
+		assertEquals(values.length, copy.length);
+		for (int i = 0; i < values.length; i++) {
+			assertBits(i, values[i], copy[i]);
+		}
+		// Ranges starting and ending within blocks, and within the open block at the end
+		int from = 1000;
+		int length = values.length - from - 7;
+		double[] range = new double[length + 2];
+		column.copyTo(from, range, 2, length);
+		for (int i = 0; i < length; i++) {
+			assertBits(from + i, values[from + i], range[i + 2]);
+		}
+	}
+
+	private static void assertBits(int index, double expected, double actual) {
+		assertEquals("Value " + index, Double.doubleToRawLongBits(expected), Double
+				.doubleToRawLongBits(actual));
+	}
+}
@@ -0,0 +1,137 @@
+package no.javatime.core.model.tests.series;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import no.javatime.core.model.series.Decimation;
+import no.javatime.core.model.series.MinMaxPyramid;
+import no.javatime.core.model.series.SeriesView;
+
+/**
+ * The buckets of each level of a pyramid hold the smallest and the largest value of the values
+ * they cover, and a decimated range keeps the peaks of the values.
+ */
+public class MinMaxPyramidTest {
+
+	private final static int VALUES = 100000;
+
+	@Test
+	public void bucketsHoldExtremes() {
+
+		Random random = new Random(1);
+		double[] values = new double[VALUES];
+		for (int i = 0; i < values.length; i++) {
+			// A bucket without values at level zero
+			values[i] = i / MinMaxPyramid.BUCKET == 3 || random.nextInt(10) == 0 ? Double.NaN
+					: random.nextGaussian();
+		}
+		MinMaxPyramid pyramid = new MinMaxPyramid();
+		for (double value : values) {
+			pyramid.add(value);
+		}
+		assertEquals(VALUES, pyramid.getCount());
+		int levels = pyramid.getLevels();
+		assertTrue(MinMaxPyramid.getBucketSize(levels - 1) <= VALUES);
+		assertTrue(MinMaxPyramid.getBucketSize(levels) > VALUES);
+		for (int level = 0; level < levels; level++) {
+			long size = MinMaxPyramid.getBucketSize(level);
+			assertEquals(VALUES / size, pyramid.getBuckets(level));
+			for (int bucket = 0; bucket < pyramid.getBuckets(level); bucket++) {
+				double min = Double.NaN;
+				double max = Double.NaN;
+				for (long i = bucket * size; i < (bucket + 1) * size; i++) {
+					double value = values[(int) i];
+					if (!Double.isNaN(value)) {
+						min = Double.isNaN(min) ? value : Math.min(min, value);
+						max = Double.isNaN(max) ? value : Math.max(max, value);
+					}
+				}
+				String bucketName = "Level " + level + " Bucket " + bucket;
+				assertEquals(bucketName, min, pyramid.getMin(level, bucket), 0d);
+				assertEquals(bucketName, max, pyramid.getMax(level, bucket), 0d);
+			}
+		}
+		assertTrue(Double.isNaN(pyramid.getMin(0, 3)));
+	}
+
+	@Test
+	public void openBucketIsNotRead() {
+
+		MinMaxPyramid pyramid = new MinMaxPyramid();
+		for (int i = 0; i < MinMaxPyramid.BUCKET - 1; i++) {
+			pyramid.add(i);
+		}
+		assertEquals(0, pyramid.getLevels());
+		try {
+			pyramid.getMin(0, 0);
+			fail("Read an open bucket");
+		} catch (IndexOutOfBoundsException e) {
+			// Expected
+		}
+		pyramid.add(-1d);
+		assertEquals(1, pyramid.getLevels());
+		assertEquals(-1d, pyramid.getMin(0, 0), 0d);
+		assertEquals(MinMaxPyramid.BUCKET - 2, pyramid.getMax(0, 0), 0d);
+	}
+
+	@Test
+	public void decimationKeepsPeaks() {
+
+		double[] steps = new double[VALUES];
+		double[] values = new double[VALUES];
+		MinMaxPyramid pyramid = new MinMaxPyramid();
+		for (int i = 0; i < VALUES; i++) {
+			steps[i] = i;
+			values[i] = i == 54321 ? 1000d : i == 7777 ? -1000d : Math.sin(i * 0.001);
+			pyramid.add(values[i]);
+		}
+		int points = 200;
+		double[][] decimated = Decimation.decimate(SeriesView.of(steps), SeriesView.of(values),
+				pyramid, 0, VALUES, points);
+		assertTrue(decimated[0].length <= points);
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (double value : decimated[1]) {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		assertEquals(-1000d, min, 0d);
+		assertEquals(1000d, max, 0d);
+	}
+
+	@Test
+	public void rangeMatchesValues() {
+
+		Random random = new Random(2);
+		double[] values = new double[VALUES];
+		MinMaxPyramid pyramid = new MinMaxPyramid();
+		for (int i = 0; i < VALUES; i++) {
+			values[i] = random.nextInt(10) == 0 ? Double.NaN : random.nextGaussian();
+			pyramid.add(values[i]);
+		}
+		for (int i = 0; i < 200; i++) {
+			int from = random.nextInt(VALUES);
+			int to = from + random.nextInt(VALUES - from + 1);
+			double min = Double.NaN;
+			double max = Double.NaN;
+			for (int row = from; row < to; row++) {
+				if (!Double.isNaN(values[row])) {
+					min = Double.isNaN(min) ? values[row] : Math.min(min, values[row]);
+					max = Double.isNaN(max) ? values[row] : Math.max(max, values[row]);
+				}
+			}
+			double[] range = Decimation.range(SeriesView.of(values), pyramid, from, to);
+			String rows = "Rows " + from + " to " + to;
+			assertEquals(rows, min, range[0], 0d);
+			assertEquals(rows, max, range[1], 0d);
+		}
+		// Without a pyramid the range is read from the values
+		double[] range = Decimation.range(SeriesView.of(values), null, 0, VALUES);
+		assertEquals(Decimation.range(SeriesView.of(values), pyramid, 0, VALUES)[1], range[1], 0d);
+	}
+}
@@ -0,0 +1,158 @@
+package no.javatime.core.model.tests.series;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import no.javatime.core.model.elements.RunResultProvider;
+import no.javatime.core.model.elements.TimeSeriesProvider;
+import no.javatime.core.model.series.RowCursor;
+import no.javatime.core.model.series.RunResultReader;
+import no.javatime.core.model.series.RunResultWriter;
+import no.javatime.core.model.series.SeriesSnapshot;
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * Runs written to a run result file and read back through the time series provider API, from a
+ * complete file and from a file where the run was interrupted before the footer was written.
+ */
+public class RunResultFileTest {
+
+	private final static int BLOCK_ROWS = 16;
+	private final static int ROWS = 100;
+
+	private final Extender<?> first = createExtender(Integer.class);
+	private final Extender<?> second = createExtender(Long.class);
+	/** Not recorded in the file */
+	private final Extender<?> third = createExtender(Short.class);
+
+	@Test
+	public void providerReadsWrittenRun() throws Exception {
+
+		Path file = Files.createTempFile("run", ".jtr");
+		try {
+			write(file);
+			try (RunResultReader reader = RunResultReader.open(file)) {
+				assertEquals("model", reader.getModelName());
+				assertEquals(0.5, reader.getDt(), 0d);
+				TimeSeriesProvider provider = new RunResultProvider(reader, Arrays.asList(third,
+						second, first));
+				assertEquals("model", provider.getModelName());
+				assertEquals(Arrays.asList(first, second), provider.getModelElements());
+				assertRows(provider, ROWS);
+				assertEquals(0, provider.getTimeSeries(third).length);
+				assertEquals(41, provider.getRowIndex(20.5));
+				assertEquals(-1, provider.getRowIndex(20.25));
+				try {
+					provider.addStep(ROWS);
+					fail("Added a step to a run read from a file");
+				} catch (UnsupportedOperationException e) {
+					// Expected
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void blocksAreRecoveredWithoutFooter() throws Exception {
+
+		Path file = Files.createTempFile("run", ".jtr");
+		try {
+			write(file);
+			int blocks = (ROWS + BLOCK_ROWS - 1) / BLOCK_ROWS;
+			long footer = 4 + 8 + 4 + blocks * 16 + 8;
+			// Remove the footer and the end of the last block, as when the run was interrupted
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(channel.size() - footer - 8);
+			}
+			try (RunResultReader reader = RunResultReader.open(file)) {
+				TimeSeriesProvider provider = new RunResultProvider(reader, Arrays.asList(first,
+						second));
+				assertRows(provider, ROWS / BLOCK_ROWS * BLOCK_ROWS);
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Write rows where the step of row <code>i</code> is <code>i / 2</code>, the first value is the
+	 * row and the second value the row times minus three
+	 */
+	private void write(Path file) {
+
+		RunResultWriter writer = new RunResultWriter(file, "model", "1.0.0", 0.5, new String[] {
+				Integer.class.getName(), Long.class.getName() }, new String[] { "STATE",
+				"TRANSITION" }, BLOCK_ROWS);
+		try {
+			for (int i = 0; i < ROWS; i++) {
+				writer.append(i * 0.5, new double[] { i, i * -3d });
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void assertRows(TimeSeriesProvider provider, int rows) {
+
+		assertEquals(rows, provider.getRowCount());
+		double[] steps = provider.getRawSteps();
+		double[] firstValues = provider.getTimeSeries(first);
+		assertEquals(rows, steps.length);
+		assertEquals(rows, firstValues.length);
+		for (int i = 0; i < rows; i++) {
+			assertEquals(i * 0.5, steps[i], 0d);
+			assertEquals(i, firstValues[i], 0d);
+			assertEquals(i * -3d, provider.getSeriesView(second).get(i), 0d);
+		}
+		RowCursor cursor = provider.getRows(0, rows);
+		int row = 0;
+		while (cursor.next()) {
+			assertEquals(row * 0.5, cursor.getStep(), 0d);
+			assertEquals(row, cursor.get(0), 0d);
+			assertEquals(row * -3d, cursor.get(1), 0d);
+			row++;
+		}
+		assertEquals(rows, row);
+		SeriesSnapshot snapshot = provider.getSnapshot();
+		List<Extender<?>> elements = snapshot.getElements();
+		assertEquals(rows, snapshot.getRowCount());
+		assertEquals(1, snapshot.getId(second));
+		assertEquals(2, elements.size());
+		double[][] points = snapshot.decimate(0, 0, rows, 10);
+		assertTrue(points[0].length <= 10);
+		assertEquals(rows - 1, points[1][points[1].length - 1], 0d);
+	}
+
+	/**
+	 * A model element providing the specified service class
+	 */
+	private static Extender<?> createExtender(final Class<?> serviceClass) {
+
+		return (Extender<?>) Proxy.newProxyInstance(RunResultFileTest.class.getClassLoader(),
+				new Class<?>[] { Extender.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getServiceClass":
+						return serviceClass;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+}
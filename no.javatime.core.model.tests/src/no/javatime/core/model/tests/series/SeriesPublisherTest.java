@@ -0,0 +1,188 @@
+package no.javatime.core.model.tests.series;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import no.javatime.core.model.series.Backpressure;
+import no.javatime.core.model.series.SeriesPublisher;
+import no.javatime.core.model.series.SeriesStore;
+import no.javatime.core.model.series.SeriesSubscriber;
+import no.javatime.core.model.series.SeriesSubscription;
+import no.javatime.core.model.series.StepBatch;
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * Rows published to throttled subscribers, keeping up with the simulation and stalled.
+ */
+public class SeriesPublisherTest {
+
+	private final static int BATCH_ROWS = 8;
+
+	@Test
+	public void throttledSubscriberReceivesAllRows() throws Exception {
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// Requests one batch at a time and falls behind the simulation
+			Subscriber subscriber = new Subscriber(1) {
+				@Override
+				public void onNext(StepBatch batch) {
+					super.onNext(batch);
+					if (batches.size() % 50 == 0) {
+						sleep(5);
+					}
+				}
+			};
+			SeriesPublisher publisher = new SeriesPublisher();
+			SeriesSubscription subscription = publisher.subscribe(subscriber, executor, BATCH_ROWS,
+					Backpressure.THROTTLE);
+			int steps = 5000;
+			publish(publisher, steps);
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			assertTrue(subscriber.completed);
+			assertEquals(0, subscription.getDroppedRows());
+			long row = 0;
+			for (StepBatch batch : subscriber.batches) {
+				assertEquals(row, batch.getFirstRow());
+				for (int i = 0; i < batch.size(); i++, row++) {
+					assertEquals(row + 1, batch.getStepsView().get(i), 0d);
+				}
+			}
+			assertEquals(steps, row);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void stalledSubscriberIsCoalesced() throws Exception {
+
+		// Never requests a batch while the run executes
+		Subscriber subscriber = new Subscriber(0);
+		SeriesPublisher publisher = new SeriesPublisher();
+		SeriesSubscription subscription = publisher.subscribe(subscriber, Runnable::run, BATCH_ROWS,
+				Backpressure.THROTTLE);
+		int steps = 1000;
+		long start = System.nanoTime();
+		publish(publisher, steps);
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		// Only the first full set of waiting batches delays the simulation
+		assertTrue("Simulation throttled for " + millis + " ms",
+				millis < 3 * SeriesPublisher.MAX_THROTTLE_MILLIS);
+		int waiting = BATCH_ROWS * SeriesPublisher.MAX_PENDING_BATCHES;
+		assertEquals(steps - waiting, subscription.getDroppedRows());
+		subscription.request(Long.MAX_VALUE);
+		assertTrue(subscriber.completed);
+		int rows = 0;
+		for (StepBatch batch : subscriber.batches) {
+			rows += batch.size();
+		}
+		assertEquals(waiting, rows);
+		// The newest rows are kept
+		StepBatch last = subscriber.batches.get(subscriber.batches.size() - 1);
+		assertEquals(steps, last.getStepsView().get(last.size() - 1), 0d);
+		assertEquals(steps - 1, last.getFirstRow() + last.size() - 1);
+	}
+
+	/**
+	 * Publish the specified number of steps, where the value of each step is the step times two,
+	 * and complete the run
+	 */
+	private static void publish(SeriesPublisher publisher, int steps) {
+
+		SeriesStore store = new SeriesStore();
+		int id = store.register(createExtender());
+		try {
+			for (int i = 1; i <= steps; i++) {
+				store.addStep(i);
+				store.add(id, i * 2);
+				store.publish();
+				publisher.publish(store);
+			}
+		} finally {
+			publisher.complete(null);
+			store.clear();
+		}
+	}
+
+	private static void sleep(long millis) {
+
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A model element providing the string service class
+	 */
+	private static Extender<?> createExtender() {
+
+		return (Extender<?>) Proxy.newProxyInstance(SeriesPublisherTest.class.getClassLoader(),
+				new Class<?>[] { Extender.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getServiceClass":
+						return String.class;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * Collects the received batches, requesting the specified number of batches at a time
+	 */
+	private static class Subscriber implements SeriesSubscriber {
+
+		final List<StepBatch> batches = new ArrayList<>();
+		volatile boolean completed;
+		private final long batchesPerRequest;
+		private SeriesSubscription subscription;
+
+		Subscriber(long batchesPerRequest) {
+			this.batchesPerRequest = batchesPerRequest;
+		}
+
+		@Override
+		public void onSubscribe(SeriesSubscription subscription) {
+
+			this.subscription = subscription;
+			if (batchesPerRequest > 0) {
+				subscription.request(batchesPerRequest);
+			}
+		}
+
+		@Override
+		public void onNext(StepBatch batch) {
+
+			batches.add(batch);
+			if (batchesPerRequest > 0) {
+				subscription.request(batchesPerRequest);
+			}
+		}
+
+		@Override
+		public void onError(Throwable failure) {
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+}
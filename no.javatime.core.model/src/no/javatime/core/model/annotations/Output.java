@@ -10,6 +10,10 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
+ * Record the values of the annotated model element in each simulation run. If no model element
+ * in a model is annotated with <code>@Output</code> or <code>@TimeSeries</code>, all model elements
+ * are recorded
+ * 
  * @author Eirik
  *
  */
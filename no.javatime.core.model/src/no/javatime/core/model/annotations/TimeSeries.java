@@ -10,6 +10,9 @@ import java.lang.annotation.Inherited;
 import java.lang.annotation.RetentionPolicy;
 
 /**
+ * Record the values returned by the annotated value method in each simulation run
+ * 
+ * @see Output
  * @author Eirik
  *
  */
@@ -31,7 +31,7 @@ public abstract class Element implements IElement {
 
 	@Override
 	public double getStep() {
-		return time.getStep();
+		return time.tick();
 	}
 
 	@Override
@@ -39,4 +39,9 @@ public abstract class Element implements IElement {
 		return time.getDt();
 	}
 
+	@Override
+	public double dt() {
+		return time.dt();
+	}
+
 }
@@ -3,6 +3,8 @@
  */
 package no.javatime.core.model.elements;
 
+import java.lang.reflect.Method;
+
 import com.google.inject.Inject;
 
 import no.javatime.core.model.annotations.GetSeriesValue;
@@ -48,10 +50,39 @@ public abstract class Endogenous extends Element implements IEndogenous {
 	 * <p>
 	 * The relationship and ordering of all model element types are specified by the model element
 	 * annotation.
+	 * <p>
+	 * The value is stored as a primitive. The boxed {@link #getValue()} and
+	 * {@link #setValue(Double)} and the primitive {@link #value()} and {@link #value(double)} access
+	 * the same value. When <code>setValue(Double)</code> is not overridden the simulator sets the
+	 * value through <code>value(double)</code> without boxing. When <code>getValue()</code> or
+	 * <code>setValue(Double)</code> is overridden the primitive variant delegates to the overriding
+	 * method.
+	 * <p>
+	 * Before a value is set, and after it is set to null, the boxed <code>getValue()</code> returns
+	 * null and the primitive <code>value()</code> returns <code>NaN</code>.
 	 * 
 	 * @see ModelElement
 	 */
-	private Double value;
+	private double value = Double.NaN;
+
+	/** Whether a value is set. When false {@link #getValue()} returns null */
+	private boolean valueSet;
+
+	/** Model element classes overriding {@link #getValue()} */
+	private final static ClassValue<Boolean> getValueOverridden = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return isOverridden(type, Endogenous.class, "getValue");
+		}
+	};
+
+	/** Model element classes overriding {@link #setValue(Double)} */
+	private final static ClassValue<Boolean> setValueOverridden = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return isOverridden(type, Endogenous.class, "setValue", Double.class);
+		}
+	};
 
 	@Override
 	@StartValue
@@ -62,40 +93,97 @@ public abstract class Endogenous extends Element implements IEndogenous {
 	/**
 	 * Get the calculated value of a class element at the current step
 	 * 
-	 * @return the calculated value of a class element at the current step
+	 * @return the calculated value of a class element at the current step or null if no value is set
 	 * @see #calculate()
 	 */
 	@Override
 	@GetSeriesValue
 	public Double getValue() {
-		return value;
+		return valueSet ? value : null;
 	}
 
 	/**
 	 * Sets the calculated value of a model element at the current step.
 	 * <p>
+	 * A null value clears the value. It is returned as null by {@link #getValue()} and as
+	 * <code>NaN</code>, the value of a value method returning null in the simulator, by
+	 * {@link #value()}
 	 * 
-	 * @param value is the calculated value of a model element at the current step
+	 * @param value is the calculated value of a model element at the current step or null
 	 * @see #calculate()
 	 */
 	@Override
 	@SetSeriesValue
 	public void setValue(Double value) {
-		this.value = value;
+		this.value = null != value ? value : Double.NaN;
+		valueSet = null != value;
+	}
+
+	/**
+	 * The value at the current step or <code>NaN</code> if no value is set. Delegates to
+	 * {@link #getValue()} when it is overridden. An overriding <code>getValue()</code> reads the
+	 * stored value with <code>super.getValue()</code>
+	 */
+	@Override
+	public double value() {
+
+		if (getValueOverridden.get(getClass())) {
+			Double value = getValue();
+			return null != value ? value : Double.NaN;
+		}
+		return value;
+	}
+
+	/**
+	 * Set the value at the current step. Delegates to {@link #setValue(Double)} when it is
+	 * overridden
+	 */
+	@Override
+	public void value(double value) {
+
+		if (setValueOverridden.get(getClass())) {
+			setValue(value);
+		} else {
+			this.value = value;
+			valueSet = true;
+		}
+	}
+
+	/**
+	 * Whether the specified public method declared in the specified class is overridden by the
+	 * specified model element class
+	 * 
+	 * @param type a model element class
+	 * @param declaringClass the library class declaring the method
+	 * @param name name of the method
+	 * @param parameterTypes parameter types of the method
+	 * @return true if the method is overridden by the model element class or one of its super
+	 * classes below the declaring class
+	 */
+	static boolean isOverridden(Class<?> type, Class<?> declaringClass, String name,
+			Class<?>... parameterTypes) {
+
+		try {
+			Method method = type.getMethod(name, parameterTypes);
+			return method.getDeclaringClass() != declaringClass;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
 	}
 
 	@Override
 	@Inject
 	public Numeral getAsNumeral() {
 		Numeral numeral = Extenders.getService(Numeral.class);
-		numeral.set(new Double(value));
+		numeral.set(value);
 		return numeral;
 	}
 
 	@Override
 	@Inject
 	public void setAsNumeral(Numeral value) {
-		this.value = new Double(value.get());
+		this.value = value.get();
+		valueSet = true;
 	}
 
 }
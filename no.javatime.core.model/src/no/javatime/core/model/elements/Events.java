@@ -58,4 +58,72 @@ public interface Events {
 
 	Boolean isStop();
 
+	/**
+	 * Primitive variant of {@link #getDt()}
+	 * 
+	 * @return the dt
+	 */
+	default double dt() {
+		return getDt();
+	}
+
+	/**
+	 * Primitive variant of {@link #getStep()}. The tick is the number of steps since the last reset
+	 * 
+	 * @return the current step
+	 */
+	default long tick() {
+		return getStep().longValue();
+	}
+
+	/**
+	 * The simulated time at the current step. By default derived from the tick and the delta time.
+	 * Implementations accumulating the delta time of each step allow the delta time to change
+	 * between steps
+	 * 
+	 * @return simulated time at the current step
+	 */
+	default double time() {
+		return tick() * dt();
+	}
+
+	/**
+	 * Set the simulated time without changing the step, e.g. to the time of an intermediate state
+	 * between two steps evaluated by an integration method. The time is restored by setting it
+	 * again before the clock is advanced. By default the time is derived from the tick and the delta
+	 * time and can not be set
+	 * 
+	 * @param time the simulated time
+	 * @return true if the simulated time was set, false if the time can not be set
+	 */
+	default boolean setTime(double time) {
+		return false;
+	}
+
+	/**
+	 * Primitive variant of {@link #step()}
+	 * 
+	 * @return the next simulation step
+	 */
+	default long advance() {
+		return step().longValue();
+	}
+
+	/**
+	 * Primitive variant of {@link #getMax()}
+	 * 
+	 * @return upper bound of simulation steps
+	 */
+	default double max() {
+		return getMax();
+	}
+
+	/**
+	 * Primitive variant of {@link #isStop()}
+	 * 
+	 * @return true if the simulation is stopped or the upper bound of simulation steps is reached
+	 */
+	default boolean stopped() {
+		return isStop();
+	}
 }
\ No newline at end of file
@@ -7,4 +7,13 @@ public interface IElement {
 	Double getDt();
 	double getStep();
 
+	/**
+	 * Primitive variant of {@link #getDt()}
+	 * 
+	 * @return the delta time
+	 */
+	default double dt() {
+		return getDt();
+	}
+
 }
@@ -11,4 +11,23 @@ public interface IEndogenous extends IElement {
 	void setValue(Double value);
 	Numeral getAsNumeral();
 	void setAsNumeral(Numeral value);
+
+	/**
+	 * Primitive variant of {@link #getValue()}
+	 * 
+	 * @return the value at the current step or <code>NaN</code> if no value has been set
+	 */
+	default double value() {
+		Double value = getValue();
+		return null != value ? value : Double.NaN;
+	}
+
+	/**
+	 * Primitive variant of {@link #setValue(Double)}
+	 * 
+	 * @param value the value at the current step
+	 */
+	default void value(double value) {
+		setValue(value);
+	}
 }
@@ -20,5 +20,46 @@ public interface IState extends IEndogenous {
 	public Double netFlow();
 
 	public Double calculate();
+
+	/**
+	 * Primitive variant of {@link #inFlow()}
+	 * 
+	 * @return sum of the values of all in flows at the current step or zero if there is no in flow
+	 */
+	default double inFlowRate() {
+		Double flow = inFlow();
+		return null != flow ? flow : 0d;
+	}
+
+	/**
+	 * Primitive variant of {@link #outFlow()}
+	 * 
+	 * @return sum of the values of all out flows at the current step or zero if there is no out flow
+	 */
+	default double outFlowRate() {
+		Double flow = outFlow();
+		return null != flow ? flow : 0d;
+	}
+
+	/**
+	 * Primitive variant of {@link #netFlow()}
+	 * 
+	 * @return in flows minus out flows at the current step or zero if there is no net flow
+	 */
+	default double netFlowRate() {
+		Double flow = netFlow();
+		return null != flow ? flow : 0d;
+	}
+
+	/**
+	 * Primitive variant of {@link #calculate()}
+	 * 
+	 * @return the value at the current step integrated with the net flow over the delta time, or the
+	 * value at the current step if no value is calculated
+	 */
+	default double integrate() {
+		Double value = calculate();
+		return null != value ? value : value();
+	}
 	
 }
@@ -0,0 +1,264 @@
+package no.javatime.core.model.elements;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Bundle;
+
+import no.javatime.core.model.series.RowCursor;
+import no.javatime.core.model.series.RunResultReader;
+import no.javatime.core.model.series.SeriesSnapshot;
+import no.javatime.core.model.series.SeriesView;
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * Serves the read API of a time series provider from a run result file, so a run reloaded from
+ * a file may be shown and compared with other runs in the same way as a simulated run.
+ * <p>
+ * The recorded model elements of the file are identified by the model elements of the model the
+ * file was written from, matched by the name of their service class. Model elements of the file
+ * not in the model are not provided. The values are read lazily from the mapped blocks of the
+ * {@link RunResultReader reader} without copying them, and the provider is read until the reader
+ * is closed.
+ * <p>
+ * The provider is read only. Adding steps or values and initializing the time series throws an
+ * <code>UnsupportedOperationException</code>.
+ */
+public class RunResultProvider implements TimeSeriesProvider {
+
+	private final RunResultReader reader;
+	private final List<Extender<?>> modelElements;
+	private final SeriesView[] columns;
+	private Bundle modelBundle;
+
+	/**
+	 * Create a provider of the run read by the specified reader
+	 *
+	 * @param reader an open reader of a run result file
+	 * @param modelElements model elements of the model the file was written from
+	 */
+	public RunResultProvider(RunResultReader reader,
+			Collection<? extends Extender<?>> modelElements) {
+
+		this.reader = reader;
+		Map<String, Extender<?>> elementsByName = new LinkedHashMap<>();
+		for (Extender<?> extender : modelElements) {
+			elementsByName.put(extender.getServiceClass().getName(), extender);
+		}
+		List<Extender<?>> elements = new ArrayList<>();
+		List<SeriesView> views = new ArrayList<>();
+		List<String> names = reader.getElementNames();
+		for (int id = 0; id < names.size(); id++) {
+			Extender<?> extender = elementsByName.get(names.get(id));
+			if (null != extender) {
+				elements.add(extender);
+				views.add(reader.getSeriesView(id));
+			}
+		}
+		this.modelElements = Collections.unmodifiableList(elements);
+		this.columns = views.toArray(new SeriesView[views.size()]);
+	}
+
+	/**
+	 * The reader of the run result file
+	 *
+	 * @return the reader of this provider
+	 */
+	public RunResultReader getReader() {
+		return reader;
+	}
+
+	@Override
+	public String getModelName() {
+		return reader.getModelName();
+	}
+
+	@Override
+	public Bundle getModelBundle() {
+		return modelBundle;
+	}
+
+	@Override
+	public void setModelBundle(Bundle modelBundle) {
+		this.modelBundle = modelBundle;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always, as the run is read from a file
+	 */
+	@Override
+	public Boolean initializeTimeSeries() {
+		throw new UnsupportedOperationException("A run read from a file is not simulated");
+	}
+
+	@Override
+	@Deprecated
+	public Map<Extender<?>, ArrayList<Double>> getTimeSeries() {
+
+		Map<Extender<?>, ArrayList<Double>> timeSeries = new LinkedHashMap<>();
+		for (int id = 0; id < columns.length; id++) {
+			ArrayList<Double> values = new ArrayList<>(columns[id].size());
+			for (int i = 0; i < columns[id].size(); i++) {
+				values.add(columns[id].get(i));
+			}
+			timeSeries.put(modelElements.get(id), values);
+		}
+		return timeSeries;
+	}
+
+	@Override
+	public Collection<Extender<?>> getModelElements() {
+		return modelElements;
+	}
+
+	@Override
+	public double[] getTimeSeries(Extender<?> extender) {
+
+		int id = modelElements.indexOf(extender);
+		return id >= 0 ? columns[id].toArray() : new double[0];
+	}
+
+	@Override
+	@Deprecated
+	public Collection<Double> getTimeseries(Long step) {
+
+		double[] values = getRow(step.intValue(), null);
+		List<Double> timeSeriesStep = new ArrayList<>(values.length);
+		for (double value : values) {
+			timeSeriesStep.add(value);
+		}
+		return timeSeriesStep;
+	}
+
+	/**
+	 * The steps are boxed when read and not copied
+	 */
+	@Override
+	public Collection<Double> getSteps() {
+
+		final SeriesView steps = reader.getStepsView();
+		return new AbstractList<Double>() {
+
+			@Override
+			public Double get(int index) {
+				return steps.get(index);
+			}
+
+			@Override
+			public int size() {
+				return steps.size();
+			}
+		};
+	}
+
+	@Override
+	public double[] getRawSteps() {
+		return reader.getStepsView().toArray();
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always, as the run is read from a file
+	 */
+	@Override
+	public void addStep(Double step) {
+		throw new UnsupportedOperationException("A run read from a file is not recorded");
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always, as the run is read from a file
+	 */
+	@Override
+	public void addTimeSeriesValue(Extender<?> extender, Double value) {
+		throw new UnsupportedOperationException("A run read from a file is not recorded");
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always, as the run is read from a file
+	 */
+	@Override
+	public void addStep(long step) {
+		throw new UnsupportedOperationException("A run read from a file is not recorded");
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always, as the run is read from a file
+	 */
+	@Override
+	public void addTimeSeriesValue(Extender<?> extender, double value) {
+		throw new UnsupportedOperationException("A run read from a file is not recorded");
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always, as the run is read from a file
+	 */
+	@Override
+	public int registerTimeSeries(Extender<?> extender) {
+		throw new UnsupportedOperationException("A run read from a file is not recorded");
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always, as the run is read from a file
+	 */
+	@Override
+	public void addTimeSeriesValue(int id, double value) {
+		throw new UnsupportedOperationException("A run read from a file is not recorded");
+	}
+
+	/**
+	 * The snapshot is read from the mapped blocks without copying the values
+	 */
+	@Override
+	public SeriesSnapshot getSnapshot() {
+		return new SeriesSnapshot(reader.getStepsView(), modelElements, columns.clone());
+	}
+
+	@Override
+	public SeriesView getSeriesView(Extender<?> extender) {
+
+		int id = modelElements.indexOf(extender);
+		return id >= 0 ? columns[id] : SeriesView.of(new double[0]);
+	}
+
+	@Override
+	public SeriesView getStepsView() {
+		return reader.getStepsView();
+	}
+
+	@Override
+	public int getRowCount() {
+		return reader.getRowCount();
+	}
+
+	/**
+	 * The steps of a run increase, and the step is searched for in logarithmic time
+	 */
+	@Override
+	public int getRowIndex(double step) {
+
+		SeriesView steps = reader.getStepsView();
+		int low = 0;
+		int high = steps.size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			double value = steps.get(middle);
+			if (value < step) {
+				low = middle + 1;
+			} else if (value > step) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public RowCursor getRows(int from, int to) {
+		return new RowCursor(reader.getStepsView(), columns.clone(), from, to);
+	}
+}
@@ -4,6 +4,7 @@
 package no.javatime.core.model.elements;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 
 import no.javatime.core.model.annotations.Action;
@@ -18,6 +19,38 @@ import no.javatime.core.model.annotations.ModelElement.Type;
 @ModelElement (type = Type.STATE)
 public abstract class State extends Endogenous implements IState {
 
+	/** Model element classes overriding {@link #inFlow()} */
+	private final static ClassValue<Boolean> inFlowOverridden = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return isOverridden(type, State.class, "inFlow");
+		}
+	};
+
+	/** Model element classes overriding {@link #outFlow()} */
+	private final static ClassValue<Boolean> outFlowOverridden = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return isOverridden(type, State.class, "outFlow");
+		}
+	};
+
+	/** Model element classes overriding {@link #netFlow()} */
+	private final static ClassValue<Boolean> netFlowOverridden = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return isOverridden(type, State.class, "netFlow");
+		}
+	};
+
+	/** Model element classes overriding {@link #calculate()} */
+	private final static ClassValue<Boolean> calculateOverridden = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return isOverridden(type, State.class, "calculate");
+		}
+	};
+
 	private Collection<Transition> inFlow;
 	private Collection<Transition> outFlow;
 
@@ -39,40 +72,113 @@ public abstract class State extends Endogenous implements IState {
 		}
 	}
 
+	/**
+	 * The transitions added as in flows of this state
+	 * 
+	 * @return an unmodifiable view of the in flows
+	 */
+	public Collection<Transition> getInFlows() {
+		return null != inFlow ? Collections.unmodifiableCollection(inFlow) : Collections
+				.<Transition> emptySet();
+	}
+
+	/**
+	 * The transitions added as out flows of this state
+	 * 
+	 * @return an unmodifiable view of the out flows
+	 */
+	public Collection<Transition> getOutFlows() {
+		return null != outFlow ? Collections.unmodifiableCollection(outFlow) : Collections
+				.<Transition> emptySet();
+	}
+
 	@Override
 	public Double inFlow() {
-
-		if (null != inFlow) {
-			Double value = new Double(0d);
-			for (Transition t : inFlow) {
-				value = + t.getValue();
-			}
-			return value;
-		}
-		return 0d;
+		return sum(inFlow);
 	}
 
 	@Override
 	public Double outFlow() {
-
-		if (null != outFlow) {
-			Double value = new Double(0d);
-			for (Transition t : outFlow) {
-				value = +t.getValue();
-			}
-			return value;
-		}
-		return 0d;
+		return sum(outFlow);
 	}
 
 	@Override
 	public Double netFlow() {
-		return inFlow() - outFlow();
+		return inFlowRate() - outFlowRate();
 	}
 
 	@Override
 	@Action
 	public Double calculate() {		
-		return getValue() + (netFlow()*time.getDt());
+		return value() + (netFlowRate() * time.dt());
+	}
+
+	/**
+	 * Primitive variant of {@link #inFlow()}. Delegates to <code>inFlow()</code> when it is
+	 * overridden
+	 */
+	@Override
+	public double inFlowRate() {
+
+		if (inFlowOverridden.get(getClass())) {
+			return unbox(inFlow());
+		}
+		return sum(inFlow);
+	}
+
+	/**
+	 * Primitive variant of {@link #outFlow()}. Delegates to <code>outFlow()</code> when it is
+	 * overridden
+	 */
+	@Override
+	public double outFlowRate() {
+
+		if (outFlowOverridden.get(getClass())) {
+			return unbox(outFlow());
+		}
+		return sum(outFlow);
+	}
+
+	/**
+	 * Primitive variant of {@link #netFlow()}. Delegates to <code>netFlow()</code> when it is
+	 * overridden
+	 */
+	@Override
+	public double netFlowRate() {
+
+		if (netFlowOverridden.get(getClass())) {
+			return unbox(netFlow());
+		}
+		return inFlowRate() - outFlowRate();
+	}
+
+	/**
+	 * Primitive variant of {@link #calculate()}. When <code>calculate()</code> is not overridden the
+	 * simulator calls this method without boxing the result, and when it is overridden this method
+	 * delegates to it
+	 */
+	@Override
+	public double integrate() {
+
+		if (calculateOverridden.get(getClass())) {
+			Double value = calculate();
+			return null != value ? value : value();
+		}
+		return value() + (netFlowRate() * time.dt());
+	}
+
+	private static double unbox(Double flow) {
+		return null != flow ? flow : 0d;
+	}
+
+	private static double sum(Collection<Transition> flows) {
+
+		double value = 0d;
+		if (null != flows) {
+			for (Transition t : flows) {
+				value += t.value();
+			}
+		}
+		return value;
 	}
 }
@@ -8,14 +8,20 @@ import no.javatime.core.model.annotations.ModelElement.Type;
 
 /**
  * This represents a unit neutral time variable. 
+ * <p>
+ * The step is kept as a <code>long</code> tick counter. The simulated time is accumulated from the
+ * delta time of each step, so the delta time may be changed between steps by an integrator
+ * choosing the step size. With a constant delta time the simulated time is the tick times the
+ * delta time. The boxed accessors are adapters for the primitive accessors.
  */
 @ModelElement (type = Type.SYSTEM)
 public class Time implements Events {
 
-	private Double step;
-	private Double nextStep;
-	private Double max;
-	private Double dt = Euler;
+	private long step;
+	private long nextStep;
+	private double time;
+	private double max;
+	private double dt = Euler;
 	private boolean isStop;
 
 	@Override
@@ -24,6 +30,11 @@ public class Time implements Events {
 		return dt;
 	}
 	
+	@Override
+	public double dt() {
+		return dt;
+	}
+
 	@Override
 	public void setDt(Double dt) {
 		this.dt = dt;
@@ -31,14 +42,34 @@ public class Time implements Events {
 
 	@Override
 	public Double getStep() {
+		return (double) step;
+	}
+
+	@Override
+	public long tick() {
 		return step;
 	}
 
+	@Override
+	public double time() {
+		return time;
+	}
+
+	@Override
+	public boolean setTime(double time) {
+
+		this.time = time;
+		return true;
+	}
+
+	/**
+	 * Steps are whole numbers and the fractional part of the specified next step is ignored
+	 */
 	@Override
 	public Boolean setStep(Double nextStep) {
 
 		if (nextStep > step + 1 && nextStep <= max) {
-			this.nextStep = nextStep;
+			this.nextStep = nextStep.longValue();
 			return true;
 		}
 		return false;
@@ -46,10 +77,17 @@ public class Time implements Events {
 
 	@Override
 	public Double step() {
-		
+		return (double) advance();
+	}
+
+	@Override
+	public long advance() {
+
 		if (nextStep >= step + 1 && nextStep <= max) {
+			time += (nextStep - step) * dt;
 			step = nextStep;
 		} else {
+			time += dt;
 			step = step + 1L;
 			nextStep = step;
 		}
@@ -61,7 +99,9 @@ public class Time implements Events {
 		
 		isStop = false;
 		max = 0d;
-		return step = nextStep = 0d;
+		time = 0d;
+		step = nextStep = 0L;
+		return 0d;
 	}
 
 	@Override
@@ -79,6 +119,11 @@ public class Time implements Events {
 		return max;
 	}
 	
+	@Override
+	public double max() {
+		return max;
+	}
+
 	@Override
 	public Boolean setStop(Boolean stop) {
 
@@ -89,7 +134,11 @@ public class Time implements Events {
 
 	@Override
 	public Boolean isStop() {
+		return stopped();
+	}
 
-		return isStop || getStep() >= getMax() ? true : false;
+	@Override
+	public boolean stopped() {
+		return isStop || step >= max;
 	}
 }
@@ -2,10 +2,17 @@ package no.javatime.core.model.elements;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.osgi.framework.Bundle;
 
+import no.javatime.core.model.series.ColumnFactory;
+import no.javatime.core.model.series.RowCursor;
+import no.javatime.core.model.series.SeriesPublisher;
+import no.javatime.core.model.series.SeriesSnapshot;
+import no.javatime.core.model.series.SeriesStatistics;
+import no.javatime.core.model.series.SeriesView;
 import no.javatime.inplace.extender.intface.Extender;
 
 public interface TimeSeriesProvider {
@@ -22,12 +29,27 @@ public interface TimeSeriesProvider {
 
 	Boolean initializeTimeSeries();
 
+	/**
+	 * All time series as boxed lists. The lists are copies of the recorded values
+	 * 
+	 * @return a copy of the time series of each recorded model element
+	 * @deprecated Use {@link #getSeriesView(Extender)} to read the values without copying
+	 */
+	@Deprecated
 	Map<Extender<?>, ArrayList<Double>> getTimeSeries();
 
 	Collection<Extender<?>> getModelElements();
 
 	double[] getTimeSeries(Extender<?> extender);
 
+	/**
+	 * The values of all recorded model elements at the specified row, boxed
+	 * 
+	 * @param step position of the row
+	 * @return the values of the model elements in the order of {@link #getModelElements()}
+	 * @deprecated Use {@link #getRow(int, double[])} to read a row without boxing
+	 */
+	@Deprecated
 	Collection<Double> getTimeseries(Long step);
 
 	Collection<Double> getSteps();
@@ -38,4 +60,231 @@ public interface TimeSeriesProvider {
 
 	void addTimeSeriesValue(Extender<?> extender, Double value);
 
+	/**
+	 * Primitive variant of {@link #addStep(Double)}
+	 * 
+	 * @param step the step to add
+	 */
+	default void addStep(long step) {
+		addStep((double) step);
+	}
+
+	/**
+	 * Primitive variant of {@link #addTimeSeriesValue(Extender, Double)}
+	 * 
+	 * @param extender the model element of the value
+	 * @param value the value of the model element at the current step
+	 */
+	default void addTimeSeriesValue(Extender<?> extender, double value) {
+		addTimeSeriesValue(extender, Double.valueOf(value));
+	}
+
+	/**
+	 * Assign an id to the time series of the specified model element. Values may then be added by
+	 * id with {@link #addTimeSeriesValue(int, double)} without looking up the model element
+	 * <p>
+	 * The default id is the position of the model element in {@link #getModelElements()}, and model
+	 * elements without recorded values have no id
+	 * 
+	 * @param extender the model element to record values for
+	 * @return the id of the time series or -1 if values of the model element are added by
+	 * {@link #addTimeSeriesValue(Extender, double)}
+	 */
+	default int registerTimeSeries(Extender<?> extender) {
+
+		int id = 0;
+		for (Extender<?> modelElement : getModelElements()) {
+			if (modelElement == extender) {
+				return id;
+			}
+			id++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Add a value to the time series with the specified id
+	 * <p>
+	 * The default implementation looks up the model element with the specified id in
+	 * {@link #getModelElements()} and adds the value by {@link #addTimeSeriesValue(Extender, double)}
+	 * 
+	 * @param id the id returned by {@link #registerTimeSeries(Extender)}
+	 * @param value the value of the model element at the current step
+	 * @throws IndexOutOfBoundsException if no time series has the specified id
+	 */
+	default void addTimeSeriesValue(int id, double value) {
+
+		int position = 0;
+		for (Extender<?> modelElement : getModelElements()) {
+			if (position++ == id) {
+				addTimeSeriesValue(modelElement, value);
+				return;
+			}
+		}
+		throw new IndexOutOfBoundsException("No time series with id " + id);
+	}
+
+	/**
+	 * Set the factory creating the columns of the time series recorded after the time series are
+	 * initialized. Applied to each run before the initial step
+	 * <p>
+	 * The default implementation does not support column factories
+	 *
+	 * @param columnFactory the factory deciding where the recorded values are kept
+	 * @return true if the columns of the next run are created by the factory, false if the provider
+	 * keeps the values in its own storage
+	 */
+	default boolean setColumnFactory(ColumnFactory columnFactory) {
+		return false;
+	}
+
+	/**
+	 * Release the storage of the recorded time series, e.g. deleting the files of memory mapped
+	 * columns. Called when the provider is discarded, and the time series are not read after they
+	 * have been released
+	 * <p>
+	 * The default implementation does nothing
+	 */
+	default void release() {
+	}
+
+	/**
+	 * Publish the current step to {@link #getSnapshot() snapshots}. Called when all values of the
+	 * step have been added
+	 */
+	default void publish() {
+	}
+
+	/**
+	 * Whether the published steps are pushed to subscribers while the model executes
+	 *
+	 * @return true if this provider has a {@link #getPublisher() publisher}
+	 */
+	default boolean supportsPublishing() {
+		return null != getPublisher();
+	}
+
+	/**
+	 * The publisher pushing the published steps to subscribers while the model executes
+	 *
+	 * @return the publisher of this provider or null if steps are not pushed to subscribers
+	 */
+	default SeriesPublisher getPublisher() {
+		return null;
+	}
+
+	/**
+	 * Terminate the subscriptions of the run. Called when the run has terminated
+	 *
+	 * @param failure the cause of a failed run or null if the run completed
+	 */
+	default void complete(Throwable failure) {
+	}
+
+	/**
+	 * Take a consistent snapshot of the recorded steps and values, where all time series have the
+	 * same number of rows. The snapshot may be read by any thread while the simulation continues
+	 * 
+	 * @return a snapshot of the published steps
+	 */
+	default SeriesSnapshot getSnapshot() {
+
+		List<Extender<?>> elements = new ArrayList<>(getModelElements());
+		SeriesView[] columns = new SeriesView[elements.size()];
+		for (int id = 0; id < columns.length; id++) {
+			columns[id] = getSeriesView(elements.get(id));
+		}
+		return new SeriesSnapshot(getStepsView(), elements, columns);
+	}
+
+	/**
+	 * Read the time series of the specified model element without copying the values
+	 * 
+	 * @param extender the model element
+	 * @return a view of the recorded values of the model element
+	 */
+	default SeriesView getSeriesView(Extender<?> extender) {
+		return SeriesView.of(getTimeSeries(extender));
+	}
+
+	/**
+	 * Aggregates of all values recorded for the specified model element in the current run. When
+	 * only the last steps of a run are kept, the aggregates also include the values no longer kept
+	 * 
+	 * @param extender the model element
+	 * @return the aggregates of the values of the model element
+	 */
+	default SeriesStatistics getStatistics(Extender<?> extender) {
+		return SeriesStatistics.of(getSeriesView(extender));
+	}
+
+	/**
+	 * Read the recorded steps without copying them
+	 * 
+	 * @return a view of the recorded steps
+	 */
+	default SeriesView getStepsView() {
+		return SeriesView.of(getRawSteps());
+	}
+
+	/**
+	 * Number of recorded steps
+	 * 
+	 * @return the number of rows
+	 */
+	default int getRowCount() {
+		return getStepsView().size();
+	}
+
+	/**
+	 * Get the position of the specified step on the time axis
+	 * 
+	 * @param step a recorded step
+	 * @return the row of the step or -1 if the step is not recorded
+	 */
+	default int getRowIndex(double step) {
+
+		SeriesView steps = getStepsView();
+		for (int row = 0; row < steps.size(); row++) {
+			if (steps.get(row) == step) {
+				return row;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Copy the values of all recorded model elements at the specified row to an array. The cost is
+	 * proportional to the number of model elements
+	 * 
+	 * @param row position of the row on the time axis
+	 * @param values array receiving the values in the order of {@link #getModelElements()}, or null
+	 * @return the specified array or a new array if the specified array is null or too short
+	 */
+	default double[] getRow(int row, double[] values) {
+
+		RowCursor rows = getRows(row, row + 1);
+		rows.next();
+		return rows.copyTo(values);
+	}
+
+	/**
+	 * Iterate the rows in the specified range of the time axis. A row holds the values of all
+	 * recorded model elements in the order of {@link #getModelElements()}
+	 * 
+	 * @param from position of the first row
+	 * @param to position after the last row
+	 * @return a cursor positioned before the first row
+	 */
+	default RowCursor getRows(int from, int to) {
+
+		Collection<Extender<?>> modelElements = getModelElements();
+		SeriesView[] columns = new SeriesView[modelElements.size()];
+		int id = 0;
+		for (Extender<?> extender : modelElements) {
+			columns[id++] = getSeriesView(extender);
+		}
+		return new RowCursor(getStepsView(), columns, from, to);
+	}
+
 }
\ No newline at end of file
@@ -1,27 +1,49 @@
 package no.javatime.core.model.elements;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Stream;
 
 import org.osgi.framework.Bundle;
 
 import no.javatime.core.model.annotations.Start;
+import no.javatime.core.model.series.Column;
+import no.javatime.core.model.series.ColumnFactory;
+import no.javatime.core.model.series.RowCursor;
+import no.javatime.core.model.series.SeriesPublisher;
+import no.javatime.core.model.series.SeriesSnapshot;
+import no.javatime.core.model.series.SeriesStatistics;
+import no.javatime.core.model.series.SeriesStore;
+import no.javatime.core.model.series.SeriesView;
 import no.javatime.inplace.extender.intface.Extender;
 
+/**
+ * Records the values of model elements and the steps in a columnar {@link SeriesStore store} of
+ * primitive values. The steps are kept in an implicit time axis as long as they are uniform.
+ * <p>
+ * The values are kept on the heap unless another {@link #setColumnFactory(ColumnFactory) column
+ * factory} is set, e.g. a {@link no.javatime.core.model.series.MappedColumnFactory memory mapped}
+ * column factory. With a {@link no.javatime.core.model.series.RingColumnFactory ring} column
+ * factory only the last steps of a run are kept, and the memory of the run is constant. The
+ * simulator sets the column factory of each run from the storage mode of the run.
+ * <p>
+ * The values are added by the simulation and may be read by other threads while the simulation
+ * runs. Readers needing time series of equal length take a {@link #getSnapshot() snapshot}, and
+ * readers following the run subscribe to the {@link #getPublisher() publisher} of the provider.
+ */
 public class TimeSeriesProviderImpl extends System implements TimeSeriesProvider {
 
 	private Bundle modelBundle;
-	
-	private Map<Extender<?>, ArrayList<Double>> timeSeries = new ConcurrentHashMap<>();
 
-	private Collection<Double> steps = new ArrayList<>();
+	private final SeriesStore store = new SeriesStore();
+	private final SeriesPublisher publisher = new SeriesPublisher();
 
 	@Override
 	public String getModelName() {
-		
+
 		return null != modelBundle ? modelBundle.getSymbolicName() : "No model bundle name";
 	}
 
@@ -29,74 +51,200 @@ public class TimeSeriesProviderImpl extends System implements TimeSeriesProvider
 	@Start
 	public Boolean initializeTimeSeries() {
 		if (getStep() == 0d) {
-			timeSeries = new ConcurrentHashMap<>();
-			steps = new ArrayList<>();
+			store.clear();
 		}
 		return true;
 	}
 
+	/**
+	 * The store holding the recorded time series
+	 *
+	 * @return the store of this provider
+	 */
+	public SeriesStore getSeriesStore() {
+		return store;
+	}
+
+	/**
+	 * The time series of the previous run are cleared, and the factory is set on the
+	 * {@link #getSeriesStore() store}, creating the columns of the model elements recorded next
+	 */
+	@Override
+	public boolean setColumnFactory(ColumnFactory columnFactory) {
+
+		store.clear();
+		store.setColumnFactory(columnFactory);
+		return true;
+	}
+
+	@Override
+	public void release() {
+		store.release();
+	}
+
 	@Override
 	public void addStep(Double step) {
-		this.steps.add(step);
+		store.addStep(step);
+	}
+
+	@Override
+	public void addStep(long step) {
+		store.addStep(step);
 	}
 
+	/**
+	 * The steps are boxed when read and not copied
+	 */
 	@Override
 	public Collection<Double> getSteps() {
-		return steps;
+
+		final SeriesView steps = store.getAxis().view();
+		return new AbstractList<Double>() {
+
+			@Override
+			public Double get(int index) {
+				return steps.get(index);
+			}
+
+			@Override
+			public int size() {
+				return steps.size();
+			}
+		};
 	}
 
 	@Override
 	public double[] getRawSteps() {
+		return store.getAxis().view().toArray();
+	}
 
-		Double[] dL = steps.toArray(new Double[steps.size()]);		
-		double[] dl = Stream.of(dL).mapToDouble(Double::doubleValue).toArray();
-		return dl;
+	@Override
+	public void publish() {
+
+		store.publish();
+		if (publisher.hasSubscribers()) {
+			publisher.publish(store);
+		}
+	}
+
+	@Override
+	public SeriesPublisher getPublisher() {
+		return publisher;
+	}
+
+	@Override
+	public void complete(Throwable failure) {
+		publisher.complete(failure);
 	}
-	
+
+	/**
+	 * The snapshot is read from the store without copying the values
+	 */
+	@Override
+	public SeriesSnapshot getSnapshot() {
+		return store.snapshot();
+	}
+
+	@Override
+	public SeriesStatistics getStatistics(Extender<?> extender) {
+
+		int id = store.getId(extender);
+		return id >= 0 ? store.getStatistics(id) : new SeriesStatistics();
+	}
+
 	@Override
+	public SeriesView getStepsView() {
+		return store.getAxis().view();
+	}
+
+	@Override
+	@Deprecated
 	public Map<Extender<?>, ArrayList<Double>> getTimeSeries() {
+
+		Map<Extender<?>, ArrayList<Double>> timeSeries = new LinkedHashMap<>();
+		for (int id = 0; id < store.getElementCount(); id++) {
+			Column column = store.getColumn(id);
+			ArrayList<Double> values = new ArrayList<>(column.size());
+			for (int i = 0; i < column.size(); i++) {
+				values.add(column.get(i));
+			}
+			timeSeries.put(store.getElement(id), values);
+		}
 		return timeSeries;
 	}
 
 	@Override
 	public Collection<Extender<?>> getModelElements() {
-		return timeSeries.keySet();
+		return store.getElements();
 	}
-	
+
 	@Override
 	public double[] getTimeSeries(Extender<?> extender) {
-		
-		Collection<Double> timeSeriesElement = timeSeries.get(extender);
-		Double[] yD = timeSeriesElement.toArray(new Double[timeSeriesElement.size()]);		
-		double[] yd = Stream.of(yD).mapToDouble(Double::doubleValue).toArray();		
-		return yd;
+
+		int id = store.getId(extender);
+		return id >= 0 ? store.getColumn(id).toArray() : new double[0];
 	}
-	
+
 	@Override
+	public SeriesView getSeriesView(Extender<?> extender) {
+
+		int id = store.getId(extender);
+		return id >= 0 ? store.getColumn(id).view() : SeriesView.of(new double[0]);
+	}
+
+	@Override
+	@Deprecated
 	public Collection<Double> getTimeseries(Long step) {
-		
-		Collection<Double> timeSeriesStep = new ArrayList<>();
-		
-		for (Extender<?> extender : timeSeries.keySet()) {
-			ArrayList<Double> values = timeSeries.get(extender);
-			Double[] arrayvalues = values.toArray(new Double[values.size()]);
-			timeSeriesStep.add(arrayvalues[step.intValue()]);				
+
+		double[] values = store.getRow(step.intValue(), null);
+		List<Double> timeSeriesStep = new ArrayList<>(values.length);
+		for (double value : values) {
+			timeSeriesStep.add(value);
 		}
 		return timeSeriesStep;
 	}
-	
+
+	@Override
+	public int getRowCount() {
+		return store.getAxis().size();
+	}
+
+	@Override
+	public int getRowIndex(double step) {
+		return store.getAxis().indexOf(step);
+	}
+
+	@Override
+	public double[] getRow(int row, double[] values) {
+		return store.getRow(row, values);
+	}
+
+	@Override
+	public RowCursor getRows(int from, int to) {
+		return store.rows(from, to);
+	}
+
+	/**
+	 * A null value is recorded as <code>NaN</code>
+	 */
 	@Override
 	public void addTimeSeriesValue(Extender<?> extender, Double value) {
+		store.add(extender, null != value ? value : Double.NaN);
+	}
 
-		ArrayList<Double> values = timeSeries.get(extender);
+	@Override
+	public void addTimeSeriesValue(Extender<?> extender, double value) {
+		store.add(extender, value);
+	}
 
-		if (null != values) {
-			values.add(value);
-		} else {
-			values = new ArrayList<>();
-			values.add(value);
-			timeSeries.put(extender, values);
-		}
+	@Override
+	public int registerTimeSeries(Extender<?> extender) {
+		return store.register(extender);
+	}
+
+	@Override
+	public void addTimeSeriesValue(int id, double value) {
+		store.add(id, value);
 	}
 
 	@Override
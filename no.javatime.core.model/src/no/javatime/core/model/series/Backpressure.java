@@ -0,0 +1,27 @@
+package no.javatime.core.model.series;
+
+/**
+ * What a {@link SeriesPublisher publisher} does with a new batch when a subscriber has not
+ * requested the batches already waiting for it.
+ */
+public enum Backpressure {
+
+	/**
+	 * Merge the new batch into the last waiting batch, so a slow subscriber receives fewer and larger
+	 * batches. The simulation is never delayed. When the waiting rows exceed the limit of the
+	 * subscription the oldest rows are dropped, and the subscriber sees a gap in the
+	 * {@link StepBatch#getFirstRow() rows} of the next batch. Suited for views showing the latest
+	 * values
+	 */
+	COALESCE,
+
+	/**
+	 * Delay the simulation until the subscriber has received a waiting batch, so the simulation runs
+	 * at the pace of the subscriber. The simulation waits at most
+	 * {@link SeriesPublisher#MAX_THROTTLE_MILLIS} for a batch to be requested. A subscriber that does
+	 * not request in time has its batches coalesced, and the oldest rows are
+	 * {@link SeriesSubscription#getDroppedRows() dropped}, until it requests a batch again. Suited for
+	 * subscribers writing all rows, e.g. to a file
+	 */
+	THROTTLE
+}
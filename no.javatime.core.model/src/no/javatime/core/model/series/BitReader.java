@@ -0,0 +1,42 @@
+package no.javatime.core.model.series;
+
+/**
+ * Reads a sequence of bits written by {@link BitWriter}
+ */
+final class BitReader {
+
+	private final long[] words;
+	private long bits;
+
+	BitReader(long[] words) {
+		this.words = words;
+	}
+
+	/**
+	 * Read the specified number of bits
+	 *
+	 * @param count number of bits to read, 0 to 64
+	 * @return the bits in the low order bits of the value
+	 */
+	long read(int count) {
+
+		if (count == 0) {
+			return 0L;
+		}
+		int word = (int) (bits >>> 6);
+		int used = (int) (bits & 63);
+		int free = 64 - used;
+		long value;
+		if (count <= free) {
+			value = words[word] >>> (free - count);
+		} else {
+			value = (words[word] << (count - free)) | (words[word + 1] >>> (64 - (count - free)));
+		}
+		bits += count;
+		return count < 64 ? value & ((1L << count) - 1) : value;
+	}
+
+	boolean readBit() {
+		return read(1) != 0L;
+	}
+}
@@ -0,0 +1,59 @@
+package no.javatime.core.model.series;
+
+import java.util.Arrays;
+
+/**
+ * Writes a sequence of bits to a growing array of words, most significant bit first
+ */
+final class BitWriter {
+
+	private long[] words = new long[16];
+	private long bits;
+
+	/**
+	 * Write the low order bits of the specified value
+	 *
+	 * @param value the bits to write
+	 * @param count number of low order bits to write, 0 to 64
+	 */
+	void write(long value, int count) {
+
+		if (count == 0) {
+			return;
+		}
+		if (count < 64) {
+			value &= (1L << count) - 1;
+		}
+		int word = (int) (bits >>> 6);
+		int used = (int) (bits & 63);
+		if (word + 1 >= words.length) {
+			words = Arrays.copyOf(words, words.length << 1);
+		}
+		int free = 64 - used;
+		if (count <= free) {
+			words[word] |= value << (free - count);
+		} else {
+			words[word] |= value >>> (count - free);
+			words[word + 1] |= value << (64 - (count - free));
+		}
+		bits += count;
+	}
+
+	void writeBit(boolean bit) {
+		write(bit ? 1L : 0L, 1);
+	}
+
+	/**
+	 * The written bits
+	 *
+	 * @return a copy of the words holding the written bits
+	 */
+	long[] toWords() {
+		return Arrays.copyOf(words, (int) ((bits + 63) >>> 6));
+	}
+
+	void reset() {
+		Arrays.fill(words, 0L);
+		bits = 0;
+	}
+}
@@ -0,0 +1,157 @@
+package no.javatime.core.model.series;
+
+/**
+ * An append only column of primitive values in a {@link SeriesStore time series store}.
+ * <p>
+ * Values are kept on the heap by a {@link DoubleColumn}, compressed on the heap by a
+ * {@link XorColumn} or in memory mapped files by a {@link MappedColumn}. A {@link RingColumn} keeps
+ * only the last values appended. Columns are created by the {@link ColumnFactory column factory}
+ * of the store.
+ * <p>
+ * A column is written by one thread at a time, and may be read by other threads while it is
+ * written. Appended values are published by the size of the column: a reader seeing a size sees
+ * all values up to that size, without locking and without blocking the writer.
+ */
+public interface Column {
+
+	/**
+	 * Append a value to the end of this column
+	 *
+	 * @param value the value to append
+	 */
+	void add(double value);
+
+	/**
+	 * Get the value at the specified position
+	 *
+	 * @param index position of the value
+	 * @return the value at the specified position
+	 * @throws IndexOutOfBoundsException if the index is negative or not less than the size
+	 */
+	double get(int index);
+
+	/**
+	 * Number of values in this column
+	 *
+	 * @return the number of values appended since the column was created or cleared
+	 */
+	int size();
+
+	/**
+	 * Number of values appended
+	 *
+	 * @return the number of values appended since the column was created or cleared. Equal to the
+	 * size unless the column drops its oldest values
+	 */
+	default long getCount() {
+		return size();
+	}
+
+	/**
+	 * Copy a range of values to the specified array
+	 *
+	 * @param from position of the first value to copy
+	 * @param destination array receiving the values
+	 * @param position position in the array of the first value
+	 * @param length number of values to copy
+	 * @throws IndexOutOfBoundsException if the range is outside this column or the array
+	 */
+	void copyTo(int from, double[] destination, int position, int length);
+
+	/**
+	 * Remove all values. Storage allocated by the column is reused by subsequent appends
+	 */
+	void clear();
+
+	/**
+	 * Release the storage of this column. The column is not used after it has been released
+	 */
+	default void release() {
+	}
+
+	/**
+	 * Aggregates of the values of this column. Computed from the values in the column unless the
+	 * column maintains running aggregates
+	 *
+	 * @return the aggregates of the values appended since the column was created or cleared
+	 */
+	default SeriesStatistics getStatistics() {
+		return SeriesStatistics.of(view());
+	}
+
+	/**
+	 * Copy all values of this column to a new array
+	 *
+	 * @return the values of this column
+	 */
+	default double[] toArray() {
+
+		double[] values = new double[size()];
+		copyTo(0, values, 0, values.length);
+		return values;
+	}
+
+	/**
+	 * A view of all values currently in this column. The view does not copy the values and does not
+	 * see values appended after it was created
+	 *
+	 * @return a view of the values in this column
+	 */
+	default SeriesView view() {
+		return view(0, size());
+	}
+
+	/**
+	 * A view of a range of values identified by their position since the column was created or
+	 * cleared, which differs from the position in the column when the column drops its oldest values.
+	 * Columns dropping values override this method
+	 *
+	 * @param first position since the column was created of the first value in the view
+	 * @param length number of values in the view
+	 * @return a view of the specified range
+	 * @throws IndexOutOfBoundsException if the range is not in this column
+	 */
+	default SeriesView window(long first, int length) {
+		return view((int) first, length);
+	}
+
+	/**
+	 * A view of a range of values in this column without copying them
+	 *
+	 * @param from position of the first value in the view
+	 * @param length number of values in the view
+	 * @return a view of the specified range
+	 * @throws IndexOutOfBoundsException if the range is outside this column
+	 */
+	default SeriesView view(final int from, final int length) {
+
+		if (from < 0 || length < 0 || from + length > size()) {
+			throw new IndexOutOfBoundsException("From: " + from + " Length: " + length + " Size: "
+					+ size());
+		}
+		return new SeriesView() {
+
+			@Override
+			public int size() {
+				return length;
+			}
+
+			@Override
+			public double get(int index) {
+				if (index < 0 || index >= length) {
+					throw new IndexOutOfBoundsException("Index: " + index + " Size: " + length);
+				}
+				return Column.this.get(from + index);
+			}
+
+			@Override
+			public void copyTo(int index, double[] destination, int position, int count) {
+				if (index < 0 || count < 0 || index + count > length) {
+					throw new IndexOutOfBoundsException("From: " + index + " Length: " + count
+							+ " Size: " + length);
+				}
+				Column.this.copyTo(from + index, destination, position, count);
+			}
+		};
+	}
+}
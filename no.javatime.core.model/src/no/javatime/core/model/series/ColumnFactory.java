@@ -0,0 +1,60 @@
+package no.javatime.core.model.series;
+
+/**
+ * Creates the columns of a {@link SeriesStore time series store}, and thereby decides where the
+ * recorded values are kept.
+ *
+ * @see #HEAP
+ * @see #COMPRESSED
+ * @see MappedColumnFactory
+ * @see RingColumnFactory
+ */
+public interface ColumnFactory {
+
+	/** Keep the values of each column in chunks on the heap */
+	public final static ColumnFactory HEAP = name -> new DoubleColumn();
+
+	/**
+	 * Keep the values of each column on the heap {@link XorColumn compressed} in blocks, and the
+	 * steps of a time axis that is not uniform {@link DeltaColumn delta-of-delta encoded}
+	 */
+	public final static ColumnFactory COMPRESSED = new ColumnFactory() {
+
+		@Override
+		public Column create(String name) {
+			return new XorColumn();
+		}
+
+		@Override
+		public Column createAxis() {
+			return new DeltaColumn();
+		}
+	};
+
+	/**
+	 * Create an empty column
+	 *
+	 * @param name name of the model element recorded in the column
+	 * @return a new column
+	 */
+	Column create(String name);
+
+	/**
+	 * Create an empty column for the steps of a {@link TimeAxis time axis} that are not uniform
+	 *
+	 * @return a new column
+	 */
+	default Column createAxis() {
+		return new DoubleColumn();
+	}
+
+	/**
+	 * Maximum number of values kept by the columns of this factory. When the columns are full the
+	 * oldest values are dropped, and the {@link TimeAxis time axis} keeps the same number of steps
+	 *
+	 * @return the capacity of the columns. Default is <code>Integer.MAX_VALUE</code>
+	 */
+	default int getCapacity() {
+		return Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,260 @@
+package no.javatime.core.model.series;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a range of a time series to a bounded number of points for plotting.
+ * <p>
+ * A range that is short compared to the number of points is read from the values and reduced with
+ * the Largest-Triangle-Three-Buckets (LTTB) algorithm, which keeps the points that preserve the
+ * visual shape of the line. A longer range is first read as the smallest and largest value of the
+ * buckets of a {@link MinMaxPyramid pyramid} level matching the length of the range, so the peaks
+ * of the series are kept and the cost does not depend on the length of the range.
+ * <p>
+ * Missing values are left out of the points.
+ */
+public final class Decimation {
+
+	/** Minimum number of points of a decimated range */
+	public final static int MIN_POINTS = 3;
+
+	private Decimation() {
+	}
+
+	/**
+	 * Reduce a range of rows to at most the specified number of points
+	 *
+	 * @param steps the steps of the rows
+	 * @param values the values of the rows
+	 * @param pyramid the aggregates of the values, where bucket positions are row positions, or null
+	 * to read the range from the values
+	 * @param from position of the first row
+	 * @param to position after the last row
+	 * @param points maximum number of points, at least {@link #MIN_POINTS}
+	 * @return the steps of the points at index 0 and the values of the points at index 1
+	 */
+	public static double[][] decimate(SeriesView steps, SeriesView values, MinMaxPyramid pyramid,
+			int from, int to, int points) {
+
+		int rows = Math.min(steps.size(), values.size());
+		from = Math.max(0, from);
+		to = Math.min(rows, to);
+		points = Math.max(MIN_POINTS, points);
+		Points envelope = new Points(Math.max(0, to - from));
+		if (to > from) {
+			int level = -1;
+			if (null != pyramid) {
+				// The coarsest level with at least two buckets for each point
+				long limit = 2L * (to - from) / points;
+				int levels = pyramid.getLevels();
+				while (level + 1 < levels && MinMaxPyramid.getBucketSize(level + 1) <= limit) {
+					level++;
+				}
+			}
+			read(steps, values, pyramid, level, from, to, rows, envelope);
+		}
+		return lttb(envelope.x, envelope.y, envelope.size, points);
+	}
+
+	/**
+	 * Read the rows of a range from the buckets of the specified level, using the levels below for
+	 * the rows not covered by complete buckets
+	 */
+	private static void read(SeriesView steps, SeriesView values, MinMaxPyramid pyramid, int level,
+			int from, int to, int rows, Points points) {
+
+		if (level < 0) {
+			for (int row = from; row < to; row++) {
+				points.add(steps.get(row), values.get(row));
+			}
+			return;
+		}
+		long size = MinMaxPyramid.getBucketSize(level);
+		// Buckets must be complete in the pyramid and in the values read
+		long complete = Math.min(pyramid.getBuckets(level), rows / size);
+		long first = from / size;
+		long last = Math.min((to + size - 1) / size, complete);
+		if (first >= last) {
+			read(steps, values, pyramid, level - 1, from, to, rows, points);
+			return;
+		}
+		for (long bucket = first; bucket < last; bucket++) {
+			double low = pyramid.getMin(level, (int) bucket);
+			double high = pyramid.getMax(level, (int) bucket);
+			if (Double.isNaN(low)) {
+				continue;
+			}
+			double start = steps.get((int) (bucket * size));
+			double end = steps.get((int) ((bucket + 1) * size - 1));
+			// Continue the line from the previous point to the nearest extreme of the bucket
+			if (points.size > 0
+					&& Math.abs(points.y[points.size - 1] - high) < Math.abs(points.y[points.size - 1]
+							- low)) {
+				points.add(start, high);
+				points.add(end, low);
+			} else {
+				points.add(start, low);
+				points.add(end, high);
+			}
+		}
+		if (last * size < to) {
+			read(steps, values, pyramid, level - 1, (int) (last * size), to, rows, points);
+		}
+	}
+
+	/**
+	 * The smallest and the largest value of a range of rows. The rows covered by complete buckets of
+	 * the pyramid are read from the buckets of the coarsest level covering them, so the cost does not
+	 * depend on the length of the range
+	 *
+	 * @param values the values of the rows
+	 * @param pyramid the aggregates of the values, where bucket positions are row positions, or null
+	 * to read the range from the values
+	 * @param from position of the first row
+	 * @param to position after the last row
+	 * @return the smallest value at index 0 and the largest value at index 1, or <code>NaN</code> if
+	 * the range has no values
+	 */
+	public static double[] range(SeriesView values, MinMaxPyramid pyramid, int from, int to) {
+
+		int rows = values.size();
+		double[] range = { Double.NaN, Double.NaN };
+		from = Math.max(0, from);
+		to = Math.min(rows, to);
+		if (to > from) {
+			int level = null != pyramid ? pyramid.getLevels() - 1 : -1;
+			range(values, pyramid, level, from, to, rows, range);
+		}
+		return range;
+	}
+
+	/**
+	 * Widen the specified range with the values of a range of rows, read from the complete buckets of
+	 * the specified level inside the range and from the levels below for the rows at the ends of the
+	 * range
+	 */
+	private static void range(SeriesView values, MinMaxPyramid pyramid, int level, int from,
+			int to, int rows, double[] range) {
+
+		if (level < 0) {
+			for (int row = from; row < to; row++) {
+				include(range, values.get(row));
+			}
+			return;
+		}
+		long size = MinMaxPyramid.getBucketSize(level);
+		long complete = Math.min(pyramid.getBuckets(level), rows / size);
+		long first = (from + size - 1) / size;
+		long last = Math.min(to / size, complete);
+		if (first >= last) {
+			range(values, pyramid, level - 1, from, to, rows, range);
+			return;
+		}
+		if (from < first * size) {
+			range(values, pyramid, level - 1, from, (int) (first * size), rows, range);
+		}
+		for (long bucket = first; bucket < last; bucket++) {
+			include(range, pyramid.getMin(level, (int) bucket));
+			include(range, pyramid.getMax(level, (int) bucket));
+		}
+		if (last * size < to) {
+			range(values, pyramid, level - 1, (int) (last * size), to, rows, range);
+		}
+	}
+
+	private static void include(double[] range, double value) {
+
+		if (Double.isNaN(value)) {
+			return;
+		}
+		if (Double.isNaN(range[0]) || value < range[0]) {
+			range[0] = value;
+		}
+		if (Double.isNaN(range[1]) || value > range[1]) {
+			range[1] = value;
+		}
+	}
+
+	/**
+	 * Reduce points with the Largest-Triangle-Three-Buckets algorithm. The first and the last point
+	 * are kept, and of each bucket between them the point forming the largest triangle with the
+	 * previous selected point and the average of the next bucket
+	 *
+	 * @param x the steps of the points in increasing order
+	 * @param y the values of the points
+	 * @param length number of points
+	 * @param threshold maximum number of points to keep, at least {@link #MIN_POINTS}
+	 * @return the steps of the kept points at index 0 and the values of the kept points at index 1
+	 */
+	public static double[][] lttb(double[] x, double[] y, int length, int threshold) {
+
+		if (length <= threshold) {
+			return new double[][] { Arrays.copyOf(x, length), Arrays.copyOf(y, length) };
+		}
+		threshold = Math.max(MIN_POINTS, threshold);
+		double[] keptX = new double[threshold];
+		double[] keptY = new double[threshold];
+		double every = (double) (length - 2) / (threshold - 2);
+		int selected = 0;
+		keptX[0] = x[0];
+		keptY[0] = y[0];
+		for (int i = 0; i < threshold - 2; i++) {
+			int averageStart = (int) ((i + 1) * every) + 1;
+			int averageEnd = Math.min((int) ((i + 2) * every) + 1, length);
+			double averageX = 0d;
+			double averageY = 0d;
+			for (int j = averageStart; j < averageEnd; j++) {
+				averageX += x[j];
+				averageY += y[j];
+			}
+			averageX /= averageEnd - averageStart;
+			averageY /= averageEnd - averageStart;
+			int rangeStart = (int) (i * every) + 1;
+			int rangeEnd = (int) ((i + 1) * every) + 1;
+			double maxArea = -1d;
+			int next = rangeStart;
+			for (int j = rangeStart; j < rangeEnd; j++) {
+				double area = Math.abs((x[selected] - averageX) * (y[j] - y[selected])
+						- (x[selected] - x[j]) * (averageY - y[selected]));
+				if (area > maxArea) {
+					maxArea = area;
+					next = j;
+				}
+			}
+			keptX[i + 1] = x[next];
+			keptY[i + 1] = y[next];
+			selected = next;
+		}
+		keptX[threshold - 1] = x[length - 1];
+		keptY[threshold - 1] = y[length - 1];
+		return new double[][] { keptX, keptY };
+	}
+
+	/**
+	 * Growing arrays of points, leaving out missing values
+	 */
+	private final static class Points {
+
+		double[] x;
+		double[] y;
+		int size;
+
+		Points(int capacity) {
+			x = new double[Math.max(16, Math.min(capacity, 1 << 16))];
+			y = new double[x.length];
+		}
+
+		void add(double step, double value) {
+
+			if (Double.isNaN(value)) {
+				return;
+			}
+			if (size == x.length) {
+				x = Arrays.copyOf(x, size * 2);
+				y = Arrays.copyOf(y, size * 2);
+			}
+			x[size] = step;
+			y[size++] = value;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package no.javatime.core.model.series;
+
+/**
+ * A column of steps compressed by delta-of-delta encoding, as the time stamps in the Gorilla time
+ * series database.
+ * <p>
+ * Steps are usually whole numbers with a constant or slowly varying distance, so the difference
+ * between consecutive distances is mostly zero. The first step of a block is stored as is. Each
+ * subsequent whole step is stored as the difference between its distance to the previous step and
+ * the previous distance:
+ * <ul>
+ * <li><code>0</code> if the difference is zero
+ * <li><code>10</code> followed by 7 bits for a difference in [-63, 64]
+ * <li><code>110</code> followed by 9 bits for a difference in [-255, 256]
+ * <li><code>1110</code> followed by 12 bits for a difference in [-2047, 2048]
+ * <li><code>1111</code> followed by the step as is (64 bits), for larger differences and steps
+ * that are not whole numbers. The distance of the next step is then computed from zero
+ * </ul>
+ * Negative zero is not a whole number, so it is stored as is and read back with its sign.
+ */
+public final class DeltaColumn extends EncodedColumn {
+
+	/** Largest whole number where all smaller whole numbers are exact doubles */
+	private final static double EXACT = 1L << 53;
+
+	private final static long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0d);
+
+	@Override
+	void encode(double[] values, BitWriter writer) {
+
+		double previous = values[0];
+		writer.write(Double.doubleToRawLongBits(previous), 64);
+		long delta = 0L;
+		for (int i = 1; i < values.length; i++) {
+			double value = values[i];
+			if (isWhole(value) && isWhole(previous)) {
+				long valueDelta = (long) value - (long) previous;
+				long deltaOfDelta = valueDelta - delta;
+				if (deltaOfDelta == 0L) {
+					writer.writeBit(false);
+					previous = value;
+					continue;
+				} else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+					writer.write(0b10, 2);
+					writer.write(deltaOfDelta, 7);
+					delta = valueDelta;
+					previous = value;
+					continue;
+				} else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+					writer.write(0b110, 3);
+					writer.write(deltaOfDelta, 9);
+					delta = valueDelta;
+					previous = value;
+					continue;
+				} else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+					writer.write(0b1110, 4);
+					writer.write(deltaOfDelta, 12);
+					delta = valueDelta;
+					previous = value;
+					continue;
+				}
+			}
+			writer.write(0b1111, 4);
+			writer.write(Double.doubleToRawLongBits(value), 64);
+			delta = 0L;
+			previous = value;
+		}
+	}
+
+	@Override
+	void decode(BitReader reader, double[] values) {
+
+		double previous = Double.longBitsToDouble(reader.read(64));
+		values[0] = previous;
+		long delta = 0L;
+		for (int i = 1; i < values.length; i++) {
+			if (!reader.readBit()) {
+				previous = (double) ((long) previous + delta);
+			} else if (!reader.readBit()) {
+				delta += signed(reader.read(7), 7);
+				previous = (double) ((long) previous + delta);
+			} else if (!reader.readBit()) {
+				delta += signed(reader.read(9), 9);
+				previous = (double) ((long) previous + delta);
+			} else if (!reader.readBit()) {
+				delta += signed(reader.read(12), 12);
+				previous = (double) ((long) previous + delta);
+			} else {
+				previous = Double.longBitsToDouble(reader.read(64));
+				delta = 0L;
+			}
+			values[i] = previous;
+		}
+	}
+
+	private static boolean isWhole(double value) {
+		return value == Math.rint(value) && Math.abs(value) < EXACT
+				&& Double.doubleToRawLongBits(value) != NEGATIVE_ZERO;
+	}
+
+	/**
+	 * Sign extend the specified number of low order bits. Values above the positive range of the
+	 * bits represent the largest positive difference (e.g. 64 in 7 bits)
+	 */
+	private static long signed(long bits, int count) {
+
+		long half = 1L << (count - 1);
+		return bits > half ? bits - (1L << count) : bits;
+	}
+}
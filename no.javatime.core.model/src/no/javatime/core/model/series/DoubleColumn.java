@@ -0,0 +1,88 @@
+package no.javatime.core.model.series;
+
+import java.util.Arrays;
+
+/**
+ * An append only column of primitive values stored on the heap in fixed size chunks.
+ * <p>
+ * Appending a value is O(1) amortized. When a chunk is full a new chunk is allocated, and only the
+ * directory of chunks is copied when it grows, never the values. Values are read by index without
+ * boxing, or through a {@link SeriesView view} of the column without copying.
+ * <p>
+ * The size is published after the value is stored, so readers on other threads see the values
+ * up to the size they read.
+ */
+public final class DoubleColumn implements Column {
+
+	/** Number of values in each chunk is <code>1 << CHUNK_BITS</code> */
+	final static int CHUNK_BITS = 12;
+	final static int CHUNK_SIZE = 1 << CHUNK_BITS;
+	final static int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/** Read after the size, so a reader sees the chunks of the values up to the size */
+	private double[][] chunks = new double[4][];
+	private volatile int size;
+
+	@Override
+	public void add(double value) {
+
+		int size = this.size;
+		double[][] chunks = this.chunks;
+		int chunk = size >>> CHUNK_BITS;
+		if (chunk == chunks.length) {
+			chunks = Arrays.copyOf(chunks, chunks.length << 1);
+			this.chunks = chunks;
+		}
+		if (null == chunks[chunk]) {
+			chunks[chunk] = new double[CHUNK_SIZE];
+		}
+		chunks[chunk][size & CHUNK_MASK] = value;
+		// Publish the value
+		this.size = size + 1;
+	}
+
+	@Override
+	public double get(int index) {
+
+		int size = this.size;
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+		}
+		return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Values are copied one chunk at a time
+	 */
+	@Override
+	public void copyTo(int from, double[] destination, int position, int length) {
+
+		int size = this.size;
+		if (from < 0 || length < 0 || from + length > size) {
+			throw new IndexOutOfBoundsException("From: " + from + " Length: " + length + " Size: "
+					+ size);
+		}
+		double[][] chunks = this.chunks;
+		while (length > 0) {
+			int offset = from & CHUNK_MASK;
+			int count = Math.min(length, CHUNK_SIZE - offset);
+			System.arraycopy(chunks[from >>> CHUNK_BITS], offset, destination, position, count);
+			from += count;
+			position += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Allocated chunks are reused by subsequent appends
+	 */
+	@Override
+	public void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,177 @@
+package no.javatime.core.model.series;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A column of values encoded in independent blocks of a fixed number of values.
+ * <p>
+ * Values are appended to an open block kept as primitives. When the open block is full it is
+ * encoded to a bit stream and a new block is opened. Each block is decoded independently, so a
+ * value is read by decoding at most one block, and the last decoded block is kept for subsequent
+ * reads. Sequential reads therefore decode each block once.
+ * <p>
+ * Readers on other threads do not block the writer. Encoding a full block is published through a
+ * {@link StampedLock} held only by the writer, and readers of the open block validate an optimistic
+ * read stamp, retrying if the block was encoded and reopened while it was read. Each reader decodes
+ * into its own array, and the last decoded block is published for subsequent reads.
+ */
+abstract class EncodedColumn implements Column {
+
+	/** Number of values in each block is <code>1 << BLOCK_BITS</code> */
+	final static int BLOCK_BITS = 10;
+	final static int BLOCK_SIZE = 1 << BLOCK_BITS;
+	final static int BLOCK_MASK = BLOCK_SIZE - 1;
+
+	/** A decoded block. Never modified after it is published */
+	private final static class Decoded {
+
+		final int block;
+		final double[] values;
+
+		Decoded(int block, double[] values) {
+			this.block = block;
+			this.values = values;
+		}
+	}
+
+	/** Read after the size, so a reader sees the blocks encoded before the size */
+	private long[][] blocks = new long[16][];
+	private final double[] open = new double[BLOCK_SIZE];
+	private volatile Decoded decoded;
+	private final BitWriter writer = new BitWriter();
+	/** Held by the writer while a full block is encoded */
+	private final StampedLock lock = new StampedLock();
+	private volatile int size;
+	private long encodedBits;
+
+	/**
+	 * Encode a full block of values
+	 *
+	 * @param values the values of the block
+	 * @param writer receiving the encoded values
+	 */
+	abstract void encode(double[] values, BitWriter writer);
+
+	/**
+	 * Decode a block encoded by {@link #encode(double[], BitWriter)}
+	 *
+	 * @param reader the encoded values
+	 * @param values receiving the decoded values of the block
+	 */
+	abstract void decode(BitReader reader, double[] values);
+
+	@Override
+	public void add(double value) {
+
+		int size = this.size;
+		open[size & BLOCK_MASK] = value;
+		if (((size + 1) & BLOCK_MASK) != 0) {
+			this.size = size + 1;
+			return;
+		}
+		long stamp = lock.writeLock();
+		try {
+			int block = size >>> BLOCK_BITS;
+			if (block == blocks.length) {
+				blocks = Arrays.copyOf(blocks, blocks.length << 1);
+			}
+			writer.reset();
+			encode(open, writer);
+			blocks[block] = writer.toWords();
+			encodedBits += (long) blocks[block].length << 6;
+			this.size = size + 1;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public double get(int index) {
+
+		while (true) {
+			long stamp = lock.tryOptimisticRead();
+			int size = this.size;
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+			}
+			int block = index >>> BLOCK_BITS;
+			if (block != size >>> BLOCK_BITS) {
+				return decode(block)[index & BLOCK_MASK];
+			}
+			double value = open[index & BLOCK_MASK];
+			if (lock.validate(stamp)) {
+				return value;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void copyTo(int from, double[] destination, int position, int length) {
+
+		int size = this.size;
+		if (from < 0 || length < 0 || from + length > size) {
+			throw new IndexOutOfBoundsException("From: " + from + " Length: " + length + " Size: "
+					+ size);
+		}
+		while (length > 0) {
+			int offset = from & BLOCK_MASK;
+			int count = Math.min(length, BLOCK_SIZE - offset);
+			int block = from >>> BLOCK_BITS;
+			if (block != this.size >>> BLOCK_BITS) {
+				System.arraycopy(decode(block), offset, destination, position, count);
+			} else {
+				long stamp = lock.tryOptimisticRead();
+				if (block != this.size >>> BLOCK_BITS) {
+					// Encoded since checked
+					continue;
+				}
+				System.arraycopy(open, offset, destination, position, count);
+				if (!lock.validate(stamp)) {
+					continue;
+				}
+			}
+			from += count;
+			position += count;
+			length -= count;
+		}
+	}
+
+	@Override
+	public void clear() {
+
+		Arrays.fill(blocks, null);
+		decoded = null;
+		encodedBits = 0;
+		size = 0;
+	}
+
+	/**
+	 * Size of the encoded blocks and the open block
+	 *
+	 * @return number of bytes used by the values of this column
+	 */
+	public long getEncodedBytes() {
+		return (encodedBits >>> 3) + (size & BLOCK_MASK) * Double.BYTES;
+	}
+
+	/**
+	 * Get the values of the specified encoded block, decoding it if it is not the last decoded block
+	 */
+	private double[] decode(int block) {
+
+		Decoded decoded = this.decoded;
+		if (null == decoded || decoded.block != block) {
+			double[] values = new double[BLOCK_SIZE];
+			decode(new BitReader(blocks[block]), values);
+			decoded = new Decoded(block, values);
+			this.decoded = decoded;
+		}
+		return decoded.values;
+	}
+}
@@ -0,0 +1,269 @@
+package no.javatime.core.model.series;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * A column where the values are kept in a file mapped into memory in fixed size segments.
+ * <p>
+ * Appended values are collected in a small write buffer on the heap and copied to the mapped
+ * segment when the buffer is full. A new segment is mapped each time the file grows past the last
+ * segment, so a column may hold more values than the heap. The operating system pages the mapped
+ * segments in and out of memory, and reads are served directly from the mapped segments without
+ * copying them to the heap.
+ * <p>
+ * Readers on other threads do not block the writer. Copying the write buffer is published through
+ * a {@link StampedLock} held only by the writer, and readers of the write buffer validate an
+ * optimistic read stamp, retrying if the buffer was copied while it was read.
+ * <p>
+ * The file is deleted when the column is {@link #release() released}. A column dropped by a store
+ * may still be read by snapshots taken before it was dropped, and its file is deleted when the
+ * column is no longer reachable. Files of columns still reachable when the virtual machine exits
+ * are deleted on exit.
+ *
+ * @see MappedColumnFactory
+ */
+public final class MappedColumn implements Column {
+
+	/** Columns no longer reachable, queued by the garbage collector */
+	private final static ReferenceQueue<MappedColumn> unreachable = new ReferenceQueue<>();
+	/** Keeps the cleaners reachable until their columns are released */
+	private final static Set<Cleaner> cleaners = ConcurrentHashMap.newKeySet();
+	private static Thread cleanerThread;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final Cleaner cleaner;
+	private final int segmentBits;
+	private final int segmentMask;
+	/** Read after the size, so a reader sees the segments of the values copied before the size */
+	private DoubleBuffer[] segments = new DoubleBuffer[4];
+	/** Values appended but not yet copied to a segment */
+	private final double[] buffer;
+	/** Number of values copied to the segments */
+	private volatile int flushed;
+	/** Held by the writer while the write buffer is copied */
+	private final StampedLock lock = new StampedLock();
+	private volatile int size;
+
+	/**
+	 * Create a column in the specified file
+	 *
+	 * @param file the file holding the values. Created if it does not exist and truncated if it does
+	 * @param segmentBits number of values in each mapped segment is <code>1 << segmentBits</code>
+	 * @param bufferSize number of values in the write buffer
+	 * @throws ExtenderException if the file could not be opened
+	 */
+	public MappedColumn(Path file, int segmentBits, int bufferSize) throws ExtenderException {
+
+		this.file = file;
+		this.segmentBits = segmentBits;
+		this.segmentMask = (1 << segmentBits) - 1;
+		this.buffer = new double[Math.max(1, bufferSize)];
+		try {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			throw new ExtenderException(e, "Failed to open time series file {0}", file);
+		}
+		file.toFile().deleteOnExit();
+		this.cleaner = new Cleaner(this, file, channel);
+		startCleaner();
+	}
+
+	@Override
+	public void add(double value) {
+
+		int size = this.size;
+		int buffered = size - flushed;
+		buffer[buffered] = value;
+		this.size = size + 1;
+		if (buffered + 1 == buffer.length) {
+			flush();
+		}
+	}
+
+	/**
+	 * Copy the values in the write buffer to the mapped segments
+	 *
+	 * @throws ExtenderException if a segment could not be mapped
+	 */
+	public void flush() throws ExtenderException {
+
+		long stamp = lock.writeLock();
+		try {
+			int size = this.size;
+			int index = flushed;
+			int buffered = size - index;
+			int offset = 0;
+			while (offset < buffered) {
+				DoubleBuffer segment = segment(index >>> segmentBits);
+				int position = index & segmentMask;
+				int count = Math.min(buffered - offset, segment.capacity() - position);
+				DoubleBuffer target = segment.duplicate();
+				target.position(position);
+				target.put(buffer, offset, count);
+				index += count;
+				offset += count;
+			}
+			flushed = size;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public double get(int index) {
+
+		int size = this.size;
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+		}
+		while (true) {
+			long stamp = lock.tryOptimisticRead();
+			int flushed = this.flushed;
+			if (index < flushed) {
+				return segments[index >>> segmentBits].get(index & segmentMask);
+			}
+			double value = buffer[index - flushed];
+			if (lock.validate(stamp)) {
+				return value;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void copyTo(int from, double[] destination, int position, int length) {
+
+		int size = this.size;
+		if (from < 0 || length < 0 || from + length > size) {
+			throw new IndexOutOfBoundsException("From: " + from + " Length: " + length + " Size: "
+					+ size);
+		}
+		while (length > 0) {
+			long stamp = lock.tryOptimisticRead();
+			int flushed = this.flushed;
+			if (from < flushed) {
+				int offset = from & segmentMask;
+				int count = Math.min(Math.min(length, flushed - from), segmentMask + 1 - offset);
+				DoubleBuffer source = segments[from >>> segmentBits].duplicate();
+				source.position(offset);
+				source.get(destination, position, count);
+				from += count;
+				position += count;
+				length -= count;
+			} else {
+				System.arraycopy(buffer, from - flushed, destination, position, length);
+				if (lock.validate(stamp)) {
+					return;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		size = flushed = 0;
+	}
+
+	/**
+	 * Close and delete the file of this column. Releasing a column more than once has no effect
+	 */
+	@Override
+	public void release() {
+
+		clear();
+		Arrays.fill(segments, null);
+		cleaner.clean();
+	}
+
+	private DoubleBuffer segment(int index) throws ExtenderException {
+
+		if (index >= segments.length) {
+			segments = Arrays.copyOf(segments, Math.max(index + 1, segments.length << 1));
+		}
+		DoubleBuffer segment = segments[index];
+		if (null == segment) {
+			long bytes = (long) Double.BYTES << segmentBits;
+			try {
+				segment = channel.map(FileChannel.MapMode.READ_WRITE, index * bytes, bytes)
+						.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+			} catch (IOException e) {
+				throw new ExtenderException(e, "Failed to map segment {0} of time series file {1}",
+						index, file);
+			}
+			segments[index] = segment;
+		}
+		return segment;
+	}
+
+	/**
+	 * Start the thread deleting the files of columns no longer reachable, if not started
+	 */
+	private static synchronized void startCleaner() {
+
+		if (null == cleanerThread) {
+			cleanerThread = new Thread(() -> {
+				while (true) {
+					try {
+						((Cleaner) unreachable.remove()).clean();
+					} catch (InterruptedException e) {
+						// Runs until the virtual machine exits
+					}
+				}
+			}, "Time series file cleaner");
+			cleanerThread.setDaemon(true);
+			cleanerThread.start();
+		}
+	}
+
+	/**
+	 * Closes and deletes the file of a column when the column is released or no longer reachable.
+	 * The cleaner does not refer to the column
+	 */
+	private final static class Cleaner extends PhantomReference<MappedColumn> {
+
+		private final Path file;
+		private final FileChannel channel;
+
+		Cleaner(MappedColumn column, Path file, FileChannel channel) {
+
+			super(column, unreachable);
+			this.file = file;
+			this.channel = channel;
+			cleaners.add(this);
+		}
+
+		void clean() {
+
+			if (cleaners.remove(this)) {
+				clear();
+				try {
+					channel.close();
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					// The mapping may hold the file until the segments are collected, and the file
+					// is deleted on exit
+				}
+			}
+		}
+	}
+}
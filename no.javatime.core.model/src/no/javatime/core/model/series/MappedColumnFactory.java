@@ -0,0 +1,67 @@
+package no.javatime.core.model.series;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * Creates {@link MappedColumn columns} in memory mapped files in a directory, so recorded time
+ * series may exceed the heap.
+ * <p>
+ * Each column is kept in its own file, mapped in segments of <code>1 << segmentBits</code> values.
+ * The file of a column is deleted when the column is released, or when it is no longer reachable
+ * after the store dropped it.
+ */
+public class MappedColumnFactory implements ColumnFactory {
+
+	/** Values in each mapped segment is <code>1 << DEFAULT_SEGMENT_BITS</code> (8 MB) */
+	public final static int DEFAULT_SEGMENT_BITS = 20;
+
+	/** Values in the write buffer of each column */
+	public final static int DEFAULT_BUFFER_SIZE = 1024;
+
+	private final Path directory;
+	private final int segmentBits;
+	private final int bufferSize;
+
+	/**
+	 * Create columns in the specified directory with the default segment and buffer size
+	 *
+	 * @param directory directory of the column files. Created if it does not exist
+	 */
+	public MappedColumnFactory(Path directory) {
+		this(directory, DEFAULT_SEGMENT_BITS, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create columns in the specified directory
+	 *
+	 * @param directory directory of the column files. Created if it does not exist
+	 * @param segmentBits number of values in each mapped segment is <code>1 << segmentBits</code>
+	 * @param bufferSize number of values in the write buffer of each column
+	 */
+	public MappedColumnFactory(Path directory, int segmentBits, int bufferSize) {
+		this.directory = directory;
+		this.segmentBits = segmentBits;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * @throws ExtenderException if the column file could not be created
+	 */
+	@Override
+	public Column create(String name) throws ExtenderException {
+
+		try {
+			Files.createDirectories(directory);
+			Path file = Files.createTempFile(directory, name.replaceAll("[^\\w.-]", "_") + "-",
+					".col");
+			return new MappedColumn(file, segmentBits, bufferSize);
+		} catch (IOException e) {
+			throw new ExtenderException(e, "Failed to create time series file for {0} in {1}", name,
+					directory);
+		}
+	}
+}
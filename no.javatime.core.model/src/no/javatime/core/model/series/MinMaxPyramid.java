@@ -0,0 +1,180 @@
+package no.javatime.core.model.series;
+
+import java.util.Arrays;
+
+/**
+ * Levels of the smallest and the largest value of consecutive buckets of a column, maintained as
+ * values are appended.
+ * <p>
+ * A bucket at level zero covers {@link #BUCKET} values and a bucket at each higher level covers
+ * {@link #FANOUT} buckets of the level below, so a range of any length is covered by a bounded
+ * number of buckets at the matching level. The levels take about 1/32 of the memory of the
+ * column. <code>NaN</code> values are not part of the aggregates, and a bucket without values has
+ * <code>NaN</code> as its smallest and largest value.
+ * <p>
+ * The pyramid is written by one thread and may be read by other threads while it is written. A
+ * bucket is published by the number of values appended, so a bucket is complete when the number
+ * of values has reached the end of the bucket.
+ *
+ * @see Decimation
+ */
+public final class MinMaxPyramid {
+
+	/** Number of values in a bucket at level zero */
+	public final static int BUCKET = 64;
+
+	/** Number of buckets at a level aggregated by a bucket at the next level */
+	public final static int FANOUT = 8;
+
+	private final static int INITIAL_BUCKETS = 16;
+
+	/** Smallest value of each complete bucket at each level */
+	private double[][] min = new double[0][];
+	/** Largest value of each complete bucket at each level */
+	private double[][] max = new double[0][];
+	/** Aggregates of the open bucket at each level. Used by the writer */
+	private double[] openMin = new double[0];
+	private double[] openMax = new double[0];
+	private int[] open = new int[0];
+	/** Number of values appended */
+	private volatile long count;
+
+	/**
+	 * Number of values covered by a bucket at the specified level
+	 *
+	 * @param level a level of the pyramid
+	 * @return the number of values in a bucket at the level
+	 */
+	public static long getBucketSize(int level) {
+
+		long size = BUCKET;
+		for (int i = 0; i < level; i++) {
+			size *= FANOUT;
+		}
+		return size;
+	}
+
+	/**
+	 * Add the next value of the column to the aggregates
+	 *
+	 * @param value the value appended to the column
+	 */
+	public void add(double value) {
+
+		long count = this.count;
+		aggregate(0, value, value, BUCKET);
+		this.count = count + 1;
+	}
+
+	/**
+	 * Add a value or a complete bucket of the level below to the open bucket of the specified level,
+	 * and move the bucket to the level when it is complete
+	 */
+	private void aggregate(int level, double low, double high, int size) {
+
+		if (level == open.length) {
+			open = Arrays.copyOf(open, level + 1);
+			openMin = Arrays.copyOf(openMin, level + 1);
+			openMax = Arrays.copyOf(openMax, level + 1);
+			openMin[level] = openMax[level] = Double.NaN;
+		}
+		if (low < openMin[level] || Double.isNaN(openMin[level])) {
+			openMin[level] = low;
+		}
+		if (high > openMax[level] || Double.isNaN(openMax[level])) {
+			openMax[level] = high;
+		}
+		if (++open[level] < size) {
+			return;
+		}
+		low = openMin[level];
+		high = openMax[level];
+		open[level] = 0;
+		openMin[level] = openMax[level] = Double.NaN;
+		int bucket = (int) (this.count / getBucketSize(level));
+		if (level == min.length) {
+			// Published with the count of values that completes the first bucket of the level
+			min = Arrays.copyOf(min, level + 1);
+			max = Arrays.copyOf(max, level + 1);
+			min[level] = new double[INITIAL_BUCKETS];
+			max[level] = new double[INITIAL_BUCKETS];
+		} else if (bucket == min[level].length) {
+			min[level] = Arrays.copyOf(min[level], bucket * 2);
+			max[level] = Arrays.copyOf(max[level], bucket * 2);
+		}
+		min[level][bucket] = low;
+		max[level][bucket] = high;
+		aggregate(level + 1, low, high, FANOUT);
+	}
+
+	/**
+	 * Number of values appended
+	 *
+	 * @return the number of values added since the pyramid was created
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Number of levels with at least one complete bucket
+	 *
+	 * @return the number of levels
+	 */
+	public int getLevels() {
+
+		long count = this.count;
+		int levels = 0;
+		while (count >= getBucketSize(levels)) {
+			levels++;
+		}
+		return levels;
+	}
+
+	/**
+	 * Number of complete buckets at the specified level
+	 *
+	 * @param level a level of the pyramid
+	 * @return the number of complete buckets
+	 */
+	public long getBuckets(int level) {
+		return count / getBucketSize(level);
+	}
+
+	/**
+	 * The smallest value of a complete bucket
+	 *
+	 * @param level a level of the pyramid
+	 * @param bucket position of the bucket at the level
+	 * @return the smallest value of the bucket or <code>NaN</code> if the bucket has no values
+	 * @throws IndexOutOfBoundsException if the bucket is not complete
+	 */
+	public double getMin(int level, int bucket) {
+
+		checkBucket(level, bucket);
+		return min[level][bucket];
+	}
+
+	/**
+	 * The largest value of a complete bucket
+	 *
+	 * @param level a level of the pyramid
+	 * @param bucket position of the bucket at the level
+	 * @return the largest value of the bucket or <code>NaN</code> if the bucket has no values
+	 * @throws IndexOutOfBoundsException if the bucket is not complete
+	 */
+	public double getMax(int level, int bucket) {
+
+		checkBucket(level, bucket);
+		return max[level][bucket];
+	}
+
+	private void checkBucket(int level, int bucket) {
+
+		long buckets = getBuckets(level);
+		if (bucket < 0 || bucket >= buckets) {
+			throw new IndexOutOfBoundsException("Level: " + level + " Bucket: " + bucket
+					+ " Buckets: " + buckets);
+		}
+	}
+}
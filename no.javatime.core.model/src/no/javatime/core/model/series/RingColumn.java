@@ -0,0 +1,241 @@
+package no.javatime.core.model.series;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A column keeping only the last values appended in a fixed capacity ring buffer on the heap.
+ * <p>
+ * When the column is full each appended value replaces the oldest value, so the memory of the
+ * column is constant regardless of the number of values appended. Position zero is the oldest
+ * value still kept. Running {@link SeriesStatistics aggregates} of all values appended, including
+ * the values no longer kept, are updated on each append.
+ * <p>
+ * Readers on other threads do not block the writer. Each append stores the value and updates the
+ * aggregates while holding a {@link StampedLock} held only by the writer. Readers validate an
+ * optimistic read stamp and retry if a value was replaced while it was read, as in a seqlock.
+ *
+ * @see RingColumnFactory
+ */
+public final class RingColumn implements Column {
+
+	/** Maximum number of values copied under one read stamp, so long copies are not starved */
+	private final static int COPY_CHUNK = 4096;
+
+	private final double[] values;
+	private final SeriesStatistics statistics = new SeriesStatistics();
+	/** Held by the writer while a value is stored */
+	private final StampedLock lock = new StampedLock();
+	/** Number of values appended since the column was created or cleared */
+	private volatile long count;
+
+	/**
+	 * Create a column keeping the specified number of values
+	 *
+	 * @param capacity number of values kept
+	 * @throws IllegalArgumentException if the capacity is less than one
+	 */
+	public RingColumn(int capacity) {
+
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity: " + capacity);
+		}
+		values = new double[capacity];
+	}
+
+	@Override
+	public void add(double value) {
+
+		long stamp = lock.writeLock();
+		try {
+			long count = this.count;
+			values[(int) (count % values.length)] = value;
+			statistics.add(value);
+			this.count = count + 1;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * The value at the specified position since the column was created, or <code>NaN</code> if it
+	 * has been replaced
+	 */
+	private double read(long position) {
+
+		while (true) {
+			long stamp = lock.tryOptimisticRead();
+			if (position < count - values.length) {
+				return Double.NaN;
+			}
+			double value = values[(int) (position % values.length)];
+			if (lock.validate(stamp)) {
+				return value;
+			}
+		}
+	}
+
+	@Override
+	public double get(int index) {
+
+		long count = this.count;
+		int size = (int) Math.min(count, values.length);
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+		}
+		return read(count - size + index);
+	}
+
+	/**
+	 * Number of values kept
+	 *
+	 * @return the number of values appended, but at most the capacity
+	 */
+	@Override
+	public int size() {
+		return (int) Math.min(count, values.length);
+	}
+
+	/**
+	 * Number of values appended
+	 *
+	 * @return the number of values appended since the column was created or cleared, including
+	 * values that are no longer kept
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public int getCapacity() {
+		return values.length;
+	}
+
+	@Override
+	public void copyTo(int from, double[] destination, int position, int length) {
+
+		long count = this.count;
+		int size = (int) Math.min(count, values.length);
+		if (from < 0 || length < 0 || from + length > size) {
+			throw new IndexOutOfBoundsException("From: " + from + " Length: " + length + " Size: "
+					+ size);
+		}
+		copy(count - size + from, destination, position, length);
+	}
+
+	/**
+	 * Aggregates of all values appended since the column was created or cleared
+	 */
+	@Override
+	public SeriesStatistics getStatistics() {
+
+		while (true) {
+			long stamp = lock.tryOptimisticRead();
+			SeriesStatistics copy = statistics.copy();
+			if (lock.validate(stamp)) {
+				return copy;
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+
+		long stamp = lock.writeLock();
+		try {
+			count = 0;
+			statistics.clear();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public SeriesView view(int from, int length) {
+
+		long count = this.count;
+		int size = (int) Math.min(count, values.length);
+		if (from < 0 || length < 0 || from + length > size) {
+			throw new IndexOutOfBoundsException("From: " + from + " Length: " + length + " Size: "
+					+ size);
+		}
+		return window(count - size + from, length);
+	}
+
+	/**
+	 * The view reads the values kept when it is read; values replaced after the view was created
+	 * read as <code>NaN</code>
+	 */
+	@Override
+	public SeriesView window(final long first, final int length) {
+
+		long count = this.count;
+		if (first < 0 || length < 0 || first + length > count) {
+			throw new IndexOutOfBoundsException("First: " + first + " Length: " + length + " Count: "
+					+ count);
+		}
+		return new SeriesView() {
+
+			@Override
+			public int size() {
+				return length;
+			}
+
+			@Override
+			public double get(int index) {
+				if (index < 0 || index >= length) {
+					throw new IndexOutOfBoundsException("Index: " + index + " Size: " + length);
+				}
+				return read(first + index);
+			}
+
+			@Override
+			public void copyTo(int index, double[] destination, int position, int count) {
+				if (index < 0 || count < 0 || index + count > length) {
+					throw new IndexOutOfBoundsException("From: " + index + " Length: " + count
+							+ " Size: " + length);
+				}
+				copy(first + index, destination, position, count);
+			}
+		};
+	}
+
+	/**
+	 * Copy values by their position since the column was created. Values replaced before or while
+	 * they are copied are copied as <code>NaN</code>
+	 */
+	private void copy(long start, double[] destination, int position, int length) {
+
+		while (length > 0) {
+			int count = Math.min(length, COPY_CHUNK);
+			copyChunk(start, destination, position, count);
+			start += count;
+			position += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Copy values in at most two parts, retrying if a value is replaced while it is copied
+	 */
+	private void copyChunk(long start, double[] destination, int position, int length) {
+
+		while (true) {
+			long stamp = lock.tryOptimisticRead();
+			long kept = count - values.length;
+			int replaced = (int) Math.max(0L, Math.min(length, kept - start));
+			int offset = (int) ((start + replaced) % values.length);
+			int remaining = length - replaced;
+			int count = Math.min(remaining, values.length - offset);
+			System.arraycopy(values, offset, destination, position + replaced, count);
+			if (count < remaining) {
+				System.arraycopy(values, 0, destination, position + replaced + count, remaining
+						- count);
+			}
+			if (lock.validate(stamp)) {
+				for (int i = 0; i < replaced; i++) {
+					destination[position + i] = Double.NaN;
+				}
+				return;
+			}
+		}
+	}
+}
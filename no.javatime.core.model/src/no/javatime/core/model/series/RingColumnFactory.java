@@ -0,0 +1,42 @@
+package no.javatime.core.model.series;
+
+/**
+ * Creates {@link RingColumn columns} keeping only the values of the last steps, so the memory of a
+ * run is constant regardless of the number of steps. Use for long running and open ended runs
+ * where only the recent history and the {@link SeriesStatistics aggregates} of the run are needed.
+ * <p>
+ * The time axis of the store keeps the same number of steps as the columns.
+ */
+public class RingColumnFactory implements ColumnFactory {
+
+	private final int capacity;
+
+	/**
+	 * Create columns keeping the specified number of values
+	 *
+	 * @param capacity number of steps kept by the store
+	 * @throws IllegalArgumentException if the capacity is less than one
+	 */
+	public RingColumnFactory(int capacity) {
+
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	@Override
+	public Column create(String name) {
+		return new RingColumn(capacity);
+	}
+
+	@Override
+	public Column createAxis() {
+		return new RingColumn(capacity);
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+}
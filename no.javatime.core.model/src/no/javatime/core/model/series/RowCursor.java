@@ -0,0 +1,119 @@
+package no.javatime.core.model.series;
+
+/**
+ * Iterates the rows of a range of steps, where a row is the values of all recorded model elements
+ * at one step.
+ * <p>
+ * The cursor reads the values directly from the columns of the store, so iterating all rows costs
+ * O(rows x elements) and does not copy or box any columns. Model elements without a value at the
+ * current row (e.g. recorded from a later step) read as <code>NaN</code>.
+ *
+ * <pre>
+ * RowCursor rows = provider.getRows(0, provider.getRowCount());
+ * while (rows.next()) {
+ * 	double step = rows.getStep();
+ * 	double value = rows.get(0);
+ * }
+ * </pre>
+ */
+public final class RowCursor {
+
+	private final SeriesView steps;
+	private final SeriesView[] columns;
+	private final int to;
+	private int row;
+
+	/**
+	 * Create a cursor positioned before the first row in the specified range
+	 *
+	 * @param steps the steps of the rows
+	 * @param columns the values of each model element
+	 * @param from position of the first row
+	 * @param to position after the last row
+	 */
+	public RowCursor(SeriesView steps, SeriesView[] columns, int from, int to) {
+
+		if (from < 0 || to < from || to > steps.size()) {
+			throw new IndexOutOfBoundsException("From: " + from + " To: " + to + " Size: "
+					+ steps.size());
+		}
+		this.steps = steps;
+		this.columns = columns;
+		this.to = to;
+		this.row = from - 1;
+	}
+
+	/**
+	 * Move to the next row
+	 *
+	 * @return true if the cursor is at a row and false if there are no more rows
+	 */
+	public boolean next() {
+
+		if (row + 1 < to) {
+			row++;
+			return true;
+		}
+		row = to;
+		return false;
+	}
+
+	/**
+	 * Position of the current row
+	 *
+	 * @return the position of the current row on the time axis
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * The step of the current row
+	 *
+	 * @return the step of the current row
+	 */
+	public double getStep() {
+		return steps.get(row);
+	}
+
+	/**
+	 * Number of values in each row
+	 *
+	 * @return the number of model elements
+	 */
+	public int size() {
+		return columns.length;
+	}
+
+	/**
+	 * The value of a model element at the current row
+	 *
+	 * @param id the id of the model element
+	 * @return the value of the model element or <code>NaN</code> if the model element has no value
+	 * at this row
+	 */
+	public double get(int id) {
+		return get(columns[id], row);
+	}
+
+	/**
+	 * Copy the values of all model elements at the current row to the specified array
+	 *
+	 * @param values array receiving the values or null
+	 * @return the specified array or a new array if the specified array is null or too short
+	 */
+	public double[] copyTo(double[] values) {
+
+		if (null == values || values.length < columns.length) {
+			values = new double[columns.length];
+		}
+		for (int id = 0; id < columns.length; id++) {
+			values[id] = get(columns[id], row);
+		}
+		return values;
+	}
+
+	private static double get(SeriesView column, int row) {
+		return row < column.size() ? column.get(row) : Double.NaN;
+	}
+}
@@ -0,0 +1,69 @@
+package no.javatime.core.model.series;
+
+/**
+ * Layout of a run result file written by {@link RunResultWriter} and read by
+ * {@link RunResultReader}.
+ * <p>
+ * All numbers are big endian. Strings are written in modified UTF-8 as by
+ * {@link java.io.DataOutput#writeUTF(String)}.
+ *
+ * <pre>
+ * Header
+ *   int     MAGIC
+ *   short   VERSION
+ *   UTF     model bundle symbolic name
+ *   UTF     model bundle version
+ *   double  delta time
+ *   int     number of model elements n
+ *   n x (UTF name, UTF type)
+ * Block (repeated)
+ *   int     BLOCK_MAGIC
+ *   int     number of rows r in the block
+ *   double  r steps
+ *   n x (double r values)         one column for each model element
+ * Footer
+ *   int     FOOTER_MAGIC
+ *   long    number of rows
+ *   int     number of blocks b
+ *   b x (long offset, int first row, int rows)
+ *   long    offset of the footer
+ * </pre>
+ * <p>
+ * Blocks are written while the simulation runs, so the values of a block are columnar but a file
+ * is readable without reading the values of more than one block at a time. A file without a
+ * footer (e.g. after a failed run) is read by scanning the complete blocks following the header.
+ */
+public final class RunResultFormat {
+
+	/** Identifies a run result file ("JTRR") */
+	public final static int MAGIC = 0x4A545252;
+
+	/** Current version of the format */
+	public final static short VERSION = 1;
+
+	/** Start of a block ("BLCK") */
+	public final static int BLOCK_MAGIC = 0x424C434B;
+
+	/** Start of the footer ("FOOT") */
+	public final static int FOOTER_MAGIC = 0x464F4F54;
+
+	/** Size in bytes of the block magic and the number of rows preceding the values of a block */
+	final static int BLOCK_HEADER_BYTES = 8;
+
+	/** Default number of rows in a block */
+	public final static int DEFAULT_BLOCK_ROWS = 4096;
+
+	private RunResultFormat() {
+	}
+
+	/**
+	 * Size in bytes of the values of a block
+	 *
+	 * @param rows number of rows in the block
+	 * @param elements number of model elements
+	 * @return size of the steps and the columns of the block
+	 */
+	static long blockBytes(int rows, int elements) {
+		return (long) rows * (elements + 1) * Double.BYTES;
+	}
+}
@@ -0,0 +1,411 @@
+package no.javatime.core.model.series;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import no.javatime.inplace.extender.intface.Extender;
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * Reads a run result file written by {@link RunResultWriter}.
+ * <p>
+ * Opening a file reads the header and the block index in the footer. The values are read lazily:
+ * each block is mapped into memory the first time one of its rows is read, and views of the steps
+ * and the columns read directly from the mapped blocks. The read methods mirror the read API of
+ * {@link no.javatime.core.model.elements.TimeSeriesProvider}, with model elements identified by
+ * the name of their service class or by their position in the row. A
+ * {@link no.javatime.core.model.elements.RunResultProvider} serves the file as a time series
+ * provider of the model elements of the model.
+ */
+public class RunResultReader implements AutoCloseable {
+
+	private final Path file;
+	private final FileChannel channel;
+	private final String modelName;
+	private final String modelVersion;
+	private final double dt;
+	private final List<String> names;
+	private final List<String> types;
+	private final long[] blockOffsets;
+	private final int[] blockFirstRows;
+	private final int[] blockRows;
+	private final DoubleBuffer[] blocks;
+	private final int rowCount;
+
+	private RunResultReader(Path file, FileChannel channel) throws IOException {
+
+		this.file = file;
+		this.channel = channel;
+		long size = channel.size();
+		// Read the header, retrying with a larger buffer if the names do not fit
+		int length = (int) Math.min(size, 1 << 16);
+		DataInputStream header;
+		ByteBuffer head;
+		List<String> names;
+		List<String> types;
+		String modelName;
+		String modelVersion;
+		double dt;
+		while (true) {
+			head = read(0, length);
+			header = new DataInputStream(new ByteArrayInputStream(head.array(), 0, head.limit()));
+			try {
+				if (header.readInt() != RunResultFormat.MAGIC) {
+					throw new IOException("Not a run result file");
+				}
+				short version = header.readShort();
+				if (version > RunResultFormat.VERSION) {
+					throw new IOException("Unsupported run result version " + version);
+				}
+				modelName = header.readUTF();
+				modelVersion = header.readUTF();
+				dt = header.readDouble();
+				int elements = header.readInt();
+				names = new ArrayList<>(elements);
+				types = new ArrayList<>(elements);
+				for (int i = 0; i < elements; i++) {
+					names.add(header.readUTF());
+					types.add(header.readUTF());
+				}
+				break;
+			} catch (EOFException e) {
+				if (length >= size) {
+					throw e;
+				}
+				length = (int) Math.min(size, (long) length << 2);
+			}
+		}
+		this.modelName = modelName;
+		this.modelVersion = modelVersion;
+		this.dt = dt;
+		this.names = Collections.unmodifiableList(names);
+		this.types = Collections.unmodifiableList(types);
+		long headerEnd = head.limit() - header.available();
+		List<long[]> index = readFooter(size);
+		if (null == index) {
+			index = scanBlocks(headerEnd, size);
+		}
+		blockOffsets = new long[index.size()];
+		blockFirstRows = new int[index.size()];
+		blockRows = new int[index.size()];
+		int rows = 0;
+		for (int b = 0; b < blockOffsets.length; b++) {
+			blockOffsets[b] = index.get(b)[0];
+			blockFirstRows[b] = rows;
+			blockRows[b] = (int) index.get(b)[2];
+			rows += blockRows[b];
+		}
+		rowCount = rows;
+		blocks = new DoubleBuffer[blockOffsets.length];
+	}
+
+	/**
+	 * Open a run result file
+	 *
+	 * @param file the file to read
+	 * @return a reader of the file
+	 * @throws ExtenderException if the file could not be opened or is not a run result file
+	 */
+	public static RunResultReader open(Path file) throws ExtenderException {
+
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+			return new RunResultReader(file, channel);
+		} catch (IOException e) {
+			if (null != channel) {
+				try {
+					channel.close();
+				} catch (IOException ce) {
+					// Report the first failure
+				}
+			}
+			throw new ExtenderException(e, "Failed to open run result file {0}", file);
+		}
+	}
+
+	public String getModelName() {
+		return modelName;
+	}
+
+	public String getModelVersion() {
+		return modelVersion;
+	}
+
+	public double getDt() {
+		return dt;
+	}
+
+	/**
+	 * Service class names of the recorded model elements in row order
+	 *
+	 * @return an unmodifiable list of model element names
+	 */
+	public List<String> getElementNames() {
+		return names;
+	}
+
+	/**
+	 * Types of the recorded model elements in row order
+	 *
+	 * @return an unmodifiable list of model element types
+	 */
+	public List<String> getElementTypes() {
+		return types;
+	}
+
+	/**
+	 * Position in the row of the specified model element
+	 *
+	 * @param name service class name of a model element
+	 * @return the position of the model element or -1 if it is not recorded
+	 */
+	public int getId(String name) {
+		return names.indexOf(name);
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Read the recorded steps without copying them
+	 *
+	 * @return a view of the recorded steps
+	 */
+	public SeriesView getStepsView() {
+		return new BlockView(0);
+	}
+
+	/**
+	 * Read the time series of the model element at the specified position without copying it
+	 *
+	 * @param id position of the model element in the row
+	 * @return a view of the recorded values
+	 */
+	public SeriesView getSeriesView(int id) {
+
+		if (id < 0 || id >= names.size()) {
+			throw new IndexOutOfBoundsException("Id: " + id + " Size: " + names.size());
+		}
+		return new BlockView(id + 1);
+	}
+
+	/**
+	 * Read the time series of the specified model element without copying it
+	 *
+	 * @param extender a model element of the model the file was written from
+	 * @return a view of the recorded values or null if the model element is not recorded
+	 */
+	public SeriesView getSeriesView(Extender<?> extender) {
+
+		int id = getId(extender.getServiceClass().getName());
+		return id >= 0 ? getSeriesView(id) : null;
+	}
+
+	/**
+	 * Copy the time series of the specified model element to an array
+	 *
+	 * @param name service class name of the model element
+	 * @return the recorded values or an empty array if the model element is not recorded
+	 */
+	public double[] getTimeSeries(String name) {
+
+		int id = getId(name);
+		return id >= 0 ? getSeriesView(id).toArray() : new double[0];
+	}
+
+	/**
+	 * Copy the values of all model elements at the specified row to an array
+	 *
+	 * @param row position of the row
+	 * @param values array receiving the values in row order, or null
+	 * @return the specified array or a new array if the specified array is null or too short
+	 */
+	public double[] getRow(int row, double[] values) {
+
+		RowCursor rows = getRows(row, row + 1);
+		rows.next();
+		return rows.copyTo(values);
+	}
+
+	/**
+	 * Iterate the rows in the specified range
+	 *
+	 * @param from position of the first row
+	 * @param to position after the last row
+	 * @return a cursor positioned before the first row
+	 */
+	public RowCursor getRows(int from, int to) {
+
+		SeriesView[] columns = new SeriesView[names.size()];
+		for (int id = 0; id < columns.length; id++) {
+			columns[id] = getSeriesView(id);
+		}
+		return new RowCursor(getStepsView(), columns, from, to);
+	}
+
+	/**
+	 * Close the file. Views read from the file are not used after the reader is closed
+	 *
+	 * @throws ExtenderException if the file could not be closed
+	 */
+	@Override
+	public void close() throws ExtenderException {
+
+		Arrays.fill(blocks, null);
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new ExtenderException(e, "Failed to close run result file {0}", file);
+		}
+	}
+
+	/**
+	 * Reads the steps (column 0) or the values of a model element (column <code>id + 1</code>) from
+	 * the mapped blocks
+	 */
+	private class BlockView implements SeriesView {
+
+		private final int column;
+
+		BlockView(int column) {
+			this.column = column;
+		}
+
+		@Override
+		public int size() {
+			return rowCount;
+		}
+
+		@Override
+		public double get(int index) {
+
+			if (index < 0 || index >= rowCount) {
+				throw new IndexOutOfBoundsException("Index: " + index + " Size: " + rowCount);
+			}
+			int b = blockOf(index);
+			return block(b).get(column * blockRows[b] + index - blockFirstRows[b]);
+		}
+
+		@Override
+		public void copyTo(int from, double[] destination, int position, int length) {
+
+			if (from < 0 || length < 0 || from + length > rowCount) {
+				throw new IndexOutOfBoundsException("From: " + from + " Length: " + length + " Size: "
+						+ rowCount);
+			}
+			while (length > 0) {
+				int b = blockOf(from);
+				int offset = from - blockFirstRows[b];
+				int count = Math.min(length, blockRows[b] - offset);
+				DoubleBuffer source = block(b).duplicate();
+				source.position(column * blockRows[b] + offset);
+				source.get(destination, position, count);
+				from += count;
+				position += count;
+				length -= count;
+			}
+		}
+	}
+
+	private int blockOf(int row) {
+
+		int b = Arrays.binarySearch(blockFirstRows, row);
+		return b >= 0 ? b : -b - 2;
+	}
+
+	private DoubleBuffer block(int b) throws ExtenderException {
+
+		DoubleBuffer block = blocks[b];
+		if (null == block) {
+			try {
+				block = channel.map(FileChannel.MapMode.READ_ONLY,
+						blockOffsets[b] + RunResultFormat.BLOCK_HEADER_BYTES,
+						RunResultFormat.blockBytes(blockRows[b], names.size())).asDoubleBuffer();
+			} catch (IOException e) {
+				throw new ExtenderException(e, "Failed to read block {0} of run result file {1}", b,
+						file);
+			}
+			blocks[b] = block;
+		}
+		return block;
+	}
+
+	/**
+	 * Read the block index in the footer
+	 *
+	 * @return offset, first row and rows of each block, or null if the file has no valid footer
+	 */
+	private List<long[]> readFooter(long size) throws IOException {
+
+		if (size < 8) {
+			return null;
+		}
+		long footerOffset = read(size - 8, 8).getLong();
+		if (footerOffset < 0 || footerOffset + 4 + 8 + 4 + 8 > size) {
+			return null;
+		}
+		ByteBuffer footer = read(footerOffset, (int) (size - footerOffset));
+		if (footer.getInt() != RunResultFormat.FOOTER_MAGIC) {
+			return null;
+		}
+		footer.getLong();
+		int count = footer.getInt();
+		if (footer.remaining() != count * 16L + 8) {
+			return null;
+		}
+		List<long[]> index = new ArrayList<>(count);
+		for (int b = 0; b < count; b++) {
+			index.add(new long[] { footer.getLong(), footer.getInt(), footer.getInt() });
+		}
+		return index;
+	}
+
+	/**
+	 * Locate the complete blocks following the header of a file without a footer
+	 *
+	 * @return offset, first row and rows of each complete block
+	 */
+	private List<long[]> scanBlocks(long offset, long size) throws IOException {
+
+		List<long[]> index = new ArrayList<>();
+		long firstRow = 0;
+		while (offset + RunResultFormat.BLOCK_HEADER_BYTES <= size) {
+			ByteBuffer header = read(offset, RunResultFormat.BLOCK_HEADER_BYTES);
+			int rows = header.getInt(4);
+			long end = offset + RunResultFormat.BLOCK_HEADER_BYTES
+					+ RunResultFormat.blockBytes(rows, names.size());
+			if (header.getInt(0) != RunResultFormat.BLOCK_MAGIC || rows <= 0 || end > size) {
+				break;
+			}
+			index.add(new long[] { offset, firstRow, rows });
+			firstRow += rows;
+			offset = end;
+		}
+		return index;
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
@@ -0,0 +1,276 @@
+package no.javatime.core.model.series;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * Writes the result of a simulation run to a file in the {@link RunResultFormat run result format}
+ * while the simulation is running.
+ * <p>
+ * Rows are appended on the simulation thread into a block in memory. When a block is full it is
+ * handed over to a background thread writing the block to the file, and the simulation continues
+ * with the next block. At most a few blocks are waiting to be written; if the writer falls behind,
+ * appending waits for the writer. Closing the writer writes the last block and the footer.
+ * <p>
+ * A failure on the writer thread is thrown from the next call to {@link #append(double, double[])}
+ * or {@link #close()}.
+ */
+public class RunResultWriter implements AutoCloseable {
+
+	/** Number of blocks waiting to be written before appending waits for the writer */
+	private final static int QUEUED_BLOCKS = 4;
+
+	/** Values of a range of rows in columnar order */
+	private final static class Block {
+
+		final double[] steps;
+		final double[][] columns;
+		int rows;
+
+		Block(int blockRows, int elements) {
+			steps = new double[blockRows];
+			columns = new double[elements][blockRows];
+		}
+	}
+
+	/** Signals the writer thread that no more blocks are written */
+	private final static Block END = new Block(0, 0);
+
+	private final Path file;
+	private final FileChannel channel;
+	private final int elements;
+	private final int blockRows;
+	private final BlockingQueue<Block> written = new ArrayBlockingQueue<>(QUEUED_BLOCKS);
+	private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(QUEUED_BLOCKS + 1);
+	private final Thread thread;
+	/** Offset, first row and rows of each written block. Accessed by the writer thread */
+	private final List<long[]> blockIndex = new ArrayList<>();
+	private volatile Throwable failure;
+	private Block block;
+	private long rowCount;
+	private boolean closed;
+
+	/**
+	 * Create a file with the header of a run and start the writer thread
+	 *
+	 * @param file the file to write. Replaced if it exists
+	 * @param modelName symbolic name of the model bundle
+	 * @param modelVersion version of the model bundle
+	 * @param dt delta time of the run
+	 * @param names name of each recorded model element in row order
+	 * @param types type of each recorded model element in row order
+	 * @param blockRows number of rows in a block
+	 * @throws ExtenderException if the file could not be created
+	 */
+	public RunResultWriter(Path file, String modelName, String modelVersion, double dt,
+			String[] names, String[] types, int blockRows) throws ExtenderException {
+
+		this.file = file;
+		this.elements = names.length;
+		this.blockRows = Math.max(1, blockRows);
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream header = new DataOutputStream(bytes);
+			header.writeInt(RunResultFormat.MAGIC);
+			header.writeShort(RunResultFormat.VERSION);
+			header.writeUTF(null != modelName ? modelName : "");
+			header.writeUTF(null != modelVersion ? modelVersion : "");
+			header.writeDouble(dt);
+			header.writeInt(elements);
+			for (int i = 0; i < elements; i++) {
+				header.writeUTF(names[i]);
+				header.writeUTF(null != types && null != types[i] ? types[i] : "");
+			}
+			header.flush();
+			write(ByteBuffer.wrap(bytes.toByteArray()));
+		} catch (IOException e) {
+			throw new ExtenderException(e, "Failed to create run result file {0}", file);
+		}
+		thread = new Thread(this::writeBlocks, "Run result writer " + file.getFileName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Create a file with the header of a run and the default number of rows in a block
+	 *
+	 * @see #RunResultWriter(Path, String, String, double, String[], String[], int)
+	 */
+	public RunResultWriter(Path file, String modelName, String modelVersion, double dt,
+			String[] names, String[] types) throws ExtenderException {
+		this(file, modelName, modelVersion, dt, names, types, RunResultFormat.DEFAULT_BLOCK_ROWS);
+	}
+
+	/**
+	 * Append the values of all model elements at a step
+	 *
+	 * @param step the step of the row
+	 * @param values value of each model element in row order
+	 * @throws ExtenderException if writing a previous block failed or the writer is closed
+	 */
+	public void append(double step, double[] values) throws ExtenderException {
+
+		if (closed) {
+			throw new ExtenderException("Run result file {0} is closed", file);
+		}
+		checkFailure();
+		if (null == block) {
+			block = free.poll();
+			if (null == block) {
+				block = new Block(blockRows, elements);
+			}
+			block.rows = 0;
+		}
+		int row = block.rows++;
+		block.steps[row] = step;
+		for (int i = 0; i < elements; i++) {
+			block.columns[i][row] = values[i];
+		}
+		rowCount++;
+		if (block.rows == blockRows) {
+			queue(block);
+			block = null;
+		}
+	}
+
+	/**
+	 * Number of rows appended
+	 *
+	 * @return the number of rows appended to this writer
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Write the last block and the footer, and close the file. Closing a closed writer has no effect
+	 *
+	 * @throws ExtenderException if writing failed
+	 */
+	@Override
+	public void close() throws ExtenderException {
+
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (null != block && block.rows > 0 && null == failure) {
+				queue(block);
+			}
+			block = null;
+			queue(END);
+			thread.join();
+			checkFailure();
+			writeFooter();
+		} catch (InterruptedException e) {
+			thread.interrupt();
+			Thread.currentThread().interrupt();
+			throw new ExtenderException(e, "Interrupted while closing run result file {0}", file);
+		} catch (IOException e) {
+			throw new ExtenderException(e, "Failed to write run result file {0}", file);
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Already reported or the file is complete
+			}
+		}
+	}
+
+	private void queue(Block block) throws ExtenderException {
+
+		try {
+			while (!written.offer(block, 100, TimeUnit.MILLISECONDS)) {
+				checkFailure();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExtenderException(e, "Interrupted while writing run result file {0}", file);
+		}
+	}
+
+	private void checkFailure() throws ExtenderException {
+
+		Throwable failure = this.failure;
+		if (null != failure) {
+			throw new ExtenderException(failure, "Failed to write run result file {0}", file);
+		}
+	}
+
+	/**
+	 * Executed by the writer thread until the end of the blocks is received or writing fails
+	 */
+	private void writeBlocks() {
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) (RunResultFormat.BLOCK_HEADER_BYTES
+				+ RunResultFormat.blockBytes(blockRows, elements)));
+		long firstRow = 0;
+		try {
+			for (Block block = written.take(); block != END; block = written.take()) {
+				int rows = block.rows;
+				buffer.clear();
+				buffer.putInt(RunResultFormat.BLOCK_MAGIC);
+				buffer.putInt(rows);
+				DoubleBuffer values = buffer.asDoubleBuffer();
+				values.put(block.steps, 0, rows);
+				for (int i = 0; i < elements; i++) {
+					values.put(block.columns[i], 0, rows);
+				}
+				buffer.position(0);
+				buffer.limit((int) (RunResultFormat.BLOCK_HEADER_BYTES + RunResultFormat.blockBytes(
+						rows, elements)));
+				long offset = channel.position();
+				write(buffer);
+				blockIndex.add(new long[] { offset, firstRow, rows });
+				firstRow += rows;
+				free.offer(block);
+			}
+		} catch (IOException | RuntimeException e) {
+			failure = e;
+			written.clear();
+		} catch (InterruptedException e) {
+			failure = e;
+		}
+	}
+
+	private void writeFooter() throws IOException {
+
+		ByteBuffer footer = ByteBuffer.allocate(4 + 8 + 4 + blockIndex.size() * 16 + 8);
+		long offset = channel.position();
+		footer.putInt(RunResultFormat.FOOTER_MAGIC);
+		footer.putLong(rowCount);
+		footer.putInt(blockIndex.size());
+		for (long[] entry : blockIndex) {
+			footer.putLong(entry[0]);
+			footer.putInt((int) entry[1]);
+			footer.putInt((int) entry[2]);
+		}
+		footer.putLong(offset);
+		footer.flip();
+		write(footer);
+		channel.force(false);
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,406 @@
+package no.javatime.core.model.series;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * Pushes the rows of a simulation run to {@link SeriesSubscriber subscribers} in
+ * {@link StepBatch batches} while the run executes, in the style of
+ * <code>java.util.concurrent.Flow</code>.
+ * <p>
+ * Each published step is appended to the open batch of each subscription on the simulation thread.
+ * When a batch is full it is handed to the subscription, and delivered to the subscriber on the
+ * executor of the subscription as requested by the subscriber. A subscriber that does not keep up
+ * is handled according to the {@link Backpressure backpressure} of its subscription: waiting
+ * batches are coalesced, or the simulation is throttled to the pace of the subscriber. At most
+ * {@link #MAX_PENDING_BATCHES} batches of rows wait for each subscriber. A throttled simulation
+ * waits at most {@link #MAX_THROTTLE_MILLIS} for a subscriber before its batches are coalesced.
+ * <p>
+ * A subscription lasts for one run. When the run terminates the open batches are delivered and
+ * the subscribers are completed.
+ */
+public final class SeriesPublisher {
+
+	/** Default number of rows in a batch */
+	public final static int DEFAULT_BATCH_ROWS = 256;
+
+	/** Number of full batches of rows waiting for a subscriber before backpressure applies */
+	public final static int MAX_PENDING_BATCHES = 4;
+
+	/** Milliseconds a throttled simulation waits at most for a subscriber to request a batch */
+	public final static long MAX_THROTTLE_MILLIS = 1000L;
+
+	private final CopyOnWriteArrayList<BatchSubscription> subscriptions =
+			new CopyOnWriteArrayList<>();
+	/** The values of the last published row. Used by the simulation thread */
+	private double[] row;
+
+	/**
+	 * Subscribe with the default batch size, coalescing batches and delivering them on the common
+	 * fork join pool
+	 *
+	 * @param subscriber receiving the batches of the current or next run
+	 * @return the subscription
+	 * @see #subscribe(SeriesSubscriber, Executor, int, Backpressure)
+	 */
+	public SeriesSubscription subscribe(SeriesSubscriber subscriber) {
+		return subscribe(subscriber, ForkJoinPool.commonPool(), DEFAULT_BATCH_ROWS,
+				Backpressure.COALESCE);
+	}
+
+	/**
+	 * Subscribe to the batches of the current or next run
+	 *
+	 * @param subscriber receiving the batches
+	 * @param executor executing the methods of the subscriber
+	 * @param batchRows number of rows in a full batch
+	 * @param backpressure handling of batches the subscriber has not requested
+	 * @return the subscription
+	 */
+	public SeriesSubscription subscribe(SeriesSubscriber subscriber, Executor executor,
+			int batchRows, Backpressure backpressure) {
+
+		BatchSubscription subscription = new BatchSubscription(subscriber, executor, Math.max(1,
+				batchRows), backpressure);
+		subscriptions.add(subscription);
+		subscription.signal();
+		return subscription;
+	}
+
+	/**
+	 * Whether there are subscribers to the current run
+	 *
+	 * @return true if at least one subscription is active
+	 */
+	public boolean hasSubscribers() {
+		return !subscriptions.isEmpty();
+	}
+
+	/**
+	 * Append the last row of the specified store to the open batch of each subscription. Called by
+	 * the simulation after the values of a step have been published
+	 *
+	 * @param store the store of the run
+	 */
+	public void publish(SeriesStore store) {
+
+		if (subscriptions.isEmpty()) {
+			return;
+		}
+		TimeAxis axis = store.getAxis();
+		int last = axis.size() - 1;
+		if (last < 0) {
+			return;
+		}
+		long position = axis.getCount() - 1;
+		double step = axis.get(last);
+		List<Extender<?>> elements = store.getElements();
+		row = store.getRow(last, row);
+		for (BatchSubscription subscription : subscriptions) {
+			subscription.add(position, step, elements, row);
+		}
+	}
+
+	/**
+	 * Deliver the open batches and terminate all subscriptions. Called by the simulation when the
+	 * run has terminated
+	 *
+	 * @param failure the cause of a failed run or null if the run completed
+	 */
+	public void complete(Throwable failure) {
+
+		for (BatchSubscription subscription : subscriptions) {
+			subscription.complete(failure);
+		}
+		subscriptions.clear();
+	}
+
+	/**
+	 * Merge two consecutive batches, keeping at most the specified number of the newest rows
+	 */
+	static StepBatch merge(StepBatch first, StepBatch second, int maxRows) {
+
+		int total = first.size() + second.size();
+		int rows = Math.min(total, maxRows);
+		int drop = total - rows;
+		int elements = first.getElements().size();
+		double[] steps = new double[rows];
+		double[][] values = new double[elements][rows];
+		int fromFirst = Math.max(0, first.size() - drop);
+		int skipSecond = Math.max(0, drop - first.size());
+		System.arraycopy(first.getSteps(), drop - skipSecond, steps, 0, fromFirst);
+		System.arraycopy(second.getSteps(), skipSecond, steps, fromFirst, rows - fromFirst);
+		for (int id = 0; id < elements; id++) {
+			System.arraycopy(first.getValues()[id], drop - skipSecond, values[id], 0, fromFirst);
+			System.arraycopy(second.getValues()[id], skipSecond, values[id], fromFirst, rows
+					- fromFirst);
+		}
+		long firstRow = fromFirst > 0 ? first.getFirstRow() + drop : second.getFirstRow()
+				+ skipSecond;
+		return new StepBatch(firstRow, rows, steps, first.getElements(), values);
+	}
+
+	/**
+	 * Collects the rows of a subscriber on the simulation thread, and delivers them on the executor
+	 * of the subscriber. Waiting batches, demand and termination are guarded by the subscription
+	 */
+	private final class BatchSubscription implements SeriesSubscription, Runnable {
+
+		private final SeriesSubscriber subscriber;
+		private final Executor executor;
+		private final int batchRows;
+		private final Backpressure backpressure;
+		private final int maxPendingRows;
+		/** Serializes the delivery to the subscriber */
+		private final AtomicInteger work = new AtomicInteger();
+
+		// The open batch. Used by the simulation thread
+		private List<Extender<?>> elements;
+		private double[] steps;
+		private double[][] values;
+		private long firstRow;
+		private int rows;
+
+		// Guarded by this subscription
+		private final ArrayDeque<StepBatch> pending = new ArrayDeque<>();
+		private int pendingRows;
+		private long demand;
+		private boolean done;
+		private Throwable failure;
+		private long droppedRows;
+		/** True when a throttled subscriber did not request a batch in time */
+		private boolean stalled;
+		private volatile boolean cancelled;
+
+		// Used by the delivering thread
+		private boolean subscribed;
+		private boolean terminated;
+
+		BatchSubscription(SeriesSubscriber subscriber, Executor executor, int batchRows,
+				Backpressure backpressure) {
+			this.subscriber = subscriber;
+			this.executor = executor;
+			this.batchRows = batchRows;
+			this.backpressure = backpressure;
+			this.maxPendingRows = batchRows * MAX_PENDING_BATCHES;
+		}
+
+		@Override
+		public void request(long n) {
+
+			if (n <= 0) {
+				throw new IllegalArgumentException("Requested batches must be positive: " + n);
+			}
+			synchronized (this) {
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			}
+			signal();
+		}
+
+		@Override
+		public void cancel() {
+
+			synchronized (this) {
+				cancelled = true;
+				pending.clear();
+				pendingRows = 0;
+				// Release a throttled simulation
+				notifyAll();
+			}
+			subscriptions.remove(this);
+		}
+
+		@Override
+		public synchronized long getDroppedRows() {
+			return droppedRows;
+		}
+
+		/**
+		 * Append a row to the open batch
+		 */
+		void add(long position, double step, List<Extender<?>> elements, double[] row) {
+
+			if (cancelled) {
+				return;
+			}
+			if (rows > 0 && elements.size() != this.elements.size()) {
+				// A model element was recorded after the batch was opened
+				flush();
+			}
+			if (rows == 0) {
+				this.elements = elements;
+				steps = new double[batchRows];
+				values = new double[elements.size()][batchRows];
+				firstRow = position;
+			}
+			steps[rows] = step;
+			for (int id = 0; id < values.length; id++) {
+				values[id][rows] = row[id];
+			}
+			if (++rows == batchRows) {
+				flush();
+			}
+		}
+
+		void complete(Throwable failure) {
+
+			flush();
+			synchronized (this) {
+				done = true;
+				this.failure = failure;
+			}
+			signal();
+		}
+
+		/**
+		 * Hand the open batch over to the delivering thread, applying backpressure if the subscriber
+		 * is behind
+		 */
+		private void flush() {
+
+			if (rows == 0) {
+				return;
+			}
+			StepBatch batch = new StepBatch(firstRow, rows, steps, elements, values);
+			rows = 0;
+			steps = null;
+			values = null;
+			synchronized (this) {
+				if (backpressure == Backpressure.THROTTLE && !stalled) {
+					long deadline = System.nanoTime()
+							+ TimeUnit.MILLISECONDS.toNanos(MAX_THROTTLE_MILLIS);
+					while (!cancelled && pendingRows >= maxPendingRows) {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0) {
+							// Coalesce until the subscriber requests a batch again
+							stalled = true;
+							break;
+						}
+						try {
+							TimeUnit.NANOSECONDS.timedWait(this, remaining);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							break;
+						}
+					}
+				}
+				if (cancelled) {
+					return;
+				}
+				StepBatch last = pending.peekLast();
+				boolean coalesce = backpressure == Backpressure.COALESCE || pendingRows >= maxPendingRows;
+				if (coalesce && null != last
+						&& last.getElements().size() == batch.getElements().size()) {
+					pending.pollLast();
+					pendingRows -= last.size();
+					int merged = last.size() + batch.size();
+					// Rows left for the last batch, keeping at least a full batch of the newest rows
+					batch = merge(last, batch, Math.max(batchRows, maxPendingRows - pendingRows));
+					droppedRows += merged - batch.size();
+				}
+				pending.add(batch);
+				pendingRows += batch.size();
+			}
+			signal();
+		}
+
+		/**
+		 * Schedule delivery on the executor unless it is already scheduled
+		 */
+		void signal() {
+
+			if (work.getAndIncrement() == 0) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					work.set(0);
+					cancel();
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+
+			int missed = 1;
+			do {
+				deliver();
+				missed = work.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void deliver() {
+
+			if (!subscribed) {
+				subscribed = true;
+				if (!call(null, false)) {
+					return;
+				}
+			}
+			while (true) {
+				StepBatch batch = null;
+				boolean complete = false;
+				synchronized (this) {
+					if (cancelled || terminated) {
+						return;
+					}
+					if (demand > 0 && !pending.isEmpty()) {
+						batch = pending.poll();
+						pendingRows -= batch.size();
+						if (demand != Long.MAX_VALUE) {
+							demand--;
+						}
+						stalled = false;
+						notifyAll();
+					} else if (done && pending.isEmpty()) {
+						terminated = true;
+						complete = true;
+					} else {
+						return;
+					}
+				}
+				if (!call(batch, complete) || complete) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Call the subscriber. A subscriber throwing an exception is cancelled
+		 *
+		 * @return false if the subscriber failed
+		 */
+		private boolean call(StepBatch batch, boolean complete) {
+
+			try {
+				if (null != batch) {
+					subscriber.onNext(batch);
+				} else if (complete) {
+					Throwable failure;
+					synchronized (this) {
+						failure = this.failure;
+					}
+					if (null != failure) {
+						subscriber.onError(failure);
+					} else {
+						subscriber.onComplete();
+					}
+				} else {
+					subscriber.onSubscribe(this);
+				}
+				return true;
+			} catch (RuntimeException e) {
+				cancel();
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package no.javatime.core.model.series;
+
+import java.util.Collections;
+import java.util.List;
+
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * A consistent view of the complete rows of a {@link SeriesStore store} at the time the snapshot
+ * was taken.
+ * <p>
+ * The steps and the values of the snapshot are read from the store without copying them, and all
+ * views of a snapshot have the same number of rows, also while the simulation continues to append
+ * rows to the store. A snapshot is taken and read by any thread without blocking the writer.
+ *
+ * @see SeriesStore#snapshot()
+ */
+public final class SeriesSnapshot {
+
+	private final SeriesView steps;
+	private final List<Extender<?>> elements;
+	private final SeriesView[] columns;
+	private final MinMaxPyramid[] pyramids;
+
+	/**
+	 * Create a snapshot of the specified views
+	 *
+	 * @param steps the steps of the rows
+	 * @param elements the model elements in column order
+	 * @param columns the values of each model element. A column with fewer values than the steps
+	 * reads as <code>NaN</code> in the rows it does not have
+	 */
+	public SeriesSnapshot(SeriesView steps, List<Extender<?>> elements, SeriesView[] columns) {
+		this(steps, elements, columns, null);
+	}
+
+	/**
+	 * Create a snapshot of the specified views, where long ranges are decimated using the specified
+	 * pyramids
+	 *
+	 * @param steps the steps of the rows
+	 * @param elements the model elements in column order
+	 * @param columns the values of each model element
+	 * @param pyramids the aggregates of each column, where bucket positions are row positions of the
+	 * snapshot, or null if the columns have no pyramids
+	 */
+	public SeriesSnapshot(SeriesView steps, List<Extender<?>> elements, SeriesView[] columns,
+			MinMaxPyramid[] pyramids) {
+		this.steps = steps;
+		this.elements = Collections.unmodifiableList(elements);
+		this.columns = columns;
+		this.pyramids = pyramids;
+	}
+
+	/**
+	 * Number of rows in this snapshot
+	 *
+	 * @return the number of steps
+	 */
+	public int getRowCount() {
+		return steps.size();
+	}
+
+	/**
+	 * The model elements of this snapshot
+	 *
+	 * @return an unmodifiable list where model element <code>i</code> has id <code>i</code>
+	 */
+	public List<Extender<?>> getElements() {
+		return elements;
+	}
+
+	/**
+	 * The id of the specified model element in this snapshot
+	 *
+	 * @param extender the model element
+	 * @return the id of the model element or -1 if the model element is not in this snapshot
+	 */
+	public int getId(Extender<?> extender) {
+		return elements.indexOf(extender);
+	}
+
+	/**
+	 * The steps of this snapshot
+	 *
+	 * @return a view of the steps
+	 */
+	public SeriesView getStepsView() {
+		return steps;
+	}
+
+	/**
+	 * The values of the model element with the specified id
+	 *
+	 * @param id id of a model element in this snapshot
+	 * @return a view of the values of the model element. May have fewer rows than the snapshot if
+	 * the model element was recorded after the first step
+	 */
+	public SeriesView getSeriesView(int id) {
+		return columns[id];
+	}
+
+	/**
+	 * The values of the specified model element
+	 *
+	 * @param extender the model element
+	 * @return a view of the values of the model element or null if the model element is not in this
+	 * snapshot
+	 */
+	public SeriesView getSeriesView(Extender<?> extender) {
+
+		int id = getId(extender);
+		return id >= 0 ? columns[id] : null;
+	}
+
+	/**
+	 * Reduce a range of the values of the model element with the specified id to at most the
+	 * specified number of points for plotting
+	 *
+	 * @param id id of a model element in this snapshot
+	 * @param from position of the first row
+	 * @param to position after the last row
+	 * @param points maximum number of points
+	 * @return the steps of the points at index 0 and the values of the points at index 1
+	 * @see Decimation
+	 */
+	public double[][] decimate(int id, int from, int to, int points) {
+
+		MinMaxPyramid pyramid = null != pyramids && id < pyramids.length ? pyramids[id] : null;
+		return Decimation.decimate(steps, columns[id], pyramid, from, to, points);
+	}
+
+	/**
+	 * The smallest and the largest value in a range of the values of the model element with the
+	 * specified id, read from the pyramid of the values when the snapshot has one
+	 *
+	 * @param id id of a model element in this snapshot
+	 * @param from position of the first row
+	 * @param to position after the last row
+	 * @return the smallest value at index 0 and the largest value at index 1, or <code>NaN</code> if
+	 * the range has no values
+	 * @see Decimation#range(SeriesView, MinMaxPyramid, int, int)
+	 */
+	public double[] range(int id, int from, int to) {
+
+		MinMaxPyramid pyramid = null != pyramids && id < pyramids.length ? pyramids[id] : null;
+		return Decimation.range(columns[id], pyramid, from, Math.min(to, steps.size()));
+	}
+
+	/**
+	 * Iterate the rows in the specified range of this snapshot
+	 *
+	 * @param from position of the first row
+	 * @param to position after the last row
+	 * @return a cursor positioned before the first row
+	 */
+	public RowCursor rows(int from, int to) {
+		return new RowCursor(steps, columns, from, to);
+	}
+}
@@ -0,0 +1,174 @@
+package no.javatime.core.model.series;
+
+/**
+ * Running aggregates of a sequence of values, updated in constant time and space for each value.
+ * <p>
+ * The mean and the variance are accumulated with Welford's algorithm, which stays accurate for
+ * long sequences where summing the squares would lose precision. <code>NaN</code> values are
+ * counted as missing and are not part of the aggregates.
+ */
+public final class SeriesStatistics {
+
+	private long count;
+	private long missing;
+	private double first = Double.NaN;
+	private double last = Double.NaN;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+	private double sum;
+	private double mean;
+	/** Sum of the squared differences from the mean */
+	private double m2;
+
+	/**
+	 * Add a value to the aggregates
+	 *
+	 * @param value the next value of the sequence
+	 */
+	public void add(double value) {
+
+		if (Double.isNaN(value)) {
+			missing++;
+			return;
+		}
+		if (count == 0) {
+			first = min = max = value;
+		} else if (value < min) {
+			min = value;
+		} else if (value > max) {
+			max = value;
+		}
+		last = value;
+		count++;
+		sum += value;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+	}
+
+	/**
+	 * Remove all values from the aggregates
+	 */
+	public void clear() {
+
+		count = missing = 0;
+		first = last = min = max = Double.NaN;
+		sum = mean = m2 = 0d;
+	}
+
+	/**
+	 * Aggregates of all values in the specified view
+	 *
+	 * @param view the values to aggregate
+	 * @return the aggregates of the values
+	 */
+	public static SeriesStatistics of(SeriesView view) {
+
+		SeriesStatistics statistics = new SeriesStatistics();
+		for (int i = 0; i < view.size(); i++) {
+			statistics.add(view.get(i));
+		}
+		return statistics;
+	}
+
+	/**
+	 * Number of values in the aggregates
+	 *
+	 * @return the number of values that are not <code>NaN</code>
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Number of missing values
+	 *
+	 * @return the number of <code>NaN</code> values added
+	 */
+	public long getMissing() {
+		return missing;
+	}
+
+	/**
+	 * @return the first value or <code>NaN</code> if there are no values
+	 */
+	public double getFirst() {
+		return first;
+	}
+
+	/**
+	 * @return the last value or <code>NaN</code> if there are no values
+	 */
+	public double getLast() {
+		return last;
+	}
+
+	/**
+	 * @return the smallest value or <code>NaN</code> if there are no values
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * @return the largest value or <code>NaN</code> if there are no values
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return the mean of the values or <code>NaN</code> if there are no values
+	 */
+	public double getMean() {
+		return count > 0 ? mean : Double.NaN;
+	}
+
+	/**
+	 * The population variance of the values
+	 *
+	 * @return the variance or <code>NaN</code> if there are no values
+	 */
+	public double getVariance() {
+		return count > 0 ? m2 / count : Double.NaN;
+	}
+
+	/**
+	 * The population standard deviation of the values
+	 *
+	 * @return the standard deviation or <code>NaN</code> if there are no values
+	 */
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * A copy of the current aggregates
+	 *
+	 * @return aggregates that are not updated by values added to this instance
+	 */
+	public SeriesStatistics copy() {
+
+		SeriesStatistics copy = new SeriesStatistics();
+		copy.count = count;
+		copy.missing = missing;
+		copy.first = first;
+		copy.last = last;
+		copy.min = min;
+		copy.max = max;
+		copy.sum = sum;
+		copy.mean = mean;
+		copy.m2 = m2;
+		return copy;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + " min=" + min + " max=" + max + " mean=" + getMean() + " sd="
+				+ getStandardDeviation();
+	}
+}
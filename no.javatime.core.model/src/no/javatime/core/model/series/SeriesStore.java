@@ -0,0 +1,335 @@
+package no.javatime.core.model.series;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * A columnar store of time series values.
+ * <p>
+ * Each recorded model element is assigned a dense id, in the order the model elements are first
+ * recorded, and its values are kept in a {@link Column column} at the position of the id.
+ * Values are appended by id without boxing and without a map lookup, and the steps are kept once
+ * for all columns in a {@link TimeAxis time axis}. Columns and the time axis are read through
+ * {@link SeriesView views} without copying the values.
+ * <p>
+ * Columns are created by the {@link ColumnFactory column factory} of the store. By default the
+ * values are kept on the heap. With a {@link MappedColumnFactory} they are kept in memory mapped
+ * files, so recorded time series may exceed the heap, and with {@link ColumnFactory#COMPRESSED}
+ * they are kept compressed on the heap. With a {@link RingColumnFactory} only the last steps are
+ * kept, together with {@link #getStatistics(int) aggregates} of the whole run.
+ * <p>
+ * Unless only the last steps are kept, the store maintains a {@link MinMaxPyramid pyramid} of the
+ * smallest and largest values of each column as values are appended, so a long range of a column
+ * is {@link Decimation decimated} for plotting without reading all its values.
+ * <p>
+ * The store is written by one thread at a time, and may be read by any number of threads while it
+ * is written without locking and without blocking the writer. Columns and the time axis publish
+ * appended values by their size, and the store publishes the number of complete rows when the
+ * writer {@link #publish() publishes} a step. A {@link #snapshot() snapshot} reads the complete
+ * rows at the time it was taken, so all its views have the same number of rows.
+ */
+public final class SeriesStore {
+
+	private final Map<Extender<?>, Integer> ids = new ConcurrentHashMap<>();
+	/** Replaced when a model element is registered */
+	private volatile Extender<?>[] elements = new Extender<?>[0];
+	/** Replaced when a model element is registered */
+	private volatile Column[] columns = new Column[0];
+	/** Replaced when a model element is registered. Null entries when the columns drop values */
+	private volatile MinMaxPyramid[] pyramids = new MinMaxPyramid[0];
+	private final TimeAxis axis = new TimeAxis();
+	private ColumnFactory columnFactory = ColumnFactory.HEAP;
+	/** Number of steps where all values have been appended */
+	private volatile long published;
+
+	/**
+	 * The factory creating the columns of this store
+	 *
+	 * @return the column factory of this store
+	 */
+	public ColumnFactory getColumnFactory() {
+		return columnFactory;
+	}
+
+	/**
+	 * Set the factory creating columns for model elements recorded after this call. Columns of model
+	 * elements already recorded are kept until the store is cleared
+	 *
+	 * @param columnFactory the column factory. {@link ColumnFactory#HEAP} if null
+	 */
+	public void setColumnFactory(ColumnFactory columnFactory) {
+		this.columnFactory = null != columnFactory ? columnFactory : ColumnFactory.HEAP;
+		axis.setColumnFactory(this.columnFactory);
+	}
+
+	/**
+	 * Get the id of the specified model element, assigning the next id if the model element has not
+	 * been recorded before
+	 *
+	 * @param extender the model element
+	 * @return the dense id of the model element
+	 */
+	public int register(Extender<?> extender) {
+
+		Integer id = ids.get(extender);
+		if (null == id) {
+			Column[] columns = this.columns;
+			id = columns.length;
+			Extender<?>[] elements = Arrays.copyOf(this.elements, id + 1);
+			elements[id] = extender;
+			columns = Arrays.copyOf(columns, id + 1);
+			columns[id] = columnFactory.create(extender.getServiceClass().getSimpleName());
+			MinMaxPyramid[] pyramids = Arrays.copyOf(this.pyramids, id + 1);
+			pyramids[id] = columnFactory.getCapacity() == Integer.MAX_VALUE ? new MinMaxPyramid()
+					: null;
+			this.elements = elements;
+			this.pyramids = pyramids;
+			this.columns = columns;
+			ids.put(extender, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Get the id of the specified model element
+	 *
+	 * @param extender the model element
+	 * @return the dense id of the model element or -1 if the model element has not been recorded
+	 */
+	public int getId(Extender<?> extender) {
+
+		Integer id = ids.get(extender);
+		return null != id ? id : -1;
+	}
+
+	/**
+	 * Append a value to the column of the model element with the specified id
+	 *
+	 * @param id the id of a registered model element
+	 * @param value the value at the current step
+	 */
+	public void add(int id, double value) {
+
+		columns[id].add(value);
+		MinMaxPyramid pyramid = pyramids[id];
+		if (null != pyramid) {
+			pyramid.add(value);
+		}
+	}
+
+	/**
+	 * Append a value to the column of the specified model element, registering the model element if
+	 * it has not been recorded before
+	 *
+	 * @param extender the model element
+	 * @param value the value at the current step
+	 */
+	public void add(Extender<?> extender, double value) {
+		add(register(extender), value);
+	}
+
+	/**
+	 * Append a step to the time axis
+	 *
+	 * @param step the current step
+	 */
+	public void addStep(double step) {
+		axis.add(step);
+	}
+
+	/**
+	 * Publish the current step to {@link #snapshot() snapshots}, after all values of the step have
+	 * been appended
+	 */
+	public void publish() {
+		published = axis.getCount();
+	}
+
+	/**
+	 * Take a snapshot of the published steps without copying the values. The snapshot reads the
+	 * rows published when it was taken, regardless of the rows appended after it was taken
+	 * <p>
+	 * When the columns drop their oldest values, values dropped after the snapshot was taken read as
+	 * <code>NaN</code>
+	 *
+	 * @return a snapshot of the published rows
+	 */
+	public SeriesSnapshot snapshot() {
+
+		long published = this.published;
+		Extender<?>[] elements = this.elements;
+		Column[] columns = this.columns;
+		MinMaxPyramid[] pyramids = this.pyramids;
+		int rows = (int) Math.min(published, columnFactory.getCapacity());
+		long first = published - rows;
+		SeriesView[] views = new SeriesView[columns.length];
+		for (int id = 0; id < views.length; id++) {
+			long count = Math.min(columns[id].getCount(), published);
+			views[id] = count > first ? columns[id].window(first, (int) (count - first)) : SeriesView
+					.of(new double[0]);
+		}
+		return new SeriesSnapshot(axis.window(first, rows), Arrays.asList(elements), views, first == 0
+				? pyramids : null);
+	}
+
+	/**
+	 * Number of recorded model elements
+	 *
+	 * @return the number of columns
+	 */
+	public int getElementCount() {
+		return columns.length;
+	}
+
+	/**
+	 * The recorded model elements ordered by id
+	 *
+	 * @return an unmodifiable list where model element <code>i</code> has id <code>i</code>
+	 */
+	public List<Extender<?>> getElements() {
+		return Collections.unmodifiableList(Arrays.asList(elements));
+	}
+
+	/**
+	 * The model element with the specified id
+	 *
+	 * @param id id of a recorded model element
+	 * @return the model element with the specified id
+	 */
+	public Extender<?> getElement(int id) {
+		return elements[id];
+	}
+
+	/**
+	 * The column of the model element with the specified id
+	 *
+	 * @param id id of a recorded model element
+	 * @return the values of the model element
+	 */
+	public Column getColumn(int id) {
+		return columns[id];
+	}
+
+	/**
+	 * Aggregates of all values of the model element with the specified id
+	 *
+	 * @param id id of a recorded model element
+	 * @return the aggregates of the values recorded since the store was cleared
+	 */
+	public SeriesStatistics getStatistics(int id) {
+		return columns[id].getStatistics();
+	}
+
+	/**
+	 * The pyramid of the smallest and largest values of the model element with the specified id
+	 *
+	 * @param id id of a recorded model element
+	 * @return the pyramid of the values or null if the columns of this store drop their oldest
+	 * values
+	 */
+	public MinMaxPyramid getPyramid(int id) {
+		return pyramids[id];
+	}
+
+	/**
+	 * The time axis of this store
+	 *
+	 * @return the recorded steps
+	 */
+	public TimeAxis getAxis() {
+		return axis;
+	}
+
+	/**
+	 * A view of the values of the specified model element without copying them
+	 *
+	 * @param extender the model element
+	 * @return a view of the values of the model element or null if the model element has not been
+	 * recorded
+	 */
+	public SeriesView view(Extender<?> extender) {
+
+		int id = getId(extender);
+		return id >= 0 ? columns[id].view() : null;
+	}
+
+	/**
+	 * Copy the values of all model elements at the specified row to an array
+	 *
+	 * @param row position of the row on the time axis
+	 * @param values array receiving the value of model element <code>i</code> at position
+	 * <code>i</code>, or null
+	 * @return the specified array or a new array if the specified array is null or too short. Model
+	 * elements without a value at the row read as <code>NaN</code>
+	 */
+	public double[] getRow(int row, double[] values) {
+
+		Column[] columns = this.columns;
+		int count = columns.length;
+		if (null == values || values.length < count) {
+			values = new double[count];
+		}
+		for (int id = 0; id < count; id++) {
+			Column column = columns[id];
+			values[id] = row >= 0 && row < column.size() ? column.get(row) : Double.NaN;
+		}
+		return values;
+	}
+
+	/**
+	 * Iterate the rows in the specified range of the time axis
+	 *
+	 * @param from position of the first row
+	 * @param to position after the last row
+	 * @return a cursor positioned before the first row
+	 */
+	public RowCursor rows(int from, int to) {
+
+		Column[] columns = this.columns;
+		SeriesView[] views = new SeriesView[columns.length];
+		for (int id = 0; id < views.length; id++) {
+			views[id] = columns[id].view();
+		}
+		return new RowCursor(axis.view(), views, from, to);
+	}
+
+	/**
+	 * Remove all model elements, values and steps. Values recorded after the store is cleared are
+	 * kept in new columns, and snapshots and views taken before the store was cleared keep reading
+	 * the columns they were taken from. The storage of the dropped columns is released when they are
+	 * no longer reachable
+	 */
+	public void clear() {
+
+		published = 0;
+		ids.clear();
+		this.elements = new Extender<?>[0];
+		this.pyramids = new MinMaxPyramid[0];
+		this.columns = new Column[0];
+		axis.clear();
+	}
+
+	/**
+	 * Remove all model elements, values and steps and release the storage of the columns now, e.g.
+	 * deleting the files of memory mapped columns. Snapshots and views of the store are not read
+	 * after the store has been released
+	 */
+	public void release() {
+
+		Column[] columns = this.columns;
+		published = 0;
+		ids.clear();
+		this.elements = new Extender<?>[0];
+		this.pyramids = new MinMaxPyramid[0];
+		this.columns = new Column[0];
+		axis.release();
+		for (Column column : columns) {
+			column.release();
+		}
+	}
+}
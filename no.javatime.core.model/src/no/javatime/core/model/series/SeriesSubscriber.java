@@ -0,0 +1,37 @@
+package no.javatime.core.model.series;
+
+/**
+ * Receives the recorded steps of a simulation run in {@link StepBatch batches} pushed by a
+ * {@link SeriesPublisher publisher}, in the style of <code>java.util.concurrent.Flow</code>.
+ * <p>
+ * The methods of a subscription are called on the executor of the subscription, one at a time and
+ * in order. Batches are delivered only as requested by {@link SeriesSubscription#request(long)}.
+ */
+public interface SeriesSubscriber {
+
+	/**
+	 * Called once before any other method
+	 *
+	 * @param subscription used to request batches and to cancel the subscription
+	 */
+	void onSubscribe(SeriesSubscription subscription);
+
+	/**
+	 * Receive the next batch of steps
+	 *
+	 * @param batch the rows recorded since the previous batch
+	 */
+	void onNext(StepBatch batch);
+
+	/**
+	 * The run terminated with a failure. No more methods are called
+	 *
+	 * @param failure the cause of the termination
+	 */
+	void onError(Throwable failure);
+
+	/**
+	 * The run has terminated and all batches have been delivered. No more methods are called
+	 */
+	void onComplete();
+}
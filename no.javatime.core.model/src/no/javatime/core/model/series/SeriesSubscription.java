@@ -0,0 +1,27 @@
+package no.javatime.core.model.series;
+
+/**
+ * The link between a {@link SeriesPublisher publisher} and a {@link SeriesSubscriber subscriber}
+ */
+public interface SeriesSubscription {
+
+	/**
+	 * Request the specified number of additional batches
+	 *
+	 * @param n number of batches. <code>Long.MAX_VALUE</code> requests all batches
+	 */
+	void request(long n);
+
+	/**
+	 * Stop receiving batches. Batches already waiting are discarded
+	 */
+	void cancel();
+
+	/**
+	 * Number of rows dropped from the batches waiting for the subscriber because the subscriber did
+	 * not keep up with the simulation
+	 *
+	 * @return the number of dropped rows, zero if the subscriber received all rows
+	 */
+	long getDroppedRows();
+}
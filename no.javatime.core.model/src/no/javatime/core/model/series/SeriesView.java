@@ -0,0 +1,77 @@
+package no.javatime.core.model.series;
+
+/**
+ * Read only access to a sequence of primitive values without copying them.
+ * <p>
+ * A view returned by a {@link DoubleColumn column} reads the values from the storage of the column.
+ * Values are copied only when explicitly requested by {@link #copyTo(int, double[], int, int)} or
+ * {@link #toArray()}.
+ */
+public interface SeriesView {
+
+	/**
+	 * Number of values in this view
+	 *
+	 * @return the number of values
+	 */
+	int size();
+
+	/**
+	 * Get the value at the specified position
+	 *
+	 * @param index position of the value in this view
+	 * @return the value at the specified position
+	 * @throws IndexOutOfBoundsException if the index is negative or not less than the size
+	 */
+	double get(int index);
+
+	/**
+	 * Copy a range of values in this view to the specified array
+	 *
+	 * @param from position in this view of the first value to copy
+	 * @param destination array receiving the values
+	 * @param position position in the array of the first value
+	 * @param length number of values to copy
+	 * @throws IndexOutOfBoundsException if the range is outside this view or the array
+	 */
+	void copyTo(int from, double[] destination, int position, int length);
+
+	/**
+	 * Copy all values in this view to a new array
+	 *
+	 * @return the values of this view
+	 */
+	default double[] toArray() {
+
+		double[] values = new double[size()];
+		copyTo(0, values, 0, values.length);
+		return values;
+	}
+
+	/**
+	 * A view of the specified array. The array is not copied
+	 *
+	 * @param values the values of the view
+	 * @return a view of the array
+	 */
+	static SeriesView of(final double[] values) {
+
+		return new SeriesView() {
+
+			@Override
+			public int size() {
+				return values.length;
+			}
+
+			@Override
+			public double get(int index) {
+				return values[index];
+			}
+
+			@Override
+			public void copyTo(int from, double[] destination, int position, int length) {
+				System.arraycopy(values, from, destination, position, length);
+			}
+		};
+	}
+}
@@ -0,0 +1,134 @@
+package no.javatime.core.model.series;
+
+import java.util.Collections;
+import java.util.List;
+
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * A range of consecutive rows of a simulation run pushed to {@link SeriesSubscriber subscribers}.
+ * <p>
+ * The steps and the values of each model element are primitive slices owned by the batch, so a
+ * subscriber may keep a batch after it has been received without copying it.
+ */
+public final class StepBatch {
+
+	private final long firstRow;
+	private final int rows;
+	private final double[] steps;
+	private final List<Extender<?>> elements;
+	private final double[][] values;
+
+	/**
+	 * Create a batch. The arrays are not copied
+	 *
+	 * @param firstRow position of the first row since the start of the run
+	 * @param rows number of rows in the batch
+	 * @param steps the steps of the rows. At least <code>rows</code> long
+	 * @param elements the model elements in the order of the values
+	 * @param values the values of each model element. Each at least <code>rows</code> long
+	 */
+	StepBatch(long firstRow, int rows, double[] steps, List<Extender<?>> elements,
+			double[][] values) {
+		this.firstRow = firstRow;
+		this.rows = rows;
+		this.steps = steps;
+		this.elements = Collections.unmodifiableList(elements);
+		this.values = values;
+	}
+
+	/**
+	 * Position of the first row of this batch since the start of the run. A gap between the rows of
+	 * two consecutive batches means the rows in between were dropped
+	 *
+	 * @return the position of the first row
+	 */
+	public long getFirstRow() {
+		return firstRow;
+	}
+
+	/**
+	 * Number of rows in this batch
+	 *
+	 * @return the number of rows
+	 */
+	public int size() {
+		return rows;
+	}
+
+	/**
+	 * The model elements of this batch
+	 *
+	 * @return an unmodifiable list where model element <code>i</code> has id <code>i</code>
+	 */
+	public List<Extender<?>> getElements() {
+		return elements;
+	}
+
+	/**
+	 * The steps of the rows of this batch
+	 *
+	 * @return a view of the steps
+	 */
+	public SeriesView getStepsView() {
+		return slice(steps);
+	}
+
+	/**
+	 * The values of the model element with the specified id in the rows of this batch
+	 *
+	 * @param id id of a model element in this batch
+	 * @return a view of the values of the model element
+	 */
+	public SeriesView getSeriesView(int id) {
+		return slice(values[id]);
+	}
+
+	/**
+	 * The values of the specified model element in the rows of this batch
+	 *
+	 * @param extender the model element
+	 * @return a view of the values of the model element or null if it is not in this batch
+	 */
+	public SeriesView getSeriesView(Extender<?> extender) {
+
+		int id = elements.indexOf(extender);
+		return id >= 0 ? slice(values[id]) : null;
+	}
+
+	double[] getSteps() {
+		return steps;
+	}
+
+	double[][] getValues() {
+		return values;
+	}
+
+	private SeriesView slice(final double[] array) {
+
+		return new SeriesView() {
+
+			@Override
+			public int size() {
+				return rows;
+			}
+
+			@Override
+			public double get(int index) {
+				if (index < 0 || index >= rows) {
+					throw new IndexOutOfBoundsException("Index: " + index + " Size: " + rows);
+				}
+				return array[index];
+			}
+
+			@Override
+			public void copyTo(int from, double[] destination, int position, int length) {
+				if (from < 0 || length < 0 || from + length > rows) {
+					throw new IndexOutOfBoundsException("From: " + from + " Length: " + length
+							+ " Size: " + rows);
+				}
+				System.arraycopy(array, from, destination, position, length);
+			}
+		};
+	}
+}
@@ -0,0 +1,272 @@
+package no.javatime.core.model.series;
+
+/**
+ * The steps of a time series store.
+ * <p>
+ * Simulation steps are usually uniform, where step <code>i</code> is
+ * <code>start + i * delta</code>. As long as the appended steps are uniform the axis only keeps the
+ * start, the delta and the number of steps, and the steps are derived when read. The first step
+ * that breaks the pattern materializes the axis into a {@link Column column} holding all steps,
+ * created by the {@link ColumnFactory#createAxis() column factory} of the axis.
+ * <p>
+ * The axis keeps at most the {@link ColumnFactory#getCapacity() capacity} of the columns of the
+ * column factory, and position zero is the oldest step kept.
+ * <p>
+ * The axis is written by one thread at a time and may be read by other threads while it is
+ * written. Appended steps are published by the number of steps, which is read before the column
+ * of the steps.
+ */
+public final class TimeAxis {
+
+	private double start;
+	private double delta;
+	/** Number of steps appended since the axis was created or cleared */
+	private volatile long count;
+	/** The steps appended after the axis was materialized, or null while the steps are uniform */
+	private volatile Column steps;
+	/** Position since the axis was created of the first step in the column of steps */
+	private long stepsOffset;
+	private ColumnFactory columnFactory = ColumnFactory.HEAP;
+
+	/**
+	 * Set the factory creating the column of the steps when they are not uniform
+	 *
+	 * @param columnFactory the column factory of the axis
+	 */
+	void setColumnFactory(ColumnFactory columnFactory) {
+		this.columnFactory = columnFactory;
+	}
+
+	/**
+	 * Append a step to the end of this axis
+	 *
+	 * @param step the step to append
+	 */
+	public void add(double step) {
+
+		long count = this.count;
+		Column steps = this.steps;
+		if (null == steps) {
+			if (count == 0) {
+				start = step;
+			} else if (count == 1) {
+				delta = step - start;
+			}
+			// Compared by bits, so negative zero is kept
+			if (count < 2 || Double.doubleToRawLongBits(step) == Double.doubleToRawLongBits(start
+					+ count * delta)) {
+				this.count = count + 1;
+				return;
+			}
+			long first = count - size(count);
+			steps = columnFactory.createAxis();
+			for (long i = first; i < count; i++) {
+				steps.add(start + i * delta);
+			}
+			stepsOffset = first;
+			this.steps = steps;
+		}
+		steps.add(step);
+		this.count = count + 1;
+	}
+
+	/**
+	 * Get the step at the specified position
+	 *
+	 * @param index position of the step
+	 * @return the step at the specified position
+	 * @throws IndexOutOfBoundsException if the index is negative or not less than the size
+	 */
+	public double get(int index) {
+
+		long count = this.count;
+		int size = size(count);
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+		}
+		return window(count - size + index, 1).get(0);
+	}
+
+	/**
+	 * Get the position of the specified step. Uniform steps are located by computing the position,
+	 * and other steps by a binary search, assuming increasing steps
+	 *
+	 * @param step a step
+	 * @return the position of the step or -1 if the step is not in this axis
+	 */
+	public int indexOf(double step) {
+
+		long count = this.count;
+		int size = size(count);
+		if (null == steps) {
+			if (size == 0) {
+				return -1;
+			}
+			long dropped = count - size;
+			if (count == 1 || delta == 0d) {
+				return step == start + dropped * delta ? 0 : -1;
+			}
+			long position = Math.round((step - start) / delta);
+			return position >= dropped && position < count && start + position * delta == step
+					? (int) (position - dropped) : -1;
+		}
+		SeriesView steps = window(count - size, size);
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			double value = steps.get(middle);
+			if (value < step) {
+				low = middle + 1;
+			} else if (value > step) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Number of steps in this axis
+	 *
+	 * @return the number of steps appended since the axis was created or cleared, but at most the
+	 * capacity of the axis
+	 */
+	public int size() {
+		return size(count);
+	}
+
+	private int size(long count) {
+		return (int) Math.min(count, columnFactory.getCapacity());
+	}
+
+	/**
+	 * Number of steps appended
+	 *
+	 * @return the number of steps appended since the axis was created or cleared, including steps
+	 * that are no longer kept
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Whether the steps are derived from the start and the delta
+	 *
+	 * @return true if all steps are uniform
+	 */
+	public boolean isUniform() {
+		return null == steps;
+	}
+
+	/**
+	 * The first step appended
+	 *
+	 * @return the first step appended or zero if the axis is empty
+	 */
+	public double getStart() {
+		return start;
+	}
+
+	/**
+	 * The distance between two consecutive steps when the steps are {@link #isUniform() uniform}
+	 *
+	 * @return the distance between steps or zero if there are less than two steps
+	 */
+	public double getDelta() {
+		return delta;
+	}
+
+	/**
+	 * A view of all steps currently in this axis without copying them
+	 *
+	 * @return a view of the steps
+	 */
+	public SeriesView view() {
+
+		long count = this.count;
+		int size = size(count);
+		return window(count - size, size);
+	}
+
+	/**
+	 * A view of a range of steps identified by their position since the axis was created or
+	 * cleared, without copying them
+	 *
+	 * @param first position since the axis was created of the first step in the view
+	 * @param length number of steps in the view
+	 * @return a view of the specified range
+	 * @throws IndexOutOfBoundsException if the range has not been appended
+	 */
+	public SeriesView window(final long first, final int length) {
+
+		if (first < 0 || length < 0 || first + length > count) {
+			throw new IndexOutOfBoundsException("First: " + first + " Length: " + length + " Count: "
+					+ count);
+		}
+		final double start = this.start;
+		final double delta = this.delta;
+		Column steps = this.steps;
+		// The steps preceding the column of steps are uniform
+		final int uniform = null == steps ? length : (int) Math.max(0L, Math.min(length,
+				stepsOffset - first));
+		final SeriesView tail = uniform < length ? steps.window(first + uniform - stepsOffset,
+				length - uniform) : null;
+		return new SeriesView() {
+
+			@Override
+			public int size() {
+				return length;
+			}
+
+			@Override
+			public double get(int index) {
+				if (index < 0 || index >= length) {
+					throw new IndexOutOfBoundsException("Index: " + index + " Size: " + length);
+				}
+				return index < uniform ? start + (first + index) * delta : tail.get(index - uniform);
+			}
+
+			@Override
+			public void copyTo(int from, double[] destination, int position, int count) {
+				if (from < 0 || count < 0 || from + count > length) {
+					throw new IndexOutOfBoundsException("From: " + from + " Length: " + count
+							+ " Size: " + length);
+				}
+				int i = 0;
+				for (; i < count && from + i < uniform; i++) {
+					destination[position + i] = start + (first + from + i) * delta;
+				}
+				if (i < count) {
+					tail.copyTo(from + i - uniform, destination, position + i, count - i);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Remove all steps. Views taken before the axis was cleared keep reading the steps they were
+	 * taken from
+	 */
+	public void clear() {
+
+		start = 0d;
+		delta = 0d;
+		count = 0;
+		steps = null;
+	}
+
+	/**
+	 * Remove all steps and release the storage of the column of steps. Views of the axis are not
+	 * read after the axis has been released
+	 */
+	public void release() {
+
+		Column steps = this.steps;
+		clear();
+		if (null != steps) {
+			steps.release();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package no.javatime.core.model.series;
+
+/**
+ * A column of values compressed by XOR with the previous value, as in the Gorilla time series
+ * database.
+ * <p>
+ * Values of a smoothly changing model element share the sign, the exponent and the leading bits
+ * of the mantissa with the previous value, so their XOR has many leading and trailing zeros. The
+ * first value of a block is stored as is. Each subsequent value is stored as:
+ * <ul>
+ * <li><code>0</code> if the value is equal to the previous value
+ * <li><code>10</code> followed by the meaningful bits of the XOR if they fit in the window of
+ * meaningful bits of the previous XOR
+ * <li><code>11</code> followed by the number of leading zeros (6 bits), the number of meaningful
+ * bits minus one (6 bits) and the meaningful bits of the XOR
+ * </ul>
+ */
+public final class XorColumn extends EncodedColumn {
+
+	@Override
+	void encode(double[] values, BitWriter writer) {
+
+		long previous = Double.doubleToRawLongBits(values[0]);
+		writer.write(previous, 64);
+		int leading = Integer.MAX_VALUE;
+		int trailing = 0;
+		for (int i = 1; i < values.length; i++) {
+			long bits = Double.doubleToRawLongBits(values[i]);
+			long xor = bits ^ previous;
+			previous = bits;
+			if (xor == 0L) {
+				writer.writeBit(false);
+				continue;
+			}
+			writer.writeBit(true);
+			int valueLeading = Long.numberOfLeadingZeros(xor);
+			int valueTrailing = Long.numberOfTrailingZeros(xor);
+			if (leading != Integer.MAX_VALUE && valueLeading >= leading && valueTrailing >= trailing) {
+				writer.writeBit(false);
+				writer.write(xor >>> trailing, 64 - leading - trailing);
+			} else {
+				leading = valueLeading;
+				trailing = valueTrailing;
+				int meaningful = 64 - leading - trailing;
+				writer.writeBit(true);
+				writer.write(leading, 6);
+				writer.write(meaningful - 1, 6);
+				writer.write(xor >>> trailing, meaningful);
+			}
+		}
+	}
+
+	@Override
+	void decode(BitReader reader, double[] values) {
+
+		long previous = reader.read(64);
+		values[0] = Double.longBitsToDouble(previous);
+		int leading = 0;
+		int trailing = 0;
+		for (int i = 1; i < values.length; i++) {
+			if (reader.readBit()) {
+				if (reader.readBit()) {
+					leading = (int) reader.read(6);
+					int meaningful = (int) reader.read(6) + 1;
+					trailing = 64 - leading - meaningful;
+				}
+				previous ^= reader.read(64 - leading - trailing) << trailing;
+			}
+			values[i] = Double.longBitsToDouble(previous);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package no.javatime.core.runtime.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import no.javatime.core.model.annotations.Action;
+import no.javatime.core.model.annotations.SetSeriesValue;
+import no.javatime.core.model.elements.Time;
+import no.javatime.core.model.elements.Transition;
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * Two model elements computing their values from the value of each other. With deferred updates
+ * each model element reads the values of the previous step, and the values do not depend on the
+ * order of the model elements in the plan. With immediate updates the model element executed last
+ * reads the value of the current step of the other.
+ */
+public class DeferredUpdateTest {
+
+	private final static int STEPS = 50;
+
+	/**
+	 * Identifies the model elements. Without injected fields, so no dependencies are declared
+	 */
+	public interface Service {
+	}
+
+	public static class Cyclic extends Transition {
+
+		private final double factor;
+		private Cyclic other;
+
+		Cyclic(double value, double factor) {
+			this.factor = factor;
+			value(value);
+		}
+
+		@Action
+		public Double compute() {
+			return other.value() * factor + 1d;
+		}
+	}
+
+	/**
+	 * The instances of the cycle, and the plan executing them in the specified order
+	 */
+	private static class Model {
+
+		final Time events = new Time();
+		final Cyclic first = new Cyclic(1d, 0.5);
+		final Cyclic second = new Cyclic(2d, -0.25);
+		final ExecutionPlan executionPlan;
+
+		Model(boolean firstExecutedFirst) throws Exception {
+
+			events.reset();
+			events.setMax((double) STEPS);
+			events.setDt(1d);
+			first.other = second;
+			second.other = first;
+			LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> runChain =
+					new LinkedHashMap<>();
+			for (Cyclic element : firstExecutedFirst ? new Cyclic[] { first, second } : new Cyclic[] {
+					second, first }) {
+				runChain.put(createExtender(), createMethods(element));
+			}
+			executionPlan = ExecutionPlan.compile(new ArrayList<>(runChain.keySet()),
+					new LinkedHashMap<>(), runChain);
+		}
+	}
+
+	@Test
+	public void deferredValuesAreIndependentOfOrder() throws Exception {
+
+		Model forward = new Model(true);
+		Model reverse = new Model(false);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			WavefrontExecutor forwardExecutor = new WavefrontExecutor(forward.executionPlan,
+					WavefrontSchedule.independent(forward.executionPlan), pool, true, null);
+			WavefrontExecutor reverseExecutor = new WavefrontExecutor(reverse.executionPlan,
+					WavefrontSchedule.independent(reverse.executionPlan), pool, true, null);
+			int[] ids = notRecorded(forward.executionPlan.getRunPhase());
+			double first = 1d;
+			double second = 2d;
+			for (int step = 1; step <= STEPS; step++) {
+				forward.events.advance();
+				forwardExecutor.executeStep(forward.events, null, ids, null);
+				reverse.events.advance();
+				reverseExecutor.executeStep(reverse.events, null, ids, null);
+				// Both values are computed from the values of the previous step
+				double next = second * 0.5 + 1d;
+				second = first * -0.25 + 1d;
+				first = next;
+				assertEquals("Step " + step, first, forward.first.value(), 0d);
+				assertEquals("Step " + step, second, forward.second.value(), 0d);
+				assertEquals("Step " + step, first, reverse.first.value(), 0d);
+				assertEquals("Step " + step, second, reverse.second.value(), 0d);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void immediateValuesDependOnOrder() throws Exception {
+
+		Model forward = new Model(true);
+		Model reverse = new Model(false);
+		int[] ids = notRecorded(forward.executionPlan.getRunPhase());
+		forward.events.advance();
+		SimulatorImpl.executeStep(forward.events, null, forward.executionPlan.getRunPhase(), null,
+				ids, null);
+		reverse.events.advance();
+		SimulatorImpl.executeStep(reverse.events, null, reverse.executionPlan.getRunPhase(), null,
+				ids, null);
+		// The second model element read the first value of the current step
+		assertEquals(2d * 0.5 + 1d, forward.first.value(), 0d);
+		assertEquals(2d * -0.25 + 1d, forward.second.value(), 0d);
+		assertTrue(forward.second.value() != reverse.second.value());
+	}
+
+	/**
+	 * The value method and the set method of a model element
+	 */
+	private static LinkedHashSet<MethodModelElement> createMethods(Object instance)
+			throws NoSuchMethodException {
+
+		MethodModelElement value = new MethodModelElement(instance.getClass().getMethod("compute"),
+				instance, new Object[0]);
+		value.setAnnotationClass(Action.class);
+		MethodModelElement set = new MethodModelElement(instance.getClass().getMethod("setValue",
+				Double.class), instance, new Object[1]);
+		set.setAnnotationClass(SetSeriesValue.class);
+		return new LinkedHashSet<>(Arrays.asList(value, set));
+	}
+
+	private static int[] notRecorded(ExecutionPlan.Phase phase) {
+
+		int[] ids = new int[phase.size()];
+		Arrays.fill(ids, SimulatorImpl.NOT_RECORDED);
+		return ids;
+	}
+
+	private static Extender<?> createExtender() {
+
+		return (Extender<?>) Proxy.newProxyInstance(DeferredUpdateTest.class.getClassLoader(),
+				new Class<?>[] { Extender.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getServiceClass":
+						return Service.class;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+}
@@ -0,0 +1,135 @@
+package no.javatime.core.runtime.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleRevision;
+
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * Cached plans are discarded when a bundle owning a model element of the plan or a model element
+ * service of the plan changes, and a plan compiled while the cache was invalidated is not cached.
+ */
+public class ExecutionPlanCacheTest {
+
+	private final Bundle model = createBundle(1);
+	private final Bundle provider = createBundle(2);
+	private final Bundle other = createBundle(3);
+	private final Extender<?> element = createExtender(model);
+	private final Extender<?> provided = createExtender(provider);
+	private final Extender<?> unrelated = createExtender(other);
+
+	@Test
+	public void invalidatedByBundle() throws Exception {
+
+		ExecutionPlanCache cache = new ExecutionPlanCache();
+		ExecutionPlan executionPlan = createPlan();
+		assertTrue(cache.put(model, executionPlan, cache.getGeneration()));
+		assertEquals(executionPlan, cache.get(model));
+		cache.invalidate(other);
+		assertEquals(executionPlan, cache.get(model));
+		// The bundle providing a model element of the plan
+		cache.invalidate(provider);
+		assertEquals(null, cache.get(model));
+		assertTrue(cache.put(model, executionPlan, cache.getGeneration()));
+		cache.invalidate(model);
+		assertEquals(null, cache.get(model));
+	}
+
+	@Test
+	public void invalidatedByService() throws Exception {
+
+		ExecutionPlanCache cache = new ExecutionPlanCache();
+		ExecutionPlan executionPlan = createPlan();
+		assertTrue(cache.put(model, executionPlan, cache.getGeneration()));
+		cache.invalidate(unrelated);
+		assertEquals(executionPlan, cache.get(model));
+		cache.invalidate(provided);
+		assertEquals(null, cache.get(model));
+	}
+
+	@Test
+	public void planCompiledDuringInvalidationIsDiscarded() throws Exception {
+
+		ExecutionPlanCache cache = new ExecutionPlanCache();
+		long generation = cache.getGeneration();
+		ExecutionPlan executionPlan = createPlan();
+		// A service of another bundle is unregistered while the plan is compiled
+		cache.invalidate(unrelated);
+		assertFalse(cache.put(model, executionPlan, generation));
+		assertEquals(null, cache.get(model));
+		assertTrue(cache.put(model, executionPlan, cache.getGeneration()));
+		assertEquals(executionPlan, cache.get(model));
+	}
+
+	private ExecutionPlan createPlan() throws Exception {
+		return ExecutionPlan.compile(Arrays.asList(element, provided), new LinkedHashMap<>(),
+				new LinkedHashMap<>());
+	}
+
+	/**
+	 * A bundle with the specified id, not modified after it was created
+	 */
+	private static Bundle createBundle(final long id) {
+
+		final BundleRevision revision = (BundleRevision) Proxy.newProxyInstance(
+				ExecutionPlanCacheTest.class.getClassLoader(), new Class<?>[] { BundleRevision.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+		return (Bundle) Proxy.newProxyInstance(ExecutionPlanCacheTest.class.getClassLoader(),
+				new Class<?>[] { Bundle.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getBundleId":
+						return id;
+					case "getLastModified":
+						return 0L;
+					case "adapt":
+						return args[0] == BundleRevision.class ? revision : null;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * A model element service owned by the specified bundle
+	 */
+	private static Extender<?> createExtender(final Bundle owner) {
+
+		return (Extender<?>) Proxy.newProxyInstance(ExecutionPlanCacheTest.class.getClassLoader(),
+				new Class<?>[] { Extender.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getOwner":
+						return owner;
+					case "getServiceClass":
+						return Object.class;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+}
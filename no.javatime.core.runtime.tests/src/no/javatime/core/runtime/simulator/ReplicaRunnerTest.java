@@ -0,0 +1,205 @@
+package no.javatime.core.runtime.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+
+import no.javatime.core.model.annotations.Action;
+import no.javatime.core.model.annotations.SetSeriesValue;
+import no.javatime.core.model.annotations.StartValue;
+import no.javatime.core.model.elements.Events;
+import no.javatime.core.model.elements.State;
+import no.javatime.core.model.elements.Transition;
+import no.javatime.inplace.extender.intface.Extender;
+import no.javatime.inplace.extender.intface.ExtenderException;
+import no.javatime.inplace.extender.intface.Extenders;
+
+/**
+ * Replicas of a level with a constant in flow, where the start value of the level is overridden
+ * in each replica. The in flow fails when the level is negative, and a failing replica cancels the
+ * replicas still running.
+ */
+public class ReplicaRunnerTest {
+
+	/** Steps executed by the in flows of all replicas */
+	private final static AtomicLong steps = new AtomicLong();
+
+	public static class Level extends State {
+
+		public Level() {
+			time = Extenders.getService(Events.class);
+		}
+
+		@StartValue
+		public Double start() {
+			return 10d;
+		}
+	}
+
+	public static class Inflow extends Transition {
+
+		private Level level;
+
+		public Inflow() {
+			time = Extenders.getService(Events.class);
+		}
+
+		@Action
+		public Double rate() {
+
+			steps.incrementAndGet();
+			if (level.value() < 0d) {
+				throw new IllegalStateException("Negative level " + level.value());
+			}
+			return 2d;
+		}
+	}
+
+	private final Bundle bundle = createBundle();
+	private final Level level = new Level();
+	private final Inflow inflow = new Inflow();
+	private final Extender<?> levelExtender = createExtender(Level.class, level);
+	private final Extender<?> inflowExtender = createExtender(Inflow.class, inflow);
+
+	@Test
+	public void replicasOverrideStartValues() throws Exception {
+
+		ExecutionPlan executionPlan = createPlan();
+		Replica replica = new Replica(0, executionPlan, Collections.<String, Double> emptyMap());
+		Replica overridden = new Replica(1, executionPlan, Collections.singletonMap(Level.class
+				.getSimpleName(), 100d));
+		run(replica);
+		run(overridden);
+		assertEquals(20d, ((Level) replica.getInstance(levelExtender)).value(), 0d);
+		assertEquals(110d, ((Level) overridden.getInstance(levelExtender)).value(), 0d);
+		double[] values = overridden.getTimeSeriesProvider().getTimeSeries(levelExtender);
+		assertEquals(5, values.length);
+		assertEquals(102d, values[0], 0d);
+		// The singleton instances are not executed
+		assertEquals(null, level.getValue());
+		try {
+			new Replica(2, executionPlan, Collections.singletonMap("Unknown", 1d));
+			fail("Created a replica overriding a model element not in the model");
+		} catch (ExtenderException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void failingReplicaCancelsRunningReplicas() throws Exception {
+
+		ReplicaRunner runner = new ReplicaRunner(4);
+		// Replicas not cancelled run for minutes
+		runner.setMax(1e9);
+		List<Map<String, Double>> overrides = Arrays.asList(Collections.<String, Double> emptyMap(),
+				Collections.<String, Double> emptyMap(), Collections.<String, Double> emptyMap(),
+				Collections.singletonMap(Level.class.getName(), -1d));
+		try {
+			runner.run(bundle, createPlan(), overrides, replica -> replica.getIndex());
+			fail("A failing replica was not reported");
+		} catch (ExtenderException e) {
+			// The failure of the replica and not the cancellation of the others
+			Throwable cause = e;
+			while (null != cause && !(cause instanceof IllegalStateException)) {
+				cause = cause.getCause();
+			}
+			assertTrue(String.valueOf(e), cause instanceof IllegalStateException);
+		}
+		// Running replicas stop at their next step
+		Thread.sleep(200);
+		long stepsAfterFailure = steps.get();
+		Thread.sleep(200);
+		assertEquals(stepsAfterFailure, steps.get());
+	}
+
+	private void run(Replica replica) {
+		replica.run(bundle, 5d, 1d, IntegrationMethod.EULER, Double.NaN,
+				RunConfiguration.DEFAULT_RELATIVE_TOLERANCE,
+				RunConfiguration.DEFAULT_ABSOLUTE_TOLERANCE);
+	}
+
+	/**
+	 * Create a plan where the start value of the level is set at step zero, and the in flow is
+	 * executed before the level at each step
+	 */
+	private ExecutionPlan createPlan() throws Exception {
+
+		level.addInFlow(inflow);
+		inflow.level = level;
+		LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> initialChain =
+				new LinkedHashMap<>();
+		initialChain.put(levelExtender, createMethods(level, "start", StartValue.class));
+		LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> runChain =
+				new LinkedHashMap<>();
+		runChain.put(inflowExtender, createMethods(inflow, "rate", Action.class));
+		runChain.put(levelExtender, createMethods(level, "calculate", Action.class));
+		return ExecutionPlan.compile(Arrays.asList(inflowExtender, levelExtender), initialChain,
+				runChain);
+	}
+
+	/**
+	 * The value method and the set method of a model element
+	 */
+	private static LinkedHashSet<MethodModelElement> createMethods(Object instance, String name,
+			Class<?> annotationClass) throws NoSuchMethodException {
+
+		MethodModelElement value = new MethodModelElement(instance.getClass().getMethod(name),
+				instance, new Object[0]);
+		value.setAnnotationClass(annotationClass);
+		MethodModelElement set = new MethodModelElement(instance.getClass().getMethod("setValue",
+				Double.class), instance, new Object[1]);
+		set.setAnnotationClass(SetSeriesValue.class);
+		return new LinkedHashSet<>(Arrays.asList(value, set));
+	}
+
+	private static Bundle createBundle() {
+
+		return (Bundle) Proxy.newProxyInstance(ReplicaRunnerTest.class.getClassLoader(),
+				new Class<?>[] { Bundle.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getSymbolicName":
+						return "model";
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * A model element service with the specified service class and singleton instance
+	 */
+	private static Extender<?> createExtender(final Class<?> serviceClass, final Object service) {
+
+		return (Extender<?>) Proxy.newProxyInstance(ReplicaRunnerTest.class.getClassLoader(),
+				new Class<?>[] { Extender.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getServiceClass":
+						return serviceClass;
+					case "getService":
+						return service;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+}
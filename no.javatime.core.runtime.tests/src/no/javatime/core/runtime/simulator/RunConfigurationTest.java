@@ -0,0 +1,140 @@
+package no.javatime.core.runtime.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * A run configuration written to a properties file and read back has the settings of the written
+ * configuration, and the last step of a run is derived from the end time when it is set.
+ */
+public class RunConfigurationTest {
+
+	@Test
+	public void storedConfigurationIsLoaded() throws Exception {
+
+		RunConfiguration configuration = new RunConfiguration();
+		configuration.setStartTime(2.5);
+		configuration.setEndTime(10d);
+		configuration.setMaxSteps(42L);
+		configuration.setDt(0.25);
+		configuration.setIntegrationMethod(IntegrationMethod.DORMAND_PRINCE);
+		configuration.setRelativeTolerance(1e-4);
+		configuration.setAbsoluteTolerance(1e-7);
+		configuration.setExecutionMode(ExecutionMode.PARALLEL);
+		configuration.setUpdateMode(UpdateMode.DEFERRED);
+		configuration.setRecordedElements(Arrays.asList("model.Level", "Flow"));
+		configuration.setRecordingStride(3);
+		configuration.setRecordingTimes(1d, 2.5, -0d);
+		configuration.setStorageMode(StorageMode.MAPPED);
+		configuration.setStorageDirectory(Paths.get("series"));
+		configuration.setStorageCapacity(500);
+		configuration.setTraceLevel(TraceLevel.STEP);
+		configuration.setTraceStride(7);
+		configuration.setTraceFile(Paths.get("trace.bin"));
+		configuration.setStartValue("Level", 100d);
+		configuration.setStartValue("model.Flow", -1.5);
+		configuration.setFieldValue("Level", "capacity", 1e3);
+		Path file = Files.createTempFile("run", ".properties");
+		try {
+			configuration.store(file, "Round trip");
+			RunConfiguration loaded = RunConfiguration.load(file);
+			assertEquals(2.5, loaded.getStartTime(), 0d);
+			assertEquals(10d, loaded.getEndTime(), 0d);
+			assertEquals(42L, loaded.getMaxSteps());
+			assertEquals(0.25, loaded.getDt(), 0d);
+			assertEquals(IntegrationMethod.DORMAND_PRINCE, loaded.getIntegrationMethod());
+			assertEquals(1e-4, loaded.getRelativeTolerance(), 0d);
+			assertEquals(1e-7, loaded.getAbsoluteTolerance(), 0d);
+			assertEquals(ExecutionMode.PARALLEL, loaded.getExecutionMode());
+			assertEquals(UpdateMode.DEFERRED, loaded.getUpdateMode());
+			assertEquals(new LinkedHashSet<>(Arrays.asList("model.Level", "Flow")), loaded
+					.getRecordedElements());
+			assertEquals(3, loaded.getRecordingStride());
+			assertTrue(Arrays.equals(new double[] { 1d, 2.5, -0d }, loaded.getRecordingTimes()));
+			assertEquals(StorageMode.MAPPED, loaded.getStorageMode());
+			assertEquals(Paths.get("series"), loaded.getStorageDirectory());
+			assertEquals(500, loaded.getStorageCapacity());
+			assertEquals(TraceLevel.STEP, loaded.getTraceLevel());
+			assertEquals(7, loaded.getTraceStride());
+			assertEquals(Paths.get("trace.bin"), loaded.getTraceFile());
+			assertEquals(configuration.getStartValues(), loaded.getStartValues());
+			assertEquals(configuration.getFieldValues(), loaded.getFieldValues());
+			assertEquals(40d, loaded.getMax(), 0d);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void unsetSettingsHaveTheirDefaults() throws Exception {
+
+		RunConfiguration configuration = new RunConfiguration();
+		configuration.setRecordedElements(Collections.<String> emptySet());
+		Path file = Files.createTempFile("run", ".properties");
+		try {
+			configuration.store(file, null);
+			RunConfiguration loaded = RunConfiguration.load(file);
+			assertTrue(Double.isNaN(loaded.getEndTime()));
+			assertEquals(RunConfiguration.DEFAULT_MAX_STEPS, loaded.getMaxSteps());
+			assertEquals(StorageMode.HEAP, loaded.getStorageMode());
+			assertEquals(null, loaded.getStorageDirectory());
+			assertEquals(RunConfiguration.DEFAULT_STORAGE_CAPACITY, loaded.getStorageCapacity());
+			assertEquals(null, loaded.getRecordingTimes());
+			assertEquals(null, loaded.getTraceFile());
+			// An empty selection records no model elements and is not the annotated selection
+			assertEquals(Collections.<String> emptySet(), loaded.getRecordedElements());
+			assertTrue(loaded.getStartValues().isEmpty());
+			// Settings missing in the file
+			Files.write(file, Arrays.asList("dt=0.5"), StandardCharsets.ISO_8859_1);
+			loaded = RunConfiguration.load(file);
+			assertEquals(0.5, loaded.getDt(), 0d);
+			assertEquals(IntegrationMethod.EULER, loaded.getIntegrationMethod());
+			assertEquals(null, loaded.getRecordedElements());
+			Files.write(file, Arrays.asList("storage.mode=DISK"), StandardCharsets.ISO_8859_1);
+			try {
+				RunConfiguration.load(file);
+				fail("Loaded an unknown storage mode");
+			} catch (ExtenderException e) {
+				// Expected
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void maxIsDerivedFromEndTime() {
+
+		RunConfiguration configuration = new RunConfiguration();
+		assertEquals(RunConfiguration.DEFAULT_MAX_STEPS, configuration.getMax(), 0d);
+		configuration.setMaxSteps(20L);
+		configuration.setDt(0.3);
+		assertEquals(20d, configuration.getMax(), 0d);
+		// The number of steps is ignored when the end time is set
+		configuration.setEndTime(10d);
+		assertEquals(34d, configuration.getMax(), 0d);
+		// 0.9 / 0.3 is slightly above three
+		configuration.setEndTime(0.9);
+		assertEquals(3d, configuration.getMax(), 0d);
+		configuration.setEndTime(-1d);
+		assertEquals(0d, configuration.getMax(), 0d);
+		configuration.setEndTime(Double.NaN);
+		assertEquals(20d, configuration.getMax(), 0d);
+		// A copy derives the same last step
+		configuration.setEndTime(1d);
+		assertEquals(4d, new RunConfiguration(configuration).getMax(), 0d);
+	}
+}
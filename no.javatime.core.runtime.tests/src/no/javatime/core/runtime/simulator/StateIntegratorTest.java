@@ -0,0 +1,167 @@
+package no.javatime.core.runtime.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+
+import no.javatime.core.model.annotations.Action;
+import no.javatime.core.model.annotations.SetSeriesValue;
+import no.javatime.core.model.elements.Events;
+import no.javatime.core.model.elements.IState;
+import no.javatime.core.model.elements.State;
+import no.javatime.core.model.elements.Time;
+import no.javatime.core.model.elements.Transition;
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * A level with an in flow equal to the simulated time, integrated from zero. The level at time
+ * <code>t</code> is <code>t * t / 2</code>, which the Runge-Kutta methods integrate exactly when
+ * the flow is evaluated at the time of each stage.
+ */
+public class StateIntegratorTest {
+
+	public static class Level extends State {
+
+		Level(Events events) {
+			time = events;
+		}
+	}
+
+	public static class Inflow extends Transition {
+
+		Inflow(Events events) {
+			time = events;
+		}
+
+		@Action
+		public Double rate() {
+			return time.time();
+		}
+	}
+
+	@Test
+	public void rungeKuttaEvaluatesFlowsAtStageTimes() throws Exception {
+
+		Time events = createEvents(10d, 0.1);
+		Level level = new Level(events);
+		ExecutionPlan.Phase phase = createPhase(events, level);
+		StateIntegrator integrator = createIntegrator(IntegrationMethod.RK4, phase, level, 1d);
+		int[] ids = notRecorded(phase);
+		while (!events.stopped()) {
+			double time = events.time();
+			integrator.integrate(events);
+			assertEquals("Time restored after the stages", time, events.time(), 0d);
+			events.advance();
+			SimulatorImpl.executeStep(events, null, phase, integrator, ids, null);
+		}
+		assertEquals(10, events.tick());
+		assertEquals(0.5, level.value(), 1e-12);
+		assertEquals(0, integrator.getRejected());
+	}
+
+	@Test
+	public void dormandPrinceStopsAtEndTime() throws Exception {
+
+		Time events = createEvents(Long.MAX_VALUE, 0.1);
+		Level level = new Level(events);
+		ExecutionPlan.Phase phase = createPhase(events, level);
+		StateIntegrator integrator = createIntegrator(IntegrationMethod.DORMAND_PRINCE, phase,
+				level, 2d);
+		int[] ids = notRecorded(phase);
+		while (!events.stopped()) {
+			integrator.integrate(events);
+			events.advance();
+			SimulatorImpl.executeStep(events, null, phase, integrator, ids, null);
+			if (integrator.isFinished(events)) {
+				events.setStop(true);
+			}
+		}
+		assertEquals(2d, events.time(), 1e-12);
+		assertEquals(2d, level.value(), 1e-9);
+		// Steps grow beyond the first delta time as the error is small
+		assertTrue("Steps: " + events.tick(), events.tick() < 20);
+	}
+
+	private static Time createEvents(double max, double dt) {
+
+		Time events = new Time();
+		events.reset();
+		events.setMax(max);
+		events.setDt(dt);
+		return events;
+	}
+
+	/**
+	 * Create a run phase with the specified level followed by its in flow
+	 */
+	private static ExecutionPlan.Phase createPhase(Events events, Level level) throws Exception {
+
+		Inflow inflow = new Inflow(events);
+		level.addInFlow(inflow);
+		level.value(0d);
+		inflow.value(0d);
+		LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> runChain =
+				new LinkedHashMap<>();
+		runChain.put(createExtender(Level.class), createMethods(level, "calculate"));
+		runChain.put(createExtender(Inflow.class), createMethods(inflow, "rate"));
+		return ExecutionPlan.compile(new ArrayList<>(runChain.keySet()), new LinkedHashMap<>(),
+				runChain).getRunPhase();
+	}
+
+	/**
+	 * Create an integrator of the level, evaluating the in flow at each stage
+	 */
+	private static StateIntegrator createIntegrator(IntegrationMethod method,
+			ExecutionPlan.Phase phase, Level level, double endTime) {
+
+		return new StateIntegrator(method, phase, new int[] { 0 }, new IState[] { level },
+				new int[] { 1 }, false, 0.1, endTime, RunConfiguration.DEFAULT_RELATIVE_TOLERANCE,
+				RunConfiguration.DEFAULT_ABSOLUTE_TOLERANCE);
+	}
+
+	/**
+	 * The value method and the set method of a model element
+	 */
+	private static LinkedHashSet<MethodModelElement> createMethods(Object instance, String name)
+			throws NoSuchMethodException {
+
+		MethodModelElement value = new MethodModelElement(instance.getClass().getMethod(name),
+				instance, new Object[0]);
+		value.setAnnotationClass(Action.class);
+		MethodModelElement set = new MethodModelElement(instance.getClass().getMethod("setValue",
+				Double.class), instance, new Object[1]);
+		set.setAnnotationClass(SetSeriesValue.class);
+		return new LinkedHashSet<>(Arrays.asList(value, set));
+	}
+
+	private static int[] notRecorded(ExecutionPlan.Phase phase) {
+
+		int[] ids = new int[phase.size()];
+		Arrays.fill(ids, SimulatorImpl.NOT_RECORDED);
+		return ids;
+	}
+
+	private static Extender<?> createExtender(final Class<?> serviceClass) {
+
+		return (Extender<?>) Proxy.newProxyInstance(StateIntegratorTest.class.getClassLoader(),
+				new Class<?>[] { Extender.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getServiceClass":
+						return serviceClass;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+}
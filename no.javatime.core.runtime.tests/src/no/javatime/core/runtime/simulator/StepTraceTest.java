@@ -0,0 +1,129 @@
+package no.javatime.core.runtime.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Events written by a step trace are read back by a trace reader in the order they were traced.
+ * When the oldest chunks of a trace kept in memory are discarded, or chunks are dropped because the
+ * background thread did not keep up, the reader starts at the first complete step and the values
+ * read belong to the step read before them.
+ */
+public class StepTraceTest {
+
+	/** Number of value operations of each step */
+	private final static int VALUES = 8;
+
+	private final static String[] LABELS = { "Level", null, "Flow" };
+
+	@Test
+	public void fileIsReadInTracedOrder() throws Exception {
+
+		Path file = Files.createTempFile("trace", ".bin");
+		try {
+			StepTrace trace = new StepTrace(TraceLevel.ELEMENT, 2, file, LABELS);
+			for (long step = 0; step < 100; step++) {
+				if (trace.beginStep(step, step * 0.5)) {
+					trace.value(0, step);
+					trace.value(2, -step);
+				}
+			}
+			trace.close();
+			assertEquals(null, trace.getFailure());
+			assertEquals(0L, trace.getDroppedCount());
+			assertEquals(150L, trace.getEventCount());
+			try (TraceReader reader = trace.read()) {
+				assertTrue(Arrays.equals(new String[] { "Level", "", "Flow" }, reader.getLabels()));
+				long events = 0;
+				for (long step = 0; step < 100; step += 2) {
+					assertTrue(reader.next());
+					assertEquals(StepTrace.STEP, reader.getKind());
+					assertEquals(step, reader.getStep());
+					assertEquals(step * 0.5, reader.getTime(), 0d);
+					assertEquals(-1, reader.getIndex());
+					assertEquals(null, reader.getLabel());
+					assertTrue(reader.next());
+					assertEquals(StepTrace.VALUE, reader.getKind());
+					assertEquals(step, reader.getStep());
+					assertEquals("Level", reader.getLabel());
+					assertEquals(step, reader.getValue(), 0d);
+					assertTrue(reader.next());
+					assertEquals(2, reader.getIndex());
+					assertEquals("Flow", reader.getLabel());
+					assertEquals(-step, reader.getValue(), 0d);
+					events += 3;
+				}
+				assertFalse(reader.next());
+				assertEquals(trace.getEventCount(), events);
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void readingStartsAtFirstStepOfRetainedChunks() throws Exception {
+
+		StepTrace trace = new StepTrace(TraceLevel.ELEMENT, 1, null, new String[VALUES]);
+		// About three times the events kept in memory
+		long steps = 100000;
+		for (long step = 0; step < steps; step++) {
+			if (trace.beginStep(step, step)) {
+				for (int index = 0; index < VALUES; index++) {
+					trace.value(index, step * VALUES + index);
+				}
+			}
+		}
+		trace.close();
+		long events = 0;
+		try (TraceReader reader = trace.read()) {
+			long step = -1;
+			int index = -1;
+			while (reader.next()) {
+				if (reader.getKind() == StepTrace.STEP) {
+					if (step < 0) {
+						// The steps of the discarded chunks are not read
+						assertTrue(reader.getStep() > 0);
+					}
+					assertTrue(reader.getStep() > step);
+					step = reader.getStep();
+					assertEquals(step, reader.getTime(), 0d);
+					index = -1;
+				} else {
+					assertEquals(StepTrace.VALUE, reader.getKind());
+					assertTrue(step >= 0);
+					// Only the last values of a step are dropped
+					assertEquals(index + 1, reader.getIndex());
+					index = reader.getIndex();
+					assertEquals(step * VALUES + index, reader.getValue(), 0d);
+				}
+				events++;
+			}
+			assertTrue(step > 0);
+		}
+		assertTrue(events > 0);
+		assertTrue(events < trace.getEventCount());
+	}
+
+	@Test
+	public void streamWithoutHeaderIsNotRead() {
+
+		try {
+			new TraceReader(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }))
+					.close();
+			fail("Read a stream that is not a trace");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package no.javatime.core.runtime.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import no.javatime.core.model.annotations.Action;
+import no.javatime.core.model.annotations.SetSeriesValue;
+import no.javatime.core.model.elements.Endogenous;
+import no.javatime.core.model.elements.Events;
+import no.javatime.core.model.elements.State;
+import no.javatime.core.model.elements.Time;
+import no.javatime.core.model.elements.Transition;
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * Two models of levels connected by flows, executed sequentially and by the wavefront executor on
+ * a pool of threads. The flows of the levels are the only dependencies of the model elements, and
+ * the levels of the schedule must give the values of the sequential execution at each step.
+ * <p>
+ * The first level has an in flow growing with the simulated time and an out flow moving a tenth
+ * of the level to the second level. The third level is drained by its out flow, independent of
+ * the other levels.
+ */
+public class WavefrontExecutorTest {
+
+	private final static int STEPS = 200;
+
+	/**
+	 * Identifies the model elements. Without injected fields, so the levels of the schedule are
+	 * given by the flows of the states
+	 */
+	public interface Service {
+	}
+
+	public static class Level extends State {
+
+		Level(Events events, double value) {
+			time = events;
+			value(value);
+		}
+	}
+
+	public static class Grow extends Transition {
+
+		Grow(Events events) {
+			time = events;
+			value(0d);
+		}
+
+		@Action
+		public Double rate() {
+			return time.time();
+		}
+	}
+
+	public static class Move extends Transition {
+
+		private final Level from;
+
+		Move(Events events, Level from) {
+			time = events;
+			this.from = from;
+			value(0d);
+		}
+
+		@Action
+		public Double rate() {
+			return from.value() * 0.1;
+		}
+	}
+
+	/**
+	 * The instances of one model, and the plan executing them
+	 */
+	private static class Model {
+
+		final Time events = createEvents();
+		final Endogenous[] elements;
+		final ExecutionPlan executionPlan;
+
+		Model() throws Exception {
+
+			Level first = new Level(events, 100d);
+			Level second = new Level(events, 0d);
+			Level third = new Level(events, 50d);
+			Grow grow = new Grow(events);
+			Move move = new Move(events, first);
+			Move drain = new Move(events, third);
+			first.addInFlow(grow);
+			first.addOutFlow(move);
+			second.addInFlow(move);
+			third.addOutFlow(drain);
+			elements = new Endogenous[] { first, move, second, grow, third, drain };
+			LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> runChain =
+					new LinkedHashMap<>();
+			for (Endogenous element : elements) {
+				runChain.put(createExtender(), createMethods(element, element instanceof State
+						? "calculate" : "rate"));
+			}
+			executionPlan = ExecutionPlan.compile(new ArrayList<>(runChain.keySet()),
+					new LinkedHashMap<>(), runChain);
+		}
+
+		double[] values() {
+
+			double[] values = new double[elements.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = elements[i].value();
+			}
+			return values;
+		}
+	}
+
+	@Test
+	public void wavefrontEqualsSequentialOrder() throws Exception {
+
+		Model sequential = new Model();
+		Model parallel = new Model();
+		WavefrontSchedule schedule = parallel.executionPlan.getWavefrontSchedule();
+		// The first and the third level, their flows, and the second level
+		assertEquals(3, schedule.getLevelCount());
+		assertEquals(3, schedule.getMaxWidth());
+		ExecutionPlan.Phase sequentialPhase = sequential.executionPlan.getRunPhase();
+		int[] ids = notRecorded(sequentialPhase);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			WavefrontExecutor wavefront = new WavefrontExecutor(parallel.executionPlan, schedule,
+					pool, false, null);
+			for (int step = 1; step <= STEPS; step++) {
+				sequential.events.advance();
+				SimulatorImpl.executeStep(sequential.events, null, sequentialPhase, null, ids, null);
+				parallel.events.advance();
+				wavefront.executeStep(parallel.events, null, ids, null);
+				assertTrue("Step " + step, Arrays.equals(sequential.values(), parallel.values()));
+			}
+		} finally {
+			pool.shutdown();
+		}
+		// The second level has received the moved values
+		assertTrue(parallel.values()[2] > 0d);
+	}
+
+	private static Time createEvents() {
+
+		Time events = new Time();
+		events.reset();
+		events.setMax((double) STEPS);
+		events.setDt(0.1);
+		return events;
+	}
+
+	/**
+	 * The value method and the set method of a model element
+	 */
+	private static LinkedHashSet<MethodModelElement> createMethods(Object instance, String name)
+			throws NoSuchMethodException {
+
+		MethodModelElement value = new MethodModelElement(instance.getClass().getMethod(name),
+				instance, new Object[0]);
+		value.setAnnotationClass(Action.class);
+		MethodModelElement set = new MethodModelElement(instance.getClass().getMethod("setValue",
+				Double.class), instance, new Object[1]);
+		set.setAnnotationClass(SetSeriesValue.class);
+		return new LinkedHashSet<>(Arrays.asList(value, set));
+	}
+
+	private static int[] notRecorded(ExecutionPlan.Phase phase) {
+
+		int[] ids = new int[phase.size()];
+		Arrays.fill(ids, SimulatorImpl.NOT_RECORDED);
+		return ids;
+	}
+
+	private static Extender<?> createExtender() {
+
+		return (Extender<?>) Proxy.newProxyInstance(WavefrontExecutorTest.class.getClassLoader(),
+				new Class<?>[] { Extender.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getServiceClass":
+						return Service.class;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return null;
+					}
+				});
+	}
+}
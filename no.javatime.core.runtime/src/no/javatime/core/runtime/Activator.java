@@ -4,11 +4,13 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 
+import no.javatime.core.runtime.simulator.ExecutionPlanCache;
 import no.javatime.inplace.extender.intface.Extender;
 
 public class Activator implements BundleActivator {
 
 	private static ExtenderTracker extenderTracker;
+	private static ExecutionPlanCache executionPlanCache;
 	private ExtenderServiceListener<?> extenderListener;
 	private static BundleContext context;
 	
@@ -16,6 +18,7 @@ public class Activator implements BundleActivator {
 	public void start(BundleContext context) throws Exception {
 		System.out.println("Start Run");
 		Activator.context = context;
+		executionPlanCache = new ExecutionPlanCache();
 
 		extenderListener = new ExtenderServiceListener<>();
 		context.addServiceListener(extenderListener, Extender.EXTENDER_FILTER);
@@ -31,6 +34,8 @@ public class Activator implements BundleActivator {
 		extenderTracker.close();
 		extenderTracker = null;
 		context.removeServiceListener(extenderListener);
+		executionPlanCache.invalidateAll();
+		executionPlanCache = null;
 		Activator.context = null;
 	}
 	
@@ -38,6 +43,10 @@ public class Activator implements BundleActivator {
 		return extenderTracker;
 	}
 
+	public static ExecutionPlanCache getExecutionPlanCache() {
+		return executionPlanCache;
+	}
+
 	public static BundleContext getContext() {
 		return context;
 	}
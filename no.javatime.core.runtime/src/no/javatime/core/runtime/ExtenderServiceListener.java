@@ -8,6 +8,8 @@ import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.BundleTracker;
 
+import no.javatime.core.model.annotations.ModelElement;
+import no.javatime.core.runtime.simulator.ExecutionPlanCache;
 import no.javatime.inplace.extender.intface.Extender;
 import no.javatime.inplace.extender.intface.ExtenderBundleTracker;
 import no.javatime.inplace.extender.intface.Extenders;
@@ -18,6 +20,10 @@ import no.javatime.inplace.extender.intface.Extenders;
  * <p>
  * If the filter is removed or its value is set to {@code false} the extender is removed but not
  * unregistered. The service must than be unregistered by using the service layer.
+ * <p>
+ * Cached execution plans are invalidated when a model element service is registered, modified or
+ * unregistered. A new model element service may participate in any model, while a modified or
+ * unregistered service only invalidates the plans it is part of.
  * 
  * @param <S> type of extender
  */
@@ -40,6 +46,12 @@ public class ExtenderServiceListener<S> implements ServiceListener {
 			extender = Extenders.getExtender(sr);
 			if (null != extender) {
 				System.out.println("Registering extender: " + extender.getServiceInterfaceName());
+				if (isModelElement(extender)) {
+					ExecutionPlanCache planCache = Activator.getExecutionPlanCache();
+					if (null != planCache) {
+						planCache.invalidateAll();
+					}
+				}
 			}
 			break;	
 		case ServiceEvent.MODIFIED_ENDMATCH:
@@ -48,6 +60,7 @@ public class ExtenderServiceListener<S> implements ServiceListener {
 			extender = Extenders.getExtender(sr);
 			if (null != extender) {
 				System.out.println("Modifying extender: " + extender.getServiceInterfaceName());
+				invalidate(extender);
 			}
 			break;
 		case ServiceEvent.UNREGISTERING:
@@ -56,6 +69,7 @@ public class ExtenderServiceListener<S> implements ServiceListener {
 			extender = Extenders.getExtender(sr);
 			if (null != extender) {
 				System.out.println("Unregistering extender: " + extender.getServiceInterfaceName());
+				invalidate(extender);
 				// This is the bundle tracker who registered this extender
 				BundleTracker<Collection<Extender<?>>> bt = extender.getBundleTracker();
 				if (bt instanceof ExtenderBundleTracker) {
@@ -65,4 +79,25 @@ public class ExtenderServiceListener<S> implements ServiceListener {
 			break;
 		}
 	}
+
+	/**
+	 * Remove cached execution plans containing the specified model element service
+	 * 
+	 * @param extender a registered extender
+	 */
+	private void invalidate(Extender<?> extender) {
+
+		if (isModelElement(extender)) {
+			ExecutionPlanCache planCache = Activator.getExecutionPlanCache();
+			if (null != planCache) {
+				planCache.invalidate(extender);
+			}
+		}
+	}
+
+	private boolean isModelElement(Extender<?> extender) {
+
+		Class<?> serviceClass = extender.getServiceClass();
+		return null != serviceClass && serviceClass.isAnnotationPresent(ModelElement.class);
+	}
 }
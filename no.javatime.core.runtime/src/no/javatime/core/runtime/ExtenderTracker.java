@@ -17,6 +17,7 @@ import no.javatime.core.model.annotations.ModelElement;
 import no.javatime.core.model.elements.Events;
 import no.javatime.core.model.elements.Numeral;
 import no.javatime.core.model.elements.TimeSeriesProvider;
+import no.javatime.core.runtime.simulator.ExecutionPlanCache;
 import no.javatime.core.runtime.util.AnnotationUtil;
 import no.javatime.core.runtime.util.BundleUtil;
 import no.javatime.inplace.extender.intface.BundleServiceScopeFactory;
@@ -46,6 +47,9 @@ import no.javatime.inplace.region.status.IBundleStatus.StatusCode;
  * The set of tracked model elements will always contain one or more complete simulation models. If
  * a model element is required from another bundle the providing bundle will be activated by the
  * InPlace Activator and tracked by this bundle due to bundle dependencies.
+ * <p>
+ * Cached execution plans where a modified or removed bundle is the model bundle or owns model
+ * elements in the plan are invalidated.
  */
 public class ExtenderTracker extends ExtenderBundleTracker {
 
@@ -145,6 +149,34 @@ public class ExtenderTracker extends ExtenderBundleTracker {
 		return super.addingBundle(bundle, event);
 	}
 
+	@Override
+	public void modifiedBundle(Bundle bundle, BundleEvent event, Collection<Extender<?>> object) {
+
+		invalidateExecutionPlans(bundle);
+		super.modifiedBundle(bundle, event, object);
+	}
+
+	@Override
+	public void removedBundle(Bundle bundle, BundleEvent event, Collection<Extender<?>> object) {
+
+		invalidateExecutionPlans(bundle);
+		super.removedBundle(bundle, event, object);
+	}
+
+	/**
+	 * Remove cached execution plans where the specified bundle is the model bundle or owns model
+	 * elements in the plan
+	 * 
+	 * @param bundle a model bundle or a bundle providing model elements
+	 */
+	private void invalidateExecutionPlans(Bundle bundle) {
+
+		ExecutionPlanCache planCache = Activator.getExecutionPlanCache();
+		if (null != planCache) {
+			planCache.invalidate(bundle);
+		}
+	}
+
 	private boolean registerTimeSystemElement(Bundle bundle, String timeServiceInterfaceName) {
 
 		boolean isRegistered = true;
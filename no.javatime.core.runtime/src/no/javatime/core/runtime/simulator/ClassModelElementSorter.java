@@ -61,6 +61,9 @@ public class ClassModelElementSorter {
 	/** If cycles between model elements of specific groups should be logged */
 	private boolean cycles;
 
+	/** If the model elements should be logged before and after they are sorted */
+	private boolean logSorted = true;
+
 	public Collection<Extender<?>> getModels() {
 		return models;
 	}
@@ -117,7 +120,9 @@ public class ClassModelElementSorter {
 		sortModelElements(modelElementClasses, modelTypes);
 		// Add the complete model as input to phase two sort
 		modelElementClasses.addAll(classExecOrder);
-		logSortedModelElements(modelElementClasses, "Unsorted Model Element Classes to execute");
+		if (logSorted) {
+			logSortedModelElements(modelElementClasses, "Unsorted Model Element Classes to execute");
+		}
 		this.cycles = allowCyclesTmp;
 		// Sort according to groups of model element types
 		sortModel(modelElementClasses);
@@ -188,7 +193,9 @@ public class ClassModelElementSorter {
 		modelTypes = EnumSet.of(ModelElement.Type.TRANSITION, ModelElement.Type.RATE,
 				ModelElement.Type.DERIVATIVE);
 		sortModelElements(model, modelTypes);
-		logSortedModelElements(classExecOrder, "Sorted Model Element Classes in execution order");
+		if (logSorted) {
+			logSortedModelElements(classExecOrder, "Sorted Model Element Classes in execution order");
+		}
 	}
 
 	/**
@@ -284,7 +291,7 @@ public class ClassModelElementSorter {
 	 * element and its super elements
 	 * @throws ExtenderException If the service id is null for the registered service
 	 */
-	private void getDirectInjectedClasses(Class<?> requiringElement,
+	private static void getDirectInjectedClasses(Class<?> requiringElement,
 			Collection<Class<?>> providingElements) throws ExtenderException {
 
 		if (null == requiringElement) {
@@ -297,6 +304,24 @@ public class ClassModelElementSorter {
 		}
 	}
 
+	/**
+	 * Get the model elements the specified model element depends on. These are the model elements
+	 * injected into fields and method parameters of the specified model element and its super model
+	 * elements
+	 * 
+	 * @param modelElement model element with injected elements
+	 * @return the service classes of all model elements injected into the specified model element or
+	 * an empty collection
+	 * @throws ExtenderException If the service id is null for the registered service
+	 */
+	public static Collection<Class<?>> getDependencies(Class<?> modelElement)
+			throws ExtenderException {
+
+		Collection<Class<?>> providingElements = new LinkedHashSet<>();
+		getDirectInjectedClasses(modelElement, providingElements);
+		return providingElements;
+	}
+
 	/**
 	 * Get all extenders with its service annotated with {@link Model}
 	 * 
@@ -436,6 +461,19 @@ public class ClassModelElementSorter {
 		this.cycles = allowCycles;
 	}
 
+	public boolean isLogSorted() {
+		return logSorted;
+	}
+
+	/**
+	 * Send the model elements to the bundle log before and after they are sorted. Default is true
+	 * 
+	 * @param logSorted true to log the model elements when sorted
+	 */
+	public void setLogSorted(boolean logSorted) {
+		this.logSorted = logSorted;
+	}
+
 	/**
 	 * Construct a log message about a circular reference between the specified model elements
 	 * <p>
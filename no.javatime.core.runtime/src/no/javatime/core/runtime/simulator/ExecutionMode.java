@@ -0,0 +1,24 @@
+package no.javatime.core.runtime.simulator;
+
+/**
+ * How the operations of the run phase of an execution plan are executed within a simulation step.
+ */
+public enum ExecutionMode {
+
+	/**
+	 * Execute all operations of a step one by one in plan order on the simulation thread
+	 */
+	SEQUENTIAL,
+
+	/**
+	 * Partition the model elements into dependency levels (wavefronts) and execute the model
+	 * elements within each level in parallel. A level is completed before the next level is started.
+	 * <p>
+	 * Model elements are placed in a level after all earlier model elements in plan order they
+	 * depend on or are depended on by. The values computed are therefore identical to the values
+	 * computed in {@link #SEQUENTIAL} mode.
+	 *
+	 * @see WavefrontSchedule
+	 */
+	PARALLEL
+}
@@ -0,0 +1,404 @@
+package no.javatime.core.runtime.simulator;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import no.javatime.core.model.annotations.Action;
+import no.javatime.core.model.annotations.Output;
+import no.javatime.core.model.annotations.SetSeriesValue;
+import no.javatime.core.model.annotations.StartValue;
+import no.javatime.core.model.annotations.Stop;
+import no.javatime.core.model.annotations.TimeSeries;
+import no.javatime.inplace.extender.intface.Extender;
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * An immutable execution plan compiled from the sorted methods of a sorted model.
+ * <p>
+ * The plan consists of three phases, each a flat sequence of typed step operations in execution
+ * order:
+ * <ol>
+ * <li>The initial phase executed once at step zero
+ * <li>The run phase executed once for each simulation step
+ * <li>The stop phase executed once after the simulation has terminated
+ * </ol>
+ * <p>
+ * An operation is one of:
+ * <ol>
+ * <li>{@link #INVOKE} A method where the return value is ignored (e.g. <code>@Start</code>)
+ * <li>{@link #VALUE} A method returning a value (<code>@StartValue</code> or <code>@Action</code>)
+ * paired with the <code>@SetSeriesValue</code> method receiving the returned value
+ * <li>{@link #STOP} A method annotated with <code>@Stop</code> returning a stop condition
+ * </ol>
+ * <p>
+ * The pairing of value and set methods and the validation of their declarations are done once when
+ * the plan is compiled, so the simulator iterates the phases by index without map or set traversal
+ * and without checking annotations at each step.
+ * <p>
+ * Value operations where both the value and the set method have primitive invokers are flagged as
+ * primitive, and are executed without boxing the value passed from the value to the set method.
+ * <p>
+ * Value operations of model elements annotated with <code>@Output</code>, and value methods
+ * annotated with <code>@TimeSeries</code>, are flagged as output operations.
+ */
+public final class ExecutionPlan {
+
+	/** Invoke a method and ignore the return value */
+	public final static byte INVOKE = 0;
+
+	/** Invoke a method returning a value and pass the value to the paired set method */
+	public final static byte VALUE = 1;
+
+	/** Invoke a method returning a stop condition */
+	public final static byte STOP = 2;
+
+	/**
+	 * A flat sequence of step operations in execution order. Element <code>i</code> of each array
+	 * defines operation <code>i</code> in the phase.
+	 */
+	public final static class Phase {
+
+		/** The operation type of each operation */
+		final byte[] kinds;
+		/** The value, stop or invoke method of each operation */
+		final MethodModelElement[] methods;
+		/** The set method receiving the value of a value operation. Null for other operations */
+		final MethodModelElement[] setMethods;
+		/** The model element owning the methods of each operation */
+		final Extender<?>[] elements;
+		/** Model element class and method name of each operation used for logging */
+		final String[] labels;
+		/** Whether each value operation is executed without boxing its value */
+		final boolean[] primitive;
+		/** Whether each value operation is annotated as an output of the model */
+		final boolean[] output;
+
+		private Phase(List<Byte> kinds, List<MethodModelElement> methods,
+				List<MethodModelElement> setMethods, List<Extender<?>> elements) {
+
+			int size = kinds.size();
+			this.kinds = new byte[size];
+			this.methods = methods.toArray(new MethodModelElement[size]);
+			this.setMethods = setMethods.toArray(new MethodModelElement[size]);
+			this.elements = elements.toArray(new Extender<?>[size]);
+			this.labels = new String[size];
+			this.primitive = new boolean[size];
+			this.output = new boolean[size];
+			for (int i = 0; i < size; i++) {
+				this.kinds[i] = kinds.get(i);
+				this.labels[i] = this.elements[i].getServiceClass().getSimpleName() + "."
+						+ this.methods[i].method.getName();
+				this.primitive[i] = this.kinds[i] == VALUE && this.methods[i].isDoubleValue()
+						&& this.setMethods[i].isDoubleSet();
+				this.output[i] = this.kinds[i] == VALUE && isOutput(this.elements[i], this.methods[i]);
+			}
+		}
+
+		private static boolean isOutput(Extender<?> element, MethodModelElement method) {
+
+			if (element.getServiceClass().isAnnotationPresent(Output.class)
+					|| method.method.isAnnotationPresent(TimeSeries.class)) {
+				return true;
+			}
+			if (null == method.object) {
+				return false;
+			}
+			// The implementation may be annotated when the service class is an interface
+			Class<?> cls = method.object.getClass();
+			if (cls.isAnnotationPresent(Output.class)) {
+				return true;
+			}
+			try {
+				return cls.getMethod(method.method.getName(), method.method.getParameterTypes())
+						.isAnnotationPresent(TimeSeries.class);
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Number of operations in this phase
+		 *
+		 * @return the number of operations in this phase
+		 */
+		public int size() {
+			return kinds.length;
+		}
+
+		/**
+		 * The type of the operation at the specified position
+		 *
+		 * @param index position of the operation in this phase
+		 * @return one of {@link ExecutionPlan#INVOKE}, {@link ExecutionPlan#VALUE} or
+		 * {@link ExecutionPlan#STOP}
+		 */
+		public byte getKind(int index) {
+			return kinds[index];
+		}
+
+		/**
+		 * The model element owning the operation at the specified position
+		 *
+		 * @param index position of the operation in this phase
+		 * @return the model element owning the operation
+		 */
+		public Extender<?> getElement(int index) {
+			return elements[index];
+		}
+
+		/**
+		 * Whether the value operation at the specified position is executed without boxing its value
+		 *
+		 * @param index position of the operation in this phase
+		 * @return true if the value and set method of the operation have primitive invokers
+		 */
+		public boolean isPrimitive(int index) {
+			return primitive[index];
+		}
+
+		/**
+		 * Whether the value operation at the specified position is an output of the model
+		 *
+		 * @param index position of the operation in this phase
+		 * @return true if the model element is annotated with <code>@Output</code> or the value method
+		 * with <code>@TimeSeries</code>
+		 */
+		public boolean isOutput(int index) {
+			return output[index];
+		}
+
+		/**
+		 * Whether any value operation in this phase is an output of the model
+		 *
+		 * @return true if at least one value operation is an output operation
+		 */
+		public boolean hasOutputs() {
+
+			for (boolean isOutput : output) {
+				if (isOutput) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * The model element class and method name of the operation at the specified position
+		 *
+		 * @param index position of the operation in this phase
+		 * @return the simple class name and the method name of the operation
+		 */
+		public String getLabel(int index) {
+			return labels[index];
+		}
+	}
+
+	private final List<Extender<?>> modelElements;
+	private final Phase initialPhase;
+	private final Phase runPhase;
+	private final Phase stopPhase;
+	private volatile WavefrontSchedule wavefrontSchedule;
+	/** The plan this plan is bound from when the phases of the plans are identical, or null */
+	private ExecutionPlan template;
+
+	private ExecutionPlan(Collection<Extender<?>> modelElements, Phase initialPhase,
+			Phase runPhase, Phase stopPhase) {
+		this.modelElements = Collections.unmodifiableList(new ArrayList<>(modelElements));
+		this.initialPhase = initialPhase;
+		this.runPhase = runPhase;
+		this.stopPhase = stopPhase;
+	}
+
+	/**
+	 * The sorted model elements this plan is compiled from
+	 *
+	 * @return an unmodifiable list of model elements in execution order
+	 */
+	public List<Extender<?>> getModelElements() {
+		return modelElements;
+	}
+
+	/**
+	 * Operations executed once at step zero
+	 *
+	 * @return the initial phase
+	 */
+	public Phase getInitialPhase() {
+		return initialPhase;
+	}
+
+	/**
+	 * Operations executed once for each simulation step
+	 *
+	 * @return the run phase
+	 */
+	public Phase getRunPhase() {
+		return runPhase;
+	}
+
+	/**
+	 * The stop operations of the run phase executed once after a simulation run has terminated
+	 *
+	 * @return the stop phase
+	 */
+	public Phase getStopPhase() {
+		return stopPhase;
+	}
+
+	/**
+	 * The dependency levels of the run phase used when executing the plan in
+	 * {@link ExecutionMode#PARALLEL parallel}. The levels are computed on first access and retained
+	 * with the plan. When states of the plan have in or out flows, the levels depend on the flows
+	 * added by the model element instances of this plan and are computed on each access, after the
+	 * flows have been added by the initial phase of a run
+	 *
+	 * @return the dependency levels of the run phase
+	 * @throws ExtenderException If the service id is null for a registered service injected into a
+	 * model element
+	 */
+	public WavefrontSchedule getWavefrontSchedule() throws ExtenderException {
+
+		if (WavefrontSchedule.hasFlows(runPhase)) {
+			return WavefrontSchedule.compute(this);
+		}
+		if (null != template) {
+			return template.getWavefrontSchedule();
+		}
+		WavefrontSchedule schedule = wavefrontSchedule;
+		if (null == schedule) {
+			// Computing the schedule more than once is harmless
+			schedule = WavefrontSchedule.compute(this);
+			wavefrontSchedule = schedule;
+		}
+		return schedule;
+	}
+
+	/**
+	 * Create a plan executing the methods of this plan from the specified copies of the model
+	 * elements. Operations of model elements that are not executed by the specified instances are not
+	 * included in the new plan. If all operations are included, the new plan shares the dependency
+	 * levels of this plan
+	 *
+	 * @param instances copies of the model elements in this plan
+	 * @return a plan bound to the specified copies of the model elements
+	 * @throws ExtenderException if a method could not be bound to a copy of its model element
+	 */
+	public ExecutionPlan bind(ModelInstances instances) throws ExtenderException {
+
+		ExecutionPlan plan = new ExecutionPlan(modelElements, bindPhase(initialPhase, instances),
+				bindPhase(runPhase, instances), bindPhase(stopPhase, instances));
+		if (plan.runPhase.size() == runPhase.size()) {
+			plan.template = null != template ? template : this;
+		}
+		return plan;
+	}
+
+	private static Phase bindPhase(Phase phase, ModelInstances instances) throws ExtenderException {
+
+		List<Byte> kinds = new ArrayList<>();
+		List<MethodModelElement> methods = new ArrayList<>();
+		List<MethodModelElement> setMethods = new ArrayList<>();
+		List<Extender<?>> elements = new ArrayList<>();
+		for (int i = 0; i < phase.size(); i++) {
+			Object instance = instances.getInstance(phase.elements[i]);
+			if (null == instance) {
+				continue;
+			}
+			MethodModelElement method = phase.methods[i];
+			kinds.add(phase.kinds[i]);
+			methods.add(method.copy(instance, instances.substitute(method.parameterValue)));
+			MethodModelElement setMethod = phase.setMethods[i];
+			setMethods.add(null != setMethod ? setMethod.copy(instance,
+					instances.substitute(setMethod.parameterValue)) : null);
+			elements.add(phase.elements[i]);
+		}
+		return new Phase(kinds, methods, setMethods, elements);
+	}
+
+	/**
+	 * Compile an execution plan from the sorted methods of a sorted model
+	 *
+	 * @param modelElements the sorted model elements
+	 * @param initialChain sorted methods to execute at step zero
+	 * @param runChain sorted methods to execute at each step
+	 * @return an immutable execution plan
+	 * @throws ExtenderException if a value method has no paired set method, or a value or stop method
+	 * has an invalid return type
+	 */
+	public static ExecutionPlan compile(Collection<Extender<?>> modelElements,
+			LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> initialChain,
+			LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> runChain)
+			throws ExtenderException {
+
+		Phase initialPhase = compilePhase(initialChain, false);
+		Phase runPhase = compilePhase(runChain, false);
+		Phase stopPhase = compilePhase(runChain, true);
+		return new ExecutionPlan(modelElements, initialPhase, runPhase, stopPhase);
+	}
+
+	private static Phase compilePhase(
+			LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> execChain, boolean stopOnly)
+			throws ExtenderException {
+
+		List<Byte> kinds = new ArrayList<>();
+		List<MethodModelElement> methods = new ArrayList<>();
+		List<MethodModelElement> setMethods = new ArrayList<>();
+		List<Extender<?>> elements = new ArrayList<>();
+
+		for (Map.Entry<Extender<?>, LinkedHashSet<MethodModelElement>> entry : execChain.entrySet()) {
+			Extender<?> extenderElement = entry.getKey();
+			for (Iterator<MethodModelElement> iterator = entry.getValue().iterator(); iterator
+					.hasNext();) {
+				MethodModelElement methodModelElement = iterator.next();
+				Class<?> annotationClass = methodModelElement.getAnnotationClass();
+				byte kind;
+				MethodModelElement setMethodElement = null;
+				if (annotationClass == Stop.class) {
+					kind = STOP;
+					validateReturnType(methodModelElement.method, Boolean.class, boolean.class, void.class);
+				} else if (annotationClass == StartValue.class || annotationClass == Action.class) {
+					kind = VALUE;
+					validateReturnType(methodModelElement.method, Double.class, double.class);
+					if (iterator.hasNext()) {
+						setMethodElement = iterator.next();
+					}
+					if (null == setMethodElement
+							|| setMethodElement.getAnnotationClass() != SetSeriesValue.class) {
+						throw new ExtenderException(
+								"Internal error: Missing method for setting the value of method {0}",
+								methodModelElement.method.getName());
+					}
+				} else {
+					kind = INVOKE;
+				}
+				if (!stopOnly || kind == STOP) {
+					kinds.add(kind);
+					methods.add(methodModelElement);
+					setMethods.add(setMethodElement);
+					elements.add(extenderElement);
+				}
+			}
+		}
+		return new Phase(kinds, methods, setMethods, elements);
+	}
+
+	private static void validateReturnType(Method method, Class<?>... returnTypes)
+			throws ExtenderException {
+
+		Class<?> returnType = method.getReturnType();
+		for (Class<?> type : returnTypes) {
+			if (type == returnType) {
+				return;
+			}
+		}
+		throw new ExtenderException("Method {0} in {1} has an invalid return type {2}",
+				method.getName(), method.getDeclaringClass().getSimpleName(), returnType.getSimpleName());
+	}
+}
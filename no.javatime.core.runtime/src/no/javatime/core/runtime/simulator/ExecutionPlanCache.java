@@ -0,0 +1,173 @@
+package no.javatime.core.runtime.simulator;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleRevision;
+
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * Cache of compiled execution plans, one for each model bundle.
+ * <p>
+ * Sorting the model elements, injecting them and sorting their methods is done once for a model
+ * bundle and reused by subsequent simulation runs of the same model. A cached plan is keyed by the
+ * bundle id and is only valid for the {@link BundleRevision revision} and the last modified time of
+ * the model bundle when the plan was compiled.
+ * <p>
+ * A plan also depends on model elements in other bundles (e.g. system model elements and injected
+ * model elements provided by other bundles). Cached plans are invalidated when any of the bundles
+ * owning model elements in the plan or any model element service in the plan is updated,
+ * unregistered or re-registered. Invalidation is driven by the extender tracker and the extender
+ * service listener of this bundle.
+ * <p>
+ * Each invalidation starts a new generation of the cache. A plan is cached with the generation when
+ * its compilation started, and is discarded if the cache has been invalidated since, as the plan
+ * may have been compiled from model elements that are no longer valid.
+ */
+public class ExecutionPlanCache {
+
+	/**
+	 * A compiled plan and the state of the model bundle and the participating bundles when the plan
+	 * was compiled
+	 */
+	private static class CachedPlan {
+
+		final BundleRevision revision;
+		final long lastModified;
+		final ExecutionPlan executionPlan;
+		final Collection<Bundle> participatingBundles = new LinkedHashSet<>();
+
+		CachedPlan(Bundle bundle, ExecutionPlan executionPlan) {
+			this.revision = bundle.adapt(BundleRevision.class);
+			this.lastModified = bundle.getLastModified();
+			this.executionPlan = executionPlan;
+			participatingBundles.add(bundle);
+			for (Extender<?> extender : executionPlan.getModelElements()) {
+				Bundle owner = extender.getOwner();
+				if (null != owner) {
+					participatingBundles.add(owner);
+				}
+			}
+		}
+
+		boolean isValid(Bundle bundle) {
+			return lastModified == bundle.getLastModified()
+					&& revision == bundle.adapt(BundleRevision.class);
+		}
+	}
+
+	private final Map<Long, CachedPlan> plans = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+
+	/**
+	 * The current generation of the cache, incremented by each invalidation. Read before compiling a
+	 * plan to be cached
+	 *
+	 * @return the current generation
+	 * @see #put(Bundle, ExecutionPlan, long)
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Get the cached execution plan of the specified model bundle
+	 * <p>
+	 * If the cached plan was compiled for another revision of the bundle, the plan is removed from the
+	 * cache and null is returned
+	 *
+	 * @param bundle the model bundle
+	 * @return the cached execution plan or null if no valid plan is cached for the bundle
+	 */
+	public ExecutionPlan get(Bundle bundle) {
+
+		if (null == bundle) {
+			return null;
+		}
+		CachedPlan cachedPlan = plans.get(bundle.getBundleId());
+		if (null == cachedPlan) {
+			return null;
+		}
+		if (!cachedPlan.isValid(bundle)) {
+			plans.remove(bundle.getBundleId(), cachedPlan);
+			return null;
+		}
+		return cachedPlan.executionPlan;
+	}
+
+	/**
+	 * Cache the specified execution plan for the current revision of the specified model bundle. The
+	 * plan is not cached if the cache has been invalidated after the specified generation
+	 *
+	 * @param bundle the model bundle the plan is compiled for
+	 * @param executionPlan the compiled execution plan of the model bundle
+	 * @param generation the {@link #getGeneration() generation} of the cache when the compilation of
+	 * the plan started
+	 * @return true if the plan was cached and false if it was discarded
+	 */
+	public boolean put(Bundle bundle, ExecutionPlan executionPlan, long generation) {
+
+		if (null == bundle || null == executionPlan || generation != this.generation.get()) {
+			return false;
+		}
+		CachedPlan cachedPlan = new CachedPlan(bundle, executionPlan);
+		plans.put(bundle.getBundleId(), cachedPlan);
+		// An invalidation after the check above either removes the plan or is seen here
+		if (generation != this.generation.get()) {
+			plans.remove(bundle.getBundleId(), cachedPlan);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Remove all cached plans where the specified bundle is the model bundle or owns one or more of
+	 * the model elements in the plan
+	 *
+	 * @param bundle a model bundle or a bundle providing model elements
+	 */
+	public void invalidate(Bundle bundle) {
+
+		if (null == bundle) {
+			return;
+		}
+		generation.incrementAndGet();
+		for (Iterator<CachedPlan> iterator = plans.values().iterator(); iterator.hasNext();) {
+			if (iterator.next().participatingBundles.contains(bundle)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached plans containing the specified model element service
+	 *
+	 * @param extender a model element service
+	 */
+	public void invalidate(Extender<?> extender) {
+
+		if (null == extender) {
+			return;
+		}
+		generation.incrementAndGet();
+		for (Iterator<CachedPlan> iterator = plans.values().iterator(); iterator.hasNext();) {
+			if (iterator.next().executionPlan.getModelElements().contains(extender)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached plans
+	 */
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		plans.clear();
+	}
+}
@@ -0,0 +1,43 @@
+package no.javatime.core.runtime.simulator;
+
+/**
+ * How the state model elements of a run are integrated from one step to the next.
+ * <p>
+ * Explicit Euler is computed by the state model elements themselves. The other methods are
+ * computed by the simulator from the net flow rate of each state, and evaluate the value methods
+ * of the flows (transitions) at intermediate states within each step. The calculate methods of the
+ * states are not executed with these methods.
+ *
+ * @see StateIntegrator
+ */
+public enum IntegrationMethod {
+
+	/**
+	 * Explicit Euler. The state at the next step is the state at the current step plus the net flow
+	 * of the state times the delta time, as calculated by the state model elements
+	 */
+	EULER,
+
+	/**
+	 * The classical fourth order Runge-Kutta method with a fixed delta time. The flows are evaluated
+	 * four times for each step
+	 */
+	RK4,
+
+	/**
+	 * The Dormand-Prince 5(4) method with an adaptive delta time. The delta time of each step is
+	 * chosen from an estimate of the error of the step, within the relative and absolute tolerance
+	 * of the run, and the delta time of the run is the delta time of the first step. The flows are
+	 * evaluated seven times for each accepted step
+	 */
+	DORMAND_PRINCE;
+
+	/**
+	 * Whether the delta time is chosen for each step
+	 *
+	 * @return true if the delta time of the run varies between steps
+	 */
+	public boolean isAdaptive() {
+		return this == DORMAND_PRINCE;
+	}
+}
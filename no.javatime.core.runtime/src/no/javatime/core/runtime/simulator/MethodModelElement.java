@@ -1,8 +1,17 @@
 package no.javatime.core.runtime.simulator;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
 
+import no.javatime.core.model.elements.Endogenous;
+import no.javatime.core.model.elements.State;
 import no.javatime.inplace.extender.intface.ExtenderException;
 
 /**
@@ -18,6 +27,16 @@ import no.javatime.inplace.extender.intface.ExtenderException;
  * <li>The object as defined by the declaring class from which the underlying method is invoked from
  * <li>A parameter value for each method parameter type
  * </ol>
+ * <p>
+ * Before a method is executed it is bound to its object and parameter values by {@link #bind()}.
+ * Binding creates method handles once, so each execution is a direct call to the underlying method
+ * without the argument array, boxing of the target and access checks of reflective invocation.
+ * <p>
+ * Value methods returning <code>double</code> and set methods with one <code>double</code>
+ * parameter are also bound to primitive invokers, used by {@link #executeDouble()} and
+ * {@link #executeSetDouble(double)} to execute them without boxing. The boxed value and set
+ * methods of the model element library (e.g. {@link Endogenous#setValue(Double)}) are bound to
+ * their primitive variants when they are not overridden.
  */
 public class MethodModelElement {
 
@@ -25,6 +44,40 @@ public class MethodModelElement {
 	Object object; // The object from which the underlying method is invoked from
 	Object[] parameterValue; // Actual parameters
 	Class<?> annotationClass; // The annotation this method is annotated with
+	private MethodHandle handle; // The unbound method
+	private MethodHandle invoker; // The method bound to the object and actual parameters
+	private MethodHandle setInvoker; // The method bound to the object with one open parameter
+	private MethodHandle doubleInvoker; // The invoker returning a primitive value or null
+	private MethodHandle doubleSetInvoker; // The set invoker with a primitive parameter or null
+
+	/** Call site type of the bound invoker */
+	private final static MethodType invokerType = MethodType.methodType(Object.class);
+
+	/** Call site type of the bound set invoker */
+	private final static MethodType setInvokerType = MethodType.methodType(Object.class,
+			Double.class);
+
+	/** Call site type of the bound primitive invoker */
+	private final static MethodType doubleInvokerType = MethodType.methodType(double.class);
+
+	/** Call site type of the bound primitive set invoker */
+	private final static MethodType doubleSetInvokerType = MethodType.methodType(void.class,
+			double.class);
+
+	/** Unbound primitive variants of boxed value and set methods in the model element library */
+	private final static Map<Method, MethodHandle> primitiveVariants = new HashMap<>();
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			primitiveVariants.put(Endogenous.class.getMethod("setValue", Double.class),
+					lookup.findVirtual(Endogenous.class, "value", doubleSetInvokerType));
+			primitiveVariants.put(State.class.getMethod("calculate"),
+					lookup.findVirtual(State.class, "integrate", doubleInvokerType));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			// The boxed methods are executed
+		}
+	}
 
 	/**
 	 * Creates a method element model with a defined method, object from which the specified method is invoked and the 
@@ -44,6 +97,26 @@ public class MethodModelElement {
 		this.parameterValue = parameterValue;
 	}
 
+	/**
+	 * Create a bound copy of this method model element invoking the same method from the specified
+	 * object with the specified parameter values
+	 * 
+	 * @param object The object from which the underlying method is invoked from
+	 * @param parameterValue Actual parameter values
+	 * @return a new method model element bound to the specified object and parameter values
+	 * @throws ExtenderException if the object or the parameter values does not match the declaration
+	 * of the method
+	 * @see #bind()
+	 */
+	public MethodModelElement copy(Object object, Object[] parameterValue) throws ExtenderException {
+
+		MethodModelElement copy = new MethodModelElement(method, object, parameterValue);
+		copy.annotationClass = annotationClass;
+		copy.handle = handle;
+		copy.bind();
+		return copy;
+	}
+
 	/**
 	 * Get the annotation this method is annotated with
 	 * 
@@ -77,8 +150,17 @@ public class MethodModelElement {
 	 */
 	public Object execute() throws ExtenderException {
 
-		Object returnValue = invoke(method, object, parameterValue);
-		return returnValue;
+		if (null == invoker) {
+			bind();
+		}
+		try {
+			return (Object) invoker.invokeExact();
+		} catch (ExceptionInInitializerError e) {
+			throw new ExtenderException(e, "Exception in a static initializer provoked by method {0}",
+					method.getName());
+		} catch (Throwable e) {
+			throw new ExtenderException(e, "Failed to execute method: {0}", method.getName());
+		}
 	}
 
 	/**
@@ -97,45 +179,190 @@ public class MethodModelElement {
 	 * limited additional information about the cause in context of the executed method
 	 */
 	public Object executeSet(Double doubleValue) throws ExtenderException {
-		parameterValue[0] = doubleValue;
-		return invoke(method, object, parameterValue);
+
+		if (null == setInvoker) {
+			bind();
+			if (null == setInvoker) {
+				throw new ExtenderException(
+						"Encountered an illegal argument while trying to execute method {0}", method.getName());
+			}
+		}
+		try {
+			return (Object) setInvoker.invokeExact(doubleValue);
+		} catch (ExceptionInInitializerError e) {
+			throw new ExtenderException(e, "Exception in a static initializer provoked by method {0}",
+					method.getName());
+		} catch (Throwable e) {
+			throw new ExtenderException(e, "Failed to execute method: {0}", method.getName());
+		}
 	}
 
 	/**
-	 * Executes an arbitrary class member method given its object and actual parameters
+	 * Whether {@link #executeDouble()} executes this method without boxing the returned value
+	 * 
+	 * @return true if the method returns a primitive value or has a primitive variant
+	 */
+	public boolean isDoubleValue() {
+
+		MethodHandle variant = primitiveVariants.get(method);
+		return method.getReturnType() == double.class
+				|| (null != variant && variant.type().returnType() == double.class);
+	}
+
+	/**
+	 * Whether {@link #executeSetDouble(double)} executes this method without boxing the parameter
+	 * 
+	 * @return true if the method has a primitive parameter or has a primitive variant
+	 */
+	public boolean isDoubleSet() {
+
+		MethodHandle variant = primitiveVariants.get(method);
+		return (method.getParameterCount() == 1 && method.getParameterTypes()[0] == double.class)
+				|| (null != variant && variant.type().returnType() == void.class);
+	}
+
+	/**
+	 * Invokes the underlying method of this method model element returning a value
 	 * <p>
-	 * Requires that that the declaring class and the formal parameters are defined for the method.
-	 * See {@link #getMethod(String, Class, Class[])
+	 * Without a primitive invoker the method is executed by {@link #execute()} and the returned value
+	 * is unboxed
 	 * 
-	 * @param T type of class
-	 * @param methodName method name to invoke
-	 * @param obj the object from which underlying method is invoked from
-	 * @param parameterValue the actual parameter values used in the method call
-	 * @return the return value of the invoked method or null if the signature of the method return
-	 * value is void
-	 * @throws ExtenderException exception bounded to the underlying reflection exceptions. Adds
-	 * some limited additional information about the cause in context of this method
+	 * @return the returned value or <code>NaN</code> if the method returned null
+	 * @throws ExtenderException if the method fails or does not return a number
 	 */
-	private Object invoke(Method method, Object obj, Object[] parameterValue)
-			throws ExtenderException {
+	public double executeDouble() throws ExtenderException {
 
+		if (null == invoker) {
+			bind();
+		}
+		if (null == doubleInvoker) {
+			Object returnValue = execute();
+			if (null == returnValue) {
+				return Double.NaN;
+			}
+			if (!(returnValue instanceof Number)) {
+				throw new ExtenderException("Method {0} does not return a number", method.getName());
+			}
+			return ((Number) returnValue).doubleValue();
+		}
 		try {
-			return method.invoke(obj, parameterValue);
-		} catch (IllegalArgumentException e) {
-			throw new ExtenderException(e,
-					"Encountered an illegal argument while trying to execute method {0}", method.getName());
-		} catch (IllegalAccessException e) {
-			throw new ExtenderException(e, "Failed to access method {0}", method.getName());
-		} catch (InvocationTargetException e) {
+			return (double) doubleInvoker.invokeExact();
+		} catch (ExceptionInInitializerError e) {
+			throw new ExtenderException(e, "Exception in a static initializer provoked by method {0}",
+					method.getName());
+		} catch (Throwable e) {
 			throw new ExtenderException(e, "Failed to execute method: {0}", method.getName());
+		}
+	}
+
+	/**
+	 * Execute this method model element with the specified value as parameter
+	 * <p>
+	 * Without a primitive set invoker the method is executed by {@link #executeSet(Double)} with the
+	 * value boxed
+	 * 
+	 * @param value the parameter value
+	 * @throws ExtenderException if the method fails or does not accept a <code>Double</code>
+	 */
+	public void executeSetDouble(double value) throws ExtenderException {
+
+		if (null == invoker) {
+			bind();
+		}
+		if (null == doubleSetInvoker) {
+			executeSet(value);
+			return;
+		}
+		try {
+			doubleSetInvoker.invokeExact(value);
 		} catch (ExceptionInInitializerError e) {
 			throw new ExtenderException(e, "Exception in a static initializer provoked by method {0}",
 					method.getName());
+		} catch (Throwable e) {
+			throw new ExtenderException(e, "Failed to execute method: {0}", method.getName());
+		}
+	}
+
+	/**
+	 * Bind the underlying method of this method model element to its object and parameter values.
+	 * <p>
+	 * Two invokers are created. One where the object and all parameter values are bound, used by
+	 * {@link #execute()}, and one where only the object is bound, used by {@link #executeSet(Double)}
+	 * when the method has one parameter that accepts a <code>Double</code>. The parameter values are
+	 * bound when this method is invoked, and the method must be bound again if the object or the
+	 * parameter values are changed.
+	 * <p>
+	 * Methods that are not accessible from this bundle (e.g. a public method in a non public class)
+	 * are made accessible before they are bound.
+	 * 
+	 * @throws ExtenderException if the method could not be accessed or the object or the parameter
+	 * values does not match the declaration of the method
+	 */
+	public void bind() throws ExtenderException {
+
+		try {
+			if (null == handle) {
+				handle = unreflect(method);
+			}
+			MethodHandle handle = this.handle;
+			MethodHandle variant = primitiveVariants.get(method);
+			if (!Modifier.isStatic(method.getModifiers())) {
+				handle = handle.bindTo(object);
+				if (null != variant) {
+					variant = variant.bindTo(object);
+				}
+			}
+			int parameterCount = method.getParameterCount();
+			MethodHandle closed = parameterCount > 0 ? MethodHandles.insertArguments(handle, 0,
+					parameterValue) : handle;
+			invoker = closed.asType(invokerType);
+			doubleInvoker = null;
+			if (method.getReturnType() == double.class) {
+				doubleInvoker = closed.asType(doubleInvokerType);
+			} else if (null != variant && variant.type().parameterCount() == 0) {
+				doubleInvoker = variant;
+			}
+			setInvoker = null;
+			doubleSetInvoker = null;
+			if (parameterCount == 1) {
+				Class<?> parameterType = method.getParameterTypes()[0];
+				if (parameterType == double.class || parameterType.isAssignableFrom(Double.class)) {
+					setInvoker = handle.asType(setInvokerType);
+				}
+				if (parameterType == double.class) {
+					doubleSetInvoker = handle.asType(doubleSetInvokerType);
+				} else if (null != variant && variant.type().parameterCount() == 1) {
+					doubleSetInvoker = variant;
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new ExtenderException(e, "Failed to access method {0}", method.getName());
+		} catch (IllegalArgumentException | ClassCastException | WrongMethodTypeException e) {
+			throw new ExtenderException(e,
+					"Encountered an illegal argument while trying to execute method {0}", method.getName());
 		} catch (NullPointerException e) {
 			throw new ExtenderException(e);
 		}
 	}
 
+	/**
+	 * Get a method handle for the specified method. If the method is not accessible through the
+	 * public lookup it is made accessible before it is converted
+	 * 
+	 * @param method The method to convert to a method handle
+	 * @return A direct method handle for the specified method
+	 * @throws IllegalAccessException if the method could not be made accessible
+	 */
+	private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+
+		try {
+			return MethodHandles.publicLookup().unreflect(method);
+		} catch (IllegalAccessException e) {
+			method.setAccessible(true);
+			return MethodHandles.lookup().unreflect(method);
+		}
+	}
+
 	/**
 	 * Executes an arbitrary class member method given its class, object, formal and actual parameters
 	 * 
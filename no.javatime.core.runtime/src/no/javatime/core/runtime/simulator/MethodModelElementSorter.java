@@ -81,6 +81,22 @@ public class MethodModelElementSorter {
 		return initialMethodExecMapChain;
 	}
 
+	/**
+	 * Sort the methods to execute at step zero and at each step for the specified sorted model
+	 * elements and compile them into an immutable execution plan
+	 * 
+	 * @param extenders model elements sorted in execution order
+	 * @return the compiled execution plan of the specified model elements
+	 * @throws ExtenderException if failing to bind a method or a method has an invalid declaration
+	 * @see ExecutionPlan
+	 */
+	public ExecutionPlan compile(Collection<Extender<?>> extenders) throws ExtenderException {
+
+		sortInitalMethods(extenders);
+		sortRunMethods(extenders);
+		return ExecutionPlan.compile(extenders, initialMethodExecMapChain, runMethodExecMapChain);
+	}
+
 	public void logExecInitChain() {
 		BundleLog bundleLog = Extenders.getService(BundleLog.class);
 		bundleLog.add(StatusCode.INFO, Activator.getContext().getBundle(), null,
@@ -184,6 +200,8 @@ public class MethodModelElementSorter {
 		if (null != method) {
 			methodElement = injectMethodParameters(method, serviceClass, object);
 			methodElement.setAnnotationClass(annotationClass);
+			// Bind once to execute without reflection at each step
+			methodElement.bind();
 		}
 		return methodElement;
 	}
@@ -208,6 +226,7 @@ public class MethodModelElementSorter {
 			}
 			methodElement = new MethodModelElement(method, object, parameterValue);
 			methodElement.setAnnotationClass(annotationClass);
+			methodElement.bind();
 		}
 		return methodElement;
 	}
@@ -0,0 +1,250 @@
+package no.javatime.core.runtime.simulator;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import no.javatime.core.model.annotations.ModelElement;
+import no.javatime.core.model.elements.Events;
+import no.javatime.core.model.elements.TimeSeriesProvider;
+import no.javatime.inplace.extender.intface.Extender;
+import no.javatime.inplace.extender.intface.ExtenderException;
+import no.javatime.inplace.extender.intface.Extenders;
+
+/**
+ * An independent copy of the model element instances of an execution plan, used to run a model in
+ * a {@link SimulationContext context} or a {@link Replica replica} concurrently with other runs of
+ * the same or other models.
+ * <p>
+ * The model elements of a plan are singleton services. A copy is created for each model element,
+ * for the events service and for the time series provider, regardless of the scope of the model
+ * element. System model elements with {@link ModelElement.Scope#PROTOTYPE prototype} scope are
+ * also copied, while other system model elements (e.g. views) are shared by all runs. Shared model
+ * elements are either executed with the copied model elements as method parameters, or not
+ * executed at all.
+ * <p>
+ * Copies are created with the no argument constructor of the model element class. References
+ * between model elements are then copied from the singleton instances to the copies, replacing
+ * each referenced singleton with its copy. This includes injected fields and other fields
+ * referencing model elements, and collections of model elements (e.g. the flows of a state). Other
+ * fields keep the value assigned by the constructor.
+ */
+public class ModelInstances {
+
+	/** Copy of each singleton instance */
+	private final Map<Object, Object> copies = new IdentityHashMap<>();
+	/** Copy of the model elements in the plan that are executed, or the shared model element */
+	private final Map<Extender<?>, Object> elements = new LinkedHashMap<>();
+	private final Events events;
+	private final TimeSeriesProvider timeSeriesProvider;
+
+	private ModelInstances(Events events, TimeSeriesProvider timeSeriesProvider) {
+		this.events = events;
+		this.timeSeriesProvider = timeSeriesProvider;
+	}
+
+	/**
+	 * Copy the model element instances of the specified execution plan
+	 *
+	 * @param executionPlan the plan to copy model elements from
+	 * @param executeShared true to execute shared model elements and false to exclude them
+	 * @return copies of the model elements of the plan
+	 * @throws ExtenderException if the events service or the time series provider is not registered
+	 * or a model element could not be instantiated
+	 */
+	public static ModelInstances create(ExecutionPlan executionPlan, boolean executeShared)
+			throws ExtenderException {
+
+		Map<Object, Object> copies = new IdentityHashMap<>();
+		Events events = Extenders.getService(Events.class);
+		TimeSeriesProvider timeSeriesProvider = Extenders.getService(TimeSeriesProvider.class);
+		if (null == events || null == timeSeriesProvider) {
+			throw new ExtenderException("Missing events or time series service for model replica");
+		}
+		Events eventsCopy = (Events) newInstance(events, copies);
+		TimeSeriesProvider timeSeriesProviderCopy = (TimeSeriesProvider) newInstance(
+				timeSeriesProvider, copies);
+		ModelInstances instances = new ModelInstances(eventsCopy, timeSeriesProviderCopy);
+		for (Extender<?> extender : executionPlan.getModelElements()) {
+			Object service = extender.getService();
+			if (null == service) {
+				continue;
+			}
+			Object copy = copies.get(service);
+			if (null == copy) {
+				if (isCopied(extender)) {
+					copy = newInstance(service, copies);
+				} else if (executeShared) {
+					copy = service;
+				}
+			}
+			if (null != copy) {
+				instances.elements.put(extender, copy);
+			}
+		}
+		instances.copies.putAll(copies);
+		for (Map.Entry<Object, Object> entry : copies.entrySet()) {
+			instances.copyReferences(entry.getKey().getClass(), entry.getKey(), entry.getValue());
+		}
+		return instances;
+	}
+
+	/**
+	 * The copy of the events service of this replica
+	 *
+	 * @return the events service of this replica
+	 */
+	public Events getEvents() {
+		return events;
+	}
+
+	/**
+	 * The copy of the time series provider of this replica
+	 *
+	 * @return the time series provider of this replica
+	 */
+	public TimeSeriesProvider getTimeSeriesProvider() {
+		return timeSeriesProvider;
+	}
+
+	/**
+	 * Get the copy of the specified model element
+	 *
+	 * @param extender a model element in the execution plan of this replica
+	 * @return the copy of the model element, the model element itself if it is shared, or null if
+	 * the model element is shared and not executed
+	 */
+	public Object getInstance(Extender<?> extender) {
+		return elements.get(extender);
+	}
+
+	/**
+	 * Get the copy of the specified instance
+	 *
+	 * @param instance a singleton instance
+	 * @return the copy of the instance or the instance itself if it is shared by all replicas
+	 */
+	Object substitute(Object instance) {
+
+		if (null == instance) {
+			return null;
+		}
+		Object copy = copies.get(instance);
+		return null != copy ? copy : instance;
+	}
+
+	/**
+	 * Replace the singleton instances in the specified parameter values with their copies
+	 *
+	 * @param parameterValues parameter values of a method
+	 * @return a new array with copies of the parameter values or null if the specified values are
+	 * null
+	 */
+	Object[] substitute(Object[] parameterValues) {
+
+		if (null == parameterValues) {
+			return null;
+		}
+		Object[] values = new Object[parameterValues.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = substitute(parameterValues[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * Model elements other than system model elements are always copied. System model elements are
+	 * only copied if they have prototype scope
+	 */
+	private static boolean isCopied(Extender<?> extender) {
+
+		ModelElement modelElement = extender.getServiceClass().getAnnotation(ModelElement.class);
+		return null == modelElement || modelElement.type() != ModelElement.Type.SYSTEM
+				|| modelElement.scope() == ModelElement.Scope.PROTOTYPE;
+	}
+
+	private static Object newInstance(Object service, Map<Object, Object> copies)
+			throws ExtenderException {
+
+		Class<?> cls = service.getClass();
+		try {
+			Constructor<?> constructor = cls.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			Object copy = constructor.newInstance();
+			copies.put(service, copy);
+			return copy;
+		} catch (NoSuchMethodException e) {
+			throw new ExtenderException(e, "Model element {0} has no default constructor",
+					cls.getName());
+		} catch (InstantiationException | IllegalAccessException | InvocationTargetException
+				| SecurityException e) {
+			throw new ExtenderException(e, "Failed to create model element {0}", cls.getName());
+		}
+	}
+
+	/**
+	 * Copy fields referencing model elements or collections of model elements from the specified
+	 * singleton to its copy. Fields in super classes are copied before fields in sub classes
+	 */
+	private void copyReferences(Class<?> cls, Object service, Object copy)
+			throws ExtenderException {
+
+		if (null == cls || cls == Object.class) {
+			return;
+		}
+		copyReferences(cls.getSuperclass(), service, copy);
+		for (Field field : cls.getDeclaredFields()) {
+			int modifiers = field.getModifiers();
+			if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)
+					|| field.getType().isPrimitive()) {
+				continue;
+			}
+			try {
+				field.setAccessible(true);
+				Object value = field.get(service);
+				if (null == value) {
+					continue;
+				}
+				if (copies.containsKey(value)) {
+					field.set(copy, copies.get(value));
+				} else if (value instanceof Collection && containsCopied((Collection<?>) value)) {
+					field.set(copy, copyCollection((Collection<?>) value));
+				}
+			} catch (IllegalAccessException | IllegalArgumentException | SecurityException e) {
+				throw new ExtenderException(e, "Failed to copy field {0} in model element {1}",
+						field.getName(), cls.getName());
+			}
+		}
+	}
+
+	private boolean containsCopied(Collection<?> collection) {
+
+		for (Object element : collection) {
+			if (copies.containsKey(element)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Collection<Object> copyCollection(Collection<?> collection) {
+
+		Collection<Object> copy;
+		try {
+			copy = (Collection<Object>) collection.getClass().newInstance();
+		} catch (InstantiationException | IllegalAccessException | SecurityException e) {
+			copy = new ArrayList<>(collection.size());
+		}
+		for (Object element : collection) {
+			copy.add(substitute(element));
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,150 @@
+package no.javatime.core.runtime.simulator;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import no.javatime.core.model.annotations.SeriesValue;
+import no.javatime.core.model.annotations.StartValue;
+import no.javatime.inplace.extender.intface.Extender;
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * Resolves values overriding the parameters of a model to the operations and the model element
+ * instances of an execution plan.
+ * <p>
+ * Model elements are named by the simple or the fully qualified name of their service class, and
+ * the fully qualified name is preferred when both are given.
+ *
+ * @see RunConfiguration
+ */
+final class ParameterOverrides {
+
+	private ParameterOverrides() {
+	}
+
+	/**
+	 * Resolve start values to the start value operations of the specified initial phase
+	 *
+	 * @param phase the initial phase of a plan
+	 * @param overrides start values by model element name
+	 * @param unmatched receives the names that do not match a model element with a start value
+	 * method. May be null
+	 * @return the overriding start value of each operation in the phase or null
+	 */
+	static Double[] getStartValues(ExecutionPlan.Phase phase, Map<String, Double> overrides,
+			Collection<String> unmatched) {
+
+		Double[] startValues = new Double[phase.size()];
+		Set<String> matched = new LinkedHashSet<>();
+		for (int i = 0; i < phase.size(); i++) {
+			if (phase.kinds[i] == ExecutionPlan.VALUE
+					&& phase.methods[i].getAnnotationClass() == StartValue.class) {
+				String name = getName(phase.elements[i], overrides.keySet());
+				if (null != name) {
+					startValues[i] = overrides.get(name);
+					matched.add(name);
+				}
+			}
+		}
+		if (null != unmatched) {
+			for (String name : overrides.keySet()) {
+				if (!matched.contains(name)) {
+					unmatched.add(name);
+				}
+			}
+		}
+		return startValues;
+	}
+
+	/**
+	 * Set the fields annotated with <code>@SeriesValue</code> of the model element instances of a
+	 * plan
+	 *
+	 * @param executionPlan the plan of the model
+	 * @param instances maps a model element to its instance in a run or to null if the model element
+	 * is shared by all runs
+	 * @param values field values by the model element name and the field name separated by
+	 * {@value RunConfiguration#FIELD_SEPARATOR}
+	 * @throws ExtenderException if a name does not match an annotated field of a model element
+	 * instance, or the field is not a <code>double</code> field
+	 */
+	static void setFieldValues(ExecutionPlan executionPlan, Function<Extender<?>, Object> instances,
+			Map<String, Double> values) throws ExtenderException {
+
+		Set<String> unmatched = new LinkedHashSet<>(values.keySet());
+		for (Extender<?> extender : executionPlan.getModelElements()) {
+			Object instance = instances.apply(extender);
+			if (null == instance) {
+				continue;
+			}
+			for (Map.Entry<String, Double> entry : values.entrySet()) {
+				String key = entry.getKey();
+				int separator = key.lastIndexOf(RunConfiguration.FIELD_SEPARATOR);
+				if (separator <= 0) {
+					continue;
+				}
+				String element = key.substring(0, separator);
+				Class<?> serviceClass = extender.getServiceClass();
+				if (element.equals(serviceClass.getName()) || element.equals(serviceClass
+						.getSimpleName())) {
+					setField(instance, key.substring(separator + 1), entry.getValue());
+					unmatched.remove(key);
+				}
+			}
+		}
+		if (!unmatched.isEmpty()) {
+			throw new ExtenderException("Field values {0} does not match the model", unmatched);
+		}
+	}
+
+	/**
+	 * The name of the specified model element among the specified names
+	 *
+	 * @return the fully qualified or the simple name of the service class of the model element or
+	 * null if none of the names is the name of the model element
+	 */
+	private static String getName(Extender<?> extender, Set<String> names) {
+
+		Class<?> serviceClass = extender.getServiceClass();
+		if (names.contains(serviceClass.getName())) {
+			return serviceClass.getName();
+		}
+		return names.contains(serviceClass.getSimpleName()) ? serviceClass.getSimpleName() : null;
+	}
+
+	private static void setField(Object instance, String name, double value)
+			throws ExtenderException {
+
+		for (Class<?> cls = instance.getClass(); null != cls; cls = cls.getSuperclass()) {
+			Field field;
+			try {
+				field = cls.getDeclaredField(name);
+			} catch (NoSuchFieldException e) {
+				continue;
+			}
+			if (!field.isAnnotationPresent(SeriesValue.class)) {
+				throw new ExtenderException("Field {0} of {1} is not annotated with @SeriesValue", name,
+						cls.getName());
+			}
+			try {
+				field.setAccessible(true);
+				if (field.getType() == double.class) {
+					field.setDouble(instance, value);
+				} else if (field.getType() == Double.class) {
+					field.set(instance, value);
+				} else {
+					throw new ExtenderException("Field {0} of {1} is not a double field", name, cls
+							.getName());
+				}
+			} catch (IllegalAccessException | SecurityException e) {
+				throw new ExtenderException(e, "Failed to set field {0} of {1}", name, cls.getName());
+			}
+			return;
+		}
+		throw new ExtenderException("No field {0} in {1}", name, instance.getClass().getName());
+	}
+}
@@ -0,0 +1,68 @@
+package no.javatime.core.runtime.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Selects the steps of a run where the values of the model elements are recorded.
+ * <p>
+ * Either every k-th step is recorded, or only the steps at a set of specified simulated times. A
+ * specified time is recorded at the first step at or after the time, so times that do not fall on a
+ * step are not lost. The steps that are not recorded are still executed.
+ * <p>
+ * Steps before the start time of the schedule are not recorded, and the stride is counted from the
+ * first step at or after the start time.
+ */
+final class RecordingSchedule {
+
+	/** Relative tolerance when comparing the time of a step with a specified time */
+	private final static double TOLERANCE = 1e-9;
+
+	private final int stride;
+	private final double start;
+	private final double[] times;
+	private int nextTime;
+	private long steps;
+
+	/**
+	 * Create a schedule for one run
+	 *
+	 * @param stride record every <code>stride</code> step. Values less than one are treated as one
+	 * @param times the times to record or null to record by stride
+	 * @param start the simulated time of the first recorded step
+	 */
+	RecordingSchedule(int stride, double[] times, double start) {
+
+		this.stride = Math.max(1, stride);
+		this.start = start - TOLERANCE * Math.max(1d, Math.abs(start));
+		if (null != times) {
+			this.times = times.clone();
+			Arrays.sort(this.times);
+		} else {
+			this.times = null;
+		}
+	}
+
+	/**
+	 * Whether to record the next step. Called once for each step in step order
+	 *
+	 * @param time the simulated time of the step
+	 * @return true if the step is recorded
+	 */
+	boolean record(double time) {
+
+		if (time < start) {
+			return false;
+		}
+		steps++;
+		if (null == times) {
+			return steps % stride == 0;
+		}
+		boolean record = false;
+		double limit = time + TOLERANCE * Math.max(1d, Math.abs(time));
+		while (nextTime < times.length && times[nextTime] <= limit) {
+			nextTime++;
+			record = true;
+		}
+		return record;
+	}
+}
@@ -0,0 +1,159 @@
+package no.javatime.core.runtime.simulator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.osgi.framework.Bundle;
+
+import no.javatime.core.model.elements.Events;
+import no.javatime.core.model.elements.TimeSeriesProvider;
+import no.javatime.inplace.extender.intface.Extender;
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * One independent run of a model executed by the {@link ReplicaRunner}.
+ * <p>
+ * A replica executes an execution plan bound to its own {@link ModelInstances copies} of the model
+ * elements, the events service and the time series provider. Start values may be overridden for
+ * each replica by model element name, where the name is the simple or the fully qualified name of
+ * the model element service class. The start value method of a model element with an overridden
+ * start value is executed, but the overriding value is passed to its set method.
+ */
+public class Replica {
+
+	private final int index;
+	private final Map<String, Double> overrides;
+	private final ModelInstances instances;
+	private final ExecutionPlan executionPlan;
+	/** The overriding start value of each operation in the initial phase or null */
+	private final Double[] startValues;
+
+	/**
+	 * Create a replica of the model in the specified execution plan
+	 *
+	 * @param index position of this replica in the run
+	 * @param executionPlan the plan of the model
+	 * @param overrides start values by model element name. May be null
+	 * @throws ExtenderException if the model elements could not be copied or an overridden model
+	 * element does not have a start value in the plan
+	 */
+	Replica(int index, ExecutionPlan executionPlan, Map<String, Double> overrides)
+			throws ExtenderException {
+
+		this.index = index;
+		this.overrides = null != overrides ? Collections.unmodifiableMap(overrides) : Collections
+				.<String, Double> emptyMap();
+		this.instances = ModelInstances.create(executionPlan, false);
+		this.executionPlan = executionPlan.bind(instances);
+		Collection<String> unmatched = new ArrayList<>();
+		this.startValues = ParameterOverrides.getStartValues(this.executionPlan.getInitialPhase(),
+				this.overrides, unmatched);
+		if (!unmatched.isEmpty()) {
+			throw new ExtenderException("Replica {0}: Start values {1} does not match the model",
+					index, unmatched);
+		}
+	}
+
+	/**
+	 * Position of this replica in the run
+	 *
+	 * @return the index of this replica in the list of overrides passed to the runner
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * The start values overridden in this replica
+	 *
+	 * @return an unmodifiable map of start values by model element name
+	 */
+	public Map<String, Double> getOverrides() {
+		return overrides;
+	}
+
+	/**
+	 * The events service of this replica
+	 *
+	 * @return the events service of this replica
+	 */
+	public Events getEvents() {
+		return instances.getEvents();
+	}
+
+	/**
+	 * The time series recorded by this replica
+	 *
+	 * @return the time series provider of this replica
+	 */
+	public TimeSeriesProvider getTimeSeriesProvider() {
+		return instances.getTimeSeriesProvider();
+	}
+
+	/**
+	 * Get the instance of the specified model element in this replica
+	 *
+	 * @param extender a model element in the model
+	 * @return the instance of the model element in this replica or null if the model element is
+	 * shared by all replicas
+	 */
+	public Object getInstance(Extender<?> extender) {
+		return instances.getInstance(extender);
+	}
+
+	/**
+	 * Execute the initial step, the steps and the stop methods of this replica on the calling thread
+	 *
+	 * @param bundle the model bundle
+	 * @param max upper bound of simulation steps
+	 * @param dt delta time
+	 * @param method the method integrating the states
+	 * @param endTime the simulated time where a replica with an adaptive method is stopped or NaN
+	 * @param relativeTolerance relative error tolerance of an adaptive method
+	 * @param absoluteTolerance absolute error tolerance of an adaptive method
+	 * @throws ExtenderException if a method of a model element fails, a state does not provide its
+	 * net flow rate or the thread running the replica is interrupted
+	 */
+	void run(Bundle bundle, double max, double dt, IntegrationMethod method, double endTime,
+			double relativeTolerance, double absoluteTolerance) throws ExtenderException {
+
+		Events events = instances.getEvents();
+		TimeSeriesProvider timeSeriesProvider = instances.getTimeSeriesProvider();
+		events.reset();
+		events.setMax(max);
+		events.setDt(dt);
+		timeSeriesProvider.setModelBundle(bundle);
+		ExecutionPlan.Phase phase = executionPlan.getInitialPhase();
+		for (int i = 0; i < phase.size(); i++) {
+			Object returnValue = phase.methods[i].execute();
+			if (phase.kinds[i] == ExecutionPlan.VALUE && null != returnValue) {
+				Double startValue = null != startValues[i] ? startValues[i] : (Double) returnValue;
+				phase.setMethods[i].executeSet(startValue);
+			}
+		}
+		phase = executionPlan.getRunPhase();
+		int[] seriesIds = SimulatorImpl.registerTimeSeries(timeSeriesProvider, phase);
+		Throwable failure = null;
+		try {
+			StateIntegrator integrator = SimulatorImpl.createIntegrator(phase, events, method,
+					false, max, dt, endTime, relativeTolerance, absoluteTolerance);
+			// Cancelled by the runner when a replica fails
+			if (!SimulatorImpl.executeSteps(events, timeSeriesProvider, phase, integrator, null,
+					seriesIds, null, null, null, Thread.currentThread()::isInterrupted, null)) {
+				throw new ExtenderException("Replica {0} cancelled after step {1}", index, events
+						.getStep());
+			}
+			phase = executionPlan.getStopPhase();
+			for (int i = 0; i < phase.size(); i++) {
+				phase.methods[i].execute();
+			}
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			timeSeriesProvider.complete(failure);
+		}
+	}
+}
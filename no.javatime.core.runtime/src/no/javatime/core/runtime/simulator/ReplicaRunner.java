@@ -0,0 +1,260 @@
+package no.javatime.core.runtime.simulator;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.osgi.framework.Bundle;
+
+import no.javatime.core.runtime.Activator;
+import no.javatime.inplace.extender.intface.ExtenderException;
+import no.javatime.inplace.extender.intface.Extenders;
+import no.javatime.inplace.log.intface.BundleLog;
+import no.javatime.inplace.region.status.IBundleStatus.StatusCode;
+
+/**
+ * Run independent replicas of a model concurrently, e.g. for Monte Carlo runs and parameter sweeps.
+ * <p>
+ * Each replica executes the cached execution plan of the model bound to its own copies of the
+ * model elements, the events service and the time series provider (see {@link ModelInstances}).
+ * Replicas are executed on a fixed number of threads, and the start values of each replica may be
+ * overridden. When a replica has terminated it is passed to a result mapper on the thread running
+ * the replica, so the runner only retains the mapped results and not the model instances and time
+ * series of each replica.
+ * <p>
+ * Each replica is executed sequentially with immediate updates and without logging of steps, and
+ * its states are integrated with the {@link #setIntegrationMethod(IntegrationMethod) integration
+ * method} of the runner. The time series of each replica are recorded with the
+ * {@link #setStorageMode(StorageMode) storage mode} of the runner.
+ * Replicas are collected in the order they terminate, and when a replica fails the replicas that
+ * are queued or running are cancelled without waiting for replicas submitted before the failing
+ * replica.
+ */
+public class ReplicaRunner {
+
+	private final int threads;
+	private double max = 5d;
+	private double dt = 1d;
+	private double endTime = Double.NaN;
+	private IntegrationMethod integrationMethod = IntegrationMethod.EULER;
+	private double relativeTolerance = RunConfiguration.DEFAULT_RELATIVE_TOLERANCE;
+	private double absoluteTolerance = RunConfiguration.DEFAULT_ABSOLUTE_TOLERANCE;
+	private StorageMode storageMode = StorageMode.HEAP;
+	private Path storageDirectory;
+	private int storageCapacity = RunConfiguration.DEFAULT_STORAGE_CAPACITY;
+
+	/**
+	 * Create a runner executing replicas on the specified number of threads
+	 *
+	 * @param threads maximum number of replicas executed concurrently
+	 */
+	public ReplicaRunner(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Create a runner executing replicas on one thread for each available processor
+	 */
+	public ReplicaRunner() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Set the upper bound of simulation steps of each replica
+	 *
+	 * @param max the last step of each replica
+	 */
+	public void setMax(double max) {
+		this.max = max;
+	}
+
+	/**
+	 * Set the delta time of each replica
+	 *
+	 * @param dt delta time
+	 */
+	public void setDt(double dt) {
+		this.dt = dt;
+	}
+
+	/**
+	 * Set the simulated time where replicas with an adaptive integration method are stopped.
+	 * Default is NaN, stopping each replica at the upper bound of steps times the delta time
+	 *
+	 * @param endTime the simulated time of the last step of each replica or NaN
+	 */
+	public void setEndTime(double endTime) {
+		this.endTime = endTime;
+	}
+
+	/**
+	 * Set the method integrating the state model elements of each replica. Default is
+	 * {@link IntegrationMethod#EULER}
+	 *
+	 * @param integrationMethod integration method of the replicas
+	 */
+	public void setIntegrationMethod(IntegrationMethod integrationMethod) {
+		this.integrationMethod = integrationMethod;
+	}
+
+	/**
+	 * Set the relative tolerance of adaptive integration methods. Default is
+	 * {@value RunConfiguration#DEFAULT_RELATIVE_TOLERANCE}
+	 *
+	 * @param relativeTolerance relative tolerance of the replicas
+	 */
+	public void setRelativeTolerance(double relativeTolerance) {
+		this.relativeTolerance = relativeTolerance;
+	}
+
+	/**
+	 * Set the absolute tolerance of adaptive integration methods. Default is
+	 * {@value RunConfiguration#DEFAULT_ABSOLUTE_TOLERANCE}
+	 *
+	 * @param absoluteTolerance absolute tolerance of the replicas
+	 */
+	public void setAbsoluteTolerance(double absoluteTolerance) {
+		this.absoluteTolerance = absoluteTolerance;
+	}
+
+	/**
+	 * Set where the time series of each replica are recorded. Default is {@link StorageMode#HEAP}
+	 *
+	 * @param storageMode storage mode of the replicas
+	 */
+	public void setStorageMode(StorageMode storageMode) {
+		this.storageMode = storageMode;
+	}
+
+	/**
+	 * Set the directory of the files of {@link StorageMode#MAPPED} storage. Default is null, and the
+	 * files are created in the directory of temporary files
+	 *
+	 * @param storageDirectory the directory of the time series files of the replicas or null
+	 */
+	public void setStorageDirectory(Path storageDirectory) {
+		this.storageDirectory = storageDirectory;
+	}
+
+	/**
+	 * Set the number of steps kept by each replica with {@link StorageMode#RING} storage. Default is
+	 * {@value RunConfiguration#DEFAULT_STORAGE_CAPACITY}
+	 *
+	 * @param capacity number of steps kept. Values less than one are treated as one
+	 */
+	public void setStorageCapacity(int capacity) {
+		this.storageCapacity = Math.max(1, capacity);
+	}
+
+	/**
+	 * Run one replica of the model in the specified bundle for each of the specified start value
+	 * overrides
+	 *
+	 * @param bundle the model bundle
+	 * @param overrides start values by model element name for each replica. An empty map runs a
+	 * replica with the start values of the model
+	 * @param resultMapper maps a terminated replica to a result. Called concurrently from the threads
+	 * running the replicas
+	 * @return the result of each replica in the order of the specified overrides
+	 * @throws ExtenderException if a tolerance of an adaptive integration method is not positive,
+	 * the model could not be compiled, a replica could not be created or a model element fails in
+	 * any of the replicas. Remaining replicas are cancelled
+	 */
+	public <R> List<R> run(final Bundle bundle, List<Map<String, Double>> overrides,
+			final Function<Replica, R> resultMapper) throws ExtenderException {
+
+		if (integrationMethod.isAdaptive() && !(relativeTolerance > 0d && absoluteTolerance > 0d)) {
+			throw new ExtenderException("Tolerances must be positive in replicas of {0}: {1}, {2}",
+					bundle.getSymbolicName(), relativeTolerance, absoluteTolerance);
+		}
+		return run(bundle, SimulatorImpl.getExecutionPlan(bundle), overrides, resultMapper);
+	}
+
+	/**
+	 * Run one replica of the specified execution plan for each of the specified start value
+	 * overrides
+	 *
+	 * @param bundle the model bundle
+	 * @param executionPlan the plan of the model bundle
+	 * @param overrides start values by model element name for each replica
+	 * @param resultMapper maps a terminated replica to a result
+	 * @return the result of each replica in the order of the specified overrides
+	 * @throws ExtenderException if a replica could not be created or a model element fails in any of
+	 * the replicas. Remaining replicas are cancelled
+	 * @see #run(Bundle, List, Function)
+	 */
+	<R> List<R> run(final Bundle bundle, final ExecutionPlan executionPlan,
+			List<Map<String, Double>> overrides, final Function<Replica, R> resultMapper)
+			throws ExtenderException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads,
+				Math.max(1, overrides.size())));
+		long startTime = System.nanoTime();
+		List<Future<Void>> futures = new ArrayList<>(overrides.size());
+		try {
+			CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+			// Sized before submitting, as each replica sets its own position
+			final List<R> results = new ArrayList<>(Collections.<R> nCopies(overrides.size(), null));
+			for (int i = 0; i < overrides.size(); i++) {
+				final int index = i;
+				final Map<String, Double> replicaOverrides = overrides.get(i);
+				futures.add(completionService.submit(() -> {
+					Replica replica = new Replica(index, executionPlan, replicaOverrides);
+					SimulatorImpl.setStorage(replica.getTimeSeriesProvider(), storageMode,
+							storageDirectory, storageCapacity, null);
+					replica.run(bundle, max, dt, integrationMethod, endTime, relativeTolerance,
+							absoluteTolerance);
+					results.set(index, resultMapper.apply(replica));
+					return null;
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				// Fails on the first replica failing, whatever its position
+				completionService.take().get();
+			}
+			BundleLog bundleLog = Extenders.getService(BundleLog.class);
+			bundleLog.log(StatusCode.INFO, Activator.getContext().getBundle(), null, "Executed "
+					+ results.size() + " replicas of " + bundle.getSymbolicName() + " on "
+					+ Math.min(threads, Math.max(1, overrides.size())) + " threads in "
+					+ (System.nanoTime() - startTime) / 1000000 + " ms");
+			return results;
+		} catch (ExecutionException e) {
+			cancel(futures);
+			Throwable cause = e.getCause();
+			if (cause instanceof ExtenderException) {
+				throw (ExtenderException) cause;
+			}
+			throw new ExtenderException(cause, "Failed to run replica of {0}",
+					bundle.getSymbolicName());
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new ExtenderException(e, "Interrupted while running replicas of {0}",
+					bundle.getSymbolicName());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Cancel the specified replicas that have not terminated. Running replicas are interrupted and
+	 * stop at the start of their next step
+	 *
+	 * @param futures the submitted replicas
+	 */
+	private static void cancel(List<Future<Void>> futures) {
+
+		for (Future<Void> future : futures) {
+			future.cancel(true);
+		}
+	}
+}
@@ -0,0 +1,648 @@
+package no.javatime.core.runtime.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * The settings of a simulation run of a model bundle, for configuring runs without changing the
+ * model.
+ * <p>
+ * A configuration holds the length of the run, given either as an end time or as a number of
+ * steps, the delta time, the integration and execution methods, the recorded model elements and
+ * steps, where the time series are stored, what is traced, and values overriding the parameters
+ * of the model. The start value of a model element is
+ * overridden by the name of the model element, where the name is the simple or the fully qualified
+ * name of the model element service class. A field of a model element annotated with
+ * <code>@SeriesValue</code> is overridden by the name of the model element and the name of the
+ * field.
+ * <p>
+ * A configuration is applied to a {@link SimulationContext#configure(RunConfiguration) context}
+ * before a run, and may be {@link #store(Path, String) stored} to and {@link #load(Path) loaded}
+ * from a properties file. The simulator keeps the stored configuration of each model bundle.
+ *
+ * @see Simulator#setRunConfiguration(org.osgi.framework.Bundle, RunConfiguration)
+ */
+public class RunConfiguration {
+
+	/** Default number of steps of a run */
+	public final static long DEFAULT_MAX_STEPS = 5L;
+
+	/** Default delta time */
+	public final static double DEFAULT_DT = 1d;
+
+	/** Default relative tolerance of adaptive integration methods */
+	public final static double DEFAULT_RELATIVE_TOLERANCE = 1e-6;
+
+	/** Default absolute tolerance of adaptive integration methods */
+	public final static double DEFAULT_ABSOLUTE_TOLERANCE = 1e-9;
+
+	/** Default number of steps kept with {@link StorageMode#RING} storage */
+	public final static int DEFAULT_STORAGE_CAPACITY = 100000;
+
+	/** Separates the model element name from the field name of an overridden field */
+	public final static char FIELD_SEPARATOR = '#';
+
+	/** Relative tolerance when deriving the number of steps from the end time */
+	private final static double TOLERANCE = 1e-9;
+
+	private final static String START_TIME = "start.time";
+	private final static String END_TIME = "end.time";
+	private final static String MAX_STEPS = "max.steps";
+	private final static String DT = "dt";
+	private final static String INTEGRATION_METHOD = "integration.method";
+	private final static String RELATIVE_TOLERANCE = "tolerance.relative";
+	private final static String ABSOLUTE_TOLERANCE = "tolerance.absolute";
+	private final static String EXECUTION_MODE = "execution.mode";
+	private final static String UPDATE_MODE = "update.mode";
+	private final static String RECORDED_ELEMENTS = "recording.elements";
+	private final static String RECORDING_STRIDE = "recording.stride";
+	private final static String RECORDING_TIMES = "recording.times";
+	private final static String STORAGE_MODE = "storage.mode";
+	private final static String STORAGE_DIRECTORY = "storage.directory";
+	private final static String STORAGE_CAPACITY = "storage.capacity";
+	private final static String TRACE_LEVEL = "trace.level";
+	private final static String TRACE_STRIDE = "trace.stride";
+	private final static String TRACE_FILE = "trace.file";
+	private final static String START_VALUE = "start.value.";
+	private final static String FIELD_VALUE = "field.value.";
+
+	private double startTime;
+	private double endTime = Double.NaN;
+	private long maxSteps = DEFAULT_MAX_STEPS;
+	private double dt = DEFAULT_DT;
+	private IntegrationMethod integrationMethod = IntegrationMethod.EULER;
+	private double relativeTolerance = DEFAULT_RELATIVE_TOLERANCE;
+	private double absoluteTolerance = DEFAULT_ABSOLUTE_TOLERANCE;
+	private ExecutionMode executionMode = ExecutionMode.SEQUENTIAL;
+	private UpdateMode updateMode = UpdateMode.IMMEDIATE;
+	private Set<String> recordedElements;
+	private int recordingStride = 1;
+	private double[] recordingTimes;
+	private StorageMode storageMode = StorageMode.HEAP;
+	private Path storageDirectory;
+	private int storageCapacity = DEFAULT_STORAGE_CAPACITY;
+	private TraceLevel traceLevel = TraceLevel.SUMMARY;
+	private int traceStride = 1;
+	private Path traceFile;
+	private final Map<String, Double> startValues = new LinkedHashMap<>();
+	private final Map<String, Double> fieldValues = new LinkedHashMap<>();
+
+	/**
+	 * Create a configuration with the default settings
+	 */
+	public RunConfiguration() {
+	}
+
+	/**
+	 * Create a copy of the specified configuration
+	 *
+	 * @param configuration the configuration to copy
+	 */
+	public RunConfiguration(RunConfiguration configuration) {
+
+		startTime = configuration.startTime;
+		endTime = configuration.endTime;
+		maxSteps = configuration.maxSteps;
+		dt = configuration.dt;
+		integrationMethod = configuration.integrationMethod;
+		relativeTolerance = configuration.relativeTolerance;
+		absoluteTolerance = configuration.absoluteTolerance;
+		executionMode = configuration.executionMode;
+		updateMode = configuration.updateMode;
+		recordedElements = configuration.recordedElements;
+		recordingStride = configuration.recordingStride;
+		recordingTimes = configuration.recordingTimes;
+		storageMode = configuration.storageMode;
+		storageDirectory = configuration.storageDirectory;
+		storageCapacity = configuration.storageCapacity;
+		traceLevel = configuration.traceLevel;
+		traceStride = configuration.traceStride;
+		traceFile = configuration.traceFile;
+		startValues.putAll(configuration.startValues);
+		fieldValues.putAll(configuration.fieldValues);
+	}
+
+	public double getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Record only the steps at or after the specified simulated time. The steps before the start
+	 * time are executed but not recorded. Default is 0
+	 *
+	 * @param startTime the simulated time of the first recorded step
+	 */
+	public void setStartTime(double startTime) {
+		this.startTime = startTime;
+	}
+
+	public double getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * Set the simulated time of the last step. The number of steps is the end time divided by the
+	 * delta time, rounded up. Default is <code>NaN</code> and the length of the run is given by the
+	 * {@link #setMaxSteps(long) number of steps}
+	 *
+	 * @param endTime the simulated time of the last step or <code>NaN</code>
+	 */
+	public void setEndTime(double endTime) {
+		this.endTime = endTime;
+	}
+
+	public long getMaxSteps() {
+		return maxSteps;
+	}
+
+	/**
+	 * Set the number of steps of the run. Ignored when an {@link #setEndTime(double) end time} is set.
+	 * Default is {@value #DEFAULT_MAX_STEPS}
+	 *
+	 * @param maxSteps the last step of the run
+	 */
+	public void setMaxSteps(long maxSteps) {
+		this.maxSteps = maxSteps;
+	}
+
+	/**
+	 * The upper bound of simulation steps derived from the end time or the number of steps
+	 *
+	 * @return the last step of the run
+	 */
+	public double getMax() {
+
+		if (Double.isNaN(endTime)) {
+			return maxSteps;
+		}
+		return Math.max(0d, Math.ceil(endTime / dt - TOLERANCE));
+	}
+
+	public double getDt() {
+		return dt;
+	}
+
+	/**
+	 * Set the delta time. Default is {@value #DEFAULT_DT}
+	 *
+	 * @param dt the delta time of the run
+	 */
+	public void setDt(double dt) {
+		this.dt = dt;
+	}
+
+	public IntegrationMethod getIntegrationMethod() {
+		return integrationMethod;
+	}
+
+	/**
+	 * Set the method integrating the state model elements. Default is
+	 * {@link IntegrationMethod#EULER}
+	 *
+	 * @param integrationMethod the integration method of the run
+	 */
+	public void setIntegrationMethod(IntegrationMethod integrationMethod) {
+		this.integrationMethod = integrationMethod;
+	}
+
+	public double getRelativeTolerance() {
+		return relativeTolerance;
+	}
+
+	/**
+	 * Set the relative tolerance of the error of each step of an adaptive integration method.
+	 * Default is {@value #DEFAULT_RELATIVE_TOLERANCE}
+	 *
+	 * @param relativeTolerance the relative tolerance of the run
+	 * @see IntegrationMethod#isAdaptive()
+	 */
+	public void setRelativeTolerance(double relativeTolerance) {
+		this.relativeTolerance = relativeTolerance;
+	}
+
+	public double getAbsoluteTolerance() {
+		return absoluteTolerance;
+	}
+
+	/**
+	 * Set the absolute tolerance of the error of each step of an adaptive integration method.
+	 * Default is {@value #DEFAULT_ABSOLUTE_TOLERANCE}
+	 *
+	 * @param absoluteTolerance the absolute tolerance of the run
+	 * @see IntegrationMethod#isAdaptive()
+	 */
+	public void setAbsoluteTolerance(double absoluteTolerance) {
+		this.absoluteTolerance = absoluteTolerance;
+	}
+
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	/**
+	 * Execute the model elements within a step sequentially or in parallel. Default is
+	 * {@link ExecutionMode#SEQUENTIAL}
+	 *
+	 * @param executionMode execution mode of the run
+	 */
+	public void setExecutionMode(ExecutionMode executionMode) {
+		this.executionMode = executionMode;
+	}
+
+	public UpdateMode getUpdateMode() {
+		return updateMode;
+	}
+
+	/**
+	 * Set the values of model elements immediately or at the end of each step. Default is
+	 * {@link UpdateMode#IMMEDIATE}
+	 *
+	 * @param updateMode update mode of the run
+	 */
+	public void setUpdateMode(UpdateMode updateMode) {
+		this.updateMode = updateMode;
+	}
+
+	/**
+	 * The service class names of the recorded model elements
+	 *
+	 * @return an unmodifiable set of class names, or null if the recorded model elements are
+	 * selected by the annotations of the model
+	 */
+	public Set<String> getRecordedElements() {
+		return recordedElements;
+	}
+
+	/**
+	 * Record the specified model elements instead of the model elements selected by the annotations
+	 * of the model. Default is null
+	 *
+	 * @param names the service class names of the recorded model elements, or null to record the
+	 * annotated model elements
+	 * @see SimulationContext#setRecordedElements(Collection)
+	 */
+	public void setRecordedElements(Collection<String> names) {
+		this.recordedElements = null != names ? Collections.unmodifiableSet(new LinkedHashSet<>(
+				names)) : null;
+	}
+
+	public int getRecordingStride() {
+		return recordingStride;
+	}
+
+	/**
+	 * Record every k-th step. Default is 1
+	 *
+	 * @param stride number of steps between each recorded step. Values less than one are treated as
+	 * one
+	 * @see SimulationContext#setRecordingStride(int)
+	 */
+	public void setRecordingStride(int stride) {
+		this.recordingStride = Math.max(1, stride);
+	}
+
+	/**
+	 * The simulated times where values are recorded
+	 *
+	 * @return a copy of the recording times or null if steps are recorded by stride
+	 */
+	public double[] getRecordingTimes() {
+		return null != recordingTimes ? recordingTimes.clone() : null;
+	}
+
+	/**
+	 * Record only the steps at the specified simulated times. Default is null
+	 *
+	 * @param times the simulated times to record or null to record by stride
+	 * @see SimulationContext#setRecordingTimes(double...)
+	 */
+	public void setRecordingTimes(double... times) {
+		this.recordingTimes = null != times ? times.clone() : null;
+	}
+
+	public StorageMode getStorageMode() {
+		return storageMode;
+	}
+
+	/**
+	 * Set where the time series of the run are recorded. Default is {@link StorageMode#HEAP}
+	 *
+	 * @param storageMode storage mode of the run
+	 * @see SimulationContext#setStorageMode(StorageMode)
+	 */
+	public void setStorageMode(StorageMode storageMode) {
+		this.storageMode = storageMode;
+	}
+
+	public Path getStorageDirectory() {
+		return storageDirectory;
+	}
+
+	/**
+	 * Set the directory of the files of {@link StorageMode#MAPPED} storage. Default is null
+	 *
+	 * @param storageDirectory the directory of the time series files or null for the directory of
+	 * temporary files
+	 */
+	public void setStorageDirectory(Path storageDirectory) {
+		this.storageDirectory = storageDirectory;
+	}
+
+	public int getStorageCapacity() {
+		return storageCapacity;
+	}
+
+	/**
+	 * Set the number of steps kept with {@link StorageMode#RING} storage. Default is
+	 * {@value #DEFAULT_STORAGE_CAPACITY}
+	 *
+	 * @param capacity number of steps kept. Values less than one are treated as one
+	 */
+	public void setStorageCapacity(int capacity) {
+		this.storageCapacity = Math.max(1, capacity);
+	}
+
+	public TraceLevel getTraceLevel() {
+		return traceLevel;
+	}
+
+	/**
+	 * Set what is traced in the run. Default is {@link TraceLevel#SUMMARY}
+	 *
+	 * @param traceLevel trace level of the run
+	 */
+	public void setTraceLevel(TraceLevel traceLevel) {
+		this.traceLevel = traceLevel;
+	}
+
+	public int getTraceStride() {
+		return traceStride;
+	}
+
+	/**
+	 * Trace every n-th step. Default is 1
+	 *
+	 * @param stride number of steps between each traced step. Values less than one are treated as
+	 * one
+	 * @see SimulationContext#setTraceStride(int)
+	 */
+	public void setTraceStride(int stride) {
+		this.traceStride = Math.max(1, stride);
+	}
+
+	public Path getTraceFile() {
+		return traceFile;
+	}
+
+	/**
+	 * Write the traced steps to the specified file. Default is null
+	 *
+	 * @param traceFile the trace file or null to keep the most recent traced steps in memory
+	 * @see SimulationContext#setTraceFile(Path)
+	 */
+	public void setTraceFile(Path traceFile) {
+		this.traceFile = traceFile;
+	}
+
+	/**
+	 * The overridden start values
+	 *
+	 * @return an unmodifiable map of start values by model element name
+	 */
+	public Map<String, Double> getStartValues() {
+		return Collections.unmodifiableMap(startValues);
+	}
+
+	/**
+	 * Override the value returned by the <code>@StartValue</code> method of the specified model
+	 * element
+	 *
+	 * @param element the simple or fully qualified service class name of the model element
+	 * @param value the start value or null to use the start value of the model
+	 */
+	public void setStartValue(String element, Double value) {
+
+		if (null != value) {
+			startValues.put(element, value);
+		} else {
+			startValues.remove(element);
+		}
+	}
+
+	/**
+	 * The overridden fields
+	 *
+	 * @return an unmodifiable map of field values by the model element name and the field name
+	 * separated by {@value #FIELD_SEPARATOR}
+	 */
+	public Map<String, Double> getFieldValues() {
+		return Collections.unmodifiableMap(fieldValues);
+	}
+
+	/**
+	 * Override the value of a field annotated with <code>@SeriesValue</code>. The field is set before
+	 * the initial step of the run
+	 *
+	 * @param element the simple or fully qualified service class name of the model element
+	 * @param field the name of the field
+	 * @param value the value of the field or null to use the value of the model
+	 */
+	public void setFieldValue(String element, String field, Double value) {
+
+		String name = element + FIELD_SEPARATOR + field;
+		if (null != value) {
+			fieldValues.put(name, value);
+		} else {
+			fieldValues.remove(name);
+		}
+	}
+
+	/**
+	 * Write this configuration to the specified properties file. The file is replaced
+	 *
+	 * @param file the properties file
+	 * @param comments a description of the configuration written to the file or null
+	 * @throws ExtenderException if the file could not be written
+	 */
+	public void store(Path file, String comments) throws ExtenderException {
+
+		Properties properties = new Properties();
+		properties.setProperty(START_TIME, Double.toString(startTime));
+		if (!Double.isNaN(endTime)) {
+			properties.setProperty(END_TIME, Double.toString(endTime));
+		}
+		properties.setProperty(MAX_STEPS, Long.toString(maxSteps));
+		properties.setProperty(DT, Double.toString(dt));
+		properties.setProperty(INTEGRATION_METHOD, integrationMethod.name());
+		properties.setProperty(RELATIVE_TOLERANCE, Double.toString(relativeTolerance));
+		properties.setProperty(ABSOLUTE_TOLERANCE, Double.toString(absoluteTolerance));
+		properties.setProperty(EXECUTION_MODE, executionMode.name());
+		properties.setProperty(UPDATE_MODE, updateMode.name());
+		if (null != recordedElements) {
+			properties.setProperty(RECORDED_ELEMENTS, String.join(",", recordedElements));
+		}
+		properties.setProperty(RECORDING_STRIDE, Integer.toString(recordingStride));
+		if (null != recordingTimes) {
+			StringBuilder times = new StringBuilder();
+			for (double time : recordingTimes) {
+				times.append(times.length() > 0 ? "," : "").append(time);
+			}
+			properties.setProperty(RECORDING_TIMES, times.toString());
+		}
+		properties.setProperty(STORAGE_MODE, storageMode.name());
+		if (null != storageDirectory) {
+			properties.setProperty(STORAGE_DIRECTORY, storageDirectory.toString());
+		}
+		properties.setProperty(STORAGE_CAPACITY, Integer.toString(storageCapacity));
+		properties.setProperty(TRACE_LEVEL, traceLevel.name());
+		properties.setProperty(TRACE_STRIDE, Integer.toString(traceStride));
+		if (null != traceFile) {
+			properties.setProperty(TRACE_FILE, traceFile.toString());
+		}
+		for (Map.Entry<String, Double> entry : startValues.entrySet()) {
+			properties.setProperty(START_VALUE + entry.getKey(), entry.getValue().toString());
+		}
+		for (Map.Entry<String, Double> entry : fieldValues.entrySet()) {
+			properties.setProperty(FIELD_VALUE + entry.getKey(), entry.getValue().toString());
+		}
+		try {
+			if (null != file.getParent()) {
+				Files.createDirectories(file.getParent());
+			}
+			try (OutputStream out = Files.newOutputStream(file)) {
+				properties.store(out, comments);
+			}
+		} catch (IOException e) {
+			throw new ExtenderException(e, "Failed to store run configuration to {0}", file);
+		}
+	}
+
+	/**
+	 * Read a configuration from the specified properties file. Settings missing in the file have
+	 * their default value
+	 *
+	 * @param file a properties file written by {@link #store(Path, String)}
+	 * @return the configuration read from the file
+	 * @throws ExtenderException if the file could not be read or holds an invalid setting
+	 */
+	public static RunConfiguration load(Path file) throws ExtenderException {
+
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		} catch (IOException e) {
+			throw new ExtenderException(e, "Failed to load run configuration from {0}", file);
+		}
+		RunConfiguration configuration = new RunConfiguration();
+		// Sorted for a deterministic order of the overrides
+		for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+			String value = properties.getProperty(key).trim();
+			try {
+				if (key.startsWith(START_VALUE)) {
+					configuration.startValues.put(key.substring(START_VALUE.length()), Double
+							.valueOf(value));
+				} else if (key.startsWith(FIELD_VALUE)) {
+					configuration.fieldValues.put(key.substring(FIELD_VALUE.length()), Double
+							.valueOf(value));
+				} else {
+					configuration.set(key, value);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new ExtenderException(e, "Invalid run configuration setting {0}={1} in {2}", key,
+						value, file);
+			}
+		}
+		return configuration;
+	}
+
+	/**
+	 * Set a setting read from a properties file. Unknown settings are ignored
+	 *
+	 * @throws IllegalArgumentException if the value is not valid for the setting
+	 */
+	private void set(String key, String value) throws IllegalArgumentException {
+
+		switch (key) {
+		case START_TIME:
+			startTime = Double.parseDouble(value);
+			break;
+		case END_TIME:
+			endTime = Double.parseDouble(value);
+			break;
+		case MAX_STEPS:
+			maxSteps = Long.parseLong(value);
+			break;
+		case DT:
+			dt = Double.parseDouble(value);
+			break;
+		case INTEGRATION_METHOD:
+			integrationMethod = IntegrationMethod.valueOf(value);
+			break;
+		case RELATIVE_TOLERANCE:
+			relativeTolerance = Double.parseDouble(value);
+			break;
+		case ABSOLUTE_TOLERANCE:
+			absoluteTolerance = Double.parseDouble(value);
+			break;
+		case EXECUTION_MODE:
+			executionMode = ExecutionMode.valueOf(value);
+			break;
+		case UPDATE_MODE:
+			updateMode = UpdateMode.valueOf(value);
+			break;
+		case RECORDED_ELEMENTS:
+			Set<String> names = new LinkedHashSet<>();
+			for (String name : value.split(",")) {
+				if (!name.trim().isEmpty()) {
+					names.add(name.trim());
+				}
+			}
+			setRecordedElements(names);
+			break;
+		case RECORDING_STRIDE:
+			setRecordingStride(Integer.parseInt(value));
+			break;
+		case RECORDING_TIMES:
+			String[] times = value.isEmpty() ? new String[0] : value.split(",");
+			recordingTimes = new double[times.length];
+			for (int i = 0; i < times.length; i++) {
+				recordingTimes[i] = Double.parseDouble(times[i].trim());
+			}
+			break;
+		case STORAGE_MODE:
+			storageMode = StorageMode.valueOf(value);
+			break;
+		case STORAGE_DIRECTORY:
+			storageDirectory = value.isEmpty() ? null : Paths.get(value);
+			break;
+		case STORAGE_CAPACITY:
+			setStorageCapacity(Integer.parseInt(value));
+			break;
+		case TRACE_LEVEL:
+			traceLevel = TraceLevel.valueOf(value);
+			break;
+		case TRACE_STRIDE:
+			setTraceStride(Integer.parseInt(value));
+			break;
+		case TRACE_FILE:
+			traceFile = value.isEmpty() ? null : Paths.get(value);
+			break;
+		default:
+			break;
+		}
+	}
+}
@@ -0,0 +1,584 @@
+package no.javatime.core.runtime.simulator;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.osgi.framework.Bundle;
+
+import no.javatime.core.model.elements.Events;
+import no.javatime.core.model.elements.TimeSeriesProvider;
+import no.javatime.inplace.extender.intface.Extender;
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * The state of one simulation run of a model bundle, isolated from other runs.
+ * <p>
+ * A context owns its own events service (the simulation clock), time series provider and copies
+ * of the model elements (see {@link ModelInstances}), and the cached execution plan of the model
+ * bound to these instances. Runs of different model bundles, or of the same model with different
+ * settings, may therefore execute simultaneously in different contexts without sharing a clock or
+ * a time series store.
+ * <p>
+ * System model elements that are not copied (e.g. views) are shared by all contexts. Their methods
+ * are executed in each context with the events service and time series provider of the context
+ * injected as method parameters.
+ * <p>
+ * A context may be simulated more than once, but not concurrently. Each run resets the clock and
+ * the time series of the context.
+ * <p>
+ * By default the model elements annotated with <code>@Output</code> and the value methods annotated
+ * with <code>@TimeSeries</code> are recorded at each step. If the model has no such annotations all
+ * model elements are recorded. The recorded model elements may be overridden for a context, and the
+ * steps recorded may be reduced to every k-th step or to a set of specified times. The
+ * {@link #setStorageMode(StorageMode) storage mode} decides where the time series are recorded.
+ * <p>
+ * What is traced and sent to the bundle log is given by the {@link #setTraceLevel(TraceLevel)
+ * trace level} of a context.
+ * <p>
+ * The settings of a context may be given by a {@link #configure(RunConfiguration) run
+ * configuration}, which may also override start values and parameter fields of the model.
+ * <p>
+ * A run may be {@link #cancel() cancelled} from another thread. The run stops before its next step
+ * and executes the stop methods of the model.
+ *
+ * @see Simulator#createContext(Bundle)
+ */
+public class SimulationContext {
+
+	private final Bundle bundle;
+	private final ModelInstances instances;
+	private final ExecutionPlan executionPlan;
+	private final AtomicBoolean running = new AtomicBoolean();
+	private ExecutionMode executionMode = ExecutionMode.SEQUENTIAL;
+	private UpdateMode updateMode = UpdateMode.IMMEDIATE;
+	private double max = RunConfiguration.DEFAULT_MAX_STEPS;
+	private double dt = RunConfiguration.DEFAULT_DT;
+	private double startTime;
+	private double endTime = Double.NaN;
+	private IntegrationMethod integrationMethod = IntegrationMethod.EULER;
+	private double relativeTolerance = RunConfiguration.DEFAULT_RELATIVE_TOLERANCE;
+	private double absoluteTolerance = RunConfiguration.DEFAULT_ABSOLUTE_TOLERANCE;
+	private Map<String, Double> startValues = Collections.emptyMap();
+	private Map<String, Double> fieldValues = Collections.emptyMap();
+	private TraceLevel traceLevel = TraceLevel.SUMMARY;
+	private int traceStride = 1;
+	private Path traceFile;
+	private volatile StepTrace trace;
+	private Path resultFile;
+	private Set<String> recordedElements;
+	private int recordingStride = 1;
+	private double[] recordingTimes;
+	private StorageMode storageMode = StorageMode.HEAP;
+	private Path storageDirectory;
+	private int storageCapacity = RunConfiguration.DEFAULT_STORAGE_CAPACITY;
+	private volatile double achievedParallelism;
+	/** The last step executed by the current or last run */
+	private volatile long step;
+	private volatile boolean cancelled;
+
+	/**
+	 * Create a context for the specified model bundle
+	 *
+	 * @param bundle the model bundle
+	 * @param executionPlan the cached plan of the model
+	 * @throws ExtenderException if the model elements could not be copied or bound
+	 */
+	SimulationContext(Bundle bundle, ExecutionPlan executionPlan) throws ExtenderException {
+		this.bundle = bundle;
+		this.instances = ModelInstances.create(executionPlan, true);
+		this.executionPlan = executionPlan.bind(instances);
+	}
+
+	/**
+	 * The model bundle simulated in this context
+	 *
+	 * @return the model bundle
+	 */
+	public Bundle getBundle() {
+		return bundle;
+	}
+
+	/**
+	 * The clock of this context
+	 *
+	 * @return the events service of this context
+	 */
+	public Events getEvents() {
+		return instances.getEvents();
+	}
+
+	/**
+	 * The time series recorded in this context
+	 *
+	 * @return the time series provider of this context
+	 */
+	public TimeSeriesProvider getTimeSeriesProvider() {
+		return instances.getTimeSeriesProvider();
+	}
+
+	/**
+	 * Release the storage of the time series recorded in this context, e.g. deleting the files of
+	 * memory mapped storage. Called when the context is discarded. Otherwise the storage of a
+	 * discarded context is released when its time series are no longer reachable
+	 */
+	public void release() {
+		instances.getTimeSeriesProvider().release();
+	}
+
+	/**
+	 * Get the instance of the specified model element in this context
+	 *
+	 * @param extender a model element in the model
+	 * @return the instance of the model element in this context
+	 */
+	public Object getInstance(Extender<?> extender) {
+		return instances.getInstance(extender);
+	}
+
+	/**
+	 * The execution plan bound to the model element instances of this context
+	 *
+	 * @return the execution plan of this context
+	 */
+	public ExecutionPlan getExecutionPlan() {
+		return executionPlan;
+	}
+
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	/**
+	 * Execute the model elements within a step sequentially or in parallel. Default is
+	 * {@link ExecutionMode#SEQUENTIAL}
+	 *
+	 * @param executionMode execution mode of the next run
+	 */
+	public void setExecutionMode(ExecutionMode executionMode) {
+		this.executionMode = executionMode;
+	}
+
+	public UpdateMode getUpdateMode() {
+		return updateMode;
+	}
+
+	/**
+	 * Set the values of model elements immediately or at the end of each step. Default is
+	 * {@link UpdateMode#IMMEDIATE}
+	 *
+	 * @param updateMode update mode of the next run
+	 */
+	public void setUpdateMode(UpdateMode updateMode) {
+		this.updateMode = updateMode;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Set the upper bound of simulation steps. Default is 5
+	 *
+	 * @param max the last step of the next run
+	 */
+	public void setMax(double max) {
+		this.max = max;
+	}
+
+	public double getDt() {
+		return dt;
+	}
+
+	/**
+	 * Set the delta time. Default is 1
+	 *
+	 * @param dt delta time of the next run
+	 */
+	public void setDt(double dt) {
+		this.dt = dt;
+	}
+
+	public double getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Record only the steps at or after the specified simulated time. Default is 0
+	 *
+	 * @param startTime the simulated time of the first recorded step of the next run
+	 */
+	public void setStartTime(double startTime) {
+		this.startTime = startTime;
+	}
+
+	public double getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * Set the simulated time where a run with an adaptive integration method is stopped. Default is
+	 * NaN, stopping the run at the upper bound of steps times the delta time
+	 *
+	 * @param endTime the simulated time of the last step of the next run or NaN
+	 */
+	public void setEndTime(double endTime) {
+		this.endTime = endTime;
+	}
+
+	public IntegrationMethod getIntegrationMethod() {
+		return integrationMethod;
+	}
+
+	/**
+	 * Set the method integrating the state model elements. Default is
+	 * {@link IntegrationMethod#EULER}
+	 *
+	 * @param integrationMethod integration method of the next run
+	 */
+	public void setIntegrationMethod(IntegrationMethod integrationMethod) {
+		this.integrationMethod = integrationMethod;
+	}
+
+	public double getRelativeTolerance() {
+		return relativeTolerance;
+	}
+
+	/**
+	 * Set the relative tolerance of adaptive integration methods. Default is
+	 * {@value RunConfiguration#DEFAULT_RELATIVE_TOLERANCE}
+	 *
+	 * @param relativeTolerance relative tolerance of the next run
+	 */
+	public void setRelativeTolerance(double relativeTolerance) {
+		this.relativeTolerance = relativeTolerance;
+	}
+
+	public double getAbsoluteTolerance() {
+		return absoluteTolerance;
+	}
+
+	/**
+	 * Set the absolute tolerance of adaptive integration methods. Default is
+	 * {@value RunConfiguration#DEFAULT_ABSOLUTE_TOLERANCE}
+	 *
+	 * @param absoluteTolerance absolute tolerance of the next run
+	 */
+	public void setAbsoluteTolerance(double absoluteTolerance) {
+		this.absoluteTolerance = absoluteTolerance;
+	}
+
+	/**
+	 * The start values overriding the start values of the model
+	 *
+	 * @return an unmodifiable map of start values by model element name
+	 * @see RunConfiguration#setStartValue(String, Double)
+	 */
+	public Map<String, Double> getStartValues() {
+		return startValues;
+	}
+
+	/**
+	 * The field values overriding the <code>@SeriesValue</code> fields of the model
+	 *
+	 * @return an unmodifiable map of field values by model element and field name
+	 * @see RunConfiguration#setFieldValue(String, String, Double)
+	 */
+	public Map<String, Double> getFieldValues() {
+		return fieldValues;
+	}
+
+	/**
+	 * Apply the settings and the overrides of the specified configuration to the next runs of this
+	 * context
+	 *
+	 * @param configuration the run configuration
+	 * @throws ExtenderException if the delta time or a tolerance of an adaptive integration method
+	 * is not positive
+	 */
+	public void configure(RunConfiguration configuration) throws ExtenderException {
+
+		if (!(configuration.getDt() > 0d)) {
+			throw new ExtenderException("Delta time must be positive in simulation of {0}: {1}",
+					bundle.getSymbolicName(), configuration.getDt());
+		}
+		if (configuration.getIntegrationMethod().isAdaptive()
+				&& !(configuration.getRelativeTolerance() > 0d
+						&& configuration.getAbsoluteTolerance() > 0d)) {
+			throw new ExtenderException(
+					"Tolerances must be positive in simulation of {0}: {1}, {2}",
+					bundle.getSymbolicName(), configuration.getRelativeTolerance(),
+					configuration.getAbsoluteTolerance());
+		}
+		max = configuration.getMax();
+		dt = configuration.getDt();
+		startTime = configuration.getStartTime();
+		endTime = configuration.getEndTime();
+		integrationMethod = configuration.getIntegrationMethod();
+		relativeTolerance = configuration.getRelativeTolerance();
+		absoluteTolerance = configuration.getAbsoluteTolerance();
+		executionMode = configuration.getExecutionMode();
+		updateMode = configuration.getUpdateMode();
+		recordedElements = configuration.getRecordedElements();
+		recordingStride = configuration.getRecordingStride();
+		recordingTimes = configuration.getRecordingTimes();
+		storageMode = configuration.getStorageMode();
+		storageDirectory = configuration.getStorageDirectory();
+		storageCapacity = configuration.getStorageCapacity();
+		traceLevel = configuration.getTraceLevel();
+		traceStride = configuration.getTraceStride();
+		traceFile = configuration.getTraceFile();
+		startValues = configuration.getStartValues().isEmpty() ? Collections
+				.<String, Double> emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<>(
+				configuration.getStartValues()));
+		fieldValues = configuration.getFieldValues().isEmpty() ? Collections
+				.<String, Double> emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<>(
+				configuration.getFieldValues()));
+	}
+
+	public Path getResultFile() {
+		return resultFile;
+	}
+
+	/**
+	 * Write the result of each run to the specified file while the run executes. The file is
+	 * replaced by each run and may be read with {@link no.javatime.core.model.series.RunResultReader}.
+	 * Default is null, and results are not written
+	 *
+	 * @param resultFile the run result file of the next run or null
+	 */
+	public void setResultFile(Path resultFile) {
+		this.resultFile = resultFile;
+	}
+
+	public TraceLevel getTraceLevel() {
+		return traceLevel;
+	}
+
+	/**
+	 * Set what is traced in each run. Default is {@link TraceLevel#SUMMARY}
+	 *
+	 * @param traceLevel trace level of the next run
+	 */
+	public void setTraceLevel(TraceLevel traceLevel) {
+		this.traceLevel = traceLevel;
+	}
+
+	public int getTraceStride() {
+		return traceStride;
+	}
+
+	/**
+	 * Trace every n-th step when steps are traced. Default is 1 and every step is traced
+	 *
+	 * @param stride number of steps between each traced step. Values less than one are treated as
+	 * one
+	 */
+	public void setTraceStride(int stride) {
+		this.traceStride = Math.max(1, stride);
+	}
+
+	public Path getTraceFile() {
+		return traceFile;
+	}
+
+	/**
+	 * Write the traced steps of each run to the specified file. The file is replaced by each run.
+	 * Default is null, and the most recent traced steps are kept in memory
+	 *
+	 * @param traceFile the trace file of the next run or null
+	 */
+	public void setTraceFile(Path traceFile) {
+		this.traceFile = traceFile;
+	}
+
+	/**
+	 * The trace of the current or the last run
+	 *
+	 * @return the trace or null if steps were not traced
+	 */
+	public StepTrace getTrace() {
+		return trace;
+	}
+
+	void setTrace(StepTrace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * The service class names of the model elements recorded in each run
+	 *
+	 * @return an unmodifiable set of class names, or null if the recorded model elements are
+	 * selected by the annotations of the model
+	 */
+	public Set<String> getRecordedElements() {
+		return recordedElements;
+	}
+
+	/**
+	 * Record the specified model elements instead of the model elements selected by the
+	 * <code>@Output</code> and <code>@TimeSeries</code> annotations of the model. Default is null
+	 *
+	 * @param names the service class names of the recorded model elements, or null to record the
+	 * annotated model elements. An empty collection records no model elements
+	 */
+	public void setRecordedElements(Collection<String> names) {
+		this.recordedElements = null != names ? Collections.unmodifiableSet(new LinkedHashSet<>(
+				names)) : null;
+	}
+
+	public int getRecordingStride() {
+		return recordingStride;
+	}
+
+	/**
+	 * Record every k-th step. The steps in between are executed but not recorded. Default is 1 and
+	 * every step is recorded. Ignored when {@link #setRecordingTimes(double...) recording times} are
+	 * set
+	 *
+	 * @param stride number of steps between each recorded step. Values less than one are treated as
+	 * one
+	 */
+	public void setRecordingStride(int stride) {
+		this.recordingStride = Math.max(1, stride);
+	}
+
+	/**
+	 * The simulated times where values are recorded
+	 *
+	 * @return a copy of the recording times or null if steps are recorded by stride
+	 */
+	public double[] getRecordingTimes() {
+		return null != recordingTimes ? recordingTimes.clone() : null;
+	}
+
+	/**
+	 * Record only the steps at the specified simulated times. Each time is recorded at the first step
+	 * at or after the time. Default is null and steps are recorded by
+	 * {@link #setRecordingStride(int) stride}
+	 *
+	 * @param times the simulated times to record or null to record by stride
+	 */
+	public void setRecordingTimes(double... times) {
+		this.recordingTimes = null != times ? times.clone() : null;
+	}
+
+	public StorageMode getStorageMode() {
+		return storageMode;
+	}
+
+	/**
+	 * Set where the time series of each run are recorded. Default is {@link StorageMode#HEAP}
+	 *
+	 * @param storageMode storage mode of the next run
+	 */
+	public void setStorageMode(StorageMode storageMode) {
+		this.storageMode = storageMode;
+	}
+
+	public Path getStorageDirectory() {
+		return storageDirectory;
+	}
+
+	/**
+	 * Set the directory of the files of {@link StorageMode#MAPPED} storage. Default is null, and the
+	 * files are created in the directory of temporary files
+	 *
+	 * @param storageDirectory the directory of the time series files of the next run or null
+	 */
+	public void setStorageDirectory(Path storageDirectory) {
+		this.storageDirectory = storageDirectory;
+	}
+
+	public int getStorageCapacity() {
+		return storageCapacity;
+	}
+
+	/**
+	 * Set the number of steps kept with {@link StorageMode#RING} storage. Default is
+	 * {@value RunConfiguration#DEFAULT_STORAGE_CAPACITY}
+	 *
+	 * @param capacity number of steps kept by the next run. Values less than one are treated as one
+	 */
+	public void setStorageCapacity(int capacity) {
+		this.storageCapacity = Math.max(1, capacity);
+	}
+
+	/**
+	 * The parallelism achieved in the last run in {@link ExecutionMode#PARALLEL parallel} mode
+	 *
+	 * @return achieved parallelism or zero if the last run was not executed in parallel
+	 */
+	public double getAchievedParallelism() {
+		return achievedParallelism;
+	}
+
+	void setAchievedParallelism(double achievedParallelism) {
+		this.achievedParallelism = achievedParallelism;
+	}
+
+	/**
+	 * The last step executed by the current or the last run
+	 *
+	 * @return the last executed step or zero if no step has been executed
+	 */
+	public long getStep() {
+		return step;
+	}
+
+	void setStep(long step) {
+		this.step = step;
+	}
+
+	/**
+	 * Stop the current run before its next step. If this context is not running, the next run is
+	 * stopped before its first step
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Whether the current run has been cancelled
+	 *
+	 * @return true if the run is cancelled and stops before its next step
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Whether this context is currently simulated
+	 *
+	 * @return true if a run of this context is in progress
+	 */
+	public boolean isRunning() {
+		return running.get();
+	}
+
+	/**
+	 * Mark this context as running
+	 *
+	 * @throws ExtenderException if this context is already running
+	 */
+	void begin() throws ExtenderException {
+
+		if (!running.compareAndSet(false, true)) {
+			throw new ExtenderException("Simulation of {0} is already running in this context",
+					bundle.getSymbolicName());
+		}
+		step = 0;
+		trace = null;
+	}
+
+	void end() {
+
+		cancelled = false;
+		running.set(false);
+	}
+}
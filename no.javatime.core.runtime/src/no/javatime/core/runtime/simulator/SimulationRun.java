@@ -0,0 +1,162 @@
+package no.javatime.core.runtime.simulator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * A handle to a simulation run submitted to the simulator and executed on a background thread.
+ * <p>
+ * The handle reports the progress of the run and may cancel it. Cancellation is cooperative: the
+ * run is stopped before its next step, and the stop methods of the model are executed as when the
+ * run terminates normally, so views and result files are completed with the steps executed. A run
+ * cancelled before it has started is not executed.
+ * <p>
+ * The {@link #getCompletion() completion} of the run completes with the context of the run when
+ * the run has terminated, also when it was cancelled, or exceptionally if the run failed.
+ *
+ * @see Simulator#submit(SimulationContext)
+ */
+public class SimulationRun {
+
+	private final SimulationContext context;
+	private final CompletableFuture<SimulationContext> completion = new CompletableFuture<>();
+	private volatile boolean cancelled;
+
+	/**
+	 * Create a handle to a run of the specified context
+	 *
+	 * @param context the context of the run
+	 */
+	SimulationRun(SimulationContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Execute the run on the calling thread and complete the run
+	 *
+	 * @param simulator the simulator executing the run
+	 */
+	void execute(Simulator simulator) {
+
+		try {
+			if (!cancelled) {
+				simulator.simulate(context);
+			}
+			completion.complete(context);
+		} catch (RuntimeException | Error e) {
+			completion.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * The context of the run
+	 *
+	 * @return the context simulated by the run
+	 */
+	public SimulationContext getContext() {
+		return context;
+	}
+
+	/**
+	 * The progress of the run
+	 *
+	 * @return the last executed step relative to the upper bound of steps, from zero to one
+	 */
+	public double getProgress() {
+
+		if (completion.isDone()) {
+			return 1d;
+		}
+		double max = context.getMax();
+		return max > 0d ? Math.min(1d, context.getStep() / max) : 0d;
+	}
+
+	/**
+	 * Request the run to stop before its next step
+	 *
+	 * @return false if the run has already terminated
+	 */
+	public boolean cancel() {
+
+		if (completion.isDone()) {
+			return false;
+		}
+		cancelled = true;
+		context.cancel();
+		return true;
+	}
+
+	/**
+	 * Whether the run has been cancelled
+	 *
+	 * @return true if {@link #cancel()} was called before the run terminated
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Whether the run has terminated
+	 *
+	 * @return true if the run has completed, was cancelled or failed
+	 */
+	public boolean isDone() {
+		return completion.isDone();
+	}
+
+	/**
+	 * The completion of the run, for callbacks when the run terminates
+	 *
+	 * @return a future completed with the context of the run when the run has terminated
+	 */
+	public CompletableFuture<SimulationContext> getCompletion() {
+		return completion;
+	}
+
+	/**
+	 * Wait for the run to terminate
+	 *
+	 * @return the context of the run
+	 * @throws ExtenderException if the run failed
+	 * @throws InterruptedException if the calling thread was interrupted while waiting
+	 */
+	public SimulationContext get() throws ExtenderException, InterruptedException {
+
+		try {
+			return completion.get();
+		} catch (ExecutionException e) {
+			throw failure(e);
+		}
+	}
+
+	/**
+	 * Wait at most the specified time for the run to terminate
+	 *
+	 * @param timeout maximum time to wait
+	 * @param unit unit of the timeout
+	 * @return the context of the run
+	 * @throws ExtenderException if the run failed
+	 * @throws InterruptedException if the calling thread was interrupted while waiting
+	 * @throws TimeoutException if the run did not terminate within the timeout
+	 */
+	public SimulationContext get(long timeout, TimeUnit unit) throws ExtenderException,
+			InterruptedException, TimeoutException {
+
+		try {
+			return completion.get(timeout, unit);
+		} catch (ExecutionException e) {
+			throw failure(e);
+		}
+	}
+
+	private ExtenderException failure(ExecutionException e) {
+
+		Throwable cause = e.getCause();
+		return cause instanceof ExtenderException ? (ExtenderException) cause : new ExtenderException(
+				cause, "Simulation of {0} failed", context.getBundle().getSymbolicName());
+	}
+}
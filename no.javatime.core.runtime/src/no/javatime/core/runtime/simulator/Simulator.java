@@ -20,6 +20,89 @@ public interface Simulator {
 	
 	void simulate(Bundle bundle) throws ExtenderException;
 
+	/**
+	 * Simulate the model in the specified bundle with the specified execution mode
+	 * 
+	 * @param bundle the model bundle
+	 * @param mode execute model elements within a step sequentially or in parallel
+	 * @throws ExtenderException if the model could not be sorted or a model element fails
+	 */
+	void simulate(Bundle bundle, ExecutionMode mode) throws ExtenderException;
+
+	/**
+	 * Simulate the model in the specified bundle with the specified execution and update mode
+	 * 
+	 * @param bundle the model bundle
+	 * @param mode execute model elements within a step sequentially or in parallel
+	 * @param update set the values of model elements immediately or at the end of each step
+	 * @throws ExtenderException if the model could not be sorted or a model element fails
+	 */
+	void simulate(Bundle bundle, ExecutionMode mode, UpdateMode update) throws ExtenderException;
+
+	/**
+	 * Simulate the model in the specified bundle with the specified run configuration
+	 * 
+	 * @param bundle the model bundle
+	 * @param configuration the settings of the run and the overridden parameters of the model
+	 * @throws ExtenderException if the model could not be sorted, the configuration does not match
+	 * the model or a model element fails
+	 */
+	void simulate(Bundle bundle, RunConfiguration configuration) throws ExtenderException;
+
+	/**
+	 * The run configuration stored for the specified model bundle. New contexts of the model are
+	 * configured with this configuration
+	 * 
+	 * @param bundle the model bundle
+	 * @return a copy of the stored configuration or the default configuration if no configuration
+	 * is stored for the bundle
+	 * @throws ExtenderException if the stored configuration could not be read
+	 */
+	RunConfiguration getRunConfiguration(Bundle bundle) throws ExtenderException;
+
+	/**
+	 * Store the run configuration of the specified model bundle
+	 * 
+	 * @param bundle the model bundle
+	 * @param configuration the configuration of the bundle or null to remove the stored
+	 * configuration
+	 * @throws ExtenderException if the configuration could not be stored
+	 */
+	void setRunConfiguration(Bundle bundle, RunConfiguration configuration)
+			throws ExtenderException;
+
+	/**
+	 * Create a context for simulating the model in the specified bundle. The context owns its own
+	 * clock, time series and model element instances, and runs in different contexts may execute
+	 * concurrently. The context is configured with the {@link #getRunConfiguration(Bundle) stored
+	 * run configuration} of the bundle
+	 * 
+	 * @param bundle the model bundle
+	 * @return a new simulation context for the model
+	 * @throws ExtenderException if the model could not be sorted, the model elements could not be
+	 * copied or the stored run configuration could not be read
+	 */
+	SimulationContext createContext(Bundle bundle) throws ExtenderException;
+
+	/**
+	 * Simulate the model in the specified context with the settings of the context
+	 * 
+	 * @param context a context created by {@link #createContext(Bundle)}
+	 * @throws ExtenderException if the context is already running or a model element fails
+	 */
+	void simulate(SimulationContext context) throws ExtenderException;
+
+	/**
+	 * Simulate the model in the specified context on a background thread. The number of runs
+	 * executed and waiting to be executed is bounded
+	 * 
+	 * @param context a context created by {@link #createContext(Bundle)}
+	 * @return a handle to the run for following its progress, cancelling it and waiting for it to
+	 * terminate
+	 * @throws ExtenderException if too many runs are waiting to be executed
+	 */
+	SimulationRun submit(SimulationContext context) throws ExtenderException;
+
 	// void simulate(Collection<Extender<?>> models) throws ExtenderException;
 	
 }
@@ -1,20 +1,29 @@
 package no.javatime.core.runtime.simulator;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
 
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 
-import no.javatime.core.model.annotations.Action;
-import no.javatime.core.model.annotations.StartValue;
-import no.javatime.core.model.annotations.Stop;
+import no.javatime.core.model.annotations.ModelElement;
 import no.javatime.core.model.elements.Events;
 import no.javatime.core.model.elements.TimeSeriesProvider;
+import no.javatime.core.model.series.RunResultWriter;
 import no.javatime.core.runtime.Activator;
 import no.javatime.core.runtime.ExtenderTracker;
 import no.javatime.inplace.extender.intface.Extender;
@@ -26,8 +35,9 @@ import no.javatime.inplace.region.status.IBundleStatus.StatusCode;
 /**
  * Run a simulation
  * <ol>
- * <li>Get the events service and set upper bound of simulation steps. The events service is a
- * singleton that keeps information about delta time and track the simulation steps
+ * <li>Get the events service and set upper bound of simulation steps. The events service is owned
+ * by the {@link SimulationContext context} of the run and keeps information about delta time and
+ * track the simulation steps
  * <li>Inject fields and sort all model element services in execution order.
  * <li>Sort all methods in execution order within each model element service before initializing the
  * model
@@ -39,11 +49,53 @@ import no.javatime.inplace.region.status.IBundleStatus.StatusCode;
  * All model element services are sorted first. This ordering is used both when initializing and
  * running the model. For each phase (initialize and run) a separate set of methods are sorted in
  * execution order, and executed once for each ordered model element service.
+ * <p>
+ * The sorted and injected model is compiled to an execution plan that is cached for the model
+ * bundle and reused until the model bundle or any of its model elements change.
+ * <p>
+ * Only the value operations selected by the {@link SimulationContext context} of a run are
+ * recorded, and only at the selected steps. The other value operations are executed without
+ * recording their values.
+ * <p>
+ * What is traced is given by the {@link TraceLevel trace level} of a run. Summaries are sent to the
+ * bundle log when the run has terminated, while steps and values are traced as binary events by a
+ * background thread (see {@link StepTrace}), so tracing does not format values or build log
+ * messages at each step.
+ * <p>
+ * New contexts are configured with the {@link RunConfiguration run configuration} stored for the
+ * model bundle, or with the default configuration if none is stored. Configurations are stored as
+ * properties files in the data area of this bundle.
  *
  */
 public class SimulatorImpl implements Simulator {
 
-	private final static DecimalFormat defaultFormat = new DecimalFormat("###,###.###");
+	/** Time series id of value operations that are not recorded */
+	final static int NOT_RECORDED = -2;
+
+	/** Maximum number of submitted runs executed concurrently */
+	public final static int MAX_CONCURRENT_RUNS = Math.max(1, Runtime.getRuntime()
+			.availableProcessors() / 2);
+
+	/** Maximum number of submitted runs waiting to be executed */
+	public final static int MAX_QUEUED_RUNS = 16;
+
+	/** Folder of the stored run configurations in the data area of this bundle */
+	private final static String RUN_CONFIGURATIONS = "runconfigurations";
+
+	private final static ThreadLocal<DecimalFormat> defaultFormat = ThreadLocal
+			.withInitial(() -> new DecimalFormat("###,###.###"));
+
+	/** Executes submitted runs. Idle threads are terminated */
+	private final ThreadPoolExecutor runExecutor;
+	{
+		runExecutor = new ThreadPoolExecutor(MAX_CONCURRENT_RUNS, MAX_CONCURRENT_RUNS, 30L,
+				TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_RUNS), runnable -> {
+					Thread thread = new Thread(runnable, "Simulation run");
+					thread.setDaemon(true);
+					return thread;
+				});
+		runExecutor.allowCoreThreadTimeOut(true);
+	}
 	
 	
 	@Override
@@ -75,155 +127,716 @@ public class SimulatorImpl implements Simulator {
 	 * <li>set() // Set the returned calculated value (not set by calculate))
 	 * <li>stop() // Check for stop condition. If false continue with next step
 	 * </ol> 
-	 * 
+	 * <p>
+	 * The model is simulated with the {@link #getRunConfiguration(Bundle) stored run configuration}
+	 * of the bundle
 	 */
 	@Override
 	public void simulate(Bundle bundle) throws ExtenderException {
+		simulate(bundle, getRunConfiguration(bundle));
+	}
+
+	@Override
+	public void simulate(Bundle bundle, ExecutionMode mode) throws ExtenderException {
+		simulate(bundle, mode, UpdateMode.IMMEDIATE);
+	}
+
+	/**
+	 * Sort and execute the simulation model as in {@link #simulate(Bundle)}, with the model elements
+	 * within each step executed in the specified mode and their values set in the specified update
+	 * mode
+	 * <p>
+	 * The model is executed in a new {@link SimulationContext context}
+	 */
+	@Override
+	public void simulate(Bundle bundle, ExecutionMode mode, UpdateMode update)
+			throws ExtenderException {
+
+		SimulationContext context = createContext(bundle);
+		context.setExecutionMode(mode);
+		context.setUpdateMode(update);
+		simulate(context);
+	}
+
+	/**
+	 * Sort and execute the simulation model as in {@link #simulate(Bundle)} with the settings and
+	 * overrides of the specified configuration. The configuration is not stored
+	 */
+	@Override
+	public void simulate(Bundle bundle, RunConfiguration configuration) throws ExtenderException {
+
+		SimulationContext context = new SimulationContext(bundle, getExecutionPlan(bundle,
+				configuration.getTraceLevel()));
+		context.configure(configuration);
+		simulate(context);
+	}
+
+	/**
+	 * The context is configured with the stored run configuration of the model bundle
+	 */
+	@Override
+	public SimulationContext createContext(Bundle bundle) throws ExtenderException {
+
+		RunConfiguration configuration = getRunConfiguration(bundle);
+		SimulationContext context = new SimulationContext(bundle, getExecutionPlan(bundle,
+				configuration.getTraceLevel()));
+		context.configure(configuration);
+		return context;
+	}
+
+	@Override
+	public RunConfiguration getRunConfiguration(Bundle bundle) throws ExtenderException {
+
+		Path file = getRunConfigurationFile(bundle);
+		return null != file && Files.isRegularFile(file) ? RunConfiguration.load(file)
+				: new RunConfiguration();
+	}
+
+	@Override
+	public void setRunConfiguration(Bundle bundle, RunConfiguration configuration)
+			throws ExtenderException {
+
+		Path file = getRunConfigurationFile(bundle);
+		if (null == file) {
+			throw new ExtenderException("No file system support for storing run configuration of {0}",
+					bundle.getSymbolicName());
+		}
+		if (null != configuration) {
+			configuration.store(file, "Run configuration of " + bundle.getSymbolicName());
+		} else {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				throw new ExtenderException(e, "Failed to remove run configuration of {0}", bundle
+						.getSymbolicName());
+			}
+		}
+	}
+
+	/**
+	 * The file of the stored run configuration of the specified model bundle
+	 *
+	 * @param bundle the model bundle
+	 * @return the properties file of the bundle or null if the platform has no file system support
+	 */
+	private static Path getRunConfigurationFile(Bundle bundle) {
+
+		BundleContext bundleContext = Activator.getContext();
+		File dataFile = null != bundleContext ? bundleContext.getDataFile(RUN_CONFIGURATIONS) : null;
+		return null != dataFile ? dataFile.toPath().resolve(bundle.getSymbolicName() + "_"
+				+ bundle.getVersion() + ".properties") : null;
+	}
+
+	/**
+	 * Runs are executed on at most {@link #MAX_CONCURRENT_RUNS} threads, and at most
+	 * {@link #MAX_QUEUED_RUNS} runs wait for a thread
+	 */
+	@Override
+	public SimulationRun submit(SimulationContext context) throws ExtenderException {
+
+		SimulationRun run = new SimulationRun(context);
+		try {
+			runExecutor.execute(() -> run.execute(this));
+		} catch (RejectedExecutionException e) {
+			throw new ExtenderException(e, "Too many simulation runs waiting to start {0}", context
+					.getBundle().getSymbolicName());
+		}
+		return run;
+	}
+
+	/**
+	 * Execute the model in the specified context with the clock, the time series and the model
+	 * element instances of the context
+	 * <p>
+	 * In {@link ExecutionMode#PARALLEL parallel} mode the dependency levels and the achieved
+	 * parallelism of the run are sent to the bundle log. With {@link UpdateMode#DEFERRED deferred}
+	 * updates all model elements of a step are independent and executed in one level
+	 * <p>
+	 * Summary messages of the run are collected and sent to the bundle log when the run has
+	 * terminated, so messages from concurrent runs are not interleaved. Nothing is sent to the bundle
+	 * log when the trace level of the context is {@link TraceLevel#OFF}
+	 * <p>
+	 * If the context has a {@link SimulationContext#setResultFile(java.nio.file.Path) result file},
+	 * the recorded values of each step are written to the file by a background thread while the
+	 * model executes
+	 */
+	@Override
+	public void simulate(SimulationContext context) throws ExtenderException {
+
+		context.begin();
+		List<String> messages = new ArrayList<>();
+		TimeSeriesProvider timeSeriesProvider = context.getTimeSeriesProvider();
+		Throwable failure = null;
+		try {
+			// Set step length and delta time
+			Events events = context.getEvents();
+			events.reset();
+			events.setMax(context.getMax());
+			events.setDt(context.getDt());
+			ExecutionPlan executionPlan = context.getExecutionPlan();
+			timeSeriesProvider.setModelBundle(context.getBundle());
+			setStorage(timeSeriesProvider, context.getStorageMode(), context.getStorageDirectory(),
+					context.getStorageCapacity(), messages);
+			if (!context.getFieldValues().isEmpty()) {
+				ParameterOverrides.setFieldValues(executionPlan, context::getInstance, context
+						.getFieldValues());
+			}
+			// Execute the methods initializing the simulation for each model element
+			executeInitialStep(events, timeSeriesProvider, executionPlan.getInitialPhase(),
+					getStartValues(context), messages);
+			// Execute the methods running the simulation for each model element
+			ExecutionMode mode = context.getExecutionMode();
+			UpdateMode update = context.getUpdateMode();
+			StateIntegrator integrator = createIntegrator(context, events);
+			WavefrontSchedule schedule = null;
+			if (update == UpdateMode.DEFERRED) {
+				schedule = WavefrontSchedule.independent(executionPlan);
+			} else if (mode == ExecutionMode.PARALLEL) {
+				schedule = executionPlan.getWavefrontSchedule();
+			}
+			ForkJoinPool pool = mode == ExecutionMode.PARALLEL ? new ForkJoinPool() : null;
+			try {
+				WavefrontExecutor wavefront = null != schedule ? new WavefrontExecutor(executionPlan,
+						schedule, pool, update == UpdateMode.DEFERRED, integrator) : null;
+				executeSteps(context, events, timeSeriesProvider, executionPlan, integrator,
+						wavefront, messages);
+				if (null != pool) {
+					context.setAchievedParallelism(wavefront.getAchievedParallelism());
+					logParallelism(wavefront, pool, messages);
+				} else {
+					context.setAchievedParallelism(0d);
+				}
+			} finally {
+				if (null != pool) {
+					pool.shutdown();
+				}
+			}
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			// Deliver the last steps and terminate the subscribers of the run
+			timeSeriesProvider.complete(failure);
+			context.end();
+			if (context.getTraceLevel() != TraceLevel.OFF) {
+				log("Simulation run of " + context.getBundle().getSymbolicName(), messages);
+			}
+		}
+	}
+
+	/**
+	 * Record the time series of the next run of the specified provider with the specified storage
+	 * mode. Called before the initial step
+	 *
+	 * @param timeSeriesProvider the time series provider of the run
+	 * @param mode the storage mode of the run
+	 * @param directory directory of the files of mapped storage or null
+	 * @param capacity number of steps kept by ring storage
+	 * @param messages receiving a message if the provider does not support the storage mode. May be
+	 * null
+	 */
+	static void setStorage(TimeSeriesProvider timeSeriesProvider, StorageMode mode, Path directory,
+			int capacity, List<String> messages) {
+
+		if (!timeSeriesProvider.setColumnFactory(mode.createColumnFactory(directory, capacity))
+				&& mode != StorageMode.HEAP && null != messages) {
+			messages.add("Storage mode " + mode + " is not supported by the time series provider "
+					+ timeSeriesProvider.getClass().getName());
+		}
+	}
+
+	/**
+	 * Get the execution plan of the specified model bundle. The plan is reused if the model has not
+	 * changed since the plan was compiled, otherwise the model is sorted, injected and compiled to a
+	 * new plan that is cached for the bundle
+	 * <p>
+	 * Sorting and injecting a model updates the shared model element services, so plans are compiled
+	 * one at a time
+	 * 
+	 * @param bundle the model bundle
+	 * @return the execution plan of the model
+	 * @throws ExtenderException if the model could not be sorted or compiled
+	 */
+	static ExecutionPlan getExecutionPlan(Bundle bundle) throws ExtenderException {
+		return getExecutionPlan(bundle, TraceLevel.SUMMARY);
+	}
+
+	/**
+	 * Get the execution plan of the specified model bundle as in {@link #getExecutionPlan(Bundle)}.
+	 * The sorted model elements and the execution order of their methods are sent to the bundle log
+	 * when the plan is compiled and the trace level is {@link TraceLevel#ELEMENT}
+	 * 
+	 * @param bundle the model bundle
+	 * @param level the trace level of the run
+	 * @return the execution plan of the model
+	 * @throws ExtenderException if the model could not be sorted or compiled
+	 */
+	static synchronized ExecutionPlan getExecutionPlan(Bundle bundle, TraceLevel level)
+			throws ExtenderException {
+
+		// Reuse the plan of the last run if the model has not changed since
+		ExecutionPlanCache planCache = Activator.getExecutionPlanCache();
+		ExecutionPlan executionPlan = null != planCache ? planCache.get(bundle) : null;
+		if (null == executionPlan) {
+			// Plans compiled while the cache is invalidated are not cached
+			long generation = null != planCache ? planCache.getGeneration() : 0L;
+			// Sort model element classes according to execution order
+			ClassModelElementSorter sorter = new ClassModelElementSorter();
+			sorter.setLogSorted(level == TraceLevel.ELEMENT);
+			Collection<Extender<?>> sortedModelElements = sorter.sort(bundle);
+			// Sort methods in each model element class in execution order and compile them to a plan
+			MethodModelElementSorter methodSorter = new MethodModelElementSorter();
+			executionPlan = methodSorter.compile(sortedModelElements);
+			if (level == TraceLevel.ELEMENT) {
+				methodSorter.logExecInitChain();
+				methodSorter.logExecRunChain();
+			}
+			if (null != planCache) {
+				planCache.put(bundle, executionPlan, generation);
+			}
+		}
+		return executionPlan;
+	}
+
+	/**
+	 * Send the specified messages to the bundle log as children of the specified header
+	 * 
+	 * @param header the root message
+	 * @param messages messages added to the root message
+	 */
+	private static void log(String header, List<String> messages) {
 
-		// Set step length and delta time
-		Events events = Extenders.getService(Events.class);
-		events.reset();
-		events.setMax(5d);
-		events.setDt(1d);
-		// Sort model element classes according to execution order
-		ClassModelElementSorter sorter = new ClassModelElementSorter();
-		Collection<Extender<?>> sortedModelElements = sorter.sort(bundle);			
-//		if (null == models) {
-//			sortedModelElements = sorter.sort(ClassModelElementSorter.getTrackedModelElements());			
-//		} else {
-//			sortedModelElements = sorter.sort(models);						
-//		}
-		// Sort methods in each model element class in execution order
-		MethodModelElementSorter methodSorter = new MethodModelElementSorter();
-		// Sort methods in initialization execution order to execute step zero
-		LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> initializeExecutionChain = methodSorter
-				.sortInitalMethods(sortedModelElements);
-		methodSorter.logExecInitChain();
-		// Sort methods in execution order to run the simulation (step 1 -> max steps)
-		LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> runExecutionChain = methodSorter
-				.sortRunMethods(sortedModelElements);
-		methodSorter.logExecRunChain();
-		// Execute the sorted model in two phases
 		BundleLog bundleLog = Extenders.getService(BundleLog.class);
-		bundleLog.add(StatusCode.INFO, Activator.getContext().getBundle(), null, "Simulation run");
-		TimeSeriesProvider timeSeriesProvider = Extenders.getService(TimeSeriesProvider.class);
-		//timeSeriesProvider.setModels(sorter.getModels());
-		timeSeriesProvider.setModelBundle(bundle);
-		// Execute the methods initializing the simulation for each model element
-		executeInitialStep(events, timeSeriesProvider, initializeExecutionChain, bundleLog);
-		// Execute the methods running the simulation for each model element
-		executeSteps(events, timeSeriesProvider, runExecutionChain, bundleLog);
-		bundleLog.log();
+		Bundle thisBundle = Activator.getContext().getBundle();
+		synchronized (SimulatorImpl.class) {
+			bundleLog.add(StatusCode.INFO, thisBundle, null, header);
+			for (String message : messages) {
+				bundleLog.addToRoot(StatusCode.INFO, thisBundle, null, message);
+			}
+			bundleLog.log();
+		}
+	}
+
+	/**
+	 * Resolve the overridden start values of the specified context to the initial phase of the plan
+	 * of the context
+	 *
+	 * @return the overriding start value of each operation in the initial phase or null if no start
+	 * values are overridden
+	 * @throws ExtenderException if an overridden start value does not match the model
+	 */
+	private static Double[] getStartValues(SimulationContext context) throws ExtenderException {
+
+		if (context.getStartValues().isEmpty()) {
+			return null;
+		}
+		Collection<String> unmatched = new ArrayList<>();
+		Double[] startValues = ParameterOverrides.getStartValues(context.getExecutionPlan()
+				.getInitialPhase(), context.getStartValues(), unmatched);
+		if (!unmatched.isEmpty()) {
+			throw new ExtenderException("Start values {0} does not match the model {1}", unmatched,
+					context.getBundle().getSymbolicName());
+		}
+		return startValues;
 	}
 
 	private void executeInitialStep(Events events, TimeSeriesProvider timeSeriesProvider,
-			LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> execChain, BundleLog bundleLog)
-					throws ExtenderException {
+			ExecutionPlan.Phase phase, Double[] startValues, List<String> messages)
+			throws ExtenderException {
 
 		StringBuffer buffer = new StringBuffer();
 
-		for (Map.Entry<Extender<?>, LinkedHashSet<MethodModelElement>> entry : execChain.entrySet()) {
-			Extender<?> extenderElement = entry.getKey();
-			LinkedHashSet<MethodModelElement> methodElements = entry.getValue();
-			// Sorted methods in model element
-			for (Iterator<MethodModelElement> iterator = methodElements.iterator(); iterator.hasNext();) {
-				MethodModelElement methodModelElement = iterator.next();
-				Object returnValue = methodModelElement.execute();
-				if (null != returnValue && returnValue instanceof Double
-						&& methodModelElement.getAnnotationClass() == StartValue.class) {
-					buffer.append(extenderElement.getServiceClass().getSimpleName() + "."
-							+ methodModelElement.method.getName() + ": " + defaultFormat.format(returnValue)
-							+ " ");
-					try {
-						methodModelElement = iterator.next();
-						// Save the start value at step 0
-						methodModelElement.executeSet((Double) returnValue);
-					} catch (NoSuchElementException e) {
-						throw new ExtenderException(e,
-								"Internal error: Missing method for setting start value");
-					}
+		final byte[] kinds = phase.kinds;
+		final MethodModelElement[] methods = phase.methods;
+		final MethodModelElement[] setMethods = phase.setMethods;
+		for (int i = 0; i < kinds.length; i++) {
+			Object returnValue = methods[i].execute();
+			if (kinds[i] == ExecutionPlan.VALUE && null != returnValue) {
+				if (null != startValues && null != startValues[i]) {
+					returnValue = startValues[i];
 				}
+				buffer.append(phase.labels[i] + ": " + defaultFormat.get().format(returnValue) + " ");
+				// Save the start value at step 0
+				setMethods[i].executeSet((Double) returnValue);
 			}
 		}
 		// Log simulation length and initial values
-		bundleLog.addToRoot(StatusCode.INFO, Activator.getContext().getBundle(), null,
-				"Initial step value: " + events.getStep() + " Max step value: " + events.getMax());
-		bundleLog.addToRoot(StatusCode.INFO, Activator.getContext().getBundle(), null,
-				"Step " + events.getStep() + ": " + buffer);
+		messages.add("Initial step value: " + events.getStep() + " Max step value: " + events.getMax());
+		messages.add("Step " + events.getStep() + ": " + buffer);
 	}
 
-	private void executeSteps(Events events, TimeSeriesProvider timeSeriesProvider, 
-			LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> execChain, BundleLog bundleLog)
-					throws ExtenderException {
+	/**
+	 * Create the integrator of the states of a run in the specified context. With an adaptive
+	 * integration method the run is stopped at the end time of the context, or at the time of the
+	 * upper bound of steps with the delta time of the context if no end time is set
+	 *
+	 * @return the integrator or null if the states are integrated by the model with explicit Euler
+	 * @throws ExtenderException if a state does not provide its net flow rate
+	 */
+	private static StateIntegrator createIntegrator(SimulationContext context, Events events)
+			throws ExtenderException {
 
-		StringBuffer buffer = new StringBuffer();
+		return createIntegrator(context.getExecutionPlan().getRunPhase(), events, context
+				.getIntegrationMethod(), context.getUpdateMode() == UpdateMode.DEFERRED, context
+				.getMax(), context.getDt(), context.getEndTime(), context.getRelativeTolerance(),
+				context.getAbsoluteTolerance());
+	}
 
-		while (!events.isStop()) {
-			events.step();
-			timeSeriesProvider.addStep(events.getStep());
-			for (Map.Entry<Extender<?>, LinkedHashSet<MethodModelElement>> entry : execChain.entrySet()) {
-				Extender<?> extenderElement = entry.getKey();
-				LinkedHashSet<MethodModelElement> methodElements = entry.getValue();
-				for (Iterator<MethodModelElement> iterator = methodElements.iterator(); iterator
-						.hasNext();) {
-					MethodModelElement methodModelElement = iterator.next();
-					Class<?> annotationClass = methodModelElement.getAnnotationClass(); 
-					if (events.isStop() && annotationClass == Stop.class) {
-						// Do not stop until all model elements has finished this step
-							continue;
-					}
-					Object returnValue = methodModelElement.execute();
-					if (null != returnValue && returnValue instanceof Double
-							&& annotationClass == Action.class) {
-
-						buffer.append(extenderElement.getServiceClass().getSimpleName() + "."
-								+ methodModelElement.method.getName() + ": " + defaultFormat.format(returnValue)
-								+ " ");
-						timeSeriesProvider.addTimeSeriesValue(extenderElement, (Double) returnValue);
-						try {
-							methodModelElement = iterator.next();
-							// Save the simulated value at this step
-							methodModelElement.executeSet((Double) returnValue);
-						} catch (NoSuchElementException e) {
-							throw new ExtenderException(e,
-									"Internal error: Missing method for setting calculated value");
-						}
-					} else if (null != returnValue && returnValue instanceof Boolean
-							&& annotationClass == Stop.class) {
-						events.setStop((Boolean) returnValue); 
+	/**
+	 * Create the integrator of the states in the specified run phase. With an adaptive integration
+	 * method the run is stopped at the end time, or at the time of the upper bound of steps with the
+	 * delta time if the end time is NaN
+	 *
+	 * @param phase the run phase
+	 * @param events the clock of the run
+	 * @param method the integration method
+	 * @param deferred true if the values of a step are set at the end of the step
+	 * @param max upper bound of simulation steps
+	 * @param dt the delta time of the run or of the first step of an adaptive method
+	 * @param endTime the simulated time where a run with an adaptive method is stopped or NaN
+	 * @param relativeTolerance relative error tolerance of an adaptive method
+	 * @param absoluteTolerance absolute error tolerance of an adaptive method
+	 * @return the integrator or null if the states are integrated by the model with explicit Euler
+	 * @throws ExtenderException if a state does not provide its net flow rate
+	 */
+	static StateIntegrator createIntegrator(ExecutionPlan.Phase phase, Events events,
+			IntegrationMethod method, boolean deferred, double max, double dt, double endTime,
+			double relativeTolerance, double absoluteTolerance) throws ExtenderException {
+
+		StateIntegrator integrator = StateIntegrator.create(phase, method, deferred, dt, Double
+				.isNaN(endTime) ? max * dt : endTime, relativeTolerance, absoluteTolerance);
+		if (null != integrator && integrator.getMethod().isAdaptive()) {
+			// Stopped by the integrator at the end time
+			events.setMax((double) Long.MAX_VALUE);
+		}
+		return integrator;
+	}
+
+	private void executeSteps(SimulationContext context, Events events,
+			TimeSeriesProvider timeSeriesProvider, ExecutionPlan executionPlan,
+			StateIntegrator integrator, WavefrontExecutor wavefront, List<String> messages)
+			throws ExtenderException {
+
+		final ExecutionPlan.Phase phase = executionPlan.getRunPhase();
+		final int[] seriesIds = registerTimeSeries(timeSeriesProvider, phase, context
+				.getRecordedElements());
+		RecordingSchedule recording = new RecordingSchedule(context.getRecordingStride(), context
+				.getRecordingTimes(), context.getStartTime());
+		RunResultWriter writer = null != context.getResultFile() ? createResultWriter(context,
+				events, timeSeriesProvider) : null;
+		StepTrace trace = null;
+		// The failure of the step loop, not masked by a failure to close the result file
+		Throwable failure = null;
+		try {
+			trace = createTrace(context, phase);
+			context.setTrace(trace);
+			if (!executeSteps(events, timeSeriesProvider, phase, integrator, wavefront, seriesIds,
+					recording, writer, trace, context::isCancelled, context::setStep)) {
+				messages.add("Cancelled after step " + context.getStep());
+			}
+			messages.add("Executed " + events.tick() + " steps");
+			if (null != integrator) {
+				// Each step evaluates the flows once, in addition to the stages of the integrator
+				messages.add("Integrated " + integrator.getStateCount() + " states with "
+						+ integrator.getMethod() + ". Flow evaluations: "
+						+ (integrator.getEvaluations() + events.tick()) + " Rejected steps: "
+						+ integrator.getRejected() + " Simulated time: " + events.time());
+			}
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			RuntimeException closeFailure = null;
+			if (null != writer) {
+				try {
+					writer.close();
+					messages.add("Wrote " + writer.getRowCount() + " steps to "
+							+ context.getResultFile());
+				} catch (RuntimeException e) {
+					if (null == failure) {
+						closeFailure = e;
+					} else {
+						failure.addSuppressed(e);
 					}
 				}
 			}
-			// Log simulated value at the current step
-			bundleLog.addToRoot(StatusCode.INFO, Activator.getContext().getBundle(), null,
-					"Step " + events.getStep() + ": " + buffer);
-			buffer.delete(0, buffer.length());
+			if (null != trace) {
+				trace.close();
+				messages.add("Traced " + trace.getEventCount() + " events"
+						+ (null != trace.getFile() ? " to " + trace.getFile() : "") + ". Dropped: "
+						+ trace.getDroppedCount());
+				if (null != trace.getFailure()) {
+					messages.add("Failed to write trace: " + trace.getFailure().getMessage());
+				}
+			}
+			if (null != closeFailure) {
+				throw closeFailure;
+			}
 		}
 		// Invoke stop for each model element after terminating the simulation
-		executeStop(events, execChain, bundleLog);
+		executeStop(events, executionPlan.getStopPhase(), messages);
 	}
 
-	private void executeStop(Events events,
-			LinkedHashMap<Extender<?>, LinkedHashSet<MethodModelElement>> execChain, BundleLog bundleLog)
-					throws ExtenderException {
+	/**
+	 * Execute the steps of a run until the run is stopped or cancelled. Shared by the runs of the
+	 * simulator and the replicas of the replica runner
+	 * <p>
+	 * Before each step the states are integrated, and the step is executed sequentially or by the
+	 * wavefront executor. The values of recorded steps are added to the time series, written to the
+	 * result file and published to readers of the time series
+	 *
+	 * @param events the clock of the run
+	 * @param timeSeriesProvider recording the values of the run
+	 * @param phase the run phase
+	 * @param integrator the integrator of the states. May be null
+	 * @param wavefront executing each step in dependency levels. May be null to execute the steps
+	 * sequentially
+	 * @param seriesIds the time series id of each operation in the run phase
+	 * @param recording the steps recorded. May be null to record every step
+	 * @param writer receiving the rows of the recorded steps. May be null
+	 * @param trace receiving the values of the traced steps. May be null
+	 * @param cancelled checked before each step. The run is cancelled when it returns true
+	 * @param progress receiving each executed step. May be null
+	 * @return true if the run stopped, false if it was cancelled
+	 * @throws ExtenderException if a method of a model element fails or a row could not be written
+	 */
+	static boolean executeSteps(Events events, TimeSeriesProvider timeSeriesProvider,
+			ExecutionPlan.Phase phase, StateIntegrator integrator, WavefrontExecutor wavefront,
+			int[] seriesIds, RecordingSchedule recording, RunResultWriter writer, StepTrace trace,
+			BooleanSupplier cancelled, LongConsumer progress) throws ExtenderException {
 
-		StringBuffer buffer = new StringBuffer();
+		// Used at steps that are not recorded
+		final int[] unrecordedIds = new int[seriesIds.length];
+		Arrays.fill(unrecordedIds, NOT_RECORDED);
+		double[] row = null;
+		final boolean adaptive = null != integrator && integrator.getMethod().isAdaptive();
+		while (!events.stopped()) {
+			if (cancelled.getAsBoolean()) {
+				return false;
+			}
+			if (null != integrator) {
+				integrator.integrate(events);
+			}
+			long step = events.advance();
+			boolean recorded = null == recording || recording.record(events.time());
+			if (recorded) {
+				if (adaptive) {
+					// Steps of different length are recorded by their simulated time
+					timeSeriesProvider.addStep(Double.valueOf(events.time()));
+				} else {
+					timeSeriesProvider.addStep(step);
+				}
+			}
+			int[] ids = recorded ? seriesIds : unrecordedIds;
+			// Receives the values of the step if they are traced
+			StepTrace values = null != trace && trace.beginStep(step, events.time()) ? trace : null;
+			if (null != wavefront) {
+				wavefront.executeStep(events, timeSeriesProvider, ids, values);
+			} else {
+				executeStep(events, timeSeriesProvider, phase, integrator, ids, values);
+			}
+			if (null != integrator && integrator.isFinished(events)) {
+				events.setStop(true);
+			}
+			if (null != writer && recorded) {
+				// The last row, also when only the last steps of the run are kept
+				row = timeSeriesProvider.getRow(timeSeriesProvider.getRowCount() - 1, row);
+				writer.append(adaptive ? events.time() : events.tick(), row);
+			}
+			if (recorded) {
+				// Make the step visible to readers of the time series
+				timeSeriesProvider.publish();
+			}
+			if (null != progress) {
+				progress.accept(step);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Create a trace of the steps of a run in the specified context
+	 *
+	 * @return the trace or null if the trace level of the context does not trace steps
+	 * @throws ExtenderException if the trace file could not be created
+	 */
+	private static StepTrace createTrace(SimulationContext context, ExecutionPlan.Phase phase)
+			throws ExtenderException {
 
-		for (Map.Entry<Extender<?>, LinkedHashSet<MethodModelElement>> entry : execChain.entrySet()) {
-			LinkedHashSet<MethodModelElement> methodElements = entry.getValue();
-			for (Iterator<MethodModelElement> iterator = methodElements.iterator(); iterator.hasNext();) {
-				MethodModelElement methodModelElement = iterator.next();
-				if (methodModelElement.getAnnotationClass() == Stop.class) {
-					methodModelElement.execute();
-					Extender<?> extenderElement = entry.getKey();
-					buffer.append("Execute Stop after step: " + events.getStep().toString() + " for "
-							+ extenderElement.getServiceClass().getSimpleName() + "."
-							+ methodModelElement.method.getName());
-					bundleLog.addToRoot(StatusCode.INFO, Activator.getContext().getBundle(), null,
-							buffer.toString());
-					buffer.delete(0, buffer.length());
+		TraceLevel level = context.getTraceLevel();
+		if (level != TraceLevel.STEP && level != TraceLevel.ELEMENT) {
+			return null;
+		}
+		String[] labels = new String[phase.size()];
+		for (int i = 0; i < labels.length; i++) {
+			labels[i] = phase.kinds[i] == ExecutionPlan.VALUE ? phase.labels[i] : null;
+		}
+		return new StepTrace(level, context.getTraceStride(), context.getTraceFile(), labels);
+	}
+
+	/**
+	 * Create a writer of the run result file of the specified context. The model elements are
+	 * written in the order of the recorded time series
+	 */
+	private static RunResultWriter createResultWriter(SimulationContext context, Events events,
+			TimeSeriesProvider timeSeriesProvider) throws ExtenderException {
+
+		Collection<Extender<?>> modelElements = timeSeriesProvider.getModelElements();
+		String[] names = new String[modelElements.size()];
+		String[] types = new String[names.length];
+		int i = 0;
+		for (Extender<?> extender : modelElements) {
+			Class<?> serviceClass = extender.getServiceClass();
+			ModelElement modelElement = serviceClass.getAnnotation(ModelElement.class);
+			names[i] = serviceClass.getName();
+			types[i++] = null != modelElement ? modelElement.type().name() : "";
+		}
+		Bundle bundle = context.getBundle();
+		return new RunResultWriter(context.getResultFile(), bundle.getSymbolicName(), bundle
+				.getVersion().toString(), events.dt(), names, types);
+	}
+
+	/**
+	 * Execute the run phase sequentially for the current step
+	 * <p>
+	 * Primitive value operations pass the value from the value to the set method without boxing
+	 * 
+	 * @param events the events of the simulation run
+	 * @param timeSeriesProvider recording the values returned by value methods
+	 * @param phase the run phase
+	 * @param integrator the integrator of the states, giving the values of their value operations
+	 * at this step. May be null
+	 * @param seriesIds the time series id of each operation in the run phase, or
+	 * {@link #NOT_RECORDED} for value operations that are not recorded at this step
+	 * @param trace receiving the values returned by value methods when the values of the step are
+	 * traced. May be null
+	 * @throws ExtenderException if a method of a model element fails
+	 * @see #registerTimeSeries(TimeSeriesProvider, ExecutionPlan.Phase, Collection)
+	 */
+	static void executeStep(Events events, TimeSeriesProvider timeSeriesProvider,
+			ExecutionPlan.Phase phase, StateIntegrator integrator, int[] seriesIds, StepTrace trace)
+			throws ExtenderException {
+
+		final byte[] kinds = phase.kinds;
+		final MethodModelElement[] methods = phase.methods;
+		final MethodModelElement[] setMethods = phase.setMethods;
+		final Extender<?>[] elements = phase.elements;
+		final boolean[] primitive = phase.primitive;
+		for (int i = 0; i < kinds.length; i++) {
+			switch (kinds[i]) {
+			case ExecutionPlan.VALUE:
+				if (primitive[i] || null != integrator && integrator.isIntegrated(i)) {
+					double value = null != integrator && integrator.isIntegrated(i) ? integrator
+							.getValue(i) : methods[i].executeDouble();
+					if (null != trace) {
+						trace.value(i, value);
+					}
+					record(timeSeriesProvider, seriesIds[i], elements[i], value);
+					setMethods[i].executeSetDouble(value);
+					break;
+				}
+				Object returnValue = methods[i].execute();
+				if (null != returnValue) {
+					if (null != trace) {
+						trace.value(i, (Double) returnValue);
+					}
+					record(timeSeriesProvider, seriesIds[i], elements[i], (Double) returnValue);
+					// Save the simulated value at this step
+					setMethods[i].executeSet((Double) returnValue);
 				}
+				break;
+			case ExecutionPlan.STOP:
+				// Do not stop until all model elements has finished this step
+				if (!events.stopped()) {
+					returnValue = methods[i].execute();
+					if (null != returnValue) {
+						events.setStop((Boolean) returnValue);
+					}
+				}
+				break;
+			default:
+				methods[i].execute();
+				break;
 			}
 		}
 	}
+
+	/**
+	 * Register the time series of the output operations in the specified phase
+	 * 
+	 * @see #registerTimeSeries(TimeSeriesProvider, ExecutionPlan.Phase, Collection)
+	 */
+	static int[] registerTimeSeries(TimeSeriesProvider timeSeriesProvider,
+			ExecutionPlan.Phase phase) {
+		return registerTimeSeries(timeSeriesProvider, phase, null);
+	}
+
+	/**
+	 * Register the time series of the recorded model elements with value operations in the specified
+	 * phase. Called after the initial step, when the time series of the run have been initialized
+	 * <p>
+	 * If no names are specified, the {@link ExecutionPlan.Phase#isOutput(int) output} operations are
+	 * recorded, or all value operations if the phase has no output operations
+	 * 
+	 * @param timeSeriesProvider the time series provider of the run
+	 * @param phase the run phase
+	 * @param recorded the service class names of the recorded model elements or null
+	 * @return the time series id of each operation in the phase. The id is {@link #NOT_RECORDED} for
+	 * value operations that are not recorded, and -1 for operations that are not value operations
+	 * and when the provider does not support adding values by id
+	 */
+	static int[] registerTimeSeries(TimeSeriesProvider timeSeriesProvider,
+			ExecutionPlan.Phase phase, Collection<String> recorded) {
+
+		boolean outputsOnly = null == recorded && phase.hasOutputs();
+		int[] seriesIds = new int[phase.size()];
+		for (int i = 0; i < seriesIds.length; i++) {
+			if (phase.kinds[i] != ExecutionPlan.VALUE) {
+				seriesIds[i] = -1;
+			} else if (null != recorded ? recorded.contains(phase.elements[i].getServiceClass()
+					.getName()) : !outputsOnly || phase.output[i]) {
+				seriesIds[i] = timeSeriesProvider.registerTimeSeries(phase.elements[i]);
+			} else {
+				seriesIds[i] = NOT_RECORDED;
+			}
+		}
+		return seriesIds;
+	}
+
+	/**
+	 * Add a value to the time series of a model element by id, or by model element if the id is not
+	 * valid. Values of operations that are not recorded are ignored
+	 */
+	static void record(TimeSeriesProvider timeSeriesProvider, int seriesId, Extender<?> element,
+			double value) {
+
+		if (seriesId >= 0) {
+			timeSeriesProvider.addTimeSeriesValue(seriesId, value);
+		} else if (seriesId != NOT_RECORDED) {
+			timeSeriesProvider.addTimeSeriesValue(element, value);
+		}
+	}
+
+	private void logParallelism(WavefrontExecutor wavefront, ForkJoinPool pool,
+			List<String> messages) {
+
+		WavefrontSchedule schedule = wavefront.getSchedule();
+		messages.add("Parallel execution of " + schedule.getElementCount() + " model elements in "
+				+ schedule.getLevelCount() + " levels. Max level width: " + schedule.getMaxWidth()
+				+ " Average level width: " + defaultFormat.get().format(schedule.getAverageWidth())
+				+ " Achieved parallelism: "
+				+ defaultFormat.get().format(wavefront.getAchievedParallelism()) + " on "
+				+ pool.getParallelism() + " threads");
+	}
+
+	private void executeStop(Events events, ExecutionPlan.Phase phase, List<String> messages)
+			throws ExtenderException {
+
+		final MethodModelElement[] methods = phase.methods;
+		for (int i = 0; i < methods.length; i++) {
+			methods[i].execute();
+			messages.add("Execute Stop after step: " + events.getStep().toString() + " for "
+					+ phase.labels[i]);
+		}
+	}
 }
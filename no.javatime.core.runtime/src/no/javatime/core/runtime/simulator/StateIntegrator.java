@@ -0,0 +1,464 @@
+package no.javatime.core.runtime.simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import no.javatime.core.model.annotations.ModelElement;
+import no.javatime.core.model.annotations.ModelElement.Type;
+import no.javatime.core.model.elements.Events;
+import no.javatime.core.model.elements.IState;
+import no.javatime.core.model.elements.State;
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * Integrates the state model elements of a run with an explicit Runge-Kutta method.
+ * <p>
+ * Before each step the integrator computes the states at the next step from the net flow rates of
+ * the states at the current state and at intermediate states (stages). At each stage the states are
+ * set to the stage values, the simulated time of the clock is set to the time of the stage, and the
+ * value methods of the flows are executed in plan order, so the net flow rate of each state is
+ * calculated from the flows at the stage. The flows are the value operations of transitions, rates
+ * and derivatives, of the transitions added as in or out flows of the states, and of the model
+ * elements injected into them, directly or through other injected model elements. Exogenous,
+ * input and constant model elements are not evaluated by the stages. With a clock that can not
+ * {@link Events#setTime(double) set its time}, the flows are evaluated at the time of the current
+ * step. The states and the time are then restored, and when the step is executed the value
+ * operations of the states pass the integrated values to their set methods instead of executing
+ * their calculate methods.
+ * <p>
+ * With immediate updates, and the states before the flows in plan order, the flows executed by a
+ * step are evaluated at the new states. The net flow rates at the start of the next step are then
+ * read from the states without evaluating the flows again. Otherwise the flows are evaluated at the
+ * start of each step.
+ * <p>
+ * An adaptive method estimates the error of each step from an embedded method of lower order. A
+ * step with an error above the tolerance of the run is repeated with a smaller delta time, and the
+ * delta time of the next step is chosen from the error of the accepted step. The delta time of the
+ * clock is set to the delta time of each accepted step, and the run is stopped at the end time.
+ *
+ * @see IntegrationMethod
+ */
+final class StateIntegrator {
+
+	private final static double[][] RK4_A = { {}, { 0.5 }, { 0d, 0.5 }, { 0d, 0d, 1d } };
+	private final static double[] RK4_B = { 1 / 6d, 1 / 3d, 1 / 3d, 1 / 6d };
+
+	/**
+	 * The last stage is evaluated at the solution of the step and is only used to estimate the error.
+	 * It is not reused as the first stage of the next step, as the step may change values the flows
+	 * read, e.g. exogenous values
+	 */
+	private final static double[][] DP_A = {
+			{},
+			{ 1 / 5d },
+			{ 3 / 40d, 9 / 40d },
+			{ 44 / 45d, -56 / 15d, 32 / 9d },
+			{ 19372 / 6561d, -25360 / 2187d, 64448 / 6561d, -212 / 729d },
+			{ 9017 / 3168d, -355 / 33d, 46732 / 5247d, 49 / 176d, -5103 / 18656d },
+			{ 35 / 384d, 0d, 500 / 1113d, 125 / 192d, -2187 / 6784d, 11 / 84d } };
+	private final static double[] DP_B = { 35 / 384d, 0d, 500 / 1113d, 125 / 192d,
+			-2187 / 6784d, 11 / 84d, 0d };
+	/** The fifth order minus the embedded fourth order weights */
+	private final static double[] DP_E = { 35 / 384d - 5179 / 57600d, 0d,
+			500 / 1113d - 7571 / 16695d, 125 / 192d - 393 / 640d, -2187 / 6784d + 92097 / 339200d,
+			11 / 84d - 187 / 2100d, -1 / 40d };
+
+	/** Exponent of the error when choosing the next delta time, from the embedded fourth order */
+	private final static double ERROR_EXPONENT = -1 / 5d;
+	private final static double SAFETY = 0.9;
+	private final static double MIN_FACTOR = 0.2;
+	private final static double MAX_FACTOR = 5d;
+
+	private final IntegrationMethod method;
+	private final ExecutionPlan.Phase phase;
+	/** Positions of the value operations of the states in the run phase */
+	private final int[] states;
+	private final IState[] stateElements;
+	/** Positions of the value operations of the flows in the run phase */
+	private final int[] flows;
+	/** The integrated value of the state at the next step, indexed by operation */
+	private final double[] values;
+	private final boolean[] integrated;
+	private final double[][] a;
+	private final double[] b;
+	private final double[] e;
+	/** The time of each stage as a fraction of the delta time of the step */
+	private final double[] c;
+	private final double[][] k;
+	private final double[] x0;
+	private final double[] x;
+	/** Whether a step leaves the flows evaluated at the new states */
+	private final boolean flowsCurrent;
+	private final double endTime;
+	private final double relativeTolerance;
+	private final double absoluteTolerance;
+	/** Whether the flows are evaluated at the current states */
+	private boolean current;
+	/** The delta time of the next step of an adaptive method */
+	private double dt;
+	private long evaluations;
+	private long rejected;
+
+	/**
+	 * Create an integrator of the specified states, evaluating the specified flows at each stage
+	 *
+	 * @param states positions of the value operations of the states in the run phase, in plan order
+	 * @param stateElements the state of each value operation
+	 * @param flows positions of the value operations of the flows in the run phase, in plan order
+	 * @see #create(ExecutionPlan.Phase, IntegrationMethod, boolean, double, double, double, double)
+	 */
+	StateIntegrator(IntegrationMethod method, ExecutionPlan.Phase phase, int[] states,
+			IState[] stateElements, int[] flows, boolean deferred, double dt, double endTime,
+			double relativeTolerance, double absoluteTolerance) {
+
+		this.method = method;
+		this.phase = phase;
+		this.states = states;
+		this.stateElements = stateElements;
+		this.flows = flows;
+		this.values = new double[phase.size()];
+		this.integrated = new boolean[phase.size()];
+		for (int i : states) {
+			integrated[i] = true;
+		}
+		boolean adaptive = method.isAdaptive();
+		this.a = adaptive ? DP_A : RK4_A;
+		this.b = adaptive ? DP_B : RK4_B;
+		this.e = adaptive ? DP_E : null;
+		this.c = new double[a.length];
+		for (int s = 0; s < a.length; s++) {
+			for (double weight : a[s]) {
+				c[s] += weight;
+			}
+		}
+		this.k = new double[b.length][states.length];
+		this.x0 = new double[states.length];
+		this.x = new double[states.length];
+		int lastState = states[states.length - 1];
+		this.flowsCurrent = !deferred && (0 == flows.length || lastState < flows[0]);
+		this.dt = dt;
+		this.endTime = endTime;
+		this.relativeTolerance = relativeTolerance;
+		this.absoluteTolerance = absoluteTolerance;
+	}
+
+	/**
+	 * Create an integrator of the states in the specified run phase
+	 *
+	 * @param phase the run phase bound to the model element instances of the run
+	 * @param method the integration method
+	 * @param deferred true if the values of a step are set at the end of the step
+	 * @param dt the delta time of the run or of the first step of an adaptive method
+	 * @param endTime the simulated time where a run with an adaptive method is stopped
+	 * @param relativeTolerance relative error tolerance of an adaptive method
+	 * @param absoluteTolerance absolute error tolerance of an adaptive method
+	 * @return the integrator or null if the method is {@link IntegrationMethod#EULER} or the run
+	 * phase has no states
+	 * @throws ExtenderException if a state does not provide its net flow rate
+	 */
+	static StateIntegrator create(ExecutionPlan.Phase phase, IntegrationMethod method,
+			boolean deferred, double dt, double endTime, double relativeTolerance,
+			double absoluteTolerance) throws ExtenderException {
+
+		if (method == IntegrationMethod.EULER) {
+			return null;
+		}
+		List<Integer> states = new ArrayList<>();
+		List<IState> stateElements = new ArrayList<>();
+		Set<Object> transitions = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (int i = 0; i < phase.size(); i++) {
+			if (phase.kinds[i] != ExecutionPlan.VALUE || !isState(getType(phase, i))) {
+				continue;
+			}
+			Object instance = phase.methods[i].object;
+			if (!(instance instanceof IState)) {
+				throw new ExtenderException("State {0} has no net flow rate for method {1}",
+						phase.labels[i], method);
+			}
+			states.add(i);
+			stateElements.add((IState) instance);
+			if (instance instanceof State) {
+				transitions.addAll(((State) instance).getInFlows());
+				transitions.addAll(((State) instance).getOutFlows());
+			}
+		}
+		if (states.isEmpty()) {
+			return null;
+		}
+		return new StateIntegrator(method, phase, toArray(states), stateElements
+				.toArray(new IState[stateElements.size()]), getFlows(phase, transitions), deferred,
+				dt, endTime, relativeTolerance, absoluteTolerance);
+	}
+
+	/**
+	 * Get the value operations evaluated at each stage
+	 *
+	 * @param phase the run phase
+	 * @param transitions the in and out flows of the states in the run phase
+	 * @return positions of the value operations of the flows and the model elements they depend on
+	 * in plan order
+	 * @throws ExtenderException if the injected model elements of a flow could not be read
+	 */
+	private static int[] getFlows(ExecutionPlan.Phase phase, Set<Object> transitions)
+			throws ExtenderException {
+
+		boolean[] evaluated = new boolean[phase.size()];
+		Set<Class<?>> required = new HashSet<>();
+		for (int i = 0; i < phase.size(); i++) {
+			if (phase.kinds[i] == ExecutionPlan.VALUE && (isFlow(getType(phase, i))
+					|| transitions.contains(phase.methods[i].object))) {
+				evaluated[i] = true;
+				required.addAll(ClassModelElementSorter.getDependencies(phase.elements[i]
+						.getServiceClass()));
+			}
+		}
+		// Until no more model elements are required by the evaluated model elements
+		boolean added;
+		do {
+			added = false;
+			for (int i = phase.size() - 1; i >= 0; i--) {
+				Class<?> serviceClass = phase.elements[i].getServiceClass();
+				Type type = getType(phase, i);
+				if (phase.kinds[i] == ExecutionPlan.VALUE && !evaluated[i] && !isState(type)
+						&& !isExogenous(type) && required.contains(serviceClass)) {
+					evaluated[i] = true;
+					added |= required.addAll(ClassModelElementSorter.getDependencies(serviceClass));
+				}
+			}
+		} while (added);
+		List<Integer> flows = new ArrayList<>();
+		for (int i = 0; i < evaluated.length; i++) {
+			if (evaluated[i]) {
+				flows.add(i);
+			}
+		}
+		return toArray(flows);
+	}
+
+	/**
+	 * The type of the model element of the operation at the specified position
+	 *
+	 * @return the type of the model element or null if the model element is not annotated
+	 */
+	private static Type getType(ExecutionPlan.Phase phase, int index) {
+
+		ModelElement modelElement = phase.elements[index].getServiceClass().getAnnotation(
+				ModelElement.class);
+		return null != modelElement ? modelElement.type() : null;
+	}
+
+	private static boolean isState(Type type) {
+		return type == Type.STATE || type == Type.LEVEL || type == Type.INTEGRAL;
+	}
+
+	private static boolean isFlow(Type type) {
+		return type == Type.TRANSITION || type == Type.RATE || type == Type.DERIVATIVE;
+	}
+
+	/**
+	 * Whether a model element of the specified type has values that do not depend on the states
+	 */
+	private static boolean isExogenous(Type type) {
+		return type == Type.EXOGENOUS || type == Type.INPUT || type == Type.CONSTANT
+				|| type == Type.SYSTEM;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	IntegrationMethod getMethod() {
+		return method;
+	}
+
+	/**
+	 * Number of states integrated
+	 *
+	 * @return the number of state value operations in the run phase
+	 */
+	int getStateCount() {
+		return states.length;
+	}
+
+	/**
+	 * Number of times the flows have been evaluated by this integrator, not including the
+	 * evaluation of the flows by each step
+	 *
+	 * @return number of evaluations of the flows
+	 */
+	long getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * Number of steps repeated with a smaller delta time
+	 *
+	 * @return number of rejected steps
+	 */
+	long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Whether the value operation at the specified position is a state integrated here
+	 *
+	 * @param index position of a value operation in the run phase
+	 * @return true if the value of the operation is given by {@link #getValue(int)}
+	 */
+	boolean isIntegrated(int index) {
+		return integrated[index];
+	}
+
+	/**
+	 * The integrated value of the state at the next step
+	 *
+	 * @param index position of the value operation of a state in the run phase
+	 * @return the value of the state at the next step
+	 */
+	double getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Integrate the states from the current step to the next step. Called before the clock is
+	 * advanced
+	 *
+	 * @param events the clock of the run
+	 * @throws ExtenderException if a method of a flow fails or the delta time of an adaptive method
+	 * underflows
+	 */
+	void integrate(Events events) throws ExtenderException {
+
+		final int n = states.length;
+		for (int j = 0; j < n; j++) {
+			x0[j] = stateElements[j].value();
+		}
+		if (!current) {
+			evaluateFlows();
+		}
+		for (int j = 0; j < n; j++) {
+			k[0][j] = stateElements[j].netFlowRate();
+		}
+		boolean adaptive = null != e;
+		final double t0 = events.time();
+		double h = adaptive ? Math.min(dt, endTime - t0) : events.dt();
+		while (true) {
+			try {
+				for (int s = 1; s < b.length; s++) {
+					for (int j = 0; j < n; j++) {
+						double sum = 0d;
+						for (int l = 0; l < s; l++) {
+							sum += a[s][l] * k[l][j];
+						}
+						x[j] = x0[j] + h * sum;
+					}
+					setStates(x);
+					events.setTime(t0 + c[s] * h);
+					evaluateFlows();
+					for (int j = 0; j < n; j++) {
+						k[s][j] = stateElements[j].netFlowRate();
+					}
+				}
+			} finally {
+				events.setTime(t0);
+			}
+			for (int j = 0; j < n; j++) {
+				double sum = 0d;
+				for (int s = 0; s < b.length; s++) {
+					sum += b[s] * k[s][j];
+				}
+				values[states[j]] = x0[j] + h * sum;
+			}
+			if (!adaptive) {
+				break;
+			}
+			double error = getError(h);
+			if (error <= 1d) {
+				double factor = error > 0d ? SAFETY * Math.pow(error, ERROR_EXPONENT) : MAX_FACTOR;
+				dt = h * Math.min(MAX_FACTOR, Math.max(MIN_FACTOR, factor));
+				break;
+			}
+			rejected++;
+			h *= Math.max(MIN_FACTOR, SAFETY * Math.pow(error, ERROR_EXPONENT));
+			if (h <= 16 * Math.ulp(Math.max(1d, Math.abs(t0)))) {
+				throw new ExtenderException("Step size underflow at time {0} with method {1}",
+						t0, method);
+			}
+		}
+		// The states are set to the integrated values by the step
+		setStates(x0);
+		if (adaptive) {
+			events.setDt(h);
+		}
+		current = flowsCurrent;
+	}
+
+	/**
+	 * Whether a run with an adaptive method has reached its end time
+	 *
+	 * @param events the clock of the run
+	 * @return true if the method is adaptive and the simulated time is at the end time
+	 */
+	boolean isFinished(Events events) {
+		return null != e
+				&& events.time() >= endTime - 16 * Math.ulp(Math.max(1d, Math.abs(endTime)));
+	}
+
+	/**
+	 * The weighted root mean square of the estimated error of the states at the next step
+	 */
+	private double getError(double h) {
+
+		double sum = 0d;
+		for (int j = 0; j < states.length; j++) {
+			double error = 0d;
+			for (int s = 0; s < e.length; s++) {
+				error += e[s] * k[s][j];
+			}
+			double scale = absoluteTolerance + relativeTolerance * Math.max(Math.abs(x0[j]), Math
+					.abs(values[states[j]]));
+			double weighted = h * error / scale;
+			sum += weighted * weighted;
+		}
+		return Math.sqrt(sum / states.length);
+	}
+
+	private void setStates(double[] stateValues) throws ExtenderException {
+
+		for (int j = 0; j < states.length; j++) {
+			phase.setMethods[states[j]].executeSetDouble(stateValues[j]);
+		}
+	}
+
+	/**
+	 * Execute the value methods of the flows in plan order and pass the values to their set methods.
+	 * Called with the clock at the time of the stage
+	 */
+	private void evaluateFlows() throws ExtenderException {
+
+		final MethodModelElement[] methods = phase.methods;
+		for (int i : flows) {
+			double value;
+			if (phase.primitive[i]) {
+				value = methods[i].executeDouble();
+			} else {
+				Object returnValue = methods[i].execute();
+				if (null == returnValue) {
+					continue;
+				}
+				value = (Double) returnValue;
+			}
+			phase.setMethods[i].executeSetDouble(value);
+		}
+		evaluations++;
+	}
+}
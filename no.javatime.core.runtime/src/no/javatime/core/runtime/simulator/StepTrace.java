@@ -0,0 +1,358 @@
+package no.javatime.core.runtime.simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * Binary trace events of the steps of one simulation run.
+ * <p>
+ * Events are appended by the simulation thread to fixed size chunks without formatting or
+ * allocation, and full chunks are passed through a bounded queue to a background thread. The
+ * background thread writes the chunks to the trace file, or keeps the most recent chunks in memory
+ * if the run has no trace file. When no chunk is available the events are dropped and counted, so
+ * the simulation is never blocked by the trace.
+ * <p>
+ * Only every n-th step is traced. A {@link #STEP step event} holds the step, the simulated time
+ * and the nanoseconds since the run started, and is followed by a {@link #VALUE value event} with
+ * the position and the value of each value operation of the run phase when the level is
+ * {@link TraceLevel#ELEMENT}. The trace starts with a header holding the labels of the operations
+ * of the run phase. Traces are read with a {@link TraceReader}.
+ */
+public class StepTrace {
+
+	/** Kind of an event holding a step, the simulated time and the elapsed nanoseconds */
+	public final static byte STEP = 1;
+
+	/** Kind of an event holding the position of a value operation and its value */
+	public final static byte VALUE = 2;
+
+	/** First bytes of a trace */
+	final static int MAGIC = 0x4A545452;
+
+	final static int VERSION = 1;
+
+	private final static int CHUNK_SIZE = 1 << 16;
+
+	/** Maximum number of chunks waiting for the background thread */
+	private final static int MAX_PENDING_CHUNKS = 16;
+
+	/** Maximum number of chunks kept in memory when the run has no trace file */
+	private final static int MAX_RETAINED_CHUNKS = 64;
+
+	/** Size of the largest event */
+	private final static int MAX_EVENT_SIZE = 1 + 3 * 8;
+
+	/** Ends the background thread */
+	private final static ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final TraceLevel level;
+	private final int stride;
+	private final Path file;
+	private final byte[] header;
+	private final int maxChunks;
+	private final ArrayBlockingQueue<ByteBuffer> pending;
+	private final ArrayBlockingQueue<ByteBuffer> free;
+	/** Chunks kept in memory by the background thread, oldest first */
+	private final ArrayDeque<ByteBuffer> retained = new ArrayDeque<>();
+	private final FileChannel channel;
+	private final Thread writer;
+	private final long startTime = System.nanoTime();
+	private volatile IOException failure;
+
+	// Used by the simulation thread, and read by others when the run has terminated
+	private ByteBuffer chunk;
+	private int chunks;
+	private boolean tracingValues;
+	private long events;
+	private long dropped;
+
+	/**
+	 * Create a trace and start its background thread
+	 *
+	 * @param level {@link TraceLevel#STEP} or {@link TraceLevel#ELEMENT}
+	 * @param stride trace every n-th step. Values less than one are treated as one
+	 * @param file the trace file, replaced by the trace, or null to keep the most recent events in
+	 * memory
+	 * @param labels the label of each operation in the run phase or null for operations that are not
+	 * value operations
+	 * @throws ExtenderException if the trace file could not be created
+	 */
+	StepTrace(TraceLevel level, int stride, Path file, String[] labels) throws ExtenderException {
+
+		this.level = level;
+		this.stride = Math.max(1, stride);
+		this.file = file;
+		this.header = createHeader(labels);
+		this.maxChunks = MAX_PENDING_CHUNKS + (null == file ? MAX_RETAINED_CHUNKS : 0);
+		this.pending = new ArrayBlockingQueue<>(maxChunks + 1);
+		this.free = new ArrayBlockingQueue<>(maxChunks);
+		if (null != file) {
+			try {
+				if (null != file.getParent()) {
+					Files.createDirectories(file.getParent());
+				}
+				channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+				channel.write(ByteBuffer.wrap(header));
+			} catch (IOException e) {
+				throw new ExtenderException(e, "Failed to create trace file {0}", file);
+			}
+		} else {
+			channel = null;
+		}
+		chunk = acquire();
+		writer = new Thread(this::drain, "Simulation trace");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private static byte[] createHeader(String[] labels) {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(labels.length);
+			for (String label : labels) {
+				out.writeUTF(null != label ? label : "");
+			}
+		} catch (IOException e) {
+			// Not thrown when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public TraceLevel getLevel() {
+		return level;
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * The trace file
+	 *
+	 * @return the trace file or null if the events are kept in memory
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Number of events traced. Valid when the run has terminated
+	 *
+	 * @return the number of events passed to the background thread
+	 */
+	public long getEventCount() {
+		return events;
+	}
+
+	/**
+	 * Number of events dropped because the background thread did not keep up with the run. Valid
+	 * when the run has terminated
+	 *
+	 * @return the number of dropped events
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * The failure of the background thread
+	 *
+	 * @return the exception thrown when writing to the trace file or null
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Trace the specified step if it is a sampled step. Called by the simulation thread before the
+	 * step is executed
+	 *
+	 * @param step the step
+	 * @param time the simulated time of the step
+	 * @return true if the values of the step are traced by {@link #value(int, double)}
+	 */
+	boolean beginStep(long step, double time) {
+
+		tracingValues = false;
+		if (step % stride != 0) {
+			return false;
+		}
+		if (!reserve()) {
+			// Values without their step are not traced
+			return false;
+		}
+		chunk.put(STEP).putLong(step).putDouble(time).putLong(System.nanoTime() - startTime);
+		events++;
+		tracingValues = level == TraceLevel.ELEMENT;
+		return tracingValues;
+	}
+
+	/**
+	 * Trace the value of an operation of the run phase at the current step. Ignored if the values of
+	 * the step are not traced
+	 *
+	 * @param index position of the value operation in the run phase
+	 * @param value the value returned by the operation
+	 */
+	void value(int index, double value) {
+
+		if (tracingValues) {
+			if (reserve()) {
+				chunk.put(VALUE).putInt(index).putDouble(value);
+				events++;
+			} else {
+				// The remaining values of the step are dropped
+				tracingValues = false;
+			}
+		}
+	}
+
+	/**
+	 * Make room for the next event, passing a full chunk to the background thread
+	 *
+	 * @return true if there is room for the event, or false if the event is dropped
+	 */
+	private boolean reserve() {
+
+		if (null != chunk && chunk.remaining() < MAX_EVENT_SIZE) {
+			chunk.flip();
+			pending.add(chunk);
+			chunk = null;
+		}
+		if (null == chunk) {
+			chunk = acquire();
+			if (null == chunk) {
+				dropped++;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A chunk returned by the background thread, or a new chunk if the number of chunks is below the
+	 * maximum
+	 */
+	private ByteBuffer acquire() {
+
+		ByteBuffer buffer = free.poll();
+		if (null == buffer && chunks < maxChunks) {
+			chunks++;
+			buffer = ByteBuffer.allocate(CHUNK_SIZE);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Pass the last events to the background thread and wait for it to terminate. Called by the
+	 * simulation thread when the run has terminated
+	 */
+	void close() {
+
+		if (null != chunk && chunk.position() > 0) {
+			chunk.flip();
+			pending.add(chunk);
+			chunk = null;
+		}
+		pending.add(END);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Write or keep the chunks passed from the simulation thread until the trace is closed
+	 */
+	private void drain() {
+
+		try {
+			for (ByteBuffer buffer = pending.take(); buffer != END; buffer = pending.take()) {
+				if (null != channel) {
+					if (null == failure) {
+						try {
+							while (buffer.hasRemaining()) {
+								channel.write(buffer);
+							}
+						} catch (IOException e) {
+							failure = e;
+						}
+					}
+					buffer.clear();
+					free.add(buffer);
+				} else {
+					synchronized (retained) {
+						retained.addLast(buffer);
+						if (retained.size() > MAX_RETAINED_CHUNKS) {
+							ByteBuffer oldest = retained.removeFirst();
+							oldest.clear();
+							free.add(oldest);
+						}
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// Terminated with the run
+		} finally {
+			if (null != channel) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					if (null == failure) {
+						failure = e;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read the events of this trace. Events kept in memory are read from a copy, and only the most
+	 * recent events are kept
+	 *
+	 * @return a reader of the trace file or of the events kept in memory
+	 * @throws ExtenderException if the trace file could not be opened
+	 */
+	public TraceReader read() throws ExtenderException {
+
+		try {
+			if (null != file) {
+				return new TraceReader(Files.newInputStream(file));
+			}
+			List<InputStream> streams = new ArrayList<>();
+			streams.add(new ByteArrayInputStream(header));
+			synchronized (retained) {
+				for (ByteBuffer buffer : retained) {
+					byte[] bytes = new byte[buffer.limit()];
+					buffer.duplicate().get(bytes);
+					streams.add(new ByteArrayInputStream(bytes));
+				}
+			}
+			return new TraceReader(new SequenceInputStream(Collections.enumeration(streams)));
+		} catch (IOException e) {
+			throw new ExtenderException(e, "Failed to read trace {0}", null != file ? file : "");
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package no.javatime.core.runtime.simulator;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import no.javatime.core.model.series.ColumnFactory;
+import no.javatime.core.model.series.MappedColumnFactory;
+import no.javatime.core.model.series.RingColumnFactory;
+
+/**
+ * Where the time series of a run are recorded. The storage is applied to the time series provider
+ * of each run before the initial step.
+ */
+public enum StorageMode {
+
+	/** Keep the values of each model element in chunks of primitive values on the heap */
+	HEAP,
+
+	/**
+	 * Keep the values on the heap compressed in blocks. Values changing slowly from step to step
+	 * take a fraction of the memory of {@link #HEAP} storage
+	 */
+	COMPRESSED,
+
+	/**
+	 * Keep the values in memory mapped files in the storage directory, so the recorded time series
+	 * of a run may exceed the heap
+	 */
+	MAPPED,
+
+	/**
+	 * Keep only the values of the last steps of a run, given by the storage capacity, so the memory
+	 * of a run is constant regardless of the number of steps
+	 */
+	RING;
+
+	/**
+	 * Create the factory of the columns of a run recorded with this storage mode
+	 *
+	 * @param directory directory of the files of {@link #MAPPED} storage, or null for the directory
+	 * of temporary files
+	 * @param capacity number of steps kept by {@link #RING} storage
+	 * @return the column factory of this storage mode
+	 * @throws IllegalArgumentException if the capacity of {@link #RING} storage is less than one
+	 */
+	public ColumnFactory createColumnFactory(Path directory, int capacity)
+			throws IllegalArgumentException {
+
+		switch (this) {
+		case COMPRESSED:
+			return ColumnFactory.COMPRESSED;
+		case MAPPED:
+			return new MappedColumnFactory(null != directory ? directory : Paths.get(System
+					.getProperty("java.io.tmpdir")));
+		case RING:
+			return new RingColumnFactory(capacity);
+		default:
+			return ColumnFactory.HEAP;
+		}
+	}
+}
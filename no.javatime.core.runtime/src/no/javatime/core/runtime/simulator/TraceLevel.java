@@ -0,0 +1,34 @@
+package no.javatime.core.runtime.simulator;
+
+/**
+ * How much of a simulation run is traced.
+ * <p>
+ * Summaries of a run are sent to the bundle log. Steps and values are written as binary
+ * {@link StepTrace trace events} by a background thread, and never to the bundle log.
+ */
+public enum TraceLevel {
+
+	/**
+	 * Nothing is traced and nothing is sent to the bundle log
+	 */
+	OFF,
+
+	/**
+	 * The start values, the length, the parallelism and the termination of a run are sent to the
+	 * bundle log when the run has terminated
+	 */
+	SUMMARY,
+
+	/**
+	 * As {@link #SUMMARY}, and an event with the step, the simulated time and the elapsed time is
+	 * traced at each sampled step
+	 */
+	STEP,
+
+	/**
+	 * As {@link #STEP}, and an event with the value of each value operation is traced at each
+	 * sampled step. The execution order of the model is sent to the bundle log when the model is
+	 * compiled
+	 */
+	ELEMENT
+}
@@ -0,0 +1,160 @@
+package no.javatime.core.runtime.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * Reads the events of a {@link StepTrace step trace} one by one.
+ * <p>
+ * The fields of the current event are read with the getters of the reader after {@link #next()}
+ * has returned true. The step, the simulated time and the elapsed time are those of the last step
+ * event, also when the current event is a value event. Value events before the first step event,
+ * when the oldest events of a trace kept in memory have been discarded, are skipped.
+ */
+public class TraceReader implements Closeable {
+
+	private final DataInputStream in;
+	private final String[] labels;
+	private byte kind;
+	private long step;
+	private double time;
+	private long nanos;
+	private int index = -1;
+	private double value = Double.NaN;
+	private boolean started;
+
+	/**
+	 * Create a reader of the trace in the specified stream and read the header of the trace
+	 *
+	 * @param in the trace
+	 * @throws IOException if the header could not be read or the stream is not a trace
+	 */
+	TraceReader(InputStream in) throws IOException {
+
+		this.in = new DataInputStream(new BufferedInputStream(in));
+		try {
+			if (this.in.readInt() != StepTrace.MAGIC || this.in.readInt() != StepTrace.VERSION) {
+				throw new IOException("Not a simulation trace or unsupported version");
+			}
+			labels = new String[this.in.readInt()];
+			for (int i = 0; i < labels.length; i++) {
+				labels[i] = this.in.readUTF();
+			}
+		} catch (IOException e) {
+			this.in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read the next event
+	 *
+	 * @return true if an event was read or false at the end of the trace
+	 * @throws ExtenderException if the trace could not be read
+	 */
+	public boolean next() throws ExtenderException {
+
+		try {
+			while (true) {
+				int next = in.read();
+				if (next < 0) {
+					return false;
+				}
+				kind = (byte) next;
+				switch (kind) {
+				case StepTrace.STEP:
+					step = in.readLong();
+					time = in.readDouble();
+					nanos = in.readLong();
+					index = -1;
+					value = Double.NaN;
+					started = true;
+					break;
+				case StepTrace.VALUE:
+					index = in.readInt();
+					value = in.readDouble();
+					break;
+				default:
+					throw new ExtenderException("Unknown trace event {0}", kind);
+				}
+				if (started) {
+					return true;
+				}
+			}
+		} catch (EOFException e) {
+			// The last event of a trace that was not closed
+			return false;
+		} catch (IOException e) {
+			throw new ExtenderException(e, "Failed to read trace event");
+		}
+	}
+
+	/**
+	 * The labels of the operations in the run phase of the traced run
+	 *
+	 * @return the label of each operation or an empty string for operations that are not value
+	 * operations
+	 */
+	public String[] getLabels() {
+		return labels.clone();
+	}
+
+	/**
+	 * Kind of the current event
+	 *
+	 * @return {@link StepTrace#STEP} or {@link StepTrace#VALUE}
+	 */
+	public byte getKind() {
+		return kind;
+	}
+
+	public long getStep() {
+		return step;
+	}
+
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * Time since the run started when the current step was started
+	 *
+	 * @return elapsed nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * Position of the value operation of the current value event in the run phase
+	 *
+	 * @return position of the operation or -1 if the current event is a step event
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * The label of the value operation of the current value event
+	 *
+	 * @return the label or null if the current event is a step event
+	 */
+	public String getLabel() {
+		return index >= 0 && index < labels.length ? labels[index] : null;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
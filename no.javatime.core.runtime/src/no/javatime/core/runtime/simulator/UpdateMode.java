@@ -0,0 +1,27 @@
+package no.javatime.core.runtime.simulator;
+
+/**
+ * When the values returned by the action methods of a step are passed to the set methods of the
+ * model elements.
+ */
+public enum UpdateMode {
+
+	/**
+	 * Pass the value returned by an action method to the set method of the model element before the
+	 * next model element is executed (Gauss-Seidel). Model elements later in the same step see the
+	 * values of the current step from model elements earlier in the step. The result depends on the
+	 * execution order chosen for model elements in a cycle
+	 */
+	IMMEDIATE,
+
+	/**
+	 * Execute the action methods of all model elements before passing the returned values to the set
+	 * methods at the end of the step (Jacobi). All model elements read the values of the previous
+	 * step, so the model elements within a step are independent and the result does not depend on
+	 * the execution order. Stop methods are executed after the values of the step have been set.
+	 * <p>
+	 * The initial step is always executed in {@link #IMMEDIATE} mode, so start values may depend on
+	 * each other
+	 */
+	DEFERRED
+}
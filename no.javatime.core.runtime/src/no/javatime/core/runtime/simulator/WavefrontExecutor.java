@@ -0,0 +1,233 @@
+package no.javatime.core.runtime.simulator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import no.javatime.core.model.elements.Events;
+import no.javatime.core.model.elements.TimeSeriesProvider;
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * Execute the run phase of an execution plan one dependency level at a time, with the model
+ * elements of each level executed in parallel.
+ * <p>
+ * The value, set and invoke methods of the model elements in a level are executed by the fork join
+ * pool. When all of them have completed, the returned values are recorded and the stop methods of
+ * the level are executed on the simulation thread in plan order. Levels with one model element and
+ * all levels when there is no pool are executed directly on the simulation thread.
+ * <p>
+ * When set methods are {@link UpdateMode#DEFERRED deferred} the values returned by the value
+ * methods are kept until all model elements in the level have been executed, and then passed to
+ * the set methods in plan order. Deferred set methods are used with a schedule of
+ * {@link WavefrontSchedule#independent(ExecutionPlan) one level}, so values are set at the end of
+ * the step.
+ * <p>
+ * Returned values are kept as primitives. Value operations flagged as
+ * {@link ExecutionPlan.Phase#isPrimitive(int) primitive} are executed without boxing.
+ *
+ * @see WavefrontSchedule
+ */
+class WavefrontExecutor {
+
+	private final ExecutionPlan.Phase phase;
+	private final WavefrontSchedule schedule;
+	private final ForkJoinPool pool;
+	private final boolean deferred;
+	private final StateIntegrator integrator;
+	/** Values returned by value methods in the current level, indexed by operation */
+	private final double[] returnValues;
+	/** Whether a value method in the current level has returned a value, indexed by operation */
+	private final boolean[] hasValue;
+	/** Accumulated execution time of all tasks in levels executed in parallel */
+	private final LongAdder busyTime = new LongAdder();
+	/** Accumulated elapsed time of levels executed in parallel */
+	private long parallelTime;
+
+	/**
+	 * A range of model elements within a level, split in halves until the range is small enough to
+	 * execute as one task
+	 */
+	private class LevelTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		LevelTask(int from, int to, int grain) {
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				long start = System.nanoTime();
+				executeElements(from, to);
+				busyTime.add(System.nanoTime() - start);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new LevelTask(from, middle, grain), new LevelTask(middle, to, grain));
+			}
+		}
+	}
+
+	/**
+	 * Create an executor for the run phase of the specified plan
+	 *
+	 * @param executionPlan the plan to execute
+	 * @param schedule the levels of the run phase of the plan
+	 * @param pool the pool executing model elements in parallel or null to execute all model
+	 * elements on the simulation thread
+	 * @param deferred true to pass the returned values to the set methods after all model elements
+	 * of a level have been executed and false to pass them immediately
+	 * @param integrator the integrator giving the values of the states at each step or null
+	 */
+	WavefrontExecutor(ExecutionPlan executionPlan, WavefrontSchedule schedule, ForkJoinPool pool,
+			boolean deferred, StateIntegrator integrator) {
+		this.phase = executionPlan.getRunPhase();
+		this.schedule = schedule;
+		this.pool = pool;
+		this.deferred = deferred;
+		this.integrator = integrator;
+		this.returnValues = new double[phase.size()];
+		this.hasValue = new boolean[phase.size()];
+	}
+
+	/**
+	 * Execute the run phase for the current step
+	 *
+	 * @param events the events of the simulation run
+	 * @param timeSeriesProvider recording the values returned by value methods
+	 * @param seriesIds the time series id of each operation in the run phase
+	 * @param trace receiving the values returned by value methods when the values of the step are
+	 * traced. May be null
+	 * @throws ExtenderException if a method of a model element fails
+	 */
+	void executeStep(Events events, TimeSeriesProvider timeSeriesProvider, int[] seriesIds,
+			StepTrace trace) throws ExtenderException {
+
+		final int[] levelStarts = schedule.levelStarts;
+		final int[] opStarts = schedule.opStarts;
+		final int[] opEnds = schedule.opEnds;
+		final byte[] kinds = phase.kinds;
+		for (int level = 0; level < levelStarts.length - 1; level++) {
+			int from = levelStarts[level];
+			int to = levelStarts[level + 1];
+			if (null == pool || to - from == 1) {
+				executeElements(from, to);
+			} else {
+				long start = System.nanoTime();
+				int grain = Math.max(1, (to - from) / (4 * pool.getParallelism()));
+				pool.invoke(new LevelTask(from, to, grain));
+				parallelTime += System.nanoTime() - start;
+			}
+			if (deferred) {
+				// Save the simulated values of the level before evaluating stop conditions
+				for (int e = from; e < to; e++) {
+					for (int i = opStarts[e]; i < opEnds[e]; i++) {
+						if (kinds[i] == ExecutionPlan.VALUE && hasValue[i]) {
+							phase.setMethods[i].executeSetDouble(returnValues[i]);
+						}
+					}
+				}
+			}
+			// Record values and evaluate stop conditions in plan order
+			for (int e = from; e < to; e++) {
+				for (int i = opStarts[e]; i < opEnds[e]; i++) {
+					switch (kinds[i]) {
+					case ExecutionPlan.VALUE:
+						if (hasValue[i]) {
+							hasValue[i] = false;
+							double value = returnValues[i];
+							if (null != trace) {
+								trace.value(i, value);
+							}
+							SimulatorImpl.record(timeSeriesProvider, seriesIds[i], phase.elements[i],
+									value);
+						}
+						break;
+					case ExecutionPlan.STOP:
+						// Do not stop until all model elements has finished this step
+						if (!events.stopped()) {
+							Object returnValue = phase.methods[i].execute();
+							if (null != returnValue) {
+								events.setStop((Boolean) returnValue);
+							}
+						}
+						break;
+					default:
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Execute the value, set and invoke methods of the model elements at the specified positions in
+	 * level order. Stop methods are not executed
+	 *
+	 * @param from position of the first model element
+	 * @param to position after the last model element
+	 * @throws ExtenderException if a method of a model element fails
+	 */
+	private void executeElements(int from, int to) throws ExtenderException {
+
+		final byte[] kinds = phase.kinds;
+		final MethodModelElement[] methods = phase.methods;
+		final boolean[] primitive = phase.primitive;
+		for (int e = from; e < to; e++) {
+			for (int i = schedule.opStarts[e]; i < schedule.opEnds[e]; i++) {
+				switch (kinds[i]) {
+				case ExecutionPlan.VALUE:
+					double value;
+					if (null != integrator && integrator.isIntegrated(i)) {
+						value = integrator.getValue(i);
+					} else if (primitive[i]) {
+						value = methods[i].executeDouble();
+					} else {
+						Object returnValue = methods[i].execute();
+						if (null == returnValue) {
+							break;
+						}
+						value = (Double) returnValue;
+					}
+					returnValues[i] = value;
+					hasValue[i] = true;
+					if (!deferred) {
+						// Save the simulated value at this step
+						phase.setMethods[i].executeSetDouble(value);
+					}
+					break;
+				case ExecutionPlan.INVOKE:
+					methods[i].execute();
+					break;
+				default:
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The dependency levels executed by this executor
+	 *
+	 * @return the dependency levels of the run phase
+	 */
+	WavefrontSchedule getSchedule() {
+		return schedule;
+	}
+
+	/**
+	 * The parallelism achieved in levels executed in parallel, measured as the accumulated execution
+	 * time of all tasks divided by the elapsed time of the levels
+	 *
+	 * @return achieved parallelism or zero if no level has been executed in parallel
+	 */
+	double getAchievedParallelism() {
+		return parallelTime > 0 ? (double) busyTime.sum() / parallelTime : 0d;
+	}
+}
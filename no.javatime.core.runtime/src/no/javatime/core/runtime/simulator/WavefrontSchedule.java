@@ -0,0 +1,284 @@
+package no.javatime.core.runtime.simulator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import no.javatime.core.model.elements.State;
+import no.javatime.core.model.elements.Transition;
+import no.javatime.inplace.extender.intface.Extender;
+import no.javatime.inplace.extender.intface.ExtenderException;
+
+/**
+ * Partition of the model elements in the run phase of an execution plan into dependency levels
+ * (wavefronts) where model elements within the same level may be executed in parallel.
+ * <p>
+ * Two model elements conflict if one of them is injected into the other, directly or in a super
+ * class, if one of them is a transition added as an in or out flow of the other, or if both of
+ * them have stop methods. A model element is placed in the level following
+ * the highest level of all model elements preceding it in plan order it conflicts with. Within a
+ * level the model elements are kept in plan order.
+ * <p>
+ * Executing the levels in order, the model elements within a level in any order and the stop
+ * methods of a level in plan order after all other methods of the level have completed, computes
+ * the same values and evaluates the same stop conditions as executing the run phase sequentially.
+ * Conflicting model elements are executed in plan order and non-conflicting model elements do not
+ * read or write each others state. Stop methods are executed in their relative plan order because
+ * all model elements with stop methods conflict.
+ * <p>
+ * The schedule does not see dependencies that are not declared by injection or by the flows of
+ * states. Model elements accessing each other by other means must be executed
+ * {@link ExecutionMode#SEQUENTIAL sequentially}. The flows are read from the instances of the
+ * model elements in the plan, and are only seen by a schedule computed after they have been added.
+ *
+ * @see ExecutionPlan#getWavefrontSchedule()
+ */
+public final class WavefrontSchedule {
+
+	/**
+	 * Start position in {@link #opStarts} and {@link #opEnds} of the model elements in each level.
+	 * The model elements of level <code>l</code> are at positions
+	 * <code>levelStarts[l]</code> to <code>levelStarts[l + 1]</code> (exclusive)
+	 */
+	final int[] levelStarts;
+	/** Position of the first operation in the run phase of each model element in level order */
+	final int[] opStarts;
+	/** Position after the last operation in the run phase of each model element in level order */
+	final int[] opEnds;
+
+	private final int maxWidth;
+
+	private WavefrontSchedule(int[] levelStarts, int[] opStarts, int[] opEnds) {
+		this.levelStarts = levelStarts;
+		this.opStarts = opStarts;
+		this.opEnds = opEnds;
+		int max = 0;
+		for (int level = 0; level < getLevelCount(); level++) {
+			max = Math.max(max, getWidth(level));
+		}
+		this.maxWidth = max;
+	}
+
+	/**
+	 * Number of dependency levels
+	 *
+	 * @return the number of levels executed one after the other in each step
+	 */
+	public int getLevelCount() {
+		return levelStarts.length - 1;
+	}
+
+	/**
+	 * Number of model elements with operations in the run phase
+	 *
+	 * @return the number of model elements in all levels
+	 */
+	public int getElementCount() {
+		return opStarts.length;
+	}
+
+	/**
+	 * Number of model elements in the specified level
+	 *
+	 * @param level a dependency level
+	 * @return number of model elements that may be executed in parallel in the specified level
+	 */
+	public int getWidth(int level) {
+		return levelStarts[level + 1] - levelStarts[level];
+	}
+
+	/**
+	 * Largest number of model elements in a level
+	 *
+	 * @return number of model elements in the widest level
+	 */
+	public int getMaxWidth() {
+		return maxWidth;
+	}
+
+	/**
+	 * Average number of model elements in a level. This is the upper bound of the parallelism that
+	 * can be achieved when all model elements have the same execution time
+	 *
+	 * @return model elements divided by levels or zero if there are no levels
+	 */
+	public double getAverageWidth() {
+		int levels = getLevelCount();
+		return levels > 0 ? (double) getElementCount() / levels : 0d;
+	}
+
+	/**
+	 * Place all model elements in the run phase of the specified plan in one level in plan order.
+	 * Used when the model elements within a step are independent because the values of the step are
+	 * {@link UpdateMode#DEFERRED set at the end of the step}
+	 *
+	 * @param executionPlan the plan to create the level for
+	 * @return one level with all model elements of the run phase of the plan
+	 */
+	public static WavefrontSchedule independent(ExecutionPlan executionPlan) {
+
+		List<int[]> ranges = getElementRanges(executionPlan.getRunPhase());
+		int size = ranges.size();
+		int[] opStarts = new int[size];
+		int[] opEnds = new int[size];
+		for (int e = 0; e < size; e++) {
+			opStarts[e] = ranges.get(e)[0];
+			opEnds[e] = ranges.get(e)[1];
+		}
+		return new WavefrontSchedule(size > 0 ? new int[] { 0, size } : new int[] { 0 }, opStarts,
+				opEnds);
+	}
+
+	/**
+	 * Compute the dependency levels of the model elements in the run phase of the specified plan
+	 *
+	 * @param executionPlan the plan to compute levels for
+	 * @return the dependency levels of the run phase of the plan
+	 * @throws ExtenderException If the service id is null for a registered service injected into a
+	 * model element
+	 */
+	public static WavefrontSchedule compute(ExecutionPlan executionPlan) throws ExtenderException {
+
+		ExecutionPlan.Phase phase = executionPlan.getRunPhase();
+		List<int[]> ranges = getElementRanges(phase);
+		int size = ranges.size();
+		Class<?>[] classes = new Class<?>[size];
+		List<Collection<Class<?>>> dependencies = new ArrayList<>(size);
+		boolean[] stops = new boolean[size];
+		Map<Object, Integer> positions = new IdentityHashMap<>();
+		for (int e = 0; e < size; e++) {
+			positions.put(phase.methods[ranges.get(e)[0]].object, e);
+		}
+		boolean[][] flows = getFlows(phase, ranges, positions);
+		for (int e = 0; e < size; e++) {
+			classes[e] = phase.elements[ranges.get(e)[0]].getServiceClass();
+			dependencies.add(ClassModelElementSorter.getDependencies(classes[e]));
+			int[] range = ranges.get(e);
+			for (int op = range[0]; op < range[1]; op++) {
+				if (phase.kinds[op] == ExecutionPlan.STOP) {
+					stops[e] = true;
+				}
+			}
+		}
+		// Assign each model element to the level after its latest conflicting predecessor
+		int[] levels = new int[size];
+		int levelCount = 0;
+		for (int e = 0; e < size; e++) {
+			int level = 0;
+			Collection<Class<?>> requiring = dependencies.get(e);
+			for (int p = 0; p < e; p++) {
+				if (levels[p] >= level
+						&& ((stops[p] && stops[e]) || requiring.contains(classes[p])
+								|| dependencies.get(p).contains(classes[e]) || isFlow(flows, e, p)
+								|| isFlow(flows, p, e))) {
+					level = levels[p] + 1;
+				}
+			}
+			levels[e] = level;
+			levelCount = Math.max(levelCount, level + 1);
+		}
+		// Order model elements by level, keeping plan order within each level
+		int[] levelStarts = new int[levelCount + 1];
+		for (int e = 0; e < size; e++) {
+			levelStarts[levels[e] + 1]++;
+		}
+		for (int level = 0; level < levelCount; level++) {
+			levelStarts[level + 1] += levelStarts[level];
+		}
+		int[] next = levelStarts.clone();
+		int[] opStarts = new int[size];
+		int[] opEnds = new int[size];
+		for (int e = 0; e < size; e++) {
+			int position = next[levels[e]]++;
+			opStarts[position] = ranges.get(e)[0];
+			opEnds[position] = ranges.get(e)[1];
+		}
+		return new WavefrontSchedule(levelStarts, opStarts, opEnds);
+	}
+
+	/**
+	 * Get the in and out flows of the states in the specified phase
+	 *
+	 * @param phase the run phase
+	 * @param ranges the range of operations of each model element in plan order
+	 * @param positions the position in plan order of each model element instance in the phase
+	 * @return for each model element, the model elements in plan order that are flows of the model
+	 * element, or null if the model element is not a state with flows
+	 */
+	private static boolean[][] getFlows(ExecutionPlan.Phase phase, List<int[]> ranges,
+			Map<Object, Integer> positions) {
+
+		boolean[][] flows = new boolean[ranges.size()][];
+		for (int e = 0; e < flows.length; e++) {
+			Object instance = phase.methods[ranges.get(e)[0]].object;
+			if (instance instanceof State) {
+				State state = (State) instance;
+				flows[e] = addFlows(state.getOutFlows(), positions, addFlows(state.getInFlows(),
+						positions, null, flows.length), flows.length);
+			}
+		}
+		return flows;
+	}
+
+	private static boolean isFlow(boolean[][] flows, int state, int transition) {
+		return null != flows[state] && flows[state][transition];
+	}
+
+	private static boolean[] addFlows(Collection<Transition> transitions,
+			Map<Object, Integer> positions, boolean[] flows, int size) {
+
+		for (Transition transition : transitions) {
+			Integer position = positions.get(transition);
+			if (null != position) {
+				if (null == flows) {
+					flows = new boolean[size];
+				}
+				flows[position] = true;
+			}
+		}
+		return flows;
+	}
+
+	/**
+	 * Whether a state in the specified phase has in or out flows. The dependency levels of a plan
+	 * with flows depend on the flows added by the model element instances of the plan
+	 *
+	 * @param phase the run phase
+	 * @return true if a model element instance in the phase is a state with flows
+	 */
+	static boolean hasFlows(ExecutionPlan.Phase phase) {
+
+		for (int i = 0; i < phase.size(); i++) {
+			Object instance = phase.methods[i].object;
+			if (instance instanceof State && (!((State) instance).getInFlows().isEmpty()
+					|| !((State) instance).getOutFlows().isEmpty())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the range of operations of each model element in the specified phase. The operations of a
+	 * model element are adjacent in the phase
+	 *
+	 * @param phase the phase to get model elements from
+	 * @return start and end (exclusive) position of the operations of each model element in plan
+	 * order
+	 */
+	private static List<int[]> getElementRanges(ExecutionPlan.Phase phase) {
+
+		List<int[]> ranges = new ArrayList<>();
+		for (int i = 0; i < phase.size();) {
+			Extender<?> element = phase.elements[i];
+			int start = i;
+			while (i < phase.size() && phase.elements[i] == element) {
+				i++;
+			}
+			ranges.add(new int[] { start, i });
+		}
+		return ranges;
+	}
+}
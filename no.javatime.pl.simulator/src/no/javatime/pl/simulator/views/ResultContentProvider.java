@@ -0,0 +1,71 @@
+package no.javatime.pl.simulator.views;
+
+import org.eclipse.jface.viewers.ILazyContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
+
+import no.javatime.core.model.series.SeriesSnapshot;
+
+/**
+ * Provides the rows of a {@link SeriesSnapshot snapshot} of a run to a virtual table as they become
+ * visible.
+ * <p>
+ * The element of a table item is the position of its row in the snapshot, and the values of the
+ * row are read from the snapshot by the label providers of the table when the item is shown. Only
+ * the visible items are created, so a run of any length is shown without reading or copying its
+ * rows. When the rows are sorted or filtered the items map to the rows through the order of the
+ * rows.
+ */
+public class ResultContentProvider implements ILazyContentProvider {
+
+	private final TableViewer viewer;
+	/** Rows of the snapshot in the order shown, or null to show all rows in step order */
+	private int[] order;
+	private int count;
+
+	/**
+	 * Create a content provider for the specified virtual table viewer
+	 *
+	 * @param viewer a viewer of a table created with <code>SWT.VIRTUAL</code>
+	 */
+	public ResultContentProvider(TableViewer viewer) {
+		this.viewer = viewer;
+	}
+
+	@Override
+	public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+
+		order = null;
+		count = newInput instanceof SeriesSnapshot ? ((SeriesSnapshot) newInput).getRowCount() : 0;
+		this.viewer.setItemCount(count);
+	}
+
+	@Override
+	public void updateElement(int index) {
+
+		if (index < count) {
+			viewer.replace(Integer.valueOf(null != order ? order[index] : index), index);
+		}
+	}
+
+	/**
+	 * Show the rows in the specified order. Must be called on the display thread
+	 *
+	 * @param order positions of the rows in the snapshot in the order shown or null to show all rows
+	 * in step order
+	 * @param count number of rows shown
+	 */
+	public void setOrder(int[] order, int count) {
+
+		this.order = order;
+		this.count = count;
+		viewer.setItemCount(count);
+		// Visible items are requested again through updateElement
+		viewer.getTable().clearAll();
+	}
+
+	@Override
+	public void dispose() {
+		order = null;
+	}
+}
@@ -0,0 +1,226 @@
+package no.javatime.pl.simulator.views;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoublePredicate;
+
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+
+import no.javatime.core.model.series.SeriesSnapshot;
+import no.javatime.core.model.series.SeriesView;
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * A virtual table showing the values of all recorded model elements at each step of a run.
+ * <p>
+ * The first column holds the steps and each following column the values of a model element. Rows
+ * are read from a {@link SeriesSnapshot snapshot} of the run by a {@link ResultContentProvider lazy
+ * content provider} when they become visible, so opening a run takes the same time and memory
+ * regardless of the number of steps.
+ * <p>
+ * Selecting the header of a column sorts the rows by the column, first in ascending and then in
+ * descending order, and the filter shows the rows where the value of the sorted column matches the
+ * filter. The sorted column is identified by its model element, so it is kept when a run records
+ * the model elements in another order. The order of the rows is computed on a background thread, and a computation is abandoned
+ * when the order is changed again before it has finished.
+ */
+public class ResultTable {
+
+	private final TableViewer viewer;
+	private final ResultContentProvider contentProvider;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Result table order");
+		thread.setDaemon(true);
+		return thread;
+	});
+	/** Incremented each time the order of the rows is changed */
+	private final AtomicInteger generation = new AtomicInteger();
+
+	// Used by the display thread
+	private SeriesSnapshot snapshot;
+	/** The model element of the sorted column or null if the column of the steps is sorted */
+	private Extender<?> sortElement;
+	private int sort;
+	private DoublePredicate filter;
+
+	/**
+	 * Create an empty table in the specified parent
+	 *
+	 * @param parent the parent of the table
+	 */
+	public ResultTable(Composite parent) {
+
+		viewer = new TableViewer(parent, SWT.VIRTUAL | SWT.BORDER | SWT.FULL_SELECTION
+				| SWT.H_SCROLL | SWT.V_SCROLL);
+		contentProvider = new ResultContentProvider(viewer);
+		viewer.setContentProvider(contentProvider);
+		Table table = viewer.getTable();
+		table.setHeaderVisible(true);
+		table.setLinesVisible(true);
+		table.addDisposeListener(event -> executor.shutdownNow());
+	}
+
+	/**
+	 * The table of this viewer
+	 *
+	 * @return the table
+	 */
+	public Table getTable() {
+		return viewer.getTable();
+	}
+
+	/**
+	 * Show the rows of the specified snapshot, with one column for the steps and one column for
+	 * each model element of the snapshot. The sorted column and the filter are kept if the snapshot
+	 * has the model element of the sorted column, otherwise the rows are shown in step order and the
+	 * filter is cleared
+	 *
+	 * @param snapshot the snapshot of a run
+	 */
+	public void setInput(SeriesSnapshot snapshot) {
+
+		generation.incrementAndGet();
+		this.snapshot = snapshot;
+		List<Extender<?>> elements = snapshot.getElements();
+		int sortColumn = 0;
+		if (null != sortElement) {
+			int id = snapshot.getId(sortElement);
+			if (id >= 0) {
+				// The instance of the snapshot identifies the column when it is selected
+				sortElement = elements.get(id);
+				sortColumn = id + 1;
+			} else {
+				sortElement = null;
+				sort = 0;
+				filter = null;
+			}
+		}
+		Table table = viewer.getTable();
+		table.setRedraw(false);
+		try {
+			table.setSortColumn(null);
+			for (TableColumn column : table.getColumns()) {
+				column.dispose();
+			}
+			createColumn("Step", snapshot.getStepsView(), null);
+			for (int id = 0; id < elements.size(); id++) {
+				Extender<?> element = elements.get(id);
+				createColumn(element.getServiceClass().getSimpleName(), snapshot.getSeriesView(id),
+						element);
+			}
+			if (0 != sort) {
+				table.setSortColumn(table.getColumn(sortColumn));
+				table.setSortDirection(sort > 0 ? SWT.UP : SWT.DOWN);
+			}
+			viewer.setInput(snapshot);
+		} finally {
+			table.setRedraw(true);
+		}
+		if (0 != sort || null != filter) {
+			updateOrder();
+		}
+	}
+
+	/**
+	 * The filter of the rows
+	 *
+	 * @return the filter or null if all rows are shown
+	 */
+	public DoublePredicate getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Show the rows where the value of the sorted column is accepted by the specified filter
+	 *
+	 * @param filter the filter or null to show all rows
+	 */
+	public void setFilter(DoublePredicate filter) {
+
+		this.filter = filter;
+		updateOrder();
+	}
+
+	/**
+	 * Add a column showing the specified values
+	 *
+	 * @param name the header of the column
+	 * @param values the values of the column
+	 * @param element the model element of the column or null for the column of the steps
+	 */
+	private void createColumn(String name, final SeriesView values, final Extender<?> element) {
+
+		TableViewerColumn viewerColumn = new TableViewerColumn(viewer, SWT.RIGHT);
+		final TableColumn column = viewerColumn.getColumn();
+		column.setText(name);
+		column.setWidth(null == element ? 80 : 120);
+		column.setMoveable(true);
+		viewerColumn.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				int row = (Integer) element;
+				// A model element recorded after the first step has no values at the last rows
+				return row < values.size() ? format(values.get(row)) : "";
+			}
+		});
+		column.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				sort = sortElement == element && sort > 0 ? -1 : 1;
+				sortElement = element;
+				Table table = viewer.getTable();
+				table.setSortColumn(column);
+				table.setSortDirection(sort > 0 ? SWT.UP : SWT.DOWN);
+				updateOrder();
+			}
+		});
+	}
+
+	private static String format(double value) {
+		return Double.isNaN(value) ? "" : Double.toString(value);
+	}
+
+	/**
+	 * Compute the order of the rows on the background thread and show the rows in the new order
+	 * when it is computed, unless the order has been changed again
+	 */
+	private void updateOrder() {
+
+		final int current = generation.incrementAndGet();
+		final SeriesSnapshot snapshot = this.snapshot;
+		if (null == snapshot) {
+			return;
+		}
+		if (0 == sort && null == filter) {
+			contentProvider.setOrder(null, snapshot.getRowCount());
+			return;
+		}
+		final SeriesView values = null == sortElement ? snapshot.getStepsView() : snapshot
+				.getSeriesView(sortElement);
+		final DoublePredicate filter = this.filter;
+		final int sort = this.sort;
+		final Display display = viewer.getTable().getDisplay();
+		executor.execute(() -> {
+			int[] order = RowOrder.compute(values, snapshot.getRowCount(), filter, sort,
+					() -> generation.get() != current);
+			if (null != order && !display.isDisposed()) {
+				display.asyncExec(() -> {
+					if (generation.get() == current && !viewer.getTable().isDisposed()) {
+						contentProvider.setOrder(order, RowOrder.getCount(order));
+					}
+				});
+			}
+		});
+	}
+}
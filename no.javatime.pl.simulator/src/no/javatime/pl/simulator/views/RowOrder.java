@@ -0,0 +1,179 @@
+package no.javatime.pl.simulator.views;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.DoublePredicate;
+
+import no.javatime.core.model.series.SeriesView;
+
+/**
+ * Computes the order of the rows of a result table sorted and filtered by the values of one
+ * column.
+ * <p>
+ * The order is computed on primitive arrays without boxing the values, and the computation is
+ * abandoned when it is superseded by a newer order.
+ */
+public final class RowOrder {
+
+	/** Rows between each check of whether the computation is superseded */
+	private final static int CHECK_INTERVAL = 1 << 16;
+
+	private final static int INSERTION_SORT = 16;
+
+	private RowOrder() {
+	}
+
+	/**
+	 * Compute the order of the rows with a value matching the filter, sorted by the value
+	 *
+	 * @param values the values of the column, where a row without a value reads as <code>NaN</code>
+	 * @param rows number of rows
+	 * @param filter rows are shown when the filter accepts their value, or null to show all rows
+	 * @param sort 1 to sort in ascending order, -1 to sort in descending order and 0 to keep the
+	 * step order. Missing values are placed last
+	 * @param superseded true when the order is no longer needed
+	 * @return the positions of the shown rows at positions from zero up to the number of shown rows,
+	 * followed by unused positions, or null if the computation was superseded
+	 */
+	public static int[] compute(SeriesView values, int rows, DoublePredicate filter, int sort,
+			BooleanSupplier superseded) {
+
+		int[] order = new int[rows + 1];
+		double[] keys = 0 != sort ? new double[rows] : null;
+		int count = 0;
+		for (int row = 0; row < rows; row++) {
+			if (row % CHECK_INTERVAL == 0 && superseded.getAsBoolean()) {
+				return null;
+			}
+			double value = row < values.size() ? values.get(row) : Double.NaN;
+			if (null == filter || filter.test(value)) {
+				if (null != keys) {
+					// Negated keys sort in descending order with missing values last
+					keys[count] = sort < 0 && !Double.isNaN(value) ? -value : value;
+				}
+				order[count++] = row;
+			}
+		}
+		if (null != keys) {
+			sort(keys, order, 0, count - 1);
+		}
+		// The number of shown rows is kept after the positions
+		order[rows] = count;
+		return superseded.getAsBoolean() ? null : order;
+	}
+
+	/**
+	 * Number of shown rows of an order
+	 *
+	 * @param order an order computed by {@link #compute(SeriesView, int, DoublePredicate, int,
+	 * BooleanSupplier) compute}
+	 * @return number of shown rows
+	 */
+	public static int getCount(int[] order) {
+		return order[order.length - 1];
+	}
+
+	/**
+	 * Parse a filter of the form <code>operator number</code>, where the operator is one of
+	 * <code>&lt; &lt;= &gt; &gt;= = !=</code>
+	 *
+	 * @param text the filter
+	 * @return the filter or null if the text is empty
+	 * @throws NumberFormatException if the text is not a filter
+	 */
+	public static DoublePredicate parseFilter(String text) {
+
+		text = text.trim();
+		if (text.isEmpty()) {
+			return null;
+		}
+		int length = 0;
+		while (length < text.length() && "<>=!".indexOf(text.charAt(length)) >= 0) {
+			length++;
+		}
+		String operator = text.substring(0, length);
+		final double operand = Double.parseDouble(text.substring(length).trim());
+		switch (operator) {
+		case "<":
+			return value -> value < operand;
+		case "<=":
+			return value -> value <= operand;
+		case ">":
+			return value -> value > operand;
+		case ">=":
+			return value -> value >= operand;
+		case "":
+		case "=":
+		case "==":
+			return value -> value == operand;
+		case "!=":
+			return value -> value != operand;
+		default:
+			throw new NumberFormatException("Unknown operator: " + operator);
+		}
+	}
+
+	/**
+	 * Sort the keys and the rows together, with <code>NaN</code> keys last and equal keys in any
+	 * order
+	 */
+	private static void sort(double[] keys, int[] rows, int low, int high) {
+
+		while (high - low > INSERTION_SORT) {
+			int middle = (low + high) >>> 1;
+			// Median of three as pivot
+			if (Double.compare(keys[middle], keys[low]) < 0) {
+				swap(keys, rows, middle, low);
+			}
+			if (Double.compare(keys[high], keys[low]) < 0) {
+				swap(keys, rows, high, low);
+			}
+			if (Double.compare(keys[high], keys[middle]) < 0) {
+				swap(keys, rows, high, middle);
+			}
+			double pivot = keys[middle];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (Double.compare(keys[i], pivot) < 0) {
+					i++;
+				}
+				while (Double.compare(keys[j], pivot) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					swap(keys, rows, i++, j--);
+				}
+			}
+			// Recurse into the smaller part to bound the depth of the stack
+			if (j - low < high - i) {
+				sort(keys, rows, low, j);
+				low = i;
+			} else {
+				sort(keys, rows, i, high);
+				high = j;
+			}
+		}
+		for (int i = low + 1; i <= high; i++) {
+			double key = keys[i];
+			int row = rows[i];
+			int j = i - 1;
+			while (j >= low && Double.compare(keys[j], key) > 0) {
+				keys[j + 1] = keys[j];
+				rows[j + 1] = rows[j];
+				j--;
+			}
+			keys[j + 1] = key;
+			rows[j + 1] = row;
+		}
+	}
+
+	private static void swap(double[] keys, int[] rows, int i, int j) {
+
+		double key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		int row = rows[i];
+		rows[i] = rows[j];
+		rows[j] = row;
+	}
+}
@@ -0,0 +1,115 @@
+package no.javatime.pl.simulator.views;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+import no.javatime.core.runtime.simulator.SimulationContext;
+import no.javatime.core.runtime.simulator.SimulationRun;
+import no.javatime.core.runtime.simulator.Simulator;
+import no.javatime.inplace.extender.intface.ExtenderException;
+import no.javatime.pl.simulator.Activator;
+
+/**
+ * Submits a simulation run of a bundle model and follows it in the progress view of the workbench.
+ * <p>
+ * The context of the run is created and the run is submitted by the job, so the execution plan of
+ * the model is not compiled on the display thread and a model failing to load is reported in the
+ * status of the job. The job reports the progress of the run and cancels the run when the job is
+ * cancelled. The run itself is executed by the simulator, and the job only waits for it, so the
+ * display thread is not blocked while the model executes. When the run has terminated its result
+ * is shown in the simulator view.
+ */
+public class SimulationJob extends Job {
+
+	/** Interval between progress updates in milliseconds */
+	private final static long PROGRESS_INTERVAL = 200L;
+
+	/** Units of work of a complete run */
+	private final static int WORK = 1000;
+
+	private final Simulator simulator;
+	private final Bundle bundle;
+	private final SimulatorView view;
+	/** The submitted run or null until the job has submitted it */
+	private volatile SimulationRun run;
+
+	/**
+	 * Create a job running the model of the specified bundle
+	 *
+	 * @param simulator the simulator executing the run
+	 * @param bundle the bundle model to run
+	 * @param view the view showing the result of the run or null
+	 */
+	public SimulationJob(Simulator simulator, Bundle bundle, SimulatorView view) {
+
+		super("Simulate " + bundle.getSymbolicName());
+		this.simulator = simulator;
+		this.bundle = bundle;
+		this.view = view;
+		setUser(true);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+
+		monitor.beginTask(getName(), WORK);
+		SimulationRun run = null;
+		try {
+			run = simulator.submit(simulator.createContext(bundle));
+			this.run = run;
+			int worked = 0;
+			while (!run.isDone()) {
+				if (monitor.isCanceled()) {
+					run.cancel();
+				}
+				try {
+					run.getCompletion().get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException | ExecutionException e) {
+					// Still running, or failed and reported below
+				}
+				int progress = (int) (run.getProgress() * WORK);
+				monitor.worked(progress - worked);
+				worked = progress;
+				monitor.subTask("Step " + run.getContext().getStep());
+			}
+			final SimulationContext context = run.get();
+			if (null != view) {
+				Activator.getDisplay().asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						view.updateSimulatorView(context.getTimeSeriesProvider());
+					}
+				});
+			}
+			return run.isCancelled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		} catch (ExtenderException e) {
+			return new Status(IStatus.ERROR, FrameworkUtil.getBundle(SimulationJob.class)
+					.getSymbolicName(), e.getMessage(), e);
+		} catch (InterruptedException e) {
+			if (null != run) {
+				run.cancel();
+			}
+			Thread.currentThread().interrupt();
+			return Status.CANCEL_STATUS;
+		} finally {
+			monitor.done();
+		}
+	}
+
+	@Override
+	protected void canceling() {
+
+		SimulationRun run = this.run;
+		if (null != run) {
+			run.cancel();
+		}
+	}
+}
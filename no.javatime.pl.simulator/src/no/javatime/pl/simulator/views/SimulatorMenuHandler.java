@@ -15,6 +15,7 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.FrameworkUtil;
 
 import no.javatime.core.runtime.simulator.Simulator;
+import no.javatime.inplace.extender.intface.ExtenderException;
 import no.javatime.inplace.extender.intface.Extenders;
 import no.javatime.inplace.log.intface.BundleLog;
 import no.javatime.inplace.region.status.IBundleStatus.StatusCode;
@@ -60,20 +61,29 @@ public class SimulatorMenuHandler {
 	}
 
 	/**
-	 * Run the simulator on the selected menu item
+	 * Submit a run of the model of the selected menu item to the simulator, and follow the run in a
+	 * job. The context of the run is created by the job, the run is executed on a background thread,
+	 * and its result is shown in the simulator view when it terminates
 	 * 
-	 * @param part not in use
+	 * @param part The simulator view
 	 * @param window not in use
 	 * @param menuItem The selected menu item from the tool bar drop down menu
 	 */
 	@Execute
 	public void execute(@Active MPart part, @Active MWindow window, MDirectMenuItem menuItem) {
 
-		Simulator simulator = Extenders.getService(Simulator.class, plugin);
 		// The bundle location is in the element id of the selected menu item
 		Bundle bundle = plugin.getBundleContext().getBundle(menuItem.getElementId());
 		if (null != bundle) {
-			simulator.simulate(bundle);
+			SimulatorView view = null != part && part.getObject() instanceof SimulatorView
+					? (SimulatorView) part.getObject() : null;
+			try {
+				Simulator simulator = Extenders.getService(Simulator.class, plugin);
+				new SimulationJob(simulator, bundle, view).schedule();
+			} catch (ExtenderException e) {
+				BundleLog bundleLog = Extenders.getService(BundleLog.class, plugin);
+				bundleLog.log(StatusCode.EXCEPTION, bundle, e, e.getMessage());
+			}
 		} else {
 			BundleLog bundleLog = Extenders.getService(BundleLog.class, plugin);
 			bundleLog.log(StatusCode.WARNING, bundle, null, "Missing bundle model to simulate");
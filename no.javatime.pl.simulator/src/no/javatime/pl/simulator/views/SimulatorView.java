@@ -16,7 +16,6 @@ import org.eclipse.e4.ui.model.application.ui.menu.MToolBar;
 import org.eclipse.e4.ui.services.EMenuService;
 import org.eclipse.e4.ui.workbench.modeling.EModelService;
 import org.eclipse.e4.ui.workbench.modeling.EPartService;
-import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.ModifyEvent;
 import org.eclipse.swt.events.ModifyListener;
@@ -27,6 +26,8 @@ import org.eclipse.swt.widgets.Text;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.FrameworkUtil;
 
+import no.javatime.core.model.elements.TimeSeriesProvider;
+
 /**
  * View showing and updating the simulator view
  */
@@ -38,7 +39,7 @@ public class SimulatorView {
 	private Bundle plugin = FrameworkUtil.getBundle(SimulatorMenuHandler.class);
 
 	private Text txtInput;
-	private TableViewer tableViewer;
+	private ResultTable resultTable;
 
 	@Inject
 	private MDirtyable dirty;
@@ -52,6 +53,24 @@ public class SimulatorView {
 
 	}
 
+	/**
+	 * Show the steps and the values of a run in the result table. Must be called on the display
+	 * thread
+	 * 
+	 * @param timeSeriesProvider the time series of the run
+	 */
+	public void updateSimulatorView(TimeSeriesProvider timeSeriesProvider) {
+
+		if (null != resultTable && !resultTable.getTable().isDisposed()) {
+			boolean filtered = null != resultTable.getFilter();
+			resultTable.setInput(timeSeriesProvider.getSnapshot());
+			if (filtered && null == resultTable.getFilter()) {
+				// The filtered column is not in the run
+				txtInput.setText("");
+			}
+		}
+	}
+
 	/**
 	 * Create an empty simulator view with a tool bar menu in a containing part
 	 * 
@@ -99,16 +118,22 @@ public class SimulatorView {
 		parent.setLayout(new GridLayout(1, false));
 
 		txtInput = new Text(parent, SWT.BORDER);
-		txtInput.setMessage("Enter text to mark part as dirty");
+		txtInput.setMessage("Filter rows on the sorted column, e.g. > 100");
 		txtInput.addModifyListener(new ModifyListener() {
 			@Override
 			public void modifyText(ModifyEvent e) {
-				dirty.setDirty(true);
+				try {
+					resultTable.setFilter(RowOrder.parseFilter(txtInput.getText()));
+					txtInput.setToolTipText(null);
+				} catch (NumberFormatException ex) {
+					// Keep the current filter until the text is a filter
+					txtInput.setToolTipText("Not a filter: " + ex.getMessage());
+				}
 			}
 		});
 		txtInput.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
-		tableViewer = new TableViewer(parent);
-		tableViewer.getTable().setLayoutData(new GridData(GridData.FILL_BOTH));
+		resultTable = new ResultTable(parent);
+		resultTable.getTable().setLayoutData(new GridData(GridData.FILL_BOTH));
 	}
 
 	@PreDestroy
@@ -120,7 +145,7 @@ public class SimulatorView {
 
 	@Focus
 	public void setFocus(MPart part) {
-		tableViewer.getTable().setFocus();
+		resultTable.getTable().setFocus();
 	}
 
 	@Persist
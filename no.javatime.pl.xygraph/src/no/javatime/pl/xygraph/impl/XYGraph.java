@@ -1,6 +1,8 @@
 package no.javatime.pl.xygraph.impl;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.ui.model.application.MApplication;
@@ -17,18 +19,42 @@ import org.eclipse.e4.ui.workbench.modeling.EPartService;
 import org.eclipse.e4.ui.workbench.modeling.EPartService.PartState;
 
 import no.javatime.core.model.annotations.ModelElement;
+import no.javatime.core.model.annotations.Start;
 import no.javatime.core.model.annotations.Stop;
 import no.javatime.core.model.annotations.ModelElement.Type;
 import no.javatime.core.model.elements.Events;
 import no.javatime.core.model.elements.TimeSeriesProvider;
 import no.javatime.pl.xygraph.Activator;
 import no.javatime.pl.xygraph.intface.IXYGraph;
+import no.javatime.pl.xygraph.views.LiveTraces;
 import no.javatime.pl.xygraph.views.XYGraphView;
 
 @ModelElement (type = Type.SYSTEM)
 public class XYGraph implements IXYGraph { 
 	
 	private MPart mPart = null;
+	/** The traces of the runs plotted as they execute, by the time series provider of each run */
+	private final Map<TimeSeriesProvider, LiveTraces> liveTraces = new ConcurrentHashMap<>();
+
+	@Override
+	@Start
+	public Boolean startView(Events time, TimeSeriesProvider provider) {
+
+		liveTraces.remove(provider);
+		if (null == getView()) {
+			showView();
+		}
+		XYGraphView view = getView();
+		if (null == view) {
+			return false;
+		}
+		LiveTraces traces = view.plotXYGraph(provider);
+		if (null == traces) {
+			return false;
+		}
+		liveTraces.put(provider, traces);
+		return true;
+	}
 
 	@Override
 	@Stop
@@ -38,7 +64,10 @@ public class XYGraph implements IXYGraph {
 			if (null == getView()) {
 				showView();
 			}
-			updateGraph(provider);
+			// A plotted run is completed by its subscription when the run terminates
+			if (null == liveTraces.remove(provider)) {
+				updateGraph(provider);
+			}
 			return true;
 		}
 		return false;
@@ -18,11 +18,24 @@ public interface IXYGraph {
 	 */
 	void showView();
 
+	/**
+	 * Show the graph view and plot the steps of a simulation run while the run executes
+	 * <p>
+	 * Called by the simulator before the first step of a run
+	 * 
+	 * @param time The shared time service driving a simulation run
+	 * @param provider Output from a simulation run
+	 * @return true if the run is plotted while it executes, false if the graph is updated when the
+	 * run is in its end state
+	 */
+	Boolean startView(Events time, TimeSeriesProvider provider);
+
 	/**
 	 * Show or update the graph with the specified time series if a simulation run is in its end state
 	 * as determined by {@link Events#isStop()}
 	 * <p>
 	 * Called by the simulator at each step, displaying or updating the graph at the end of a simulation
+	 * that was not plotted while it executed
 	 * 
 	 * @param time The shared time service driving a simulation run 
 	 * @param provider Output from a simulation run
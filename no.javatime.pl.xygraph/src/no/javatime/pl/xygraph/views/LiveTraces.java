@@ -0,0 +1,199 @@
+package no.javatime.pl.xygraph.views;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.nebula.visualization.xygraph.figures.IXYGraph;
+import org.eclipse.nebula.visualization.xygraph.figures.Trace;
+import org.eclipse.nebula.visualization.xygraph.figures.Trace.PointStyle;
+import org.eclipse.swt.widgets.Display;
+
+import no.javatime.core.model.elements.TimeSeriesProvider;
+import no.javatime.core.model.series.SeriesSnapshot;
+import no.javatime.core.model.series.SeriesSubscriber;
+import no.javatime.core.model.series.SeriesSubscription;
+import no.javatime.core.model.series.StepBatch;
+import no.javatime.inplace.extender.intface.Extender;
+
+/**
+ * Plots the steps of a simulation run in a XY graph while the run executes
+ * <p>
+ * Batches of published steps are received on a background thread and only signal that the run
+ * has progressed. Frames are drawn on the display thread at most {@link #FRAME_RATE} times a
+ * second, and each frame lets the traces read a new {@link TimeSeriesProvider#getSnapshot()
+ * snapshot} of the run through {@link SeriesDataProvider}s, decimated to the width of the graph.
+ * The traces do not copy the steps or the values, so the memory of watching a run does not grow
+ * with the length of the run. The next batch is requested when a frame has been drawn, so steps
+ * published faster than they are drawn are coalesced by the publisher, and the cost of watching a
+ * run does not depend on the step rate of the run.
+ * <p>
+ * A trace is created the first time a model element is in a snapshot of the run. The graph of the
+ * view is replaced when the first frame is drawn, and the last frame, drawn when the run
+ * terminates, reads all steps of the run.
+ *
+ * @see SeriesDataProvider
+ */
+public class LiveTraces implements SeriesSubscriber {
+
+	/** Maximum number of frames drawn each second */
+	public final static int FRAME_RATE = 25;
+
+	/** Number of steps in each batch received from the publisher */
+	public final static int BATCH_ROWS = 1024;
+
+	private final static int FRAME_INTERVAL = 1000 / FRAME_RATE;
+
+	private final XYGraphView view;
+	private final TimeSeriesProvider provider;
+	private final Display display;
+
+	// Used by the display thread
+	private IXYGraph xyGraph;
+	private final Map<Extender<?>, Trace> traces = new HashMap<>();
+	private final Map<Extender<?>, SeriesDataProvider> dataProviders = new HashMap<>();
+	private long lastFrame;
+
+	// Guarded by this
+	private boolean progressed;
+	private SeriesSubscription subscription;
+	private boolean scheduled;
+	private boolean complete;
+
+	private final Runnable frame = new Runnable() {
+		@Override
+		public void run() {
+			drawFrame();
+		}
+	};
+
+	/**
+	 * Plot a run in the specified view
+	 *
+	 * @param view the view of the graph
+	 * @param provider the time series provider of the run
+	 * @param display the display of the view
+	 */
+	public LiveTraces(XYGraphView view, TimeSeriesProvider provider, Display display) {
+		this.view = view;
+		this.provider = provider;
+		this.display = display;
+	}
+
+	@Override
+	public void onSubscribe(SeriesSubscription subscription) {
+
+		synchronized (this) {
+			this.subscription = subscription;
+		}
+		subscription.request(1);
+	}
+
+	@Override
+	public void onNext(StepBatch batch) {
+
+		synchronized (this) {
+			progressed = true;
+		}
+		scheduleFrame();
+	}
+
+	@Override
+	public void onError(Throwable failure) {
+		onComplete();
+	}
+
+	@Override
+	public void onComplete() {
+
+		synchronized (this) {
+			complete = true;
+		}
+		scheduleFrame();
+	}
+
+	/**
+	 * Schedule a frame on the display thread unless a frame is already scheduled. The frame is
+	 * delayed until the frame interval has passed since the last frame
+	 */
+	private void scheduleFrame() {
+
+		synchronized (this) {
+			if (scheduled) {
+				return;
+			}
+			scheduled = true;
+		}
+		if (display.isDisposed()) {
+			return;
+		}
+		display.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				long delay = lastFrame + FRAME_INTERVAL - System.currentTimeMillis();
+				if (delay > 0) {
+					display.timerExec((int) delay, frame);
+				} else {
+					frame.run();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Let the traces read a snapshot of the steps published since the last frame and request the
+	 * next batch
+	 */
+	private void drawFrame() {
+
+		boolean progressed;
+		boolean complete;
+		SeriesSubscription subscription;
+		synchronized (this) {
+			progressed = this.progressed;
+			this.progressed = false;
+			scheduled = false;
+			complete = this.complete;
+			subscription = this.subscription;
+		}
+		lastFrame = System.currentTimeMillis();
+		if (null == xyGraph) {
+			xyGraph = view.startXYGraph(provider);
+		}
+		if (progressed || complete) {
+			plot(provider.getSnapshot());
+		}
+		if (!complete && progressed && null != subscription) {
+			subscription.request(1);
+		}
+	}
+
+	/**
+	 * Let the traces read the specified snapshot of the run. The traces of the previous snapshot
+	 * stop following the range of the X axis
+	 */
+	private void plot(SeriesSnapshot snapshot) {
+
+		int points = view.getPoints();
+		List<Extender<?>> elements = snapshot.getElements();
+		for (int id = 0; id < elements.size(); id++) {
+			Extender<?> modelElement = elements.get(id);
+			SeriesDataProvider traceDataProvider = new SeriesDataProvider(snapshot, id, points);
+			SeriesDataProvider previous = dataProviders.put(modelElement, traceDataProvider);
+			if (null != previous) {
+				xyGraph.getPrimaryXAxis().removeListenr(previous);
+			}
+			xyGraph.getPrimaryXAxis().addListener(traceDataProvider);
+			Trace trace = traces.get(modelElement);
+			if (null == trace) {
+				trace = new Trace(modelElement.getServiceClass().getName(), xyGraph.getPrimaryXAxis(),
+						xyGraph.getPrimaryYAxis(), traceDataProvider);
+				trace.setPointStyle(PointStyle.XCROSS);
+				xyGraph.addTrace(trace);
+				traces.put(modelElement, trace);
+			} else {
+				trace.setDataProvider(traceDataProvider);
+			}
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package no.javatime.pl.xygraph.views;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.nebula.visualization.xygraph.dataprovider.IDataProvider;
+import org.eclipse.nebula.visualization.xygraph.dataprovider.IDataProviderListener;
+import org.eclipse.nebula.visualization.xygraph.dataprovider.ISample;
+import org.eclipse.nebula.visualization.xygraph.dataprovider.Sample;
+import org.eclipse.nebula.visualization.xygraph.figures.Axis;
+import org.eclipse.nebula.visualization.xygraph.figures.IAxisListener;
+import org.eclipse.nebula.visualization.xygraph.linearscale.Range;
+import org.eclipse.swt.graphics.Color;
+
+import no.javatime.core.model.series.SeriesSnapshot;
+import no.javatime.core.model.series.SeriesView;
+
+/**
+ * Trace data read directly from the views of a {@link SeriesSnapshot snapshot} of a time series
+ * store, without copying the steps or the values
+ * <p>
+ * The traces of a snapshot share the view of the steps as their X values. The trace does not draw
+ * all steps, but the steps in the visible range of the X axis {@link SeriesSnapshot#decimate(int,
+ * int, int, int) decimated} to about two points for each pixel of the graph. The points are
+ * decimated again when the range of the axis changes, and the cost of drawing, zooming and panning
+ * a trace does not depend on the length of the run. The ranges of the data are computed the first
+ * time they are read, the range of the values from the {@link SeriesSnapshot#range(int, int, int)
+ * pyramid} of the snapshot when it has one.
+ */
+public class SeriesDataProvider implements IDataProvider, IAxisListener {
+
+	private final SeriesSnapshot snapshot;
+	private final int id;
+	private final SeriesView steps;
+	private final int size;
+	private final int points;
+	private final CopyOnWriteArrayList<IDataProviderListener> listeners =
+			new CopyOnWriteArrayList<>();
+	private Range xRange;
+	private Range yRange;
+	/** The decimated rows of the visible range */
+	private int from;
+	private int to;
+	private double[][] data;
+
+	/**
+	 * Create trace data for the specified model element of a snapshot
+	 *
+	 * @param snapshot the snapshot of a run
+	 * @param id the id of the model element in the snapshot
+	 * @param points maximum number of points drawn
+	 */
+	public SeriesDataProvider(SeriesSnapshot snapshot, int id, int points) {
+		this.snapshot = snapshot;
+		this.id = id;
+		this.steps = snapshot.getStepsView();
+		// A view with fewer values than the steps has no points at the last steps
+		this.size = Math.min(steps.size(), snapshot.getSeriesView(id).size());
+		this.points = points;
+		this.to = size;
+		this.data = snapshot.decimate(id, 0, size, points);
+	}
+
+	@Override
+	public int getSize() {
+		return data[0].length;
+	}
+
+	@Override
+	public ISample getSample(int index) {
+		return new Sample(data[0][index], data[1][index]);
+	}
+
+	/**
+	 * Decimate the rows in the specified range of steps, including the row before and the row after
+	 * the range so the line continues to the edges of the graph
+	 *
+	 * @param lower the lower step of the range
+	 * @param upper the upper step of the range
+	 */
+	public void setRange(double lower, double upper) {
+
+		int from = Math.max(0, search(Math.min(lower, upper)) - 1);
+		int to = Math.min(size, search(Math.max(lower, upper)) + 1);
+		if (from == this.from && to == this.to) {
+			return;
+		}
+		this.from = from;
+		this.to = to;
+		data = snapshot.decimate(id, from, to, points);
+		for (IDataProviderListener listener : listeners) {
+			listener.dataChanged(this);
+		}
+	}
+
+	/**
+	 * Position of the first row with a step not less than the specified step
+	 */
+	private int search(double step) {
+
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (steps.get(middle) < step) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	@Override
+	public void axisRangeChanged(Axis axis, Range oldRange, Range newRange) {
+		setRange(newRange.getLower(), newRange.getUpper());
+	}
+
+	@Override
+	public void axisRevalidated(Axis axis) {
+	}
+
+	@Override
+	public void axisForegroundColorChanged(Axis axis, Color oldColor, Color newColor) {
+	}
+
+	@Override
+	public void axisTitleChanged(Axis axis, String oldTitle, String newTitle) {
+	}
+
+	@Override
+	public void axisAutoScaleChanged(Axis axis, boolean oldAutoScale, boolean newAutoScale) {
+	}
+
+	@Override
+	public void axisLogScaleChanged(Axis axis, boolean oldLogScale, boolean newLogScale) {
+	}
+
+	/**
+	 * The range of all steps, also when only a part of the steps is visible. The steps are
+	 * increasing, so the range is given by the first and the last step
+	 */
+	@Override
+	public synchronized Range getXDataMinMax() {
+
+		if (size == 0) {
+			return null;
+		}
+		if (null == xRange) {
+			xRange = new Range(steps.get(0), steps.get(size - 1));
+		}
+		return xRange;
+	}
+
+	@Override
+	public synchronized Range getYDataMinMax() {
+
+		if (size == 0) {
+			return null;
+		}
+		if (null == yRange) {
+			double[] range = snapshot.range(id, 0, size);
+			if (Double.isNaN(range[0])) {
+				return null;
+			}
+			yRange = new Range(range[0], range[1]);
+		}
+		return yRange;
+	}
+
+	@Override
+	public boolean isChronological() {
+		return true;
+	}
+
+	@Override
+	public void addDataProviderListener(IDataProviderListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	@Override
+	public boolean removeDataProviderListener(IDataProviderListener listener) {
+		return listeners.remove(listener);
+	}
+}
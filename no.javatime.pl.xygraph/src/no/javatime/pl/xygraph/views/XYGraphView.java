@@ -1,7 +1,8 @@
 package no.javatime.pl.xygraph.views;
 
 import java.text.DecimalFormat;
-import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -16,7 +17,6 @@ import org.eclipse.e4.ui.model.application.ui.menu.MToolBar;
 import org.eclipse.e4.ui.services.EMenuService;
 import org.eclipse.e4.ui.workbench.modeling.EModelService;
 import org.eclipse.e4.ui.workbench.modeling.EPartService;
-import org.eclipse.nebula.visualization.xygraph.dataprovider.CircularBufferDataProvider;
 import org.eclipse.nebula.visualization.xygraph.figures.IXYGraph;
 import org.eclipse.nebula.visualization.xygraph.figures.ToolbarArmedXYGraph;
 import org.eclipse.nebula.visualization.xygraph.figures.Trace;
@@ -28,6 +28,8 @@ import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
 
 import no.javatime.core.model.elements.TimeSeriesProvider;
+import no.javatime.core.model.series.Backpressure;
+import no.javatime.core.model.series.SeriesSnapshot;
 import no.javatime.inplace.extender.intface.Extender;
 
 /**
@@ -40,6 +42,10 @@ public class XYGraphView {
 	
 	/* Hosts the graph on a SWT canvas*/
 	private LightweightSystem lightweightSystem;
+	private Canvas canvas;
+
+	/** Number of points drawn in a trace when the width of the graph is not known */
+	public final static int DEFAULT_POINTS = 2000;
 
 	/**
 	 * Create an empty XY graph with a tool bar in a containing part
@@ -82,7 +88,7 @@ public class XYGraphView {
 		mPart.setToolbar(toolbar);
 		
 		// Create canvas to hold the graph
-		Canvas canvas = new Canvas(parent, SWT.NONE);
+		canvas = new Canvas(parent, SWT.NONE);
 		GridData gd = new GridData(SWT.FILL, SWT.FILL, true, true);
 		gd.heightHint = 116;
 		gd.horizontalSpan = 3;
@@ -103,39 +109,96 @@ public class XYGraphView {
 
 	/**
 	 * Updates the graph and its properties with the specified time series
+	 * <p>
+	 * The time series are read from a snapshot, so they have the same length as the steps also if
+	 * the simulation is still running. The traces read the snapshot directly, and the time series
+	 * are not copied
 	 * 
 	 * @param timeSeriesDataProvider A set of time series with a common time span 
 	 */
 	public void updateXYGraph(TimeSeriesProvider timeSeriesDataProvider) {
 
 		// create a new XY Graph.
+		IXYGraph xyGraph = createXYGraph(timeSeriesDataProvider);
+		// Add time series
+		SeriesSnapshot snapshot = timeSeriesDataProvider.getSnapshot();
+		if (snapshot.getRowCount() > 0) {
+			List<Extender<?>> modelElements = snapshot.getElements();
+			for (int id = 0; id < modelElements.size(); id++) {
+				Extender<?> modelElement = modelElements.get(id);
+				// The traces read the steps and the values of the snapshot without copying them
+				SeriesDataProvider traceDataProvider = new SeriesDataProvider(snapshot, id, getPoints());
+				xyGraph.getPrimaryXAxis().addListener(traceDataProvider);
+				Trace trace = new Trace(modelElement.getServiceClass().getName(), 
+						xyGraph.getPrimaryXAxis(), xyGraph.getPrimaryYAxis(), traceDataProvider);
+				trace.setPointStyle(PointStyle.XCROSS);
+				xyGraph.addTrace(trace);			
+			}
+		}
+		// Update graph with new time series
+		lightweightSystem.setContents(new ToolbarArmedXYGraph(xyGraph));
+	}
+
+	/**
+	 * Plot the steps of a run while it executes. The traces subscribe to the run immediately, and
+	 * replace the graph when the first frame is drawn on the display thread. Called on the
+	 * simulation thread before the first step of the run
+	 * 
+	 * @param timeSeriesDataProvider The time series provider of the run
+	 * @return the traces plotting the run, or null if the provider does not publish its steps
+	 * @see LiveTraces
+	 */
+	public LiveTraces plotXYGraph(TimeSeriesProvider timeSeriesDataProvider) {
+
+		if (!timeSeriesDataProvider.supportsPublishing()) {
+			return null;
+		}
+		LiveTraces liveTraces = new LiveTraces(this, timeSeriesDataProvider,
+				canvas.getDisplay());
+		timeSeriesDataProvider.getPublisher().subscribe(liveTraces, ForkJoinPool.commonPool(),
+				LiveTraces.BATCH_ROWS, Backpressure.COALESCE);
+		return liveTraces;
+	}
+
+	/**
+	 * Replace the graph with an empty graph for the specified time series. Called on the display
+	 * thread
+	 * 
+	 * @param timeSeriesDataProvider The time series provider of the graph
+	 * @return the new graph
+	 */
+	public IXYGraph startXYGraph(TimeSeriesProvider timeSeriesDataProvider) {
+
+		IXYGraph xyGraph = createXYGraph(timeSeriesDataProvider);
+		lightweightSystem.setContents(new ToolbarArmedXYGraph(xyGraph));
+		return xyGraph;
+	}
+
+	/**
+	 * Maximum number of points drawn in a trace, two for each pixel of the width of the graph
+	 * 
+	 * @return the number of points matching the width of the graph
+	 */
+	public int getPoints() {
+
+		int width = null != canvas && !canvas.isDisposed() ? canvas.getClientArea().width : 0;
+		return width > 0 ? 2 * width : DEFAULT_POINTS;
+	}
+
+	/**
+	 * Create a graph without traces for the specified time series
+	 */
+	private IXYGraph createXYGraph(TimeSeriesProvider timeSeriesDataProvider) {
+
 		IXYGraph xyGraph = new XYGraph();
-		ToolbarArmedXYGraph toolbarArmedXYGraph = new ToolbarArmedXYGraph(xyGraph);
 		xyGraph.setTitle(timeSeriesDataProvider.getModelName());
 		xyGraph.getPrimaryYAxis().setTitle("$");
 		xyGraph.getPrimaryXAxis().setTitle("Year");
 		// xyGraph.primaryYAxis.setRange(new Range(y[0], Math.ceil(y[y.length-1])));
 		xyGraph.getPrimaryYAxis().setAutoScale(true);
 		xyGraph.getPrimaryYAxis().setFormatPattern(defaultFormat.toPattern());
-		// Add time series
-		double[] steps = timeSeriesDataProvider.getRawSteps();
 		// xyGraph.primaryXAxis.setRange(new Range(steps[0]-1, steps[steps.length-1]+1));
 		xyGraph.getPrimaryXAxis().setAutoScale(true);
-		if (steps.length > 0) {
-			Collection<Extender<?>> modelElements = timeSeriesDataProvider.getModelElements();
-			for (Extender<?> modelElement : modelElements) {				
-				double[] timeSeries = timeSeriesDataProvider.getTimeSeries(modelElement);
-				CircularBufferDataProvider traceDataProvider = new CircularBufferDataProvider(false);
-				traceDataProvider.setBufferSize(steps.length);
-				traceDataProvider.setCurrentYDataArray(timeSeries);
-				traceDataProvider.setCurrentXDataArray(steps);
-				Trace trace = new Trace(modelElement.getServiceClass().getName(), 
-						xyGraph.getPrimaryXAxis(), xyGraph.getPrimaryYAxis(), traceDataProvider);
-				trace.setPointStyle(PointStyle.XCROSS);
-				xyGraph.addTrace(trace);			
-			}
-		}
-		// Update graph with new time series
-		lightweightSystem.setContents(toolbarArmedXYGraph);
-	}	
+		return xyGraph;
+	}
 }
\ No newline at end of file